@@ -0,0 +1,60 @@
+package benchmark;
+
+import controller.RecommendationController;
+import controller.phone_library;
+import model.CatalogSnapshot;
+import model.user_preference;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Shared benchmark state: a phone library loaded with a synthetic catalog of {@link #size} phones,
+ * its controller and a mix of preferences over every usage type, OS preference and a spread of budgets.
+ * The benchmarks walk through the preferences so no single query is optimized away or always hits
+ * the same rows.
+ */
+@State(Scope.Benchmark)
+public class CatalogState {
+
+    /** Usage types of the preference mix, in the order of the usageChoice menu. */
+    static final String[] USAGES = {"Casual", "Gaming", "Photography", "Productivity", "Entertainment"};
+
+    private static final String[] OS = {"No Preference", "Android", "iOS"};
+    private static final int[][] BUDGETS = {{8000, 15000}, {15000, 30000}, {25000, 50000}, {40000, 80000}, {70000, 150000}};
+
+    /** Number of phones in the catalog. */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    Path csv;
+    phone_library library;
+    RecommendationController controller;
+    CatalogSnapshot snapshot;
+    user_preference[] prefs; // length is a power of two, see next()
+    private int cursor;
+
+    @Setup
+    public void load() throws IOException {
+        csv = SyntheticCatalog.write(size, 42);
+        library = new phone_library(csv.toString());
+        if (library.getSnapshot().size() != size) throw new IllegalStateException("the synthetic catalog did not load");
+        controller = new RecommendationController(library);
+        snapshot = library.getSnapshot();
+
+        prefs = new user_preference[64];
+        for (int i = 0; i < prefs.length; i++) {
+            int[] budget = BUDGETS[i % BUDGETS.length];
+            prefs[i] = new user_preference(USAGES[i % USAGES.length], budget[0], budget[1], OS[i % OS.length]);
+        }
+    }
+
+    /** @return the next preference of the mix */
+    user_preference next() {
+        return prefs[cursor++ & (prefs.length - 1)];
+    }
+}
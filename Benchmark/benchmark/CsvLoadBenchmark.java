@@ -0,0 +1,111 @@
+package benchmark;
+
+import controller.phone_library;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load a CSV of {@link #rows} rows made by repeating the rows of the bundled dataset, into an empty library:
+ * openCsv : the OpenCSV loader (phone_library.loadCSV)
+ * streaming : the streaming parser (phone_library.loadCSVStreaming)
+ * Both paths build the same phones, reviews and catalog, only the parsing differs. Unlike the synthetic
+ * rows of {@link LoadBenchmark}, the rows keep the real review texts, quoting and field lengths. The forks keep
+ * the scores of the file (pf.sentiment=csv), so the reviews are not scored and the parsing is what is timed.
+ *
+ * Run: java -jar target/benchmarks.jar CsvLoadBenchmark -p rows=200000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dpf.sentiment=csv"})
+public class CsvLoadBenchmark {
+
+    /** Number of rows in the file. */
+    @Param({"10000", "200000"})
+    public int rows;
+
+    private Path csv;
+    private Path empty;
+    private phone_library library;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        csv = writeDataset(rows);
+        empty = SyntheticCatalog.writeEmpty();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(csv);
+    }
+
+    @Setup(Level.Iteration)
+    public void newLibrary() {
+        library = null; // let the previous one go before the next is built
+        library = new phone_library(empty.toString());
+    }
+
+    @Benchmark
+    public phone_library openCsv() {
+        library.loadCSV(csv.toString());
+        return check(library);
+    }
+
+    @Benchmark
+    public phone_library streaming() {
+        library.loadCSVStreaming(csv.toString());
+        return check(library);
+    }
+
+    private phone_library check(phone_library loaded) {
+        if (loaded.getSnapshot().size() != rows) throw new IllegalStateException("not every row was loaded");
+        return loaded;
+    }
+
+    /** Writes the header and the bundled rows repeated until the file holds the requested rows. */
+    private static Path writeDataset(int rows) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String header;
+        try (InputStream is = CsvLoadBenchmark.class.getClassLoader().getResourceAsStream(phone_library.DATASET);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            header = reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) lines.add(line);
+        }
+        Path file = Files.createTempFile("phones-", ".csv");
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(header);
+            out.write('\n');
+            for (int i = 0; i < rows; i++) {
+                out.write(lines.get(i % lines.size()));
+                out.write('\n');
+            }
+        }
+        return file;
+    }
+}
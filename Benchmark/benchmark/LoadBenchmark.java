@@ -0,0 +1,90 @@
+package benchmark;
+
+import controller.phone_library;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load a synthetic phone CSV of {@link #size} rows into an empty library:
+ * loadCSV : the OpenCSV loader
+ * loadCSVStreaming : the NIO streaming parser
+ * reloadUnchanged : a reload of the file the library already holds, where every row is reused
+ * Each load is a single shot (a million rows take seconds), repeated over the iterations.
+ *
+ * Run: java -jar target/benchmarks.jar LoadBenchmark -p size=1000,100000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadBenchmark {
+
+    /** Number of phones in the file. */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private Path csv;
+    private Path empty;
+    private phone_library library; // empty, or holding the file for reloadUnchanged
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        csv = SyntheticCatalog.write(size, 42);
+        empty = SyntheticCatalog.writeEmpty();
+    }
+
+    @Setup(Level.Iteration)
+    public void newLibrary() {
+        library = null; // let the previous one go before the next is built
+        library = new phone_library(empty.toString());
+    }
+
+    @Benchmark
+    public phone_library loadCSV() {
+        library.loadCSV(csv.toString());
+        return check(library);
+    }
+
+    @Benchmark
+    public phone_library loadCSVStreaming() {
+        library.loadCSVStreaming(csv.toString());
+        return check(library);
+    }
+
+    @Benchmark
+    public int reloadUnchanged(ReloadState loaded) {
+        return loaded.library.reload(csv.toString());
+    }
+
+    /** A library that already holds the file, for reloadUnchanged. */
+    @State(Scope.Benchmark)
+    public static class ReloadState {
+        phone_library library;
+
+        @Setup(Level.Trial)
+        public void load(LoadBenchmark files) {
+            library = new phone_library(files.csv.toString());
+        }
+    }
+
+    private phone_library check(phone_library loaded) {
+        if (loaded.getSnapshot().size() != size) throw new IllegalStateException("not every row was loaded");
+        return loaded;
+    }
+}
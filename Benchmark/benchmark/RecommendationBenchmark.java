@@ -0,0 +1,63 @@
+package benchmark;
+
+import controller.StrategyRegistry;
+import controller.TopKSelector;
+import controller.phone_library;
+import model.phone;
+import model.user_preference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import server.RecommendationJsonWriter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the other parts of a recommendation request, over the catalog sizes of {@link CatalogState}:
+ * additional : the premium suggestions slightly above the budget (phone_library.getAdditionalRecommendation)
+ * bonus : the bonus suggestion lookup (RecommendationController.getBonusSuggestions)
+ * response : what /api/recommendations does on a cache miss, main + additional + bonus
+ * and the JSON body, without the HTTP layer
+ * responseWithReviews : the same with every review of the returned phones in the body (reviews=all)
+ *
+ * Run: java -jar target/benchmarks.jar RecommendationBenchmark -p size=1000,100000
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RecommendationBenchmark {
+
+    @Benchmark
+    public List<phone> additional(CatalogState state) {
+        user_preference pref = state.next();
+        return phone_library.getAdditionalRecommendation(state.snapshot.getCatalog(), pref,
+                StrategyRegistry.getDefault().forUsage(pref.getUsageCode()), TopKSelector.DEFAULT_K);
+    }
+
+    @Benchmark
+    public List<String> bonus(CatalogState state) {
+        return state.controller.getBonusSuggestions(state.next());
+    }
+
+    @Benchmark
+    public byte[] response(CatalogState state) {
+        user_preference pref = state.next();
+        return RecommendationJsonWriter.write(
+                state.controller.recommend(state.snapshot, pref, pref.getUsage(), TopKSelector.DEFAULT_K));
+    }
+
+    @Benchmark
+    public byte[] responseWithReviews(CatalogState state) {
+        user_preference pref = state.next();
+        return RecommendationJsonWriter.write(
+                state.controller.recommend(state.snapshot, pref, pref.getUsage(), TopKSelector.DEFAULT_K),
+                RecommendationJsonWriter.ALL_REVIEWS);
+    }
+}
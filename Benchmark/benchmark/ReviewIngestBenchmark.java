@@ -0,0 +1,100 @@
+package benchmark;
+
+import controller.ReviewIngestor;
+import controller.phone_library;
+import model.phone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Review ingestion throughput, in reviews per second, from submission until the reviews are in the
+ * file, in the rankings and folded into the catalog:
+ * submit    : one review per call, as POST /api/phones/:id/reviews does
+ * submitAll : bulk submissions of 1000 reviews, as POST /api/reviews does
+ * Each invocation ends with a flush, so the score includes the writer and one fold per invocation.
+ *
+ * Run: java -jar target/benchmarks.jar ReviewIngestBenchmark -p fsync=false,true
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReviewIngestBenchmark {
+
+    private static final int REVIEWS = 10_000;
+    private static final int BULK = 1000;
+
+    /** Force every written batch to the disk. */
+    @Param({"false"})
+    public boolean fsync;
+
+    private Path file;
+    private ReviewIngestor ingestor;
+    private int[] ids;
+    private List<String> reviews;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        phone_library library = new phone_library();
+        List<String> dataset = new ArrayList<>();
+        List<phone> phones = library.getallphones();
+        for (phone p : phones) dataset.addAll(p.getReviews());
+        ids = new int[REVIEWS];
+        reviews = new ArrayList<>(REVIEWS);
+        for (int i = 0; i < REVIEWS; i++) {
+            ids[i] = phones.get(i % phones.size()).getId();
+            reviews.add(dataset.get(i % dataset.size()));
+        }
+        file = Files.createTempFile("reviews", ".log");
+        ingestor = new ReviewIngestor(library, file, REVIEWS, 60_000, fsync);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() throws IOException {
+        ingestor.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REVIEWS)
+    public int submit() throws InterruptedException {
+        int accepted = 0;
+        for (int i = 0; i < REVIEWS; i++) if (ingestor.submit(ids[i], reviews.get(i))) accepted++;
+        ingestor.flush();
+        return accepted;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REVIEWS)
+    public int submitAll() throws InterruptedException {
+        int accepted = 0;
+        for (int from = 0; from < REVIEWS; from += BULK) {
+            int[] part = Arrays.copyOfRange(ids, from, from + BULK);
+            accepted += ingestor.submitAll(part, reviews.subList(from, from + BULK));
+        }
+        ingestor.flush();
+        return accepted;
+    }
+}
@@ -0,0 +1,86 @@
+package benchmark;
+
+import controller.RecommendationStrategy;
+import controller.StrategyRegistry;
+import controller.TopKSelector;
+import model.ReviewIndex;
+import model.phone;
+import model.user_preference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the full-text review search over the catalog sizes of {@link CatalogState}:
+ * search           : {@link ReviewIndex#search} of one to three words, rare and common ones
+ * recommendMatching: a search plus the strategy of the preference, keeping only the matching phones
+ * recommendBoosted : a search plus the strategy, ranking the matching phones higher (a full catalog scan)
+ * addReviews       : the index of the next version after 100 reviews were folded into 100 phones
+ *
+ * Run: java -jar target/benchmarks.jar ReviewSearchBenchmark -p size=1000,100000
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReviewSearchBenchmark {
+
+    private static final String[] QUERIES = {"battery drain", "camera", "heating issue", "excellent display",
+            "poor battery charging", "performance", "good camera quality", "overheat"};
+
+    private CatalogState state;
+    private ReviewIndex index;
+    private Map<Integer, List<String>> added;
+    private int cursor;
+
+    @Setup
+    public void prepare(CatalogState state) {
+        this.state = state;
+        index = state.snapshot.getReviewIndex();
+        List<phone> phones = state.snapshot.getPhones();
+        added = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            added.put(phones.get(i * phones.size() / 100).getId(), List.of("Battery drains fast but the camera is excellent"));
+        }
+    }
+
+    @Benchmark
+    public ReviewIndex.Hits search() {
+        return index.search(QUERIES[cursor++ & (QUERIES.length - 1)]);
+    }
+
+    @Benchmark
+    public List<phone> recommendMatching() {
+        user_preference pref = state.next();
+        RecommendationStrategy strategy = StrategyRegistry.getDefault().forUsage(pref.getUsageCode());
+        ReviewIndex.Hits hits = index.search(QUERIES[cursor++ & (QUERIES.length - 1)]);
+        return strategy.recommendMatching(state.snapshot, pref, hits, TopKSelector.DEFAULT_K);
+    }
+
+    @Benchmark
+    public List<phone> recommendBoosted() {
+        user_preference pref = state.next();
+        RecommendationStrategy strategy = StrategyRegistry.getDefault().forUsage(pref.getUsageCode());
+        ReviewIndex.Hits hits = index.search(QUERIES[cursor++ & (QUERIES.length - 1)]);
+        return strategy.recommendBoosted(state.snapshot, pref, hits, TopKSelector.DEFAULT_K);
+    }
+
+    @Benchmark
+    public ReviewIndex addReviews() {
+        return index.withReviews(added);
+    }
+}
@@ -0,0 +1,94 @@
+package benchmark;
+
+import controller.phone_library;
+import model.ReviewStore;
+import model.phone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sentiment.SentimentAnalyzer;
+import sentiment.SentimentScorer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sentiment scoring throughput, in reviews per second, on the reviews of the bundled dataset:
+ * compound : one thread scoring review after review, the reviews per second of one core
+ * scoreAll : {@link SentimentScorer#scoreAll} of 1000 phones with 10 reviews each on a fork-join pool
+ *            of {@link #threads} workers; divide the score by the threads for reviews per second per core
+ *
+ * Run: java -jar target/benchmarks.jar SentimentBenchmark -p threads=1,2,4,8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SentimentBenchmark {
+
+    private static final int REVIEWS = 10_000;
+    private static final int REVIEWS_PER_PHONE = 10;
+
+    /** Workers of the fork-join pool used by scoreAll. */
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private final SentimentAnalyzer analyzer = SentimentAnalyzer.getDefault();
+    private String[] reviews;
+    private List<phone> phones;
+    private ForkJoinPool pool;
+    private SentimentScorer scorer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // the dataset reviews, repeated up to REVIEWS
+        List<String> dataset = new ArrayList<>();
+        for (phone p : new phone_library().getallphones()) dataset.addAll(p.getReviews());
+        reviews = new String[REVIEWS];
+        for (int i = 0; i < REVIEWS; i++) reviews[i] = dataset.get(i % dataset.size());
+
+        ReviewStore store = new ReviewStore();
+        phones = new ArrayList<>();
+        for (int i = 0; i < REVIEWS; i += REVIEWS_PER_PHONE) {
+            List<String> mine = List.of(reviews).subList(i, i + REVIEWS_PER_PHONE);
+            phones.add(new phone("Phone " + i, "Brand", 20000, "Android", "casual", "https://example.com",
+                    store, store.add(mine), 0, mine.size()));
+        }
+        pool = new ForkJoinPool(threads);
+        scorer = new SentimentScorer(analyzer, pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REVIEWS)
+    public double compound() {
+        double sum = 0;
+        for (String review : reviews) sum += analyzer.compound(review);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REVIEWS)
+    public long scoreAll() {
+        return scorer.scoreAll(phones).getReviews();
+    }
+}
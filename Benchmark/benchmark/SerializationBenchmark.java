@@ -0,0 +1,86 @@
+package benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import model.RecommendationResult;
+import model.user_preference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import server.RecommendationJsonWriter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to turn a recommendation result into the JSON body, over the catalog sizes of {@link CatalogState}:
+ * gson : a new Gson and a HashMap of the three lists, serialized by reflection (what the route did)
+ * writer : RecommendationJsonWriter splicing the pre-serialized phone bytes
+ * The results are computed once, for every preference of the shared mix, so only the serialization is timed.
+ *
+ * Run: java -jar target/benchmarks.jar SerializationBenchmark -p size=1000 -p k=3,20
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SerializationBenchmark {
+
+    /** Phones per list of a result. */
+    @Param({"3", "20"})
+    public int k;
+
+    private RecommendationResult[] results; // length is a power of two, like the preferences
+    private int cursor;
+
+    @Setup
+    public void prepare(CatalogState state) {
+        results = new RecommendationResult[state.prefs.length];
+        for (int i = 0; i < results.length; i++) {
+            user_preference pref = state.prefs[i];
+            results[i] = state.controller.recommend(state.snapshot, pref, pref.getUsage(), k);
+        }
+        // both forms must describe the same JSON before timing them
+        for (RecommendationResult r : results) {
+            String writer = new String(RecommendationJsonWriter.write(r), StandardCharsets.UTF_8);
+            if (!JsonParser.parseString(gson(r)).equals(JsonParser.parseString(writer))) {
+                throw new IllegalStateException("writer output differs from Gson output");
+            }
+        }
+    }
+
+    @Benchmark
+    public String gson() {
+        return gson(next());
+    }
+
+    @Benchmark
+    public byte[] writer() {
+        return RecommendationJsonWriter.write(next());
+    }
+
+    private RecommendationResult next() {
+        return results[cursor++ & (results.length - 1)];
+    }
+
+    /** The response building of the route before the writer. */
+    private static String gson(RecommendationResult result) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("main", result.getMain());
+        response.put("additional", result.getAdditional());
+        response.put("bonus", result.getBonus());
+        return new Gson().toJson(response);
+    }
+}
@@ -0,0 +1,63 @@
+package benchmark;
+
+import controller.RecommendationStrategy;
+import controller.StrategyRegistry;
+import controller.TopKSelector;
+import model.PhoneCatalog;
+import model.phone;
+import model.user_preference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of {@link RecommendationStrategy#recommend} for every usage strategy, over the catalog sizes
+ * of {@link CatalogState}. The preferences keep the budgets and OS of the shared mix with the usage
+ * type of the strategy, so every call runs a real filter and top k selection.
+ *
+ * Run: java -jar target/benchmarks.jar StrategyBenchmark -p size=1000,100000
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StrategyBenchmark {
+
+    /** Usage type whose strategy is measured. */
+    @Param({"Casual", "Entertainment", "Gaming", "Photography", "Productivity"})
+    public String usage;
+
+    private RecommendationStrategy strategy;
+    private PhoneCatalog catalog;
+    private user_preference[] prefs;
+    private int cursor;
+
+    @Setup
+    public void prepare(CatalogState state) {
+        strategy = StrategyRegistry.getDefault().forUsage(usage);
+        catalog = state.snapshot.getCatalog();
+        prefs = new user_preference[state.prefs.length];
+        for (int i = 0; i < prefs.length; i++) {
+            user_preference p = state.prefs[i];
+            prefs[i] = new user_preference(usage, p.getMinBudget(), p.getMaxBudget(), p.getOsPreference());
+        }
+    }
+
+    @Benchmark
+    public List<phone> recommend() {
+        return strategy.recommend(catalog, prefs[cursor++ & (prefs.length - 1)], TopKSelector.DEFAULT_K);
+    }
+}
@@ -0,0 +1,51 @@
+package benchmark;
+
+import tools.CatalogGenerator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes phone CSV files of any size for the benchmarks
+ * The rows come from the {@link CatalogGenerator} with its defaults (the usage, OS and price mix of
+ * the bundled dataset), except that a row keeps at most {@link #REVIEWS_PER_PHONE} reviews, which keeps
+ * a million phone file at a few hundred MB. The same size and seed always give the same file.
+ */
+final class SyntheticCatalog {
+
+    /** Reviews kept per phone. */
+    static final int REVIEWS_PER_PHONE = 3;
+
+    private SyntheticCatalog() {
+    }
+
+    /**
+     * Writes a CSV with the given number of phones to a temporary file.
+     *
+     * @param rows number of phones
+     * @param seed seed of the random row choice
+     * @return the file, deleted when the JVM exits
+     * @throws IOException if the file cannot be written
+     */
+    static Path write(int rows, long seed) throws IOException {
+        Path file = Files.createTempFile("phones-" + rows + "-", ".csv");
+        file.toFile().deleteOnExit();
+        new CatalogGenerator().seed(seed).maxReviews(REVIEWS_PER_PHONE).write(file, rows);
+        return file;
+    }
+
+    /**
+     * Writes a CSV holding only the header, used to create an empty library.
+     *
+     * @return the file, deleted when the JVM exits
+     * @throws IOException if the file cannot be written
+     */
+    static Path writeEmpty() throws IOException {
+        Path file = Files.createTempFile("phones-empty-", ".csv");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, CatalogGenerator.HEADER + "\n", StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,45 @@
+package tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the "--name value" command line options of the tools.
+ */
+final class Args {
+
+    private Args() {
+    }
+
+    /**
+     * @param args the command line
+     * @return option values by name, without the dashes; a flag without value maps to "true"
+     * @throws IllegalArgumentException if an argument is not an option
+     */
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) options.put(name, args[++i]);
+            else options.put(name, "true");
+        }
+        return options;
+    }
+
+    /**
+     * Reads a weight list, eg: "gaming=3,casual=1".
+     *
+     * @param spec comma separated name=weight pairs
+     * @return weight by name, in the given order
+     */
+    static Map<String, Double> weights(String spec) {
+        Map<String, Double> weights = new LinkedHashMap<>();
+        for (String pair : spec.split(",")) {
+            String[] kv = pair.split("=");
+            if (kv.length != 2) throw new IllegalArgumentException("Expected name=weight, got: " + pair);
+            weights.put(kv[0].trim(), Double.parseDouble(kv[1].trim()));
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,331 @@
+package tools;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import controller.phone_library;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates phone catalogs of any size in the CSV schema of the bundled dataset
+ * Every row starts from a phone of the bundled dataset with the drawn usage type and OS, so brands,
+ * names, links and review texts look like the real data (an iPhone is never sold as Android, gaming
+ * reviews talk about games). On top of that the generator draws:
+ *  - the usage type and OS from a configurable mix, by default the mix of the bundled dataset
+ *  - the price from the source phone moved by up to 20%, or from a lognormal or uniform distribution
+ *  - the number of reviews, by default the count of the source phone, or uniform in a range;
+ *    the source phone's reviews come first, further ones are taken from phones of the same usage
+ *  - the sentiment score of the source phone moved by up to 5 points
+ * The same options and seed always give the same file.
+ *
+ * Run: java -cp target/benchmarks.jar tools.CatalogGenerator --rows 100000 --out phones-100k.csv
+ *      [--seed 42] [--usage gaming=3,casual=1] [--os Android=0.8,iOS=0.2]
+ *      [--price lognormal:30000:0.6 | uniform:8000:150000] [--reviews 3-20]
+ */
+public final class CatalogGenerator {
+
+    /** Header of the phone CSV. */
+    public static final String HEADER = "Mobile_name,Brand,Price,OS,Usage,Reviews,Purchase_link,Sentiment_Score";
+
+    private final List<String[]> source;
+    private final Map<String, List<String[]>> byUsageAndOs = new HashMap<>();
+    private final Map<String, List<String>> reviewsByUsage = new HashMap<>();
+
+    private long seed = 42;
+    private Map<String, Double> usageMix;
+    private Map<String, Double> osMix;
+    private String priceModel = "dataset";
+    private double priceA;
+    private double priceB;
+    private int minReviews = -1; // -1: the count of the source phone
+    private int maxReviews = Integer.MAX_VALUE;
+
+    /**
+     * Creates a generator drawing from the bundled dataset.
+     *
+     * @throws IOException if the dataset cannot be read
+     */
+    public CatalogGenerator() throws IOException {
+        this(bundledRows());
+    }
+
+    /**
+     * Creates a generator drawing from the given rows of a phone CSV (without the header).
+     *
+     * @param source the rows, in the CSV schema
+     */
+    public CatalogGenerator(List<String[]> source) {
+        if (source.isEmpty()) throw new IllegalArgumentException("The source catalog is empty");
+        this.source = source;
+        Map<String, Double> usages = new LinkedHashMap<>();
+        Map<String, Double> oses = new LinkedHashMap<>();
+        for (String[] row : source) {
+            String usage = row[4].trim().toLowerCase(Locale.ROOT);
+            String os = row[3].trim();
+            usages.merge(usage, 1.0, Double::sum);
+            oses.merge(os, 1.0, Double::sum);
+            byUsageAndOs.computeIfAbsent(usage + "|" + os.toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(row);
+            List<String> pool = reviewsByUsage.computeIfAbsent(usage, k -> new ArrayList<>());
+            for (String review : row[5].split("\\|\\|")) if (!review.isBlank()) pool.add(review.trim());
+        }
+        this.usageMix = usages;
+        this.osMix = oses;
+    }
+
+    /**
+     * @param seed seed of all random draws
+     * @return this generator
+     */
+    public CatalogGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sets the share of every usage type.
+     *
+     * @param mix weight by usage type, eg: {gaming=3, casual=1}; the weights need not add up to 1
+     * @return this generator
+     * @throws IllegalArgumentException if a usage type does not occur in the source
+     */
+    public CatalogGenerator usageMix(Map<String, Double> mix) {
+        Map<String, Double> normalized = new LinkedHashMap<>();
+        mix.forEach((usage, weight) -> normalized.put(usage.trim().toLowerCase(Locale.ROOT), weight));
+        for (String usage : normalized.keySet()) {
+            if (!reviewsByUsage.containsKey(usage)) throw new IllegalArgumentException("Unknown usage type: " + usage);
+        }
+        this.usageMix = checkWeights(normalized);
+        return this;
+    }
+
+    /**
+     * Sets the share of every operating system.
+     *
+     * @param mix weight by OS, eg: {Android=0.8, iOS=0.2}
+     * @return this generator
+     */
+    public CatalogGenerator osMix(Map<String, Double> mix) {
+        this.osMix = checkWeights(new LinkedHashMap<>(mix));
+        return this;
+    }
+
+    /**
+     * Sets the price distribution.
+     *
+     * @param spec "dataset" (the source price moved by up to 20%), "lognormal:median:sigma"
+     *             or "uniform:min:max"
+     * @return this generator
+     * @throws IllegalArgumentException if the spec cannot be read
+     */
+    public CatalogGenerator price(String spec) {
+        String[] parts = spec.trim().split(":");
+        String model = parts[0].toLowerCase(Locale.ROOT);
+        if (model.equals("dataset") && parts.length == 1) {
+            priceModel = model;
+            return this;
+        }
+        if ((model.equals("lognormal") || model.equals("uniform")) && parts.length == 3) {
+            double a = Double.parseDouble(parts[1]);
+            double b = Double.parseDouble(parts[2]);
+            if (a <= 0 || b <= 0 || (model.equals("uniform") && b < a)) {
+                throw new IllegalArgumentException("Invalid price distribution: " + spec);
+            }
+            priceModel = model;
+            priceA = a;
+            priceB = b;
+            return this;
+        }
+        throw new IllegalArgumentException("Invalid price distribution: " + spec
+                + ", expected dataset, lognormal:median:sigma or uniform:min:max");
+    }
+
+    /**
+     * Draws the number of reviews of every phone uniformly from a range.
+     *
+     * @param min fewest reviews
+     * @param max most reviews
+     * @return this generator
+     */
+    public CatalogGenerator reviews(int min, int max) {
+        if (min < 0 || max < min) throw new IllegalArgumentException("Invalid review range: " + min + "-" + max);
+        this.minReviews = min;
+        this.maxReviews = max;
+        return this;
+    }
+
+    /**
+     * Keeps the review count of the source phones, but at most the given number.
+     *
+     * @param max most reviews per phone
+     * @return this generator
+     */
+    public CatalogGenerator maxReviews(int max) {
+        if (max < 0) throw new IllegalArgumentException("Invalid review count: " + max);
+        this.minReviews = -1;
+        this.maxReviews = max;
+        return this;
+    }
+
+    /**
+     * Writes a catalog.
+     *
+     * @param out where the CSV goes
+     * @param rows number of phones
+     * @throws IOException if writing fails
+     */
+    public void write(Writer out, int rows) throws IOException {
+        Random random = new Random(seed);
+        String[] usages = usageMix.keySet().toArray(new String[0]);
+        double[] usageWeights = cumulative(usageMix);
+        String[] oses = osMix.keySet().toArray(new String[0]);
+        double[] osWeights = cumulative(osMix);
+
+        out.write(HEADER);
+        out.write('\n');
+        StringBuilder line = new StringBuilder(2048);
+        for (int i = 0; i < rows; i++) {
+            String usage = usages[pick(usageWeights, random)];
+            String os = oses[pick(osWeights, random)];
+            String[] row = sourceRow(usage, os, random);
+
+            line.setLength(0);
+            appendQuoted(line, row[0].trim() + " #" + i).append(',');
+            appendQuoted(line, row[1].trim()).append(',');
+            line.append(price(Double.parseDouble(row[2]), random)).append(',');
+            appendQuoted(line, row[3].trim()).append(',');
+            appendQuoted(line, usage).append(',');
+            appendQuoted(line, reviews(row, usage, random)).append(',');
+            appendQuoted(line, row[6].trim()).append(',');
+            double sentiment = Double.parseDouble(row[7]) + random.nextInt(11) - 5;
+            line.append(Math.max(0, Math.min(100, sentiment))).append('\n');
+            out.append(line);
+        }
+    }
+
+    /**
+     * Writes a catalog to a file.
+     *
+     * @param file the CSV file, replaced if it exists
+     * @param rows number of phones
+     * @throws IOException if writing fails
+     */
+    public void write(Path file, int rows) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(out, rows);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = Args.parse(args);
+        int rows = Integer.parseInt(options.getOrDefault("rows", "10000"));
+        Path out = Path.of(options.getOrDefault("out", "phones-" + rows + ".csv"));
+
+        CatalogGenerator generator = new CatalogGenerator().seed(Long.parseLong(options.getOrDefault("seed", "42")));
+        if (options.containsKey("usage")) generator.usageMix(Args.weights(options.get("usage")));
+        if (options.containsKey("os")) generator.osMix(Args.weights(options.get("os")));
+        if (options.containsKey("price")) generator.price(options.get("price"));
+        if (options.containsKey("reviews")) {
+            String[] range = options.get("reviews").split("-");
+            int min = Integer.parseInt(range[0].trim());
+            generator.reviews(min, range.length > 1 ? Integer.parseInt(range[1].trim()) : min);
+        }
+
+        long start = System.nanoTime();
+        generator.write(out, rows);
+        System.out.printf("Wrote %d phones to %s (%.1f MB) in %d ms%n", rows, out,
+                Files.size(out) / (1024.0 * 1024.0), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // --------------------- Helpers ---------------------
+
+    /** A source phone with the usage and OS, or one with the OS when the source has no such pair. */
+    private String[] sourceRow(String usage, String os, Random random) {
+        List<String[]> rows = byUsageAndOs.get(usage + "|" + os.toLowerCase(Locale.ROOT));
+        if (rows == null) {
+            rows = new ArrayList<>();
+            for (String[] row : source) if (row[3].trim().equalsIgnoreCase(os)) rows.add(row);
+            if (rows.isEmpty()) rows = source;
+            byUsageAndOs.put(usage + "|" + os.toLowerCase(Locale.ROOT), rows);
+        }
+        return rows.get(random.nextInt(rows.size()));
+    }
+
+    private double price(double sourcePrice, Random random) {
+        double price = switch (priceModel) {
+            case "lognormal" -> priceA * Math.exp(priceB * random.nextGaussian());
+            case "uniform" -> priceA + (priceB - priceA) * random.nextDouble();
+            default -> sourcePrice * (0.8 + 0.4 * random.nextDouble());
+        };
+        return Math.round(price * 100) / 100.0;
+    }
+
+    private String reviews(String[] row, String usage, Random random) {
+        String[] own = row[5].split("\\|\\|");
+        int count = minReviews < 0 ? Math.min(own.length, maxReviews)
+                : minReviews + random.nextInt(maxReviews - minReviews + 1);
+        List<String> pool = reviewsByUsage.get(usage);
+        StringBuilder sb = new StringBuilder();
+        for (int r = 0; r < count; r++) {
+            if (r > 0) sb.append("||");
+            sb.append(r < own.length ? own[r].trim() : pool.get(random.nextInt(pool.size())));
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, Double> checkWeights(Map<String, Double> mix) {
+        if (mix.isEmpty()) throw new IllegalArgumentException("The mix is empty");
+        for (Map.Entry<String, Double> e : mix.entrySet()) {
+            if (!(e.getValue() >= 0)) throw new IllegalArgumentException("Invalid weight of " + e.getKey());
+        }
+        if (mix.values().stream().mapToDouble(Double::doubleValue).sum() <= 0) {
+            throw new IllegalArgumentException("The weights add up to 0");
+        }
+        return mix;
+    }
+
+    private static double[] cumulative(Map<String, Double> mix) {
+        double[] sums = new double[mix.size()];
+        double total = 0;
+        int i = 0;
+        for (double w : mix.values()) sums[i++] = total += w;
+        for (i = 0; i < sums.length; i++) sums[i] /= total;
+        return sums;
+    }
+
+    private static int pick(double[] cumulative, Random random) {
+        double r = random.nextDouble();
+        for (int i = 0; i < cumulative.length - 1; i++) if (r < cumulative[i]) return i;
+        return cumulative.length - 1;
+    }
+
+    private static StringBuilder appendQuoted(StringBuilder sb, String value) {
+        return sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static List<String[]> bundledRows() throws IOException {
+        InputStream is = CatalogGenerator.class.getClassLoader().getResourceAsStream(phone_library.DATASET);
+        if (is == null) is = Files.newInputStream(Path.of("src", phone_library.DATASET)); // run from the project root
+        List<String[]> rows = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            reader.readNext(); // header
+            String[] row;
+            while ((row = reader.readNext()) != null) if (row.length >= 8) rows.add(row);
+        } catch (CsvValidationException e) {
+            throw new IOException(e);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,236 @@
+package tools;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * HTTP load test of /api/recommendations
+ * It replays a weighted mix of preferences against a running server with a growing number of
+ * concurrent clients (closed loop: every client sends its next request when the previous answer is in)
+ * and prints the throughput and the latency percentiles of every step, so the point where the server
+ * saturates shows up as the step where throughput stops growing and the tail latency jumps.
+ *
+ * Everything runs offline: the server is a local one, or with --serve it is started inside this JVM
+ * on the bundled dataset, a given CSV (--catalog) or a generated catalog (--rows, see {@link CatalogGenerator}).
+ *
+ * Run: java -cp target/benchmarks.jar tools.LoadTest [--url http://localhost:4567] [--mix prefs.csv]
+ *      [--concurrency 1,2,4,8,16,32,64] [--duration 10] [--warmup 5] [--query "k=10&fields=name,price"]
+ *      [--gzip] [--serve [--catalog phones.csv | --rows 100000]]
+ *
+ * A mix file has one preference per line: weight,usageChoice,os,minBudget,maxBudget
+ * (eg: "3,3,Android,15000,40000"); lines starting with # are skipped.
+ */
+public final class LoadTest {
+
+    private static final int[][] BUDGETS = {{8000, 15000}, {15000, 30000}, {25000, 50000}, {40000, 80000}, {70000, 150000}};
+    private static final String[] OS = {"No Preference", "Android", "iOS"};
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final List<URI> uris = new ArrayList<>();
+    private final double[] cumulative;
+    private final boolean gzip;
+
+    private LoadTest(String baseUrl, List<String[]> mix, String extraQuery, boolean gzip) {
+        this.gzip = gzip;
+        this.cumulative = new double[mix.size()];
+        double total = 0;
+        for (int i = 0; i < mix.size(); i++) {
+            String[] p = mix.get(i);
+            cumulative[i] = total += Double.parseDouble(p[0]);
+            String query = "usageChoice=" + p[1].trim() + "&os=" + p[2].trim().replace(" ", "%20")
+                    + "&minBudget=" + p[3].trim() + "&maxBudget=" + p[4].trim()
+                    + (extraQuery.isEmpty() ? "" : "&" + extraQuery);
+            uris.add(URI.create(baseUrl + "/api/recommendations?" + query));
+        }
+        for (int i = 0; i < cumulative.length; i++) cumulative[i] /= total;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Args.parse(args);
+        String url = options.getOrDefault("url", "http://localhost:4567");
+        int[] steps = Arrays.stream(options.getOrDefault("concurrency", "1,2,4,8,16,32,64").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+        Duration step = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "10")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "5")));
+        List<String[]> mix = options.containsKey("mix") ? readMix(Path.of(options.get("mix"))) : defaultMix();
+
+        boolean embedded = options.containsKey("serve");
+        if (embedded) serve(options, url);
+
+        LoadTest test = new LoadTest(url, mix, options.getOrDefault("query", ""), options.containsKey("gzip"));
+        System.out.printf("%d preferences, %s per step against %s%n", mix.size(), step, url);
+        if (!warmup.isZero()) test.run(steps[steps.length - 1], warmup); // JIT and caches, not reported
+
+        System.out.printf("%11s %9s %7s %10s %8s %8s %8s %9s %8s%n",
+                "concurrency", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (int clients : steps) {
+            Result r = test.run(clients, step);
+            System.out.printf("%11d %9d %7d %10.1f %8.2f %8.2f %8.2f %9.2f %8.2f%n", clients, r.count(), r.errors,
+                    r.count() / r.seconds, r.percentile(50), r.percentile(90), r.percentile(99),
+                    r.percentile(99.9), r.percentile(100));
+        }
+
+        if (embedded) {
+            spark.Spark.stop();
+            System.exit(0); // the embedded server leaves non daemon threads behind
+        }
+    }
+
+    /** Runs the given number of clients for the duration. */
+    private Result run(int clients, Duration duration) throws InterruptedException {
+        long end = System.nanoTime() + duration.toNanos();
+        long[][] latencies = new long[clients][];
+        int[] counts = new int[clients];
+        int[] errors = new int[clients];
+        CountDownLatch done = new CountDownLatch(clients);
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            int id = c;
+            Thread worker = new Thread(() -> {
+                Random random = new Random(id);
+                long[] mine = new long[4096];
+                int n = 0;
+                try {
+                    while (System.nanoTime() < end) {
+                        HttpRequest.Builder request = HttpRequest.newBuilder(next(random)).timeout(Duration.ofSeconds(30));
+                        if (gzip) request.header("Accept-Encoding", "gzip");
+                        long t0 = System.nanoTime();
+                        try {
+                            HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                            if (response.statusCode() >= 400) errors[id]++;
+                        } catch (IOException e) {
+                            errors[id]++;
+                        }
+                        if (n == mine.length) mine = Arrays.copyOf(mine, n * 2);
+                        mine[n++] = System.nanoTime() - t0;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    latencies[id] = mine;
+                    counts[id] = n;
+                    done.countDown();
+                }
+            }, "load-" + c);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        for (int n : counts) total += n;
+        long[] all = new long[total];
+        int at = 0;
+        int failed = 0;
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(latencies[c], 0, all, at, counts[c]);
+            at += counts[c];
+            failed += errors[c];
+        }
+        Arrays.sort(all);
+        return new Result(all, failed, seconds);
+    }
+
+    private URI next(Random random) {
+        double r = random.nextDouble();
+        for (int i = 0; i < cumulative.length - 1; i++) if (r < cumulative[i]) return uris.get(i);
+        return uris.get(uris.size() - 1);
+    }
+
+    /** Latencies of one step, sorted. */
+    private static final class Result {
+        final long[] nanos;
+        final int errors;
+        final double seconds;
+
+        Result(long[] nanos, int errors, double seconds) {
+            this.nanos = nanos;
+            this.errors = errors;
+            this.seconds = seconds;
+        }
+
+        int count() {
+            return nanos.length;
+        }
+
+        /** Nearest rank percentile in milliseconds. */
+        double percentile(double p) {
+            if (nanos.length == 0) return 0;
+            int rank = (int) Math.ceil(p / 100 * nanos.length);
+            return nanos[Math.max(0, Math.min(nanos.length - 1, rank - 1))] / 1e6;
+        }
+    }
+
+    // --------------------- Setup ---------------------
+
+    /** Every usage type with every OS preference and budget band, equally weighted. */
+    private static List<String[]> defaultMix() {
+        List<String[]> mix = new ArrayList<>();
+        for (int usage = 1; usage <= 5; usage++) {
+            for (String os : OS) {
+                for (int[] budget : BUDGETS) {
+                    mix.add(new String[]{"1", Integer.toString(usage), os, Integer.toString(budget[0]), Integer.toString(budget[1])});
+                }
+            }
+        }
+        return mix;
+    }
+
+    private static List<String[]> readMix(Path file) throws IOException {
+        List<String[]> mix = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (line.isBlank() || line.startsWith("#")) continue;
+            String[] fields = line.split(",");
+            if (fields.length != 5) throw new IllegalArgumentException("Expected weight,usageChoice,os,minBudget,maxBudget: " + line);
+            mix.add(fields);
+        }
+        if (mix.isEmpty()) throw new IllegalArgumentException("The mix file has no preferences: " + file);
+        return mix;
+    }
+
+    /** Starts the server of the project in this JVM and waits until it answers. */
+    private static void serve(Map<String, String> options, String url) throws Exception {
+        if (options.containsKey("catalog")) {
+            System.setProperty("pf.catalog.file", options.get("catalog"));
+        } else if (options.containsKey("rows")) {
+            int rows = Integer.parseInt(options.get("rows"));
+            Path file = Files.createTempFile("loadtest-" + rows + "-", ".csv");
+            file.toFile().deleteOnExit();
+            new CatalogGenerator().write(file, rows);
+            System.setProperty("pf.catalog.file", file.toString());
+        }
+        System.setProperty("pf.catalog.watch", "false");
+        // Main is in the default package, which cannot be imported
+        Class.forName("Main").getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+
+        HttpClient client = HttpClient.newHttpClient();
+        long deadline = System.nanoTime() + Duration.ofMinutes(2).toNanos();
+        while (true) {
+            try {
+                HttpResponse<Void> r = client.send(HttpRequest.newBuilder(URI.create(url + "/api/cache/stats")).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                if (r.statusCode() == 200) return;
+            } catch (IOException e) {
+                // not listening yet
+            }
+            if (System.nanoTime() > deadline) throw new IllegalStateException("The server did not start");
+            Thread.sleep(200);
+        }
+    }
+}
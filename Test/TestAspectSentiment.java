@@ -0,0 +1,131 @@
+import controller.GamingRecom;
+import controller.PhotographyRecom;
+import controller.RecommendationStrategy;
+import controller.TopKSelector;
+import model.Aspect;
+import model.CatalogQuery;
+import model.PhoneCatalog;
+import model.SentimentAggregates;
+import model.phone;
+import model.user_preference;
+import org.junit.jupiter.api.Test;
+import sentiment.AspectAnalyzer;
+import sentiment.SentimentAnalyzer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link AspectAnalyzer} class and the aspect features of the catalog
+ * This class helps in validating:
+ * every clause of a review credits the aspects it names with its own score
+ * the aspect features are taken from the aggregates when a row is filled, and weighted by the rank score
+ * strategies rank the phones whose reviews praise their aspects higher
+ */
+public class TestAspectSentiment {
+
+    private final AspectAnalyzer analyzer = AspectAnalyzer.getDefault();
+
+    /**
+     * Tests the split into clauses and the reuse of the compound score of single clause reviews.
+     */
+    @Test
+    public void testAnalyze() {
+        double[] aspects = analyzer.analyze("The camera is excellent but the battery is terrible. Love the display!");
+        assertTrue(aspects[Aspect.CAMERA.ordinal()] > 0.5);
+        assertTrue(aspects[Aspect.BATTERY.ordinal()] < -0.4);
+        assertEquals(SentimentAnalyzer.getDefault().compound("Love the display"), aspects[Aspect.SCREEN.ordinal()]);
+        assertTrue(Double.isNaN(aspects[Aspect.HEATING.ordinal()]));
+
+        // a single clause gets the score of the review, a decimal point does not end a clause
+        double[] single = analyzer.analyze("Smooth 6.7 inch screen, no lag at all.", 0.25);
+        assertEquals(0.25, single[Aspect.SCREEN.ordinal()]);
+        assertEquals(0.25, single[Aspect.PERFORMANCE.ordinal()]);
+
+        assertNull(analyzer.analyze("Nice phone, would buy again"));
+        assertNull(analyzer.analyze(null));
+    }
+
+    /**
+     * Tests the aspect features of the aggregates and of the catalog rows, and the rank score.
+     */
+    @Test
+    public void testFeaturesAndRankScore() {
+        SentimentAggregates aggregates = new SentimentAggregates();
+        double[] hot = new double[Aspect.COUNT];
+        Arrays.fill(hot, Double.NaN);
+        hot[Aspect.HEATING.ordinal()] = -0.8;
+        aggregates.addAspects(1, hot);
+        aggregates.addAspects(1, hot);
+        aggregates.addAspects(1, null);
+        assertEquals(2, aggregates.aspectReviews(1, Aspect.HEATING));
+        assertEquals(-1.6 / (2 + SentimentAggregates.PRIOR_REVIEWS), aggregates.aspectFeature(1, Aspect.HEATING), 1e-9);
+        assertEquals(50 - 50 * 1.6 / 5, aggregates.aspectScore(1, Aspect.HEATING), 1e-9);
+        assertEquals(0, aggregates.aspectFeature(1, Aspect.CAMERA));
+        assertEquals(0, aggregates.reviews(1)); // aspects do not count as reviews
+
+        PhoneCatalog catalog = new PhoneCatalog();
+        catalog.rankBy(aggregates);
+        catalog.add(phone(1, 70));
+        assertEquals(-0.32f, catalog.aspect(0, Aspect.HEATING), 1e-6);
+
+        // later reviews reach the row when it is filled again
+        aggregates.addAspects(1, hot);
+        assertEquals(-0.32f, catalog.aspect(0, Aspect.HEATING), 1e-6);
+        catalog.replace(0, catalog.phoneAt(0));
+        assertEquals(-2.4f / 6, catalog.aspect(0, Aspect.HEATING), 1e-6);
+
+        float[] weights = Aspect.weights(Map.of(Aspect.HEATING, 10.0, Aspect.CAMERA, 30.0));
+        assertEquals(catalog.sentiment(0) - 4, catalog.rankScore(0, weights), 1e-5);
+        assertEquals(catalog.sentiment(0), catalog.rankScore(0, null));
+        assertEquals(catalog.sentiment(0) - 4, catalog.copy(4).rankScore(0, weights), 1e-5);
+    }
+
+    /**
+     * Tests that the gaming strategy passes a phone that overheats and the photography one picks the better camera.
+     */
+    @Test
+    public void testStrategiesWeightAspects() {
+        SentimentAggregates aggregates = new SentimentAggregates();
+        PhoneCatalog catalog = new PhoneCatalog();
+        catalog.rankBy(aggregates);
+        phone hot = phone(0, 60, "gaming", "Heating is awful, it gets too hot", "Heating is terrible while gaming",
+                "Excellent camera, superb photos", "Brilliant camera");
+        phone cool = phone(1, 58, "gaming", "Zero heating even after hours, brilliant", "Smooth performance, no lag, great");
+        phone shooter = phone(2, 58, "photography", "Stunning camera, gorgeous photos", "Amazing camera");
+        phone plain = phone(3, 60, "photography", "Good phone overall");
+        for (phone p : List.of(hot, cool, shooter, plain)) {
+            for (String review : p.getReviews()) {
+                double compound = SentimentAnalyzer.getDefault().compound(review);
+                aggregates.addAspects(p.getId(), analyzer.analyze(review, compound));
+            }
+            catalog.add(p);
+        }
+
+        user_preference gaming = new user_preference("Gaming", 100, 1000, "No Preference");
+        RecommendationStrategy gamingStrategy = new GamingRecom();
+        assertNotNull(gamingStrategy.query(catalog, gaming).getAspectWeights());
+        assertEquals(List.of(cool, hot), gamingStrategy.recommend(catalog, gaming, 2));
+
+        user_preference photography = new user_preference("Photography", 100, 1000, "No Preference");
+        assertEquals(List.of(shooter, plain), new PhotographyRecom().recommend(catalog, photography, 2));
+
+        // without weights the loaded sentiment decides
+        CatalogQuery query = gamingStrategy.query(catalog, gaming);
+        CatalogQuery plainQuery = new CatalogQuery(query.getUsage(), query.getOs(), query.getMinPrice(), query.getMaxPrice());
+        assertEquals(List.of(hot, cool), TopKSelector.select(catalog, plainQuery, 2));
+    }
+
+    private static phone phone(int id, double sentiment) {
+        return phone(id, sentiment, "gaming");
+    }
+
+    private static phone phone(int id, double sentiment, String usage, String... reviews) {
+        phone p = new phone("P" + id, "Brand", 500, "Android", usage, "", List.of(reviews), sentiment, reviews.length);
+        p.id = id;
+        return p;
+    }
+}
@@ -0,0 +1,78 @@
+import controller.BatchRecommender;
+import controller.RecommendationController;
+import controller.phone_library;
+import model.RecommendationResult;
+import model.phone;
+import model.user_preference;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link BatchRecommender} class
+ * This class helps in validating:
+ * a batch gives exactly the same main, additional and bonus lists as one controller call per preference
+ * preferences with unknown usage or OS types are answered like single requests
+ */
+public class TestBatchRecommender {
+
+    private phone_library sampleLibrary() {
+        phone_library lib = new phone_library();
+        String[] usages = {"casual", "entertainment", "gaming", "photography", "productivity"};
+        String[] os = {"Android", "iOS"};
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            lib.addphone(new phone("Phone " + i, "Brand", 100 + random.nextInt(2000),
+                    os[random.nextInt(2)], usages[random.nextInt(usages.length)], "",
+                    List.of("fine"), random.nextInt(10) * 10, 1));
+        }
+        return lib;
+    }
+
+    /**
+     * Compares a batch of random preferences against the single request path.
+     */
+    @Test
+    public void testBatchMatchesSingleRequests() {
+        phone_library lib = sampleLibrary();
+        RecommendationController controller = new RecommendationController(lib);
+        BatchRecommender batch = new BatchRecommender(lib, controller);
+
+        String[] usages = {"Casual", "Entertainment", "Gaming", "Photography", "Productivity", "Business"};
+        String[] os = {"Android", "iOS", "No Preference", "Symbian"};
+        Random random = new Random(11);
+        List<user_preference> prefs = new ArrayList<>();
+        int[] ks = new int[60];
+        for (int i = 0; i < ks.length; i++) {
+            double min = random.nextInt(1500);
+            prefs.add(new user_preference(usages[random.nextInt(usages.length)], min,
+                    min + random.nextInt(800), os[random.nextInt(os.length)]));
+            ks[i] = 1 + random.nextInt(10);
+        }
+
+        List<RecommendationResult> results = batch.recommendAll(prefs, ks);
+
+        assertEquals(prefs.size(), results.size());
+        for (int i = 0; i < prefs.size(); i++) {
+            user_preference pref = prefs.get(i);
+            assertEquals(controller.getRecommendation(pref, pref.getUsage(), ks[i]), results.get(i).getMain(), pref.toString());
+            assertEquals(controller.getAdditionalRecommendations(pref, ks[i]), results.get(i).getAdditional(), pref.toString());
+            assertEquals(controller.getBonusSuggestions(pref), results.get(i).getBonus());
+        }
+    }
+
+    /**
+     * Tests that the number of k values must match the number of preferences.
+     */
+    @Test
+    public void testKCountMismatch() {
+        phone_library lib = sampleLibrary();
+        BatchRecommender batch = new BatchRecommender(lib, new RecommendationController(lib));
+        assertThrows(IllegalArgumentException.class,
+                () -> batch.recommendAll(List.of(new user_preference("Gaming", 0, 100, "iOS")), new int[0]));
+    }
+}
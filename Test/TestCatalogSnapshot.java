@@ -0,0 +1,166 @@
+import controller.phone_library;
+import model.CatalogSnapshot;
+import model.PhoneCatalog;
+import model.phone;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link CatalogSnapshot} versions of the {@link phone_library}
+ * This class helps in validating:
+ * a snapshot taken by a reader does not change when phones are added
+ * readers always see a complete snapshot while a writer adds phones
+ * a reload keeps the phone objects and ids of unchanged rows and parses only the changed ones
+ * a reload of a broken file keeps the previous version
+ * phones are found by id, also when the ids are far apart after many reloads
+ */
+public class TestCatalogSnapshot {
+
+    private static final String HEADER = "Mobile_name,Brand,Price,OS,Usage,Reviews,Purchase_link,Sentiment_Score\n";
+
+    private static phone newPhone(String name, double price) {
+        return new phone(name, "Brand", price, "Android", "Gaming", "", List.of("good"), 80, 1);
+    }
+
+    private static String row(String name, double price) {
+        return name + ",Brand," + price + ",Android,Gaming,good||fast,link," + 80.0 + "\n";
+    }
+
+    /**
+     * Tests that adding a phone publishes a new version and leaves the old snapshot as it was.
+     */
+    @Test
+    public void testSnapshotIsStable() {
+        phone_library lib = new phone_library();
+        CatalogSnapshot before = lib.getSnapshot();
+        int size = before.size();
+
+        phone added = newPhone("Snapshot Phone", 1234);
+        lib.addphone(added);
+
+        assertEquals(size, before.size());
+        assertEquals(size, before.getPhones().size());
+        assertNull(before.getPhone(added.getId()));
+        assertEquals(before.getVersion() + 1, lib.getVersion());
+        assertSame(added, lib.getSnapshot().getPhone(added.getId()));
+        assertThrows(UnsupportedOperationException.class, () -> lib.getallphones().add(added));
+    }
+
+    /**
+     * Tests that readers running next to a writer always see a snapshot whose list, catalog and
+     * version agree with each other.
+     */
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        phone_library lib = new phone_library();
+        long firstVersion = lib.getVersion();
+        int firstSize = lib.getSnapshot().size();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                while (!done.get()) {
+                    CatalogSnapshot s = lib.getSnapshot();
+                    int expected = firstSize + (int) (s.getVersion() - firstVersion);
+                    if (s.size() != expected || s.getPhones().size() != expected
+                            || s.getCatalog().phoneAt(expected - 1) != s.getPhones().get(expected - 1)) {
+                        failure.set("inconsistent snapshot at version " + s.getVersion());
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        for (int i = 0; i < 500; i++) lib.addphone(newPhone("Added " + i, 1000 + i));
+        done.set(true);
+        for (Thread reader : readers) reader.join();
+
+        assertNull(failure.get());
+        assertEquals(firstSize + 500, lib.getSnapshot().size());
+    }
+
+    /**
+     * Tests that a reload reuses the phones of unchanged rows and only creates the changed one.
+     */
+    @Test
+    public void testReloadReusesUnchangedRows() throws Exception {
+        Path file = Files.createTempFile("catalog", ".csv");
+        try {
+            Files.writeString(file, HEADER + row("One", 100) + row("Two", 200) + row("Three", 300),
+                    StandardCharsets.UTF_8);
+            phone_library lib = new phone_library();
+            assertEquals(0, lib.reload(file.toString()));
+            CatalogSnapshot first = lib.getSnapshot();
+            assertEquals(3, first.size());
+
+            Files.writeString(file, HEADER + row("Zero", 50) + row("One", 100) + row("Two", 250) + row("Three", 300),
+                    StandardCharsets.UTF_8);
+            assertEquals(2, lib.reload(file.toString()));
+            CatalogSnapshot second = lib.getSnapshot();
+
+            assertEquals(first.getVersion() + 1, second.getVersion());
+            assertEquals(4, second.size());
+            assertSame(first.getPhones().get(0), second.getPhones().get(1)); // One, moved down a row
+            assertSame(first.getPhones().get(2), second.getPhones().get(3)); // Three
+            assertNotSame(first.getPhones().get(1), second.getPhones().get(2)); // Two, new price
+            assertEquals(250, second.getPhones().get(2).getPrice());
+
+            phone one = second.getPhones().get(1);
+            assertSame(one, second.getPhone(one.getId()));
+            assertNull(second.getPhone(first.getPhones().get(1).getId())); // the old Two is gone
+            assertTrue(new String(one.toJsonBytes(), StandardCharsets.UTF_8).contains("\"id\":" + one.getId()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Tests that a file that cannot be parsed leaves the current version in place.
+     */
+    @Test
+    public void testBrokenReloadKeepsVersion() throws Exception {
+        Path file = Files.createTempFile("catalog", ".csv");
+        try {
+            Files.writeString(file, HEADER + row("One", 100), StandardCharsets.UTF_8);
+            phone_library lib = new phone_library();
+            lib.reload(file.toString());
+            CatalogSnapshot good = lib.getSnapshot();
+
+            Files.writeString(file, HEADER + "One,Brand,\"100", StandardCharsets.UTF_8); // unclosed quote
+            assertEquals(-1, lib.reload(file.toString()));
+            assertSame(good, lib.getSnapshot());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Tests the id lookup with sparse ids, as left behind by many reloads of changed rows.
+     */
+    @Test
+    public void testLookupBySparseIds() {
+        List<phone> phones = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            phone p = new phone("P" + i, "Brand", 100 + i, "Android", "Gaming", "", List.of(), 0.5, 0);
+            p.id = i * 4099 + 7;
+            phones.add(p);
+        }
+        CatalogSnapshot snapshot = new CatalogSnapshot(1, PhoneCatalog.of(phones));
+        for (phone p : phones) assertSame(p, snapshot.getPhone(p.getId()));
+        assertNull(snapshot.getPhone(8));
+        assertNull(snapshot.getPhone(-1));
+        assertNull(snapshot.getPhone(Integer.MAX_VALUE));
+        assertNull(CatalogSnapshot.EMPTY.getPhone(0));
+    }
+}
@@ -0,0 +1,195 @@
+import controller.phone_library;
+import model.Aspect;
+import model.ReviewIndex;
+import model.phone;
+import model.store;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import storage.CatalogStore;
+import storage.SegmentLog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link CatalogStore} and {@link SegmentLog} classes
+ * This class helps in validating:
+ * records are read back in order, from any position, and a torn end of the log is cut on open
+ * added phones, stores and reviews survive a restart of the library, with their sentiment aggregates
+ * snapshots compact the log, and an unreadable snapshot falls back to the previous one
+ * the aspect scores of the reviews are kept
+ */
+public class TestCatalogStore {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Tests appending, rolling and replaying records of the segment log.
+     */
+    @Test
+    public void testSegmentLog() throws IOException {
+        long middle;
+        try (SegmentLog log = new SegmentLog(dir, 64)) {
+            for (int i = 0; i < 10; i++) log.append(List.of(("record " + i).getBytes(StandardCharsets.UTF_8)), false);
+            middle = log.position();
+            log.append(List.of("a".getBytes(StandardCharsets.UTF_8), "b".getBytes(StandardCharsets.UTF_8)), true);
+            assertTrue(log.segmentCount() > 1);
+        }
+        try (SegmentLog log = new SegmentLog(dir, 64)) {
+            List<String> all = new ArrayList<>();
+            assertEquals(12, log.replay(0, r -> all.add(new String(r, StandardCharsets.UTF_8))));
+            assertEquals("record 0", all.get(0));
+            assertEquals("b", all.get(11));
+
+            List<String> tail = new ArrayList<>();
+            log.replay(middle, r -> tail.add(new String(r, StandardCharsets.UTF_8)));
+            assertEquals(List.of("a", "b"), tail);
+
+            int segments = log.segmentCount();
+            assertTrue(log.deleteBefore(middle) > 0);
+            assertTrue(log.segmentCount() < segments);
+            assertTrue(log.start() > 0);
+        }
+    }
+
+    /**
+     * Tests that a record cut by a crash is dropped when the log is opened, and the log goes on after it.
+     */
+    @Test
+    public void testTornTailIsCut() throws IOException {
+        long end;
+        try (SegmentLog log = new SegmentLog(dir, SegmentLog.DEFAULT_SEGMENT_BYTES)) {
+            log.append(List.of("one".getBytes(StandardCharsets.UTF_8), "two".getBytes(StandardCharsets.UTF_8)), false);
+            end = log.position();
+        }
+        Path segment = segments().get(0);
+        Files.write(segment, new byte[]{0, 0, 0, 50, 1, 2, 3, 4, 'x'}, StandardOpenOption.APPEND);
+
+        try (SegmentLog log = new SegmentLog(dir, SegmentLog.DEFAULT_SEGMENT_BYTES)) {
+            assertEquals(end, log.position());
+            log.append(List.of("three".getBytes(StandardCharsets.UTF_8)), false);
+            List<String> all = new ArrayList<>();
+            log.replay(0, r -> all.add(new String(r, StandardCharsets.UTF_8)));
+            assertEquals(List.of("one", "two", "three"), all);
+        }
+    }
+
+    /**
+     * Tests that a library kept in a store comes back with its added phone, store and reviews.
+     */
+    @Test
+    public void testLibrarySurvivesRestart() throws IOException {
+        phone added;
+        int reviewsBefore;
+        long version;
+        double score;
+        double camera;
+        try (CatalogStore catalogStore = new CatalogStore(dir, 1 << 20, 1L << 30)) {
+            phone_library library = new phone_library(catalogStore, null);
+            added = new phone("Store Test Phone", "Brand", 30000, "Android", "gaming", "https://x",
+                    List.of("Great battery"), 80, 1);
+            library.addphone(added);
+            store shop = new store("Shop");
+            library.addstore(shop);
+            shop.addPhone(added);
+            shop.addPhone(library.getallphones().get(0));
+
+            phone first = library.getallphones().get(0);
+            reviewsBefore = first.getReviews().size();
+            assertEquals(3, library.appendReviews(new int[]{first.getId(), first.getId(), added.getId()},
+                    List.of("Awful, it overheats", "Terrible camera", "Superb phone"), false));
+            score = library.getSentimentAggregates().score(first.getId());
+            camera = library.getSentimentAggregates().aspectScore(first.getId(), Aspect.CAMERA);
+            version = library.getVersion();
+        }
+
+        try (CatalogStore catalogStore = new CatalogStore(dir, 1 << 20, 1L << 30)) {
+            phone_library library = new phone_library(catalogStore, null);
+            assertEquals(1001, library.getallphones().size());
+            assertTrue(library.getVersion() > version);
+
+            phone first = library.getallphones().get(0);
+            assertEquals(reviewsBefore + 2, first.getReviews().size());
+            assertEquals("Terrible camera", first.getReviews().get(reviewsBefore + 1));
+            assertEquals(score, library.getSentimentAggregates().score(first.getId()), 1e-9);
+            assertEquals(camera, library.getSentimentAggregates().aspectScore(first.getId(), Aspect.CAMERA), 1e-9);
+            assertEquals((float) library.getSentimentAggregates().aspectFeature(first.getId(), Aspect.CAMERA),
+                    library.getCatalog().aspect(0, Aspect.CAMERA));
+
+            phone restored = library.getPhone(added.getId());
+            assertEquals("Store Test Phone", restored.getName());
+            assertEquals(List.of("Great battery", "Superb phone"), restored.getReviews());
+            assertEquals(2, restored.getTotalReviews());
+            assertEquals("Shop", library.getStoreForPhone(restored).get(0).getName());
+            assertEquals(2, library.getStoreForPhone(restored).get(0).getPhones().size());
+
+            // the review index and the JSON forms are built on first use, with the recovered reviews and ids
+            ReviewIndex.Hits hits = library.getSnapshot().getReviewIndex().search("superb phone");
+            assertTrue(hits.scoreOf(restored.getId()) > 0);
+            assertTrue(new String(restored.toJsonBytes(), StandardCharsets.UTF_8).contains("\"id\":" + restored.getId()));
+
+            phone next = new phone("Next", "Brand", 100, "Android", "casual", "", List.of(), 50, 0);
+            library.addphone(next);
+            assertTrue(next.getId() > added.getId());
+        }
+    }
+
+    /**
+     * Tests that snapshots keep the log short and that the previous snapshot is used when the newest
+     * one cannot be read.
+     */
+    @Test
+    public void testSnapshotsCompactTheLog() throws IOException {
+        int id;
+        long reviews;
+        try (CatalogStore catalogStore = new CatalogStore(dir, 16 << 10, 64 << 10)) {
+            phone_library library = new phone_library(catalogStore, null);
+            id = library.getallphones().get(5).getId();
+            for (int batch = 0; batch < 50; batch++) {
+                int[] ids = new int[100];
+                List<String> texts = new ArrayList<>();
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = id;
+                    texts.add("Review " + batch + "-" + i + " of a fairly good phone with a long text");
+                }
+                library.appendReviews(ids, texts, false);
+            }
+            assertTrue(catalogStore.bytesSinceSnapshot() < 64 << 10);
+            reviews = library.getSentimentAggregates().reviews(id);
+        }
+        assertTrue(snapshots().size() <= 2);
+        assertTrue(segments().size() < 20, segments().size() + " segments left");
+
+        // damage the newest snapshot: the previous one and the log since it still hold everything
+        List<Path> snapshots = snapshots();
+        Files.write(snapshots.get(snapshots.size() - 1), new byte[]{1, 2, 3}, StandardOpenOption.TRUNCATE_EXISTING);
+        try (CatalogStore catalogStore = new CatalogStore(dir, 16 << 10, 64 << 10)) {
+            phone_library library = new phone_library(catalogStore, null);
+            assertEquals(reviews, library.getSentimentAggregates().reviews(id));
+            assertTrue(library.getPhone(id).getReviews().contains("Review 49-99 of a fairly good phone with a long text"));
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        return files(".log");
+    }
+
+    private List<Path> snapshots() throws IOException {
+        return files(".bin");
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+}
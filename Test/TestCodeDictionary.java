@@ -0,0 +1,82 @@
+import controller.TopKSelector;
+import model.CodeDictionary;
+import model.PhoneCatalog;
+import model.phone;
+import model.user_preference;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link CodeDictionary} class
+ * This class helps in validating:
+ * values are normalized (trimmed, any case) to one code
+ * preferences map "No Preference" to ANY and unknown values to UNKNOWN without growing the dictionary
+ * a usage type seen for the first time in a phone is added and can then be filtered on
+ * concurrent interning of the same value gives one code
+ */
+public class TestCodeDictionary {
+
+    /**
+     * Tests normalization and the codes of the known values.
+     */
+    @Test
+    public void testNormalize() {
+        CodeDictionary dict = new CodeDictionary("android", "ios");
+        assertEquals(0, dict.find(" ANDROID "));
+        assertEquals(1, dict.intern("iOS"));
+        assertEquals("ios", dict.nameOf(1));
+        assertEquals(CodeDictionary.ANY, dict.preference("No Preference"));
+        assertEquals(CodeDictionary.ANY, dict.preference("  "));
+        assertEquals(CodeDictionary.UNKNOWN, dict.preference("Symbian"));
+        assertEquals(2, dict.size());
+    }
+
+    /**
+     * Tests that a new usage type grows the dictionary and a later preference finds it.
+     */
+    @Test
+    public void testGrowsWithNewValues() {
+        user_preference pref = new user_preference("Foldable Test Usage", 0, 5000, "No Preference");
+        assertEquals(CodeDictionary.UNKNOWN, pref.getUsageCode());
+
+        phone p = new phone("Fold", "Brand", 1500, "Android", "foldable test usage", "", List.of("ok"), 70, 1);
+        assertTrue(p.getUsageCode() >= 5);
+        assertEquals(p.getUsageCode(), pref.getUsageCode());
+
+        PhoneCatalog catalog = PhoneCatalog.of(List.of(p));
+        assertEquals(List.of(p), TopKSelector.select(catalog, pref.getUsageCode(), pref.getOsCode(), 0, 5000, 3));
+    }
+
+    /**
+     * Tests that threads interning the same new value all get the same code.
+     */
+    @Test
+    public void testConcurrentIntern() throws Exception {
+        CodeDictionary dict = new CodeDictionary();
+        Set<Integer> codes = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 200; i++) codes.add(dict.intern("value " + (i % 50)) * 1000 + i % 50);
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread t : threads) t.join();
+
+        assertEquals(50, dict.size());
+        assertEquals(50, codes.size());
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+import server.ConditionalGet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link ConditionalGet} class
+ * This class helps in validating:
+ * the ETag changes with the catalog version and with the request, and only then
+ * If-None-Match lists, weak tags and "*" are matched
+ * the Cache-Control header follows the configured max-age
+ */
+public class TestConditionalGet {
+
+    /**
+     * Tests that the ETag only depends on the version and the normalized request.
+     */
+    @Test
+    public void testEtag() {
+        ConditionalGet conditional = new ConditionalGet(0);
+        String tag = conditional.etag(3, "gaming|10000.0-40000.0|android|k=3|reviews=0");
+        assertEquals(tag, conditional.etag(3, "gaming|10000.0-40000.0|android|k=3|reviews=0"));
+        assertNotEquals(tag, conditional.etag(4, "gaming|10000.0-40000.0|android|k=3|reviews=0"));
+        assertNotEquals(tag, conditional.etag(3, "gaming|10000.0-40000.0|ios|k=3|reviews=0"));
+        assertNotEquals(tag, conditional.etag(3, "gaming|10000.0-40000.0|android|k=3|reviews=1"));
+        assertTrue(tag.startsWith("\"") && tag.endsWith("\""));
+    }
+
+    /**
+     * Tests the If-None-Match forms.
+     */
+    @Test
+    public void testMatches() {
+        String tag = new ConditionalGet(0).etag(1, "casual");
+        assertTrue(ConditionalGet.matches(tag, tag));
+        assertTrue(ConditionalGet.matches("\"other\", " + tag, tag));
+        assertTrue(ConditionalGet.matches("W/" + tag, tag));
+        assertTrue(ConditionalGet.matches("*", tag));
+        assertFalse(ConditionalGet.matches(null, tag));
+        assertFalse(ConditionalGet.matches("", tag));
+        assertFalse(ConditionalGet.matches("\"other\"", tag));
+    }
+
+    /**
+     * Tests the Cache-Control values.
+     */
+    @Test
+    public void testCacheControl() {
+        assertEquals("public, no-cache", new ConditionalGet(0).getCacheControl());
+        assertEquals("public, max-age=60, must-revalidate", new ConditionalGet(60).getCacheControl());
+        assertThrows(IllegalArgumentException.class, () -> new ConditionalGet(-1));
+    }
+}
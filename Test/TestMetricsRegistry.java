@@ -0,0 +1,118 @@
+import controller.RecommendationController;
+import controller.phone_library;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.CatalogSnapshot;
+import model.user_preference;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link MetricsRegistry} class
+ * This class helps in validating:
+ * counters and gauges are written in the Prometheus text format with their labels
+ * histograms write cumulative buckets, the sum and the count
+ * a metric name can only be registered once
+ * counting from many threads loses no updates
+ * the controller records the strategy time by usage type
+ */
+public class TestMetricsRegistry {
+
+    /**
+     * Tests the text format of a labeled counter and a gauge.
+     */
+    @Test
+    public void testCounterAndGauge() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter requests = registry.counter("test_requests_total", "Requests", "route", "status");
+        requests.labels("recommendations", "200").inc();
+        requests.labels("recommendations", "200").add(2);
+        requests.labels("reviews", "404").inc();
+        registry.gauge("test_size", "Size", () -> 42);
+
+        String text = registry.scrape();
+        assertTrue(text.contains("# TYPE test_requests_total counter\n"));
+        assertTrue(text.contains("test_requests_total{route=\"recommendations\",status=\"200\"} 3\n"));
+        assertTrue(text.contains("test_requests_total{route=\"reviews\",status=\"404\"} 1\n"));
+        assertTrue(text.contains("# TYPE test_size gauge\ntest_size 42\n"));
+        assertTrue(text.indexOf("test_requests_total") < text.indexOf("test_size")); // sorted by name
+    }
+
+    /**
+     * Tests that the histogram buckets are cumulative and the sum and count match the values.
+     */
+    @Test
+    public void testHistogram() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram sizes = registry.histogram("test_sizes", "Sizes", new double[]{1, 5, 10});
+        for (double v : new double[]{0, 1, 3, 7, 50}) sizes.observe(v);
+
+        String text = registry.scrape();
+        assertTrue(text.contains("test_sizes_bucket{le=\"1\"} 2\n"));
+        assertTrue(text.contains("test_sizes_bucket{le=\"5\"} 3\n"));
+        assertTrue(text.contains("test_sizes_bucket{le=\"10\"} 4\n"));
+        assertTrue(text.contains("test_sizes_bucket{le=\"+Inf\"} 5\n"));
+        assertTrue(text.contains("test_sizes_sum 61\n"));
+        assertTrue(text.contains("test_sizes_count 5\n"));
+    }
+
+    /**
+     * Tests that names are unique and label counts are checked.
+     */
+    @Test
+    public void testInvalidUse() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter c = registry.counter("test_total", "Test", "route");
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("test_total", "Again"));
+        assertThrows(IllegalArgumentException.class, () -> c.labels("a", "b"));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("bad name", "Test"));
+    }
+
+    /**
+     * Tests that concurrent increments and observations are all counted.
+     */
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("test_hits_total", "Hits", "usage");
+        Histogram latency = registry.histogram("test_latency_seconds", "Latency", Histogram.LATENCY_BUCKETS);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    counter.labels(i % 2 == 0 ? "gaming" : "casual").inc();
+                    latency.observeNanos(1_000);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(40_000, counter.labels("gaming").get());
+        assertEquals(40_000, counter.labels("casual").get());
+        assertEquals(80_000, latency.labels().count());
+    }
+
+    /**
+     * Tests that a recommendation records the strategy time of its usage type and the result sizes.
+     */
+    @Test
+    public void testControllerRecordsStrategyTime() {
+        phone_library lib = new phone_library();
+        RecommendationController controller = new RecommendationController(lib);
+        CatalogSnapshot snapshot = lib.getSnapshot();
+        controller.recommend(snapshot, new user_preference("Photography", 10000, 50000, "No Preference"), "Photography", 3);
+
+        String text = MetricsRegistry.getDefault().scrape();
+        assertTrue(text.contains("pf_strategy_duration_seconds_count{usage=\"photography\"}"));
+        assertTrue(text.contains("pf_result_size_count{list=\"main\"}"));
+        assertTrue(text.contains("pf_additional_duration_seconds_count"));
+    }
+}
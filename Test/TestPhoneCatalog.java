@@ -0,0 +1,165 @@
+import model.Aspect;
+import model.PhoneCatalog;
+import model.SentimentAggregates;
+import model.phone;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link PhoneCatalog} class
+ * This class helps in validating:
+ * the columns hold the same values as the phone objects
+ * usage and OS codes are case insensitive
+ * the allocation free scans return the right rows
+ */
+public class TestPhoneCatalog {
+
+    private List<phone> samplePhones() {
+        phone p1 = new phone("iPhone 14","Apple",1200,"iOS","casual","https://buy.com/iphone14",List.of("premium"),90,200);
+        phone p2 = new phone("Galaxy S23","Samsung",999,"Android","Gaming","https://buy.com/galaxys23",List.of("high-end"),88,300);
+        phone p3 = new phone("Pixel 8","Google",799,"android","casual","https://buy.com/pixel8",List.of("smooth"),80,400);
+        return List.of(p1, p2, p3);
+    }
+
+    /**
+     * Tests that every column returns the value of the phone it was built from.
+     */
+    @Test
+    public void testColumnsMatchPhones() {
+        List<phone> phones = samplePhones();
+        PhoneCatalog catalog = PhoneCatalog.of(phones);
+
+        assertEquals(3, catalog.size());
+        for (int i = 0; i < phones.size(); i++) {
+            assertSame(phones.get(i), catalog.phoneAt(i));
+            assertEquals(phones.get(i).getPrice(), catalog.price(i));
+            assertEquals(phones.get(i).getSentiment(), catalog.sentiment(i));
+            assertEquals(phones.get(i).getTotalReviews(), catalog.reviewCount(i));
+        }
+        assertEquals(phones, catalog.toList());
+    }
+
+    /**
+     * Tests that codes ignore case, "No Preference" matches any OS
+     * and values no phone has never match.
+     */
+    @Test
+    public void testCodes() {
+        PhoneCatalog catalog = PhoneCatalog.of(samplePhones());
+
+        assertEquals(catalog.os(1), catalog.os(2));
+        assertEquals(catalog.osCode("ANDROID"), catalog.os(1));
+        assertEquals(catalog.usageCode("gaming"), catalog.usage(1));
+        assertEquals(PhoneCatalog.ANY, catalog.osCode("No Preference"));
+        assertEquals(PhoneCatalog.NO_MATCH, catalog.osCode("Symbian"));
+        assertEquals(PhoneCatalog.NO_MATCH, catalog.usageCode("business"));
+    }
+
+    /**
+     * Tests walking all matches of a usage, OS and price filter.
+     */
+    @Test
+    public void testNextMatch() {
+        PhoneCatalog catalog = PhoneCatalog.of(samplePhones());
+        int casual = catalog.usageCode("casual");
+
+        assertEquals(0, catalog.nextMatch(0, casual, PhoneCatalog.ANY, 0, 2000));
+        assertEquals(2, catalog.nextMatch(1, casual, PhoneCatalog.ANY, 0, 2000));
+        assertEquals(-1, catalog.nextMatch(3, casual, PhoneCatalog.ANY, 0, 2000));
+        assertEquals(2, catalog.nextMatch(0, casual, catalog.osCode("Android"), 0, 2000));
+        assertEquals(-1, catalog.nextMatch(0, casual, catalog.osCode("iOS"), 0, 1000));
+        assertEquals(-1, catalog.nextMatch(0, PhoneCatalog.NO_MATCH, PhoneCatalog.ANY, 0, 2000));
+    }
+
+    /**
+     * Tests the price band scan used for premium suggestions, where the lower bound is excluded.
+     */
+    @Test
+    public void testNextAbove() {
+        PhoneCatalog catalog = PhoneCatalog.of(samplePhones());
+
+        assertEquals(1, catalog.nextAbove(0, 799, 1000));
+        assertEquals(-1, catalog.nextAbove(2, 799, 1000));
+    }
+
+    /**
+     * Tests that appending past the initial capacity keeps all rows.
+     */
+    @Test
+    public void testGrow() {
+        PhoneCatalog catalog = new PhoneCatalog(1);
+        for (int i = 0; i < 50; i++) {
+            catalog.add(new phone("P" + i, "Brand", i, "Android", "casual", "", List.of(), i, 0));
+        }
+        assertEquals(50, catalog.size());
+        assertEquals(49.0, catalog.price(49));
+        assertEquals("P49", catalog.phoneAt(49).getName());
+    }
+
+    /**
+     * Tests that the order of a usage and OS group holds the rows of the group in rank order, and that a
+     * seek in it lands after the given key.
+     */
+    @Test
+    public void testGroupOrder() {
+        PhoneCatalog catalog = PhoneCatalog.of(samplePhones());
+        int casual = catalog.usageCode("casual");
+
+        assertArrayEquals(new int[]{0, 1, 2}, catalog.sentimentOrder());
+        assertArrayEquals(new int[]{0, 2}, catalog.rankOrder(null, casual, PhoneCatalog.ANY));
+        assertArrayEquals(new int[]{2}, catalog.rankOrder(null, casual, catalog.osCode("Android")));
+        assertEquals(0, catalog.rankOrder(null, PhoneCatalog.NO_MATCH, PhoneCatalog.ANY).length);
+        assertEquals(1, catalog.seekAfter(null, casual, PhoneCatalog.ANY, 85, 0));
+        assertEquals(2, catalog.seekAfter(null, casual, PhoneCatalog.ANY, 80, catalog.phoneId(2)));
+    }
+
+    /**
+     * Tests that a copy in which some phones were rescored ranks them where a catalog sorted from scratch
+     * does, and that the catalog it was copied from keeps its scores and orders.
+     */
+    @Test
+    public void testCopyMovesRescoredRows() {
+        SentimentAggregates aggregates = new SentimentAggregates();
+        List<phone> phones = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            phone p = new phone("P" + i, "Brand", i, i % 3 == 0 ? "iOS" : "Android", "casual", "", List.of(), 50, 0);
+            p.id = i;
+            phones.add(p);
+            aggregates.add(i, (i % 7) / 10.0); // many phones share a score
+        }
+        PhoneCatalog catalog = PhoneCatalog.of(phones);
+        catalog.rankBy(aggregates);
+        float[] weights = Aspect.weights(Map.of(Aspect.CAMERA, 20.0));
+        int[] byScore = catalog.sentimentOrder().clone();
+        int[] byCamera = catalog.rankOrder(weights).clone();
+        int ios = catalog.osCode("iOS");
+        catalog.rankOrder(weights, PhoneCatalog.ANY, ios);
+
+        PhoneCatalog next = catalog.copy(catalog.size());
+        double[] camera = new double[Aspect.COUNT];
+        Arrays.fill(camera, Double.NaN);
+        camera[Aspect.CAMERA.ordinal()] = 0.9;
+        for (int i = 5; i < 3000; i += 97) {
+            aggregates.add(i, i % 2 == 0 ? 1 : -1);
+            aggregates.addAspects(i, camera);
+            assertTrue(next.rescore(i));
+        }
+        PhoneCatalog sorted = PhoneCatalog.of(phones);
+        sorted.rankBy(aggregates);
+        assertArrayEquals(sorted.sentimentOrder(), next.sentimentOrder());
+        assertArrayEquals(sorted.rankOrder(weights), next.rankOrder(weights));
+        assertArrayEquals(sorted.rankOrder(weights, PhoneCatalog.ANY, ios), next.rankOrder(weights, PhoneCatalog.ANY, ios));
+
+        assertArrayEquals(byScore, catalog.sentimentOrder());
+        assertArrayEquals(byCamera, catalog.rankOrder(weights));
+        assertEquals(0, catalog.aspect(5, Aspect.CAMERA));
+        assertNotEquals(catalog.sentiment(5), next.sentiment(5));
+        assertEquals(catalog.sentiment(6), next.sentiment(6));
+    }
+}
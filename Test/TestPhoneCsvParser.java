@@ -0,0 +1,135 @@
+import controller.PhoneCsvParser;
+import controller.phone_library;
+import model.ReviewStore;
+import model.phone;
+import org.junit.jupiter.api.Test;
+import sentiment.SentimentScorer;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link PhoneCsvParser} class
+ * This class helps in validating:
+ * the bundled dataset gives exactly the same phones as the OpenCSV loader
+ * quoted fields, doubled quotes, line breaks in quotes, CRLF rows and reordered columns
+ * prices are parsed to the same double as Double.parseDouble
+ * malformed files are reported
+ */
+public class TestPhoneCsvParser {
+
+    private List<phone> parse(String csv, int bufferSize) throws Exception {
+        List<phone> phones = new ArrayList<>();
+        PhoneCsvParser parser = new PhoneCsvParser(new ReviewStore(), bufferSize);
+        parser.parse(Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))), phones::add);
+        return phones;
+    }
+
+    /**
+     * Compares every phone of the bundled dataset with the one loaded through OpenCSV.
+     * The library scores the reviews of what it loads, so the parsed phones are scored the same way.
+     */
+    @Test
+    public void testSameAsOpenCsv() throws Exception {
+        List<phone> expected = new phone_library().getallphones();
+        List<phone> actual = new ArrayList<>();
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(phone_library.DATASET)) {
+            new PhoneCsvParser(new ReviewStore()).parse(Channels.newChannel(is), actual::add);
+        }
+        if (!System.getProperty("pf.sentiment", "lexicon").equalsIgnoreCase("csv")) {
+            SentimentScorer.Stats stats = SentimentScorer.getDefault().scoreAll(actual);
+            for (int i = 0; i < actual.size(); i++) actual.get(i).sentiment = stats.getScore(i);
+        }
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            phone e = expected.get(i);
+            phone a = actual.get(i);
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getBrand(), a.getBrand());
+            assertEquals(e.getPrice(), a.getPrice());
+            assertEquals(e.getOs(), a.getOs());
+            assertEquals(e.getUsage(), a.getUsage());
+            assertEquals(e.getPurchaseLink(), a.getPurchaseLink());
+            assertEquals(e.getSentiment(), a.getSentiment());
+            assertEquals(e.getTotalReviews(), a.getTotalReviews());
+            assertEquals(e.getReviews(), a.getReviews());
+        }
+    }
+
+    /**
+     * Tests quoting rules and rows that cross the buffer boundary of a tiny buffer.
+     */
+    @Test
+    public void testQuotingAndLineEndings() throws Exception {
+        String csv = "\uFEFFBrand,Mobile_name,Price,OS,Usage,Reviews,Purchase_link,Sentiment_Score,Extra\r\n"
+                + "Google,\"Pixel, 8\",699.5,Android,casual,\"Says \"\"wow\"\"||Line\nbreak\",https://x,80,ignored\r\n"
+                + "\r\n"
+                + "Apple,iPhone 15,\"1299\",iOS,photography,Only one,,90.0,";
+
+        List<phone> phones = parse(csv, 16);
+
+        assertEquals(2, phones.size());
+        phone pixel = phones.get(0);
+        assertEquals("Pixel, 8", pixel.getName());
+        assertEquals("Google", pixel.getBrand());
+        assertEquals(699.5, pixel.getPrice());
+        assertEquals(List.of("Says \"wow\"", "Line\nbreak"), pixel.getReviews());
+        assertEquals(2, pixel.getTotalReviews());
+        assertEquals("https://x", pixel.getPurchaseLink());
+
+        phone iphone = phones.get(1);
+        assertEquals(1299, iphone.getPrice());
+        assertEquals("", iphone.getPurchaseLink());
+        assertEquals(90, iphone.getSentiment());
+        assertEquals(List.of("Only one"), iphone.getReviews());
+    }
+
+    /**
+     * Tests that the byte level number parsing matches Double.parseDouble.
+     */
+    @Test
+    public void testNumbersMatchParseDouble() throws Exception {
+        Random random = new Random(3);
+        StringBuilder csv = new StringBuilder("Mobile_name,Brand,Price,OS,Usage,Reviews,Purchase_link,Sentiment_Score\n");
+        List<String> prices = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String price = switch (i % 5) {
+                case 0 -> String.valueOf(random.nextInt(200000));
+                case 1 -> String.format("%.2f", random.nextDouble() * 100000);
+                case 2 -> String.valueOf(random.nextDouble() * 1e6);
+                case 3 -> "-0.0" + random.nextInt(1000);
+                default -> "1.5E" + random.nextInt(5);
+            };
+            prices.add(price);
+            csv.append("P,B,").append(price).append(",Android,casual,r,l,").append(i % 11 * 10).append('\n');
+        }
+
+        List<phone> phones = parse(csv.toString(), PhoneCsvParser.DEFAULT_BUFFER_SIZE);
+
+        for (int i = 0; i < prices.size(); i++) {
+            assertEquals(Double.parseDouble(prices.get(i)), phones.get(i).getPrice(), prices.get(i));
+            assertEquals(i % 11 * 10, phones.get(i).getSentiment());
+        }
+    }
+
+    /**
+     * Tests that a missing column, a short row and a bad number are reported.
+     */
+    @Test
+    public void testMalformed() {
+        assertThrows(IllegalArgumentException.class,
+                () -> parse("Mobile_name,Brand,Price\nA,B,1\n", 64));
+        String header = "Mobile_name,Brand,Price,OS,Usage,Reviews,Purchase_link,Sentiment_Score\n";
+        assertThrows(IllegalArgumentException.class, () -> parse(header + "A,B,1,Android\n", 64));
+        assertThrows(IllegalArgumentException.class, () -> parse(header + "A,B,cheap,Android,casual,r,l,10\n", 64));
+        assertThrows(IllegalArgumentException.class, () -> parse(header + "\"A,B,1,Android,casual,r,l,10\n", 64));
+    }
+}
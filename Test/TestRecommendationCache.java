@@ -0,0 +1,143 @@
+import controller.RecommendationCache;
+import model.RecommendationResult;
+import model.user_preference;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link RecommendationCache} class
+ * This class helps in validating:
+ * key normalization of usage, OS and budgets
+ * hits, misses and least recently used eviction
+ * invalidation when the library version changes and expiry after the time to live
+ */
+public class TestRecommendationCache {
+
+    private RecommendationResult result(String bonus) {
+        return new RecommendationResult(List.of(), List.of(), List.of(bonus));
+    }
+
+    /**
+     * Tests that the OS case, blank OS and budgets inside one step give the same key, and that the budgets
+     * are narrowed to the step, never widened past the budget asked for.
+     */
+    @Test
+    public void testKeyNormalization() {
+        RecommendationCache cache = new RecommendationCache(10, 0, 1000);
+        RecommendationCache.Key a = cache.keyOf(new user_preference("Gaming", 10_200, 49_100, "ANDROID"), 3);
+        RecommendationCache.Key b = cache.keyOf(new user_preference("gaming", 10_900, 49_900, " android "), 3);
+        assertEquals(a, b);
+        assertEquals(11_000, a.getMinBudget());
+        assertEquals(49_000, a.getMaxBudget());
+
+        RecommendationCache.Key narrow = cache.keyOf(new user_preference("Gaming", 41_100, 41_900, "Android"), 3);
+        assertEquals(41_100, narrow.getMinBudget());
+        assertEquals(41_900, narrow.getMaxBudget());
+
+        RecommendationCache.Key any = cache.keyOf(new user_preference("Gaming", 0, 1000, ""), 3);
+        assertEquals("no preference", any.getOs());
+        assertNotEquals(a, cache.keyOf(new user_preference("Gaming", 10_200, 49_100, "Android"), 10));
+    }
+
+    /**
+     * Tests that a second lookup is a hit and the loader only runs once.
+     */
+    @Test
+    public void testHitAndMiss() {
+        RecommendationCache cache = new RecommendationCache(10, 0, 1);
+        AtomicInteger loads = new AtomicInteger();
+        RecommendationCache.Key key = cache.keyOf(new user_preference("Casual", 0, 500, "iOS"), 3);
+
+        RecommendationResult first = cache.get(key, 1, () -> { loads.incrementAndGet(); return result("a"); });
+        RecommendationResult second = cache.get(key, 1, () -> { loads.incrementAndGet(); return result("b"); });
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1L, cache.stats().get("hits"));
+        assertEquals(1L, cache.stats().get("misses"));
+    }
+
+    /**
+     * Tests that the least recently used entry is evicted when the cache is full.
+     */
+    @Test
+    public void testLruEviction() {
+        RecommendationCache cache = new RecommendationCache(2, 0, 1);
+        RecommendationCache.Key k1 = cache.keyOf(new user_preference("Casual", 0, 100, "iOS"), 3);
+        RecommendationCache.Key k2 = cache.keyOf(new user_preference("Casual", 0, 200, "iOS"), 3);
+        RecommendationCache.Key k3 = cache.keyOf(new user_preference("Casual", 0, 300, "iOS"), 3);
+
+        cache.get(k1, 1, () -> result("1"));
+        cache.get(k2, 1, () -> result("2"));
+        cache.get(k1, 1, () -> result("1"));   // k1 is now the most recently used
+        cache.get(k3, 1, () -> result("3"));   // evicts k2
+
+        assertEquals(2, cache.size());
+        assertEquals(1L, cache.stats().get("evictions"));
+        assertEquals("1", cache.get(k1, 1, () -> result("x")).getBonus().get(0));
+        assertEquals("x", cache.get(k2, 1, () -> result("x")).getBonus().get(0));
+    }
+
+    /**
+     * Tests that a new library version drops the cached results.
+     */
+    @Test
+    public void testVersionInvalidation() {
+        RecommendationCache cache = new RecommendationCache(10, 0, 1);
+        RecommendationCache.Key key = cache.keyOf(new user_preference("Casual", 0, 500, "iOS"), 3);
+
+        cache.get(key, 1, () -> result("old"));
+        RecommendationResult fresh = cache.get(key, 2, () -> result("new"));
+
+        assertEquals("new", fresh.getBonus().get(0));
+        assertEquals(1L, cache.stats().get("invalidations"));
+    }
+
+    /**
+     * Tests that entries older than the time to live are computed again.
+     */
+    @Test
+    public void testTtlExpiry() throws InterruptedException {
+        RecommendationCache cache = new RecommendationCache(10, 5, 1);
+        RecommendationCache.Key key = cache.keyOf(new user_preference("Casual", 0, 500, "iOS"), 3);
+
+        cache.get(key, 1, () -> result("old"));
+        Thread.sleep(20);
+        assertEquals("new", cache.get(key, 1, () -> result("new")).getBonus().get(0));
+        assertEquals(1L, cache.stats().get("expirations"));
+    }
+
+    /**
+     * Tests that threads sharing a full cache always get the result of their own key and that evictions
+     * keep it at its limit.
+     */
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        RecommendationCache cache = new RecommendationCache(16, 0, 1);
+        List<Thread> threads = new ArrayList<>();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 8; t++) {
+            int seed = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    int budget = ((i * 7 + seed) % 32 + 1) * 100;
+                    RecommendationCache.Key key = cache.keyOf(new user_preference("Casual", 0, budget, "iOS"), 3);
+                    String bonus = cache.get(key, 1, () -> result(String.valueOf(budget))).getBonus().get(0);
+                    if (!bonus.equals(String.valueOf(budget))) errors.add(bonus + " for " + budget);
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(List.of(), errors);
+        assertTrue(cache.size() <= 16, "size " + cache.size());
+        assertTrue(cache.stats().get("evictions") > 0);
+    }
+}
@@ -0,0 +1,156 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import model.RecommendationResult;
+import model.phone;
+import org.junit.jupiter.api.Test;
+import server.PhoneProjection;
+import server.RecommendationJsonWriter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link RecommendationJsonWriter} class
+ * This class helps in validating:
+ * the spliced output is the same JSON as serializing the result with Gson
+ * strings with quotes, backslashes and control characters are escaped
+ * the cached phone form is rebuilt by refreshJson
+ * reviews are only added to the phones when asked for, up to the limit
+ * the phone lookup output lists the found phones and the missing ids
+ * a fields= projection keeps the selected fields with the values of the full object
+ */
+public class TestRecommendationJsonWriter {
+
+    private final phone a = new phone("Galaxy \"S\"", "Samsung", 799.5, "Android", "Gaming",
+            "https://x/?a=1&b=2", List.of("Great phone", "Back\\slash\nnew line"), 80, 2);
+    private final phone b = new phone("iPhone", "Apple", 999, "iOS", "Photography", "",
+            List.of("Nice camera"), 90, 1);
+
+    private JsonElement parse(byte[] bytes) {
+        return JsonParser.parseString(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that a single result matches the Gson form of the same lists.
+     */
+    @Test
+    public void testWriteMatchesGson() {
+        RecommendationResult result = new RecommendationResult(List.of(a, b), List.of(b),
+                List.of("Case \"pro\"", "Tab\tcharger"));
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("main", result.getMain());
+        expected.put("additional", result.getAdditional());
+        expected.put("bonus", result.getBonus());
+
+        assertEquals(JsonParser.parseString(new Gson().toJson(expected)), parse(RecommendationJsonWriter.write(result)));
+    }
+
+    /**
+     * Tests the batch form with empty lists and ids that need escaping.
+     */
+    @Test
+    public void testWriteResults() {
+        Map<String, RecommendationResult> byId = new LinkedHashMap<>();
+        byId.put("first", new RecommendationResult(List.of(a), List.of(), List.of()));
+        byId.put("se\"cond", new RecommendationResult(List.of(), List.of(), List.of("Charger")));
+
+        assertEquals(JsonParser.parseString(new Gson().toJson(Map.of("results", byId))),
+                parse(RecommendationJsonWriter.writeResults(byId)));
+    }
+
+    /**
+     * Tests that the reviews are left out by default and added up to the limit on request.
+     */
+    @Test
+    public void testReviewsOnRequest() {
+        RecommendationResult result = new RecommendationResult(List.of(a), List.of(b), List.of());
+
+        JsonElement plain = parse(RecommendationJsonWriter.write(result));
+        assertFalse(plain.getAsJsonObject().getAsJsonArray("main").get(0).getAsJsonObject().has("reviews"));
+
+        JsonElement one = parse(RecommendationJsonWriter.write(result, 1));
+        assertEquals(1, one.getAsJsonObject().getAsJsonArray("main").get(0).getAsJsonObject()
+                .getAsJsonArray("reviews").size());
+
+        JsonElement all = parse(RecommendationJsonWriter.write(result, RecommendationJsonWriter.ALL_REVIEWS));
+        assertEquals("Back\\slash\nnew line", all.getAsJsonObject().getAsJsonArray("main").get(0).getAsJsonObject()
+                .getAsJsonArray("reviews").get(1).getAsString());
+        assertEquals("Great phone", all.getAsJsonObject().getAsJsonArray("main").get(0).getAsJsonObject()
+                .get("summaryReview").getAsString());
+    }
+
+    /**
+     * Tests that the cached form follows a field change once refreshJson is called.
+     */
+    @Test
+    public void testRefreshJson() {
+        byte[] before = b.toJsonBytes();
+        assertSame(before, b.toJsonBytes());
+        b.price = 899;
+        b.refreshJson();
+        assertEquals(899, parse(b.toJsonBytes()).getAsJsonObject().get("price").getAsDouble());
+    }
+
+    /**
+     * Tests the single phone and multi-get output.
+     */
+    @Test
+    public void testWritePhones() {
+        assertEquals(parse(b.toJsonBytes()), parse(RecommendationJsonWriter.writePhone(b, RecommendationJsonWriter.NO_REVIEWS)));
+        assertEquals(1, parse(RecommendationJsonWriter.writePhone(a, 1)).getAsJsonObject()
+                .getAsJsonArray("reviews").size());
+
+        JsonElement out = parse(RecommendationJsonWriter.writePhones(List.of(b, a), List.of(5, 9), 3,
+                RecommendationJsonWriter.NO_REVIEWS));
+        assertEquals(3, out.getAsJsonObject().get("version").getAsLong());
+        assertEquals("iPhone", out.getAsJsonObject().getAsJsonArray("phones").get(0).getAsJsonObject()
+                .get("name").getAsString());
+        assertEquals(2, out.getAsJsonObject().getAsJsonArray("phones").size());
+        assertEquals(9, out.getAsJsonObject().getAsJsonArray("missing").get(1).getAsInt());
+    }
+
+    /**
+     * Tests that a projection writes the selected fields, in the order and with the values of the full object.
+     */
+    @Test
+    public void testProjection() {
+        RecommendationResult result = new RecommendationResult(List.of(a, b), List.of(b), List.of("Case"));
+        JsonObject full = parse(RecommendationJsonWriter.write(result)).getAsJsonObject();
+        PhoneProjection fields = PhoneProjection.parse("sentiment, NAME,price");
+        JsonObject projected = parse(RecommendationJsonWriter.write(result, 0, fields)).getAsJsonObject();
+
+        assertEquals("name,price,sentiment", fields.toString());
+        for (String list : new String[]{"main", "additional"}) {
+            for (int i = 0; i < full.getAsJsonArray(list).size(); i++) {
+                JsonObject f = full.getAsJsonArray(list).get(i).getAsJsonObject();
+                JsonObject p = projected.getAsJsonArray(list).get(i).getAsJsonObject();
+                assertEquals(List.of("name", "price", "sentiment"), List.copyOf(p.keySet()));
+                for (String key : p.keySet()) assertEquals(f.get(key), p.get(key));
+            }
+        }
+        assertEquals(full.get("bonus"), projected.get("bonus"));
+
+        JsonObject withReviews = parse(RecommendationJsonWriter.write(result, 1, fields)).getAsJsonObject()
+                .getAsJsonArray("main").get(0).getAsJsonObject();
+        assertEquals(1, withReviews.getAsJsonArray("reviews").size());
+        assertEquals(4, withReviews.size());
+    }
+
+    /**
+     * Tests the fields= parameter values.
+     */
+    @Test
+    public void testProjectionParse() {
+        assertTrue(PhoneProjection.parse(null).isAll());
+        assertTrue(PhoneProjection.parse(" ").isAll());
+        assertTrue(PhoneProjection.parse("id,name,brand,price,os,usage,purchaseLink,sentiment,totalReviews,"
+                + "reviewCount,summaryReview").isAll());
+        assertThrows(IllegalArgumentException.class, () -> PhoneProjection.parse("name,password"));
+    }
+}
@@ -0,0 +1,151 @@
+import controller.CasualRecom;
+import controller.GamingRecom;
+import controller.PageCursor;
+import controller.PhotographyRecom;
+import controller.RecommendationPager;
+import controller.TopKSelector;
+import controller.phone_library;
+import model.CatalogQuery;
+import model.CatalogSnapshot;
+import model.PhoneCatalog;
+import model.phone;
+import model.user_preference;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link RecommendationPager} class
+ * This class helps in validating:
+ * the pages together hold every matching phone once, ranked like the recommendations of the strategy
+ * the last page has no cursor
+ * a cursor keeps working after the catalog changes, and reports the version change
+ * invalid cursors and cursors of another search are rejected
+ */
+public class TestRecommendationPager {
+
+    private final phone_library lib = new phone_library();
+    private final RecommendationPager pager = new RecommendationPager();
+
+    private List<phone> readAll(user_preference pref, String usage, int limit) {
+        List<phone> all = new ArrayList<>();
+        String cursor = null;
+        do {
+            RecommendationPager.Page page = pager.page(lib.getSnapshot(), pref, usage, cursor, limit);
+            assertTrue(page.getPhones().size() <= limit);
+            all.addAll(page.getPhones());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return all;
+    }
+
+    /**
+     * Tests that paging returns the same phones as filtering and sorting the whole catalog by the rank score
+     * of the strategy, and that the first page starts with its top-k recommendations.
+     */
+    @Test
+    public void testPagesCoverAllMatches() {
+        user_preference pref = new user_preference("Photography", 10000, 60000, "Android");
+        PhoneCatalog catalog = lib.getCatalog();
+        CatalogQuery query = new PhotographyRecom().query(catalog, pref);
+        Map<phone, Double> scores = new HashMap<>();
+        for (int row = 0; row < catalog.size(); row++) {
+            scores.put(catalog.phoneAt(row), catalog.rankScore(row, query.getAspectWeights()));
+        }
+        List<phone> expected = lib.getallphones().stream()
+                .filter(p -> p.getUsage().equalsIgnoreCase("photography") && p.getOs().equalsIgnoreCase("android"))
+                .filter(p -> p.getPrice() >= 10000 && p.getPrice() <= 60000)
+                .sorted(Comparator.comparingDouble((phone p) -> scores.get(p)).reversed().thenComparingInt(phone::getId))
+                .collect(Collectors.toList());
+        assertTrue(expected.size() > 7);
+
+        assertEquals(expected, readAll(pref, "Photography", 7));
+        assertEquals(expected, readAll(pref, "Photography", 100));
+        assertEquals(TopKSelector.select(catalog, query, 3),
+                pager.page(lib.getSnapshot(), pref, "Photography", null, 3).getPhones());
+    }
+
+    /**
+     * Tests that phones with the same score are ranked by id on the pages and in the top-k result alike,
+     * also when the rows are not in id order (as after a reload that reused phones).
+     */
+    @Test
+    public void testTiesRankedById() {
+        List<phone> phones = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            phone p = new phone("P" + i, "Brand", 20000, "Android", "Casual", "", List.of(), 70, 0);
+            p.id = 9 - i;
+            phones.add(p);
+        }
+        CatalogSnapshot snapshot = new CatalogSnapshot(1, PhoneCatalog.of(phones));
+        user_preference pref = new user_preference("Casual", 10000, 40000, "No Preference");
+        CatalogQuery query = new CasualRecom().query(snapshot.getCatalog(), pref);
+
+        List<phone> top = TopKSelector.select(snapshot.getCatalog(), query, 3);
+        assertEquals(List.of(phones.get(9), phones.get(8), phones.get(7)), top);
+        RecommendationPager.Page first = pager.page(snapshot, pref, "Casual", null, 3);
+        assertEquals(top, first.getPhones());
+        assertEquals(List.of(phones.get(6), phones.get(5), phones.get(4)),
+                pager.page(snapshot, pref, "Casual", first.getNextCursor(), 3).getPhones());
+    }
+
+    /**
+     * Tests that a search without matches returns one empty page without a cursor.
+     */
+    @Test
+    public void testNoMatches() {
+        RecommendationPager.Page page = pager.page(lib.getSnapshot(),
+                new user_preference("Casual", 1, 2, "No Preference"), "Casual", null, 10);
+        assertTrue(page.getPhones().isEmpty());
+        assertNull(page.getNextCursor());
+    }
+
+    /**
+     * Tests that a cursor continues after the same phone when a phone was added in between.
+     */
+    @Test
+    public void testCursorAcrossVersions() {
+        user_preference pref = new user_preference("Gaming", 10000, 40000, "No Preference");
+        RecommendationPager.Page first = pager.page(lib.getSnapshot(), pref, "Gaming", null, 5);
+        PageCursor after = PageCursor.decode(first.getNextCursor());
+        assertEquals(first.getPhones().get(4).getId(), after.getId());
+
+        lib.addphone(new phone("Late Phone", "Brand", 20000, "Android", "Gaming", "", List.of("ok"), 0.5, 1));
+        RecommendationPager.Page second = pager.page(lib.getSnapshot(), pref, "Gaming", first.getNextCursor(), 5);
+
+        assertTrue(second.isVersionChanged());
+        assertEquals(first.getVersion() + 1, second.getVersion());
+        CatalogSnapshot snapshot = lib.getSnapshot();
+        float[] weights = new GamingRecom().query(snapshot.getCatalog(), pref).getAspectWeights();
+        for (phone p : second.getPhones()) {
+            double score = snapshot.getCatalog().rankScore(snapshot.rowOf(p.getId()), weights);
+            assertTrue(score < after.getScore() || (score == after.getScore() && p.getId() > after.getId()));
+        }
+    }
+
+    /**
+     * Tests that broken cursors, cursors of another search and bad limits are rejected.
+     */
+    @Test
+    public void testInvalidCursor() {
+        user_preference gaming = new user_preference("Gaming", 10000, 40000, "No Preference");
+        String cursor = pager.page(lib.getSnapshot(), gaming, "Gaming", null, 2).getNextCursor();
+        assertNotNull(cursor);
+
+        user_preference casual = new user_preference("Casual", 10000, 40000, "No Preference");
+        assertThrows(IllegalArgumentException.class, () -> pager.page(lib.getSnapshot(), casual, "Casual", cursor, 2));
+        assertThrows(IllegalArgumentException.class, () -> pager.page(lib.getSnapshot(), gaming, "Gaming", "not-a-cursor", 2));
+        assertThrows(IllegalArgumentException.class, () -> pager.page(lib.getSnapshot(), gaming, "Gaming", null, 0));
+
+        PageCursor decoded = PageCursor.decode(cursor);
+        assertEquals(lib.getVersion(), decoded.getVersion());
+        assertEquals(cursor, decoded.encode());
+    }
+}
@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+import server.ResponseCompression;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link ResponseCompression} class
+ * This class helps in validating:
+ * Accept-Encoding values with and without weights
+ * bodies below the threshold, or with compression off, are not compressed
+ * the gzip output reads back to the body
+ */
+public class TestResponseCompression {
+
+    /**
+     * Tests the Accept-Encoding parsing.
+     */
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(ResponseCompression.acceptsGzip("gzip, deflate, br"));
+        assertTrue(ResponseCompression.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(ResponseCompression.acceptsGzip("*"));
+        assertFalse(ResponseCompression.acceptsGzip("gzip;q=0"));
+        assertFalse(ResponseCompression.acceptsGzip("deflate, br"));
+        assertFalse(ResponseCompression.acceptsGzip(null));
+    }
+
+    /**
+     * Tests the size threshold.
+     */
+    @Test
+    public void testThreshold() {
+        ResponseCompression compression = new ResponseCompression(1024);
+        assertFalse(compression.shouldCompress("gzip", 1023));
+        assertTrue(compression.shouldCompress("gzip", 1024));
+        assertFalse(compression.shouldCompress("identity", 4096));
+        assertFalse(new ResponseCompression(-1).shouldCompress("gzip", 1 << 20));
+    }
+
+    /**
+     * Tests that gzip output is smaller for JSON and decompresses to the same bytes.
+     */
+    @Test
+    public void testGzipRoundTrip() throws Exception {
+        byte[] body = "{\"name\":\"Galaxy\",\"price\":20000.0},".repeat(200).getBytes(StandardCharsets.UTF_8);
+        byte[] gz = ResponseCompression.gzip(body);
+        assertTrue(gz.length < body.length / 10);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gz))) {
+            assertArrayEquals(body, in.readAllBytes());
+        }
+    }
+}
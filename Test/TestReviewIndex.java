@@ -0,0 +1,150 @@
+import controller.GamingRecom;
+import controller.RecommendationStrategy;
+import model.CatalogSnapshot;
+import model.PhoneCatalog;
+import model.ReviewIndex;
+import model.phone;
+import model.user_preference;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link ReviewIndex} class
+ * This class helps in validating:
+ * reviews are split into terms the same way as searches, and a search needs every term
+ * matches are scored by tf-idf, so a phone using a rare term more often ranks first
+ * an index updated with new phones and reviews finds the same phones as one built from scratch
+ * strategies can keep only the matching phones or rank them higher
+ */
+public class TestReviewIndex {
+
+    /**
+     * Tests the tokenizer: case, punctuation, plurals and stop words.
+     */
+    @Test
+    public void testTerms() {
+        assertEquals(List.of("battery", "drain", "fast", "phone"), ReviewIndex.terms("The Battery DRAINS fast, on this phone!"));
+        assertEquals(List.of("glass", "bus", "5g"), ReviewIndex.terms("glass bus 5G a"));
+        assertEquals(List.of(), ReviewIndex.terms(null));
+    }
+
+    /**
+     * Tests that a search needs every term and ranks the phone using the terms more often first.
+     */
+    @Test
+    public void testSearch() {
+        List<phone> phones = List.of(
+                phone(0, 50, "Battery drains quickly", "Good camera"),
+                phone(1, 50, "Battery drain is awful", "Battery drain again, more drain"),
+                phone(2, 50, "Great battery life"),
+                phone(3, 50, "Camera is fine"));
+        ReviewIndex index = ReviewIndex.build(phones);
+
+        ReviewIndex.Hits hits = index.search("battery drain");
+        assertEquals(List.of("battery", "drain"), hits.getTerms());
+        assertEquals(2, hits.size());
+        assertEquals(0, hits.id(0));
+        assertEquals(1, hits.id(1));
+        assertTrue(hits.scoreOf(1) > hits.scoreOf(0));
+        assertEquals(hits.scoreOf(1), hits.maxScore());
+        assertEquals(0, hits.scoreOf(2));
+
+        assertEquals(0, index.search("battery unicorn").size());
+        assertEquals(0, index.search("the of").size());
+        assertEquals("Battery drain is awful", ReviewIndex.firstMatch(phones.get(1), "drains battery", 10));
+        assertNull(ReviewIndex.firstMatch(phones.get(0), "battery camera", 10));
+    }
+
+    /**
+     * Adds phones and reviews in many small updates, crossing the point where the two indexes are merged,
+     * and compares every search with an index built from the final phones and with a scan of the reviews.
+     */
+    @Test
+    public void testUpdatesMatchRebuild() {
+        String[] words = {"battery", "drain", "camera", "heating", "screen", "great", "poor", "charging", "speaker", "lag"};
+        Random random = new Random(7);
+        Map<Integer, List<String>> reviews = new TreeMap<>();
+        List<phone> phones = new ArrayList<>();
+        for (int id = 0; id < 1000; id++) {
+            reviews.put(id, new ArrayList<>(List.of(sentence(random, words), sentence(random, words))));
+            phones.add(phone(id, 50, reviews.get(id).toArray(new String[0])));
+        }
+        ReviewIndex index = ReviewIndex.build(phones);
+
+        for (int round = 0; round < 40; round++) {
+            Map<Integer, List<String>> added = new HashMap<>();
+            for (int i = 0; i < 5; i++) {
+                int id = random.nextInt(phones.size());
+                String review = sentence(random, words);
+                added.computeIfAbsent(id, x -> new ArrayList<>()).add(review);
+                reviews.get(id).add(review);
+            }
+            index = index.withReviews(added);
+            if (round % 10 == 0) {
+                int id = phones.size();
+                reviews.put(id, new ArrayList<>(List.of(sentence(random, words))));
+                phone p = phone(id, 50, reviews.get(id).toArray(new String[0]));
+                phones.add(p);
+                index = index.withPhones(List.of(p));
+            }
+        }
+        assertTrue(index.changedPhones() < 64 + 40 * 5);
+
+        List<phone> current = new ArrayList<>();
+        reviews.forEach((id, list) -> current.add(phone(id, 50, list.toArray(new String[0]))));
+        ReviewIndex rebuilt = ReviewIndex.build(current);
+        assertEquals(rebuilt.size(), index.size());
+        for (String query : new String[]{"battery", "drain camera", "lag heating poor", "speaker great screen"}) {
+            ReviewIndex.Hits expected = rebuilt.search(query);
+            ReviewIndex.Hits actual = index.search(query);
+            List<Integer> matching = new ArrayList<>();
+            reviews.forEach((id, list) -> {
+                Set<String> terms = new HashSet<>();
+                for (String review : list) terms.addAll(ReviewIndex.terms(review));
+                if (terms.containsAll(ReviewIndex.terms(query))) matching.add(id);
+            });
+            assertEquals(matching.size(), actual.size(), query);
+            assertEquals(expected.size(), actual.size(), query);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.id(i), actual.id(i), query);
+                assertEquals(matching.get(i), actual.id(i), query);
+                assertEquals(expected.score(i), actual.score(i), 1e-4, query);
+            }
+        }
+    }
+
+    /**
+     * Tests that a strategy keeps only the phones whose reviews match, or ranks them higher when boosting.
+     */
+    @Test
+    public void testStrategyFilterAndBoost() {
+        List<phone> phones = List.of(
+                phone(0, 90, "Heating is a problem"),
+                phone(1, 82, "Cool and smooth"),
+                phone(2, 85, "Smooth gaming, stays cool"));
+        CatalogSnapshot snapshot = new CatalogSnapshot(1, PhoneCatalog.of(phones), ReviewIndex.build(phones));
+        user_preference pref = new user_preference("Gaming", 100, 1000, "No Preference");
+        RecommendationStrategy strategy = new GamingRecom();
+        ReviewIndex.Hits hits = snapshot.getReviewIndex().search("cool smooth");
+
+        assertEquals(List.of(phones.get(2), phones.get(1)), strategy.recommendMatching(snapshot, pref, hits, 3));
+        assertEquals(List.of(phones.get(2), phones.get(1), phones.get(0)), strategy.recommendBoosted(snapshot, pref, hits, 3));
+        assertEquals(List.of(phones.get(0), phones.get(2), phones.get(1)),
+                strategy.recommend(snapshot.getCatalog(), pref, 3));
+    }
+
+    private static phone phone(int id, double sentiment, String... reviews) {
+        phone p = new phone("P" + id, "Brand", 500, "Android", "Gaming", "", List.of(reviews), sentiment, reviews.length);
+        p.id = id;
+        return p;
+    }
+
+    private static String sentence(Random random, String[] words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0, n = 1 + random.nextInt(4); i < n; i++) sentence.append(words[random.nextInt(words.length)]).append(' ');
+        return sentence.toString();
+    }
+}
@@ -0,0 +1,195 @@
+import controller.ReviewIngestor;
+import controller.phone_library;
+import model.phone;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link ReviewIngestor} class
+ * This class helps in validating:
+ * submitted reviews are written to the file, counted in the rankings and folded into the catalog
+ * the reviews in the file are read back by a new ingestor, onto the same phones even when their ids changed
+ * closing writes every accepted review and releases the flushes
+ * a full buffer rejects reviews instead of blocking, and invalid reviews are refused
+ * bulk submissions are taken in order
+ */
+public class TestReviewIngestor {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Tests that a submitted review ends up in the file, the aggregates and the phone.
+     */
+    @Test
+    public void testSubmitWritesAndFolds() throws Exception {
+        phone_library library = new phone_library();
+        phone p = library.getallphones().get(0);
+        int reviews = p.getReviews().size();
+        long aggregated = library.getSentimentAggregates().reviews(p.getId());
+        long version = library.getVersion();
+        Path file = dir.resolve("reviews.log");
+
+        try (ReviewIngestor ingestor = new ReviewIngestor(library, file, 100, 60_000, false)) {
+            assertTrue(ingestor.submit(p.getId(), "Great phone,\tthe camera is superb\nand the battery lasts"));
+            ingestor.flush();
+            assertEquals(0, ingestor.buffered());
+        }
+
+        assertEquals(1, Files.readAllLines(file).size());
+        assertEquals(aggregated + 1, library.getSentimentAggregates().reviews(p.getId()));
+        assertEquals(version + 1, library.getVersion());
+        phone folded = library.getPhone(p.getId());
+        assertEquals(reviews + 1, folded.getReviews().size());
+        assertEquals("Great phone,\tthe camera is superb\nand the battery lasts", folded.getReviews().get(reviews));
+        assertEquals(reviews, p.getReviews().size(), "the published phone must not change");
+    }
+
+    /**
+     * Tests that a new ingestor on the same file gives a fresh library the reviews of the earlier run.
+     */
+    @Test
+    public void testReplay() throws Exception {
+        Path file = dir.resolve("reviews.log");
+        phone_library first = new phone_library();
+        int id = first.getallphones().get(3).getId();
+        try (ReviewIngestor ingestor = new ReviewIngestor(first, file, 100, 60_000, false)) {
+            for (int i = 0; i < 5; i++) assertTrue(ingestor.submit(id, "Awful phone number " + i));
+        }
+        Files.writeString(file, "not a review line\n", java.nio.file.StandardOpenOption.APPEND);
+
+        phone_library second = new phone_library();
+        int reviews = second.getPhone(id).getReviews().size();
+        long aggregated = second.getSentimentAggregates().reviews(id);
+        try (ReviewIngestor ingestor = new ReviewIngestor(second, file, 100, 60_000, false)) {
+            assertEquals(0, ingestor.buffered()); // the file is read back without the buffer
+            assertEquals(aggregated + 5, second.getSentimentAggregates().reviews(id));
+            assertEquals(reviews + 5, second.getPhone(id).getReviews().size());
+            assertEquals("Awful phone number 4", second.getPhone(id).getReviews().get(reviews + 4));
+        }
+    }
+
+    /**
+     * Tests that the reviews in the file go to the same phones when a restart loads the phones in another
+     * order, so every phone gets another id.
+     */
+    @Test
+    public void testReplayAfterIdsChanged() throws Exception {
+        Path file = dir.resolve("reviews.log");
+        phone_library first = new phone_library();
+        phone reviewed = first.getallphones().get(3);
+        try (ReviewIngestor ingestor = new ReviewIngestor(first, file, 100, 60_000, false)) {
+            assertTrue(ingestor.submit(reviewed.getId(), "Replayed by key"));
+        }
+
+        // the same rows in reverse order
+        List<String> rows;
+        try (InputStream in = phone_library.class.getClassLoader().getResourceAsStream(phone_library.DATASET)) {
+            rows = new ArrayList<>(List.of(new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n")));
+        }
+        String header = rows.remove(0);
+        Collections.reverse(rows);
+        rows.add(0, header);
+        Path csv = dir.resolve("reversed.csv");
+        Files.write(csv, rows);
+
+        phone_library second = new phone_library(csv.toString());
+        phone same = null;
+        for (phone p : second.getallphones()) {
+            if (p.getName().equals(reviewed.getName()) && p.getPrice() == reviewed.getPrice()) same = p;
+        }
+        assertNotNull(same);
+        assertNotEquals(reviewed.getId(), same.getId());
+        try (ReviewIngestor ingestor = new ReviewIngestor(second, file, 100, 60_000, false)) {
+            assertEquals(0, ingestor.buffered());
+            List<String> reviews = second.getPhone(same.getId()).getReviews();
+            assertEquals("Replayed by key", reviews.get(reviews.size() - 1));
+            assertFalse(second.getPhone(reviewed.getId()).getReviews().contains("Replayed by key"));
+        }
+    }
+
+    /**
+     * Tests that every review accepted by the threads submitting while the ingestor closes is written,
+     * and a flush after close returns.
+     */
+    @Test
+    public void testCloseWritesEverythingAccepted() throws Exception {
+        phone_library library = new phone_library();
+        int id = library.getallphones().get(0).getId();
+        long before = library.getSentimentAggregates().reviews(id);
+        Path file = dir.resolve("reviews.log");
+        ReviewIngestor ingestor = new ReviewIngestor(library, file, 100_000, 60_000, false);
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> submitters = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            submitters.add(new Thread(() -> {
+                while (ingestor.submit(id, "Racing review")) accepted.incrementAndGet();
+            }));
+        }
+        for (Thread submitter : submitters) submitter.start();
+        Thread.sleep(20);
+        ingestor.close();
+        for (Thread submitter : submitters) submitter.join();
+        ingestor.flush();
+
+        assertEquals(accepted.get(), Files.readAllLines(file).size());
+        assertEquals(before + accepted.get(), library.getSentimentAggregates().reviews(id));
+    }
+
+    /**
+     * Tests that submissions are refused, not blocked, once the buffer is full, and that invalid ones throw.
+     */
+    @Test
+    public void testFullBufferAndValidation() throws Exception {
+        phone_library library = new phone_library();
+        int id = library.getallphones().get(0).getId();
+        try (ReviewIngestor ingestor = new ReviewIngestor(library, dir.resolve("reviews.log"), 4, 60_000, false)) {
+            assertEquals(4, ingestor.capacity());
+            int accepted = 0;
+            for (int i = 0; i < 10_000; i++) if (ingestor.submit(id, "Good")) accepted++;
+            assertTrue(accepted < 10_000, "the writer cannot keep up with a tight loop on a buffer of 4");
+
+            assertThrows(IllegalArgumentException.class, () -> ingestor.submit(id, "  "));
+            assertThrows(IllegalArgumentException.class, () -> ingestor.submit(id, "x".repeat(ReviewIngestor.MAX_REVIEW_LENGTH + 1)));
+            assertThrows(IllegalArgumentException.class, () -> ingestor.submit(-7, "Good"));
+        }
+    }
+
+    /**
+     * Tests that a bulk submission is checked as a whole and taken in order.
+     */
+    @Test
+    public void testSubmitAll() throws Exception {
+        phone_library library = new phone_library();
+        List<phone> phones = library.getallphones();
+        Path file = dir.resolve("reviews.log");
+        try (ReviewIngestor ingestor = new ReviewIngestor(library, file, 1000, 60_000, false)) {
+            int[] ids = new int[100];
+            List<String> reviews = new ArrayList<>();
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = phones.get(i % 10).getId();
+                reviews.add("Review " + i);
+            }
+            List<String> invalid = new ArrayList<>(reviews);
+            invalid.set(50, "");
+            assertThrows(IllegalArgumentException.class, () -> ingestor.submitAll(ids, invalid));
+
+            assertEquals(100, ingestor.submitAll(ids, reviews));
+            ingestor.flush();
+        }
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(100, lines.size());
+        assertTrue(lines.get(99).endsWith("\tReview 99"));
+    }
+}
@@ -0,0 +1,110 @@
+import model.ReviewStore;
+import model.phone;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link ReviewStore} class
+ * This class helps in validating:
+ * a CSV review cell is split the same way as String.split on "||"
+ * pages of reviews are cut at the right offsets
+ * reviews stay readable when the store spans several chunks, also reviews longer than a chunk
+ * phones only keep the count and the summary review, the texts come from the store
+ * phones created with a list of reviews keep them in a store of their own
+ */
+public class TestReviewStore {
+
+    /**
+     * Tests that raw cells are split like the old loader did, including multi byte characters.
+     */
+    @Test
+    public void testAddRawSplitsLikeSplit() {
+        ReviewStore store = new ReviewStore();
+        String[] cells = {"Great phone||Battery is weak||Camera ₹ worth it", "Only one", "a||||b", "trailing||", ""};
+        for (String cell : cells) {
+            int handle = store.addRaw(cell);
+            List<String> expected = cell.isEmpty() ? List.of() : List.of(cell.split("\\|\\|"));
+            assertEquals(expected, store.getAll(handle), cell);
+            assertEquals(expected.size(), store.count(handle));
+        }
+    }
+
+    /**
+     * Tests paging through the reviews of one phone.
+     */
+    @Test
+    public void testPage() {
+        ReviewStore store = new ReviewStore();
+        store.add(List.of("other"));
+        int handle = store.add(List.of("r0", "r1", "r2", "r3", "r4"));
+
+        assertEquals(List.of("r0", "r1"), store.page(handle, 0, 2));
+        assertEquals(List.of("r4"), store.page(handle, 4, 10));
+        assertEquals(List.of(), store.page(handle, 5, 10));
+        assertEquals("r3", store.get(handle, 3));
+        assertThrows(IllegalArgumentException.class, () -> store.page(handle, -1, 2));
+        assertThrows(IllegalArgumentException.class, () -> store.count(99));
+    }
+
+    /**
+     * Tests reviews spread over several chunks, with one review larger than a chunk.
+     */
+    @Test
+    public void testManyChunks() {
+        ReviewStore store = new ReviewStore();
+        String big = "x".repeat(3 << 20);
+        int[] handles = new int[3000];
+        for (int i = 0; i < handles.length; i++) {
+            String review = i == 1500 ? big : ("review " + i + " ").repeat(60);
+            handles[i] = store.add(List.of(review, "short " + i));
+        }
+        for (int i = 0; i < handles.length; i++) {
+            String review = i == 1500 ? big : ("review " + i + " ").repeat(60);
+            assertEquals(List.of(review, "short " + i), store.getAll(handles[i]));
+        }
+        assertTrue(store.byteSize() > 4 << 20);
+    }
+
+    /**
+     * Tests that a phone reads its reviews from the store and serializes only the summary.
+     */
+    @Test
+    public void testPhoneUsesStore() {
+        ReviewStore store = new ReviewStore();
+        int handle = store.addRaw("Amazing phone||Good camera||Heats up");
+        phone p = new phone("Pixel 7", "Google", 699, "Android", "casual", "", store, handle, 85, 3);
+
+        assertEquals(3, p.getReviewCount());
+        assertEquals("Amazing phone", p.getSummaryReview());
+        assertEquals(List.of("Good camera", "Heats up"), p.getReviews(1, 5));
+
+        String json = new String(p.toJsonBytes());
+        assertTrue(json.contains("\"summaryReview\":\"Amazing phone\""));
+        assertFalse(json.contains("Good camera"));
+    }
+
+    /**
+     * Tests that a phone created with a list of reviews keeps them in its own store, sized to them,
+     * and that copies with more reviews read the old and new ones.
+     */
+    @Test
+    public void testListPhoneHasOwnStore() {
+        ReviewStore own = ReviewStore.of(List.of("Camera ₹ worth it", "Fast"));
+        assertEquals(List.of("Camera ₹ worth it", "Fast"), own.getAll(0));
+        assertEquals(2, own.size());
+        assertEquals("Camera ₹ worth it".getBytes(StandardCharsets.UTF_8).length + 4, own.byteSize());
+        assertEquals(List.of(), ReviewStore.of(null).getAll(0));
+
+        phone a = new phone("Pixel 7", "Google", 699, "Android", "casual", "", List.of("Good camera"), 85, 1);
+        phone b = new phone("Pixel 8", "Google", 799, "Android", "casual", "", List.of("Heats up", "Bright"), 80, 2);
+        phone more = a.withReviews(List.of("Battery lasts"), 86);
+
+        assertEquals(List.of("Good camera"), a.getReviews());
+        assertEquals(List.of("Heats up", "Bright"), b.getReviews());
+        assertEquals(List.of("Good camera", "Battery lasts"), more.getReviews());
+    }
+}
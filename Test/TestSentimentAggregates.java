@@ -0,0 +1,182 @@
+import controller.TopKSelector;
+import controller.phone_library;
+import model.PhoneCatalog;
+import model.SentimentAggregates;
+import model.phone;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link SentimentAggregates} class
+ * This class helps in validating:
+ * counts, sums and the positive/neutral/negative tallies, also for negative sums
+ * the confidence weighted score and the revision that follows it
+ * reviews added from many threads at once are all counted
+ * ids spread over many chunks
+ * the catalog and the library rank on the live scores
+ */
+public class TestSentimentAggregates {
+
+    /**
+     * Tests the aggregate of a few reviews.
+     */
+    @Test
+    public void testAggregate() {
+        SentimentAggregates aggregates = new SentimentAggregates();
+        aggregates.add(7, 0.8);
+        aggregates.add(7, -0.6);
+        aggregates.add(7, -0.9);
+        aggregates.add(7, 0.0);
+
+        assertEquals(4, aggregates.reviews(7));
+        assertEquals(1, aggregates.positive(7));
+        assertEquals(1, aggregates.neutral(7));
+        assertEquals(2, aggregates.negative(7));
+        assertEquals(50 + 50 * -0.7 / 4, aggregates.mean(7), 1e-9);
+        assertEquals(50 + 50 * -0.7 / (4 + SentimentAggregates.PRIOR_REVIEWS), aggregates.score(7), 1e-9);
+
+        assertEquals(0, aggregates.reviews(8));
+        assertEquals(50, aggregates.score(8));
+        assertEquals(50, aggregates.mean(3000));
+        assertEquals(42, aggregates.score(3000, 42));
+        assertThrows(IllegalArgumentException.class, () -> aggregates.add(-1, 0.5));
+    }
+
+    /**
+     * Tests that more reviews make the score trust the mean more.
+     */
+    @Test
+    public void testConfidenceWeighting() {
+        SentimentAggregates aggregates = new SentimentAggregates();
+        aggregates.add(1, 1.0);
+        for (int i = 0; i < 50; i++) aggregates.add(2, 0.9);
+
+        assertTrue(aggregates.mean(1) > aggregates.mean(2));
+        assertTrue(aggregates.score(1) < aggregates.score(2));
+        aggregates.addMean(3, 10, -0.5);
+        assertEquals(10, aggregates.reviews(3));
+        assertEquals(25, aggregates.mean(3), 1e-9);
+    }
+
+    /**
+     * Tests that the revision moves when a shown score changes, and only then.
+     */
+    @Test
+    public void testRevision() {
+        SentimentAggregates aggregates = new SentimentAggregates();
+        long start = aggregates.revision();
+        aggregates.add(1, 0.5);
+        long afterOne = aggregates.revision();
+        assertTrue(afterOne > start);
+        aggregates.add(1, 0.0);
+        assertTrue(aggregates.revision() > afterOne);
+
+        long before = aggregates.revision();
+        aggregates.addMean(2, 1_000_000, 0.5);
+        long settled = aggregates.revision();
+        assertTrue(settled > before);
+        aggregates.add(2, 0.5); // one more review of the same score does not change the shown score
+        assertEquals(settled, aggregates.revision());
+    }
+
+    /**
+     * Tests that reviews added by many threads at once are all counted.
+     */
+    @Test
+    public void testConcurrentAdds() throws InterruptedException {
+        SentimentAggregates aggregates = new SentimentAggregates();
+        int threads = 8;
+        int perThread = 20_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) aggregates.add(i % 3000, i % 2 == 0 ? 0.5 : -0.25);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) worker.join();
+
+        long total = 0;
+        for (int id = 0; id < 3000; id++) {
+            total += aggregates.reviews(id);
+            assertEquals(aggregates.reviews(id), aggregates.positive(id) + aggregates.negative(id));
+        }
+        assertEquals((long) threads * perThread, total);
+        assertEquals(threads * ((perThread + 2999) / 3000), aggregates.reviews(0));
+    }
+
+    /**
+     * Tests that a catalog ranked by the aggregates takes their scores when its rows are filled or rescored.
+     */
+    @Test
+    public void testCatalogRanksOnAggregates() {
+        List<phone> phones = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            phone p = new phone("P" + i, "Brand", 100, "Android", "gaming", "", List.of(), 60, 0);
+            p.id = i;
+            phones.add(p);
+        }
+        PhoneCatalog catalog = PhoneCatalog.of(phones);
+        SentimentAggregates aggregates = new SentimentAggregates();
+        for (int i = 0; i < 3; i++) aggregates.add(i, 0.2);
+
+        // the rows already in the catalog take their scores too
+        PhoneCatalog ranked = catalog.copy(3);
+        ranked.rankBy(aggregates);
+        assertEquals(aggregates.score(2), ranked.sentiment(2));
+
+        // a filled row keeps its score until it is rescored
+        long revision = aggregates.revision();
+        for (int i = 0; i < 20; i++) aggregates.add(2, 0.9);
+        assertTrue(aggregates.revision() > revision);
+        assertEquals(phones.get(0), TopKSelector.select(ranked, PhoneCatalog.ANY, PhoneCatalog.ANY, 0, 1000, 1).get(0));
+        assertTrue(ranked.rescore(2));
+        assertFalse(ranked.rescore(1));
+        assertEquals(phones.get(2), TopKSelector.select(ranked, PhoneCatalog.ANY, PhoneCatalog.ANY, 0, 1000, 1).get(0));
+        assertEquals(aggregates.score(2), ranked.sentiment(2));
+        assertEquals(2, ranked.sentimentOrder()[0]);
+        assertEquals(60, catalog.sentiment(2)); // a catalog without aggregates ranks on the loaded scores
+    }
+
+    /**
+     * Tests ids spread over many chunks, created in increasing order as a catalog load does.
+     */
+    @Test
+    public void testManyChunks() {
+        SentimentAggregates aggregates = new SentimentAggregates();
+        for (int id = 0; id < 500_000; id += 1000) aggregates.add(id, 0.5);
+        for (int id = 0; id < 500_000; id += 1000) assertEquals(1, aggregates.reviews(id));
+        assertEquals(0, aggregates.reviews(500_000));
+    }
+
+    /**
+     * Tests that reviews added to the library change its rankings with the next fold, as one new version.
+     */
+    @Test
+    public void testLibraryAddReview() {
+        phone_library library = new phone_library();
+        phone p = library.getallphones().get(0);
+        long version = library.getVersion();
+        long reviews = library.getSentimentAggregates().reviews(p.getId());
+        double score = library.getCatalog().sentiment(0);
+
+        for (int i = 0; i < 10; i++) assertTrue(library.addReview(p.getId(), "Awful phone, terrible battery") < 0);
+
+        assertEquals(reviews + 10, library.getSentimentAggregates().reviews(p.getId()));
+        assertEquals(version, library.getVersion());
+        assertEquals(score, library.getCatalog().sentiment(0));
+
+        assertEquals(0, library.foldReviews()); // no review text to fold, only the rankings move
+        assertEquals(version + 1, library.getVersion());
+        assertTrue(library.getCatalog().sentiment(0) < score);
+        assertEquals(p, library.getPhone(p.getId()));
+        library.foldReviews();
+        assertEquals(version + 1, library.getVersion());
+        assertThrows(IllegalArgumentException.class, () -> library.addReview(-5, "Great"));
+    }
+}
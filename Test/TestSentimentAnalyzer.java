@@ -0,0 +1,137 @@
+import com.opencsv.CSVReader;
+import controller.phone_library;
+import model.ReviewStore;
+import model.phone;
+import org.junit.jupiter.api.Test;
+import sentiment.SentimentAnalyzer;
+import sentiment.SentimentScorer;
+
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link SentimentAnalyzer} and {@link SentimentScorer} classes
+ * This class helps in validating:
+ * the compound scores are the ones of the reference VADER implementation
+ * intensifiers, negation, capitals, "but" and punctuation change the score the right way
+ * the scores of the bundled dataset agree with the Sentiment_Score computed by the notebook
+ * the fork-join scoring gives the same scores as scoring one phone after the other
+ */
+public class TestSentimentAnalyzer {
+
+    private final SentimentAnalyzer analyzer = SentimentAnalyzer.getDefault();
+
+    /**
+     * Tests sentences whose compound score is published with VADER.
+     */
+    @Test
+    public void testReferenceScores() {
+        assertEquals(0.8316, analyzer.compound("VADER is smart, handsome, and funny."));
+        assertEquals(0.8439, analyzer.compound("VADER is smart, handsome, and funny!"));
+        assertEquals(0.8545, analyzer.compound("VADER is very smart, handsome, and funny."));
+        assertEquals(0.9227, analyzer.compound("VADER is VERY SMART, handsome, and FUNNY."));
+        assertEquals(0.9342, analyzer.compound("VADER is VERY SMART, handsome, and FUNNY!!!"));
+        assertEquals(-0.7424, analyzer.compound("VADER is not smart, handsome, nor funny."));
+        assertEquals(0.3832, analyzer.compound("The book was kind of good."));
+        assertEquals(0.431, analyzer.compound("At least it isn't a horrible book."));
+        assertEquals(-0.7042, analyzer.compound("The plot was good, but the characters are uncompelling and the dialog is not great."));
+        assertEquals(0.5249, analyzer.compound("Today only kinda sux! But I'll get by, lol"));
+    }
+
+    /**
+     * Tests each rule on its own against the plain sentence.
+     */
+    @Test
+    public void testRules() {
+        double plain = analyzer.compound("The battery is good");
+        assertTrue(plain > 0);
+        assertTrue(analyzer.compound("The battery is extremely good") > plain);
+        assertTrue(analyzer.compound("The battery is slightly good") < plain);
+        assertTrue(analyzer.compound("The battery is not good") < 0);
+        assertTrue(analyzer.compound("The battery isn't really that good") < 0);
+        assertTrue(analyzer.compound("The battery is GOOD") > plain);
+        assertTrue(analyzer.compound("The battery is good!") > plain);
+        assertEquals(analyzer.compound("The battery is good!!!!"), analyzer.compound("The battery is good!!!!!!"));
+        assertTrue(analyzer.compound("The camera is bad but the battery is good") > 0);
+        assertTrue(analyzer.compound("The battery is good but the camera is bad") < 0);
+        assertEquals(0, analyzer.compound("The phone arrived on Tuesday"));
+        assertEquals(0, analyzer.compound("   "));
+        assertEquals(0, analyzer.compound(null));
+    }
+
+    /**
+     * Tests the 0 to 100 phone score.
+     */
+    @Test
+    public void testPhoneScore() {
+        SentimentScorer scorer = SentimentScorer.getDefault();
+        assertEquals(50, scorer.score(List.of()));
+        assertEquals(50, scorer.score(List.of("The phone arrived on Tuesday")));
+        assertEquals(91.6, scorer.score(List.of("VADER is smart, handsome, and funny.")));
+        assertEquals(12.9, scorer.score(List.of("VADER is not smart, handsome, nor funny.")));
+    }
+
+    /**
+     * Compares the scores of the bundled dataset with the Sentiment_Score column. The notebook averaged
+     * VADER with a BERT model and rounded to tens, so the scores agree closely but not exactly.
+     */
+    @Test
+    public void testAgreesWithNotebook() throws Exception {
+        List<double[]> pairs = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(new InputStreamReader(
+                getClass().getClassLoader().getResourceAsStream(phone_library.DATASET)))) {
+            reader.readNext();
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                List<String> reviews = Arrays.asList(row[5].split("\\|\\|"));
+                pairs.add(new double[]{SentimentScorer.getDefault().score(reviews), Double.parseDouble(row[7])});
+            }
+        }
+
+        double n = pairs.size();
+        double error = 0, sx = 0, sy = 0, sxx = 0, syy = 0, sxy = 0;
+        int sameTen = 0;
+        for (double[] p : pairs) {
+            error += Math.abs(p[0] - p[1]);
+            if (Math.round(p[0] / 10) * 10 == p[1]) sameTen++;
+            sx += p[0];
+            sy += p[1];
+            sxx += p[0] * p[0];
+            syy += p[1] * p[1];
+            sxy += p[0] * p[1];
+        }
+        double correlation = (n * sxy - sx * sy) / Math.sqrt((n * sxx - sx * sx) * (n * syy - sy * sy));
+        assertTrue(correlation > 0.9, "correlation " + correlation);
+        assertTrue(error / n < 5, "mean absolute error " + error / n);
+        assertTrue(sameTen > n * 0.6, sameTen + " of " + n + " rounded to the same ten");
+    }
+
+    /**
+     * Tests that scoring a list in parallel gives each phone the score of its own reviews, without changing the phones.
+     */
+    @Test
+    public void testScoreAllInParallel() {
+        ReviewStore store = new ReviewStore();
+        List<phone> phones = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            List<String> reviews = i % 2 == 0 ? List.of("Great phone", "Love the camera") : List.of("Terrible battery");
+            phones.add(new phone("P" + i, "Brand", 20000, "Android", "casual", "https://x", store, store.add(reviews), 0, reviews.size()));
+        }
+        SentimentScorer scorer = new SentimentScorer(analyzer, new ForkJoinPool(4));
+        SentimentScorer.Stats stats = scorer.scoreAll(phones);
+
+        assertEquals(100, stats.getPhones());
+        assertEquals(150, stats.getReviews());
+        assertEquals(4, stats.getCores());
+        for (int i = 0; i < phones.size(); i++) {
+            assertEquals(scorer.score(phones.get(i).getReviews()), stats.getScore(i));
+            assertEquals(i % 2 == 0, stats.getScore(i) > 50);
+            assertEquals(0, phones.get(i).getSentiment());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import controller.phone_library;
+import model.phone;
+import model.store;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the phone to store index of the {@link phone_library} class
+ * This class helps in validating:
+ * phones already in a store are indexed when the store is added to the library
+ * phones added to a store later are indexed too, once per store
+ * a phone sold nowhere has no stores
+ * phones are equal when they have the same library id, and the index finds a phone by its id
+ */
+public class TestStoreIndex {
+
+    private phone newPhone(String name) {
+        return new phone(name, "Brand", 20000, "Android", "Gaming", "", List.of("good"), 0.5, 1);
+    }
+
+    /**
+     * Tests that the stores of a phone follow addstore and store.addPhone.
+     */
+    @Test
+    public void testIndexFollowsStores() {
+        phone_library lib = new phone_library();
+        phone a = newPhone("A");
+        phone b = newPhone("B");
+        lib.addphone(a);
+        lib.addphone(b);
+
+        store amazon = new store("amazon");
+        amazon.addPhone(a);
+        lib.addstore(amazon);
+        store flipkart = new store("flipkart");
+        lib.addstore(flipkart);
+
+        assertEquals(List.of(amazon), lib.getStoreForPhone(a));
+        assertTrue(lib.getStoreForPhone(b).isEmpty());
+
+        flipkart.addPhone(a);
+        flipkart.addPhone(b);
+        flipkart.addPhone(a); // listed once
+        assertEquals(List.of(amazon, flipkart), lib.getStoreForPhone(a));
+        assertEquals(List.of(flipkart), lib.getStoreForPhone(b));
+
+        // appending to the list of a store goes through addPhone
+        phone c = newPhone("C");
+        lib.addphone(c);
+        flipkart.getPhones().add(c);
+        assertEquals(List.of(flipkart), lib.getStoreForPhone(c));
+        assertEquals(List.of(a, b, a, c), flipkart.getPhones());
+    }
+
+    /**
+     * Tests that a phone keeps its stores when the library replaces it by a copy with the same id, and that
+     * a store in the library does not take a phone that is not in the library.
+     */
+    @Test
+    public void testIndexKeyedById() {
+        phone_library lib = new phone_library();
+        phone a = newPhone("A");
+        store amazon = new store("amazon");
+        lib.addstore(amazon);
+        assertThrows(IllegalArgumentException.class, () -> amazon.addPhone(a));
+        assertTrue(amazon.getPhones().isEmpty());
+
+        store early = new store("early");
+        early.addPhone(a); // not in a library yet, so not indexed yet
+        assertThrows(IllegalArgumentException.class, () -> lib.addstore(early));
+
+        lib.addphone(a);
+        amazon.addPhone(a);
+        phone copy = a.withReviews(List.of("great"), 70);
+        assertEquals(List.of(amazon), lib.getStoreForPhone(copy));
+    }
+
+    /**
+     * Tests lookups with many stores, each selling a few phones.
+     */
+    @Test
+    public void testManyStores() {
+        phone_library lib = new phone_library();
+        List<phone> phones = lib.getallphones();
+        for (int i = 0; i < 2000; i++) {
+            store s = new store("store " + i);
+            for (int j = 0; j < 5; j++) s.addPhone(phones.get((i * 7 + j) % phones.size()));
+            lib.addstore(s);
+        }
+        int listed = 0;
+        for (phone p : phones) listed += lib.getStoreForPhone(p).size();
+        assertEquals(2000 * 5, listed);
+        for (store s : lib.getStoreForPhone(phones.get(0))) assertTrue(s.getPhones().contains(phones.get(0)));
+    }
+
+    /**
+     * Tests equals and hashCode: the library id decides, phones without an id are only equal to themselves.
+     */
+    @Test
+    public void testPhoneIdentity() {
+        phone a = newPhone("Same");
+        phone b = newPhone("Same");
+        assertNotEquals(a, b);
+        assertEquals(a, a);
+
+        phone_library lib = new phone_library();
+        lib.addphone(a);
+        phone copy = newPhone("Copy");
+        copy.id = a.getId();
+        assertEquals(a, copy);
+        assertEquals(a.hashCode(), copy.hashCode());
+        assertEquals(a, lib.getPhone(a.getId()));
+
+        List<phone> list = new ArrayList<>(List.of(b));
+        assertFalse(list.contains(a));
+    }
+}
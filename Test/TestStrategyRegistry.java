@@ -0,0 +1,66 @@
+import controller.*;
+import model.phone;
+import model.user_preference;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link StrategyRegistry} and the stateless strategy dispatch of the
+ * {@link RecommendationController}
+ * This class helps in validating:
+ * the registry returns one shared strategy per usage type, ignoring case
+ * unknown usage types fall back to the casual strategy
+ * concurrent requests for different usage types never get each other's results
+ */
+public class TestStrategyRegistry {
+
+    /**
+     * Tests that lookups ignore case and return the same instance every time.
+     */
+    @Test
+    public void testLookup() {
+        StrategyRegistry registry = StrategyRegistry.getDefault();
+        assertTrue(registry.forUsage("Gaming") instanceof GamingRecom);
+        assertTrue(registry.forUsage("PHOTOGRAPHY") instanceof PhotographyRecom);
+        assertSame(registry.forUsage("gaming"), registry.forUsage("Gaming"));
+        assertTrue(registry.forUsage("business") instanceof CasualRecom);
+        assertTrue(registry.forUsage(null) instanceof CasualRecom);
+    }
+
+    /**
+     * Runs many requests for different usage types at the same time on one shared
+     * controller and checks that every result only holds phones of the requested usage.
+     */
+    @Test
+    public void testConcurrentDispatch() throws Exception {
+        phone_library lib = new phone_library();
+        String[] usages = {"Casual", "Entertainment", "Gaming", "Photography", "Productivity"};
+        for (int i = 0; i < 200; i++) {
+            String usage = usages[i % usages.length].toLowerCase();
+            lib.addphone(new phone("Test " + i, "Brand", 100 + i, "Android", usage, "", List.of("ok"), i % 100, 1));
+        }
+        RecommendationController controller = new RecommendationController(lib);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> checks = new ArrayList<>();
+            for (int n = 0; n < 500; n++) {
+                String usage = usages[n % usages.length];
+                checks.add(pool.submit(() -> {
+                    user_preference pref = new user_preference(usage, 100, 300, "Android");
+                    List<phone> result = controller.getRecommendation(pref, usage, 5);
+                    return !result.isEmpty()
+                            && result.stream().allMatch(p -> p.getUsage().equalsIgnoreCase(usage));
+                }));
+            }
+            for (Future<Boolean> check : checks) assertTrue(check.get(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import controller.TopKSelector;
+import model.PhoneCatalog;
+import model.phone;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link TopKSelector} class
+ * This class helps in validating:
+ * the selector returns the same phones as a full sort followed by a limit
+ * ties are broken by catalog order
+ * K bigger than the number of matches and K clamping
+ */
+public class TestTopKSelector {
+
+    /**
+     * Compares the heap selection against sorting every phone, on random scores
+     * with many duplicates, for several values of K.
+     */
+    @Test
+    public void testMatchesFullSort() {
+        Random random = new Random(42);
+        List<phone> phones = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            double sentiment = random.nextInt(10) * 10;
+            phones.add(new phone("P" + i, "Brand", 100 + i, "Android", "gaming", "", List.of(), sentiment, 0));
+        }
+        PhoneCatalog catalog = PhoneCatalog.of(phones);
+
+        for (int k : new int[]{1, 3, 10, 50, 500, 800}) {
+            List<phone> expected = phones.stream()
+                    .sorted(Comparator.comparing(phone::getSentiment).reversed())
+                    .limit(k)
+                    .collect(Collectors.toList());
+            List<phone> actual = TopKSelector.select(catalog, PhoneCatalog.ANY, PhoneCatalog.ANY, 0, 10_000, k);
+            assertEquals(expected, actual, "k = " + k);
+        }
+    }
+
+    /**
+     * Tests that equal keys come out in the order the rows were offered.
+     */
+    @Test
+    public void testTieBreakByRow() {
+        TopKSelector top = new TopKSelector(3);
+        top.offer(50, 4);
+        top.offer(50, 1);
+        top.offer(70, 9);
+        top.offer(50, 0);
+        top.offer(10, 2);
+
+        assertArrayEquals(new int[]{9, 0, 1}, top.drainRows());
+        assertEquals(0, top.size());
+    }
+
+    /**
+     * Tests that K is limited to the accepted range and that K must be positive.
+     */
+    @Test
+    public void testClamp() {
+        assertEquals(1, TopKSelector.clamp(0));
+        assertEquals(10, TopKSelector.clamp(10));
+        assertEquals(TopKSelector.MAX_K, TopKSelector.clamp(100_000));
+        assertThrows(IllegalArgumentException.class, () -> new TopKSelector(0));
+    }
+}
@@ -1,8 +1,28 @@
 import static spark.Spark.*;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import controller.*;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
 import model.*;
 import view.recom_portal;
+import server.ConditionalGet;
+import server.PhoneProjection;
+import server.RecommendationJsonWriter;
+import server.ResponseCompression;
+import storage.CatalogStore;
+import storage.SegmentLog;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -12,12 +32,48 @@ import java.util.*;
  * the recommendation engine.
  */
 public class Main {
+
+    /** Largest number of preferences accepted by one batch request. */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    /** Reviews per page of the reviews route, by default and at most. */
+    private static final int DEFAULT_REVIEW_PAGE = 20;
+    private static final int MAX_REVIEW_PAGE = 100;
+
+    /** Largest number of ids accepted by one multi-get of phones. */
+    private static final int MAX_IDS = 500;
+
+    /** Largest number of reviews accepted by one bulk review request. */
+    private static final int MAX_REVIEW_BATCH = 10_000;
+
+    /** Phones returned by a review search when the request does not give k. */
+    private static final int DEFAULT_SEARCH_K = 10;
+
+    /** Reviews of a phone read to find the one shown with a search result. */
+    private static final int SNIPPET_REVIEWS = 500;
+
+    /** Request, latency and error metrics of the routes, served at /metrics. */
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final Counter HTTP_REQUESTS = METRICS.counter("pf_http_requests_total",
+            "HTTP requests served, by route and status", "route", "status");
+    private static final Counter HTTP_ERRORS = METRICS.counter("pf_http_errors_total",
+            "HTTP requests answered with an error status (4xx or 5xx), by route and status", "route", "status");
+    private static final Histogram HTTP_TIME = METRICS.histogram("pf_http_request_duration_seconds",
+            "Time to handle an HTTP request, by route", Histogram.LATENCY_BUCKETS, "route");
+    private static final Histogram SERIALIZATION_TIME = METRICS.histogram("pf_serialization_duration_seconds",
+            "Time to write the JSON body of a recommendation response, by route", Histogram.LATENCY_BUCKETS, "route");
+    private static final Histogram RESPONSE_BYTES = METRICS.histogram("pf_response_bytes",
+            "Bytes of the response bodies sent, by route and content encoding", Histogram.BYTES_BUCKETS, "route", "encoding");
+    private static final Histogram COMPRESSION_SAVED = METRICS.histogram("pf_compression_saved_bytes",
+            "Bytes saved by gzip per compressed response, by route", Histogram.BYTES_BUCKETS, "route");
+
     /**
      * Starts the Spark server, configures CORS, initializes components,
      * and defines the /api/recommendations endpoint.
      */
     public static void main(String[] args) {
 
+        configureThreadPool();
         port(4567); // Spark server port
 
         /**
@@ -49,9 +105,39 @@ public class Main {
         /**
          * Initializing the libraries
          */
-        phone_library library = new phone_library();
+        phone_library library = createLibrary();
         recom_portal portal = new recom_portal(library);
 
+        /**
+         * Recommendation result cache, sized with system properties:
+         *  - pf.cache.size        largest number of cached results (default 1024)
+         *  - pf.cache.ttlMillis   time to live of a result, 0 keeps it until evicted (default 0)
+         *  - pf.cache.budgetStep  budgets are narrowed to multiples of this value (default 1)
+         */
+        RecommendationCache cache = new RecommendationCache(
+                Integer.getInteger("pf.cache.size", 1024),
+                Long.getLong("pf.cache.ttlMillis", 0L),
+                Double.parseDouble(System.getProperty("pf.cache.budgetStep", "1")));
+
+        registerGauges(library, cache);
+        ReviewIngestor ingestor = createIngestor(library);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(ingestor, library), "shutdown"));
+
+        /**
+         * Conditional GET of the recommendation routes: responses carry an ETag derived from the
+         * catalog version and the normalized request, and If-None-Match is answered with 304.
+         *  - pf.http.maxAgeSeconds  seconds browsers and CDNs may reuse a response without
+         *                           revalidating it (default 0, every reuse is revalidated)
+         */
+        ConditionalGet conditional = new ConditionalGet(Integer.getInteger("pf.http.maxAgeSeconds", 0));
+
+        /**
+         * Response compression: JSON bodies of at least pf.http.gzipMinBytes bytes (default 1024,
+         * negative turns it off) are sent gzip compressed to clients that accept it.
+         */
+        ResponseCompression compression = new ResponseCompression(
+                Integer.getInteger("pf.http.gzipMinBytes", ResponseCompression.DEFAULT_MIN_BYTES));
+
         /**
          * RECOMMENDATION API ROUTE
          * GET /api/recommendations
@@ -66,66 +152,756 @@ public class Main {
          *  - maxBudget
          *  - os
          *  - usageChoice
+         *  - k (optional, number of main recommendations, default 3, max 100)
+         *  - reviews (optional, "true"/"all" or a number: adds that many reviews to every phone,
+         *    by default the phones only carry summaryReview and reviewCount)
+         *  - fields (optional, comma separated phone fields to send, eg: name,brand,price,sentiment;
+         *    by default every field is sent)
+         *  - review (optional, words to look for in the reviews, eg: "battery drain"; only phones whose
+         *    reviews hold all of them are recommended)
+         *  - reviewMode (optional, "filter" (default) or "boost": rank the phones whose reviews match higher
+         *    instead of leaving the others out)
+         *
+         * Sends an ETag and answers If-None-Match with 304 while the catalog version is the same.
          */
-        get("/api/recommendations", (req, res) -> {
-            try {
-                // Parse query params
-                int minBudget = Integer.parseInt(req.queryParams("minBudget"));
-                int maxBudget = Integer.parseInt(req.queryParams("maxBudget"));
-                String os = req.queryParams("os");
-                int usageChoice = Integer.parseInt(req.queryParams("usageChoice"));
+        get("/api/recommendations", timed("recommendations", (req, res) -> {
+            // Parse query params
+            int minBudget = intParam("minBudget", req.queryParams("minBudget"));
+            int maxBudget = intParam("maxBudget", req.queryParams("maxBudget"));
+            String os = req.queryParams("os");
+            int usageChoice = intParam("usageChoice", req.queryParams("usageChoice"));
+            int k = TopKSelector.clamp(intParam("k", req.queryParams("k"), TopKSelector.DEFAULT_K));
+            int reviewLimit = parseReviewLimit(req.queryParams("reviews"));
+            PhoneProjection fields = PhoneProjection.parse(req.queryParams("fields"));
+            String review = req.queryParams("review");
+            boolean boost = parseReviewMode(req.queryParams("reviewMode"));
+            String search = review == null || review.isBlank() ? ""
+                    : String.join(" ", ReviewIndex.terms(review)) + (boost ? "|boost" : "|filter");
+
+            String usage = portal.getUsageString(usageChoice);
+
+            if (os == null || os.isBlank()) os = "No Preference";
+            os = os.trim();
+
+            // Create user preferences, with the budgets normalized the same way as the cache key
+            RecommendationCache.Key key = cache.keyOf(new user_preference(usage, minBudget, maxBudget, os), k);
+            user_preference pref = key.toPreference(usage, os);
+
+            // One version of the phone data for the whole request, a reload swaps in a new one.
+            // New reviews reach the rankings with the next fold, which publishes a new version too.
+            CatalogSnapshot snapshot = library.getSnapshot();
+            long rankingVersion = snapshot.getVersion();
+
+            // The body only depends on the rankings and the normalized request, so a client that
+            // already has it gets a 304 before any strategy runs
+            String etag = conditional.etag(rankingVersion, key + "|reviews=" + reviewLimit
+                    + "|fields=" + fields + "|review=" + search + "|gzip=" + ResponseCompression.acceptsGzip(req.headers("Accept-Encoding")));
+            res.header("ETag", etag);
+            res.header("Cache-Control", conditional.getCacheControl());
+            if (ConditionalGet.matches(req.headers("If-None-Match"), etag)) {
+                res.header("Vary", "Accept-Encoding");
+                res.status(304);
+                return "";
+            }
+
+            // Main, additional and bonus recommendations of the snapshot
+            // The strategy is looked up per call, so the shared controller is safe across threads.
+            // The OS is already part of the catalog filter (compared by dictionary code)
+            // A review search is not cached, its results depend on the words of the request
+            RecommendationResult result = search.isEmpty()
+                    ? cache.get(key, rankingVersion, () -> portal.controller.recommend(snapshot, pref, usage, k))
+                    : portal.controller.recommend(snapshot, pref, usage, k, review, boost);
+
+            // Prepare JSON output, the phones are spliced in from their pre-serialized bytes
+            res.type("application/json");
+            long writeStart = System.nanoTime();
+            byte[] json = RecommendationJsonWriter.write(result, reviewLimit, fields);
+            SERIALIZATION_TIME.labels("recommendations").observeNanos(System.nanoTime() - writeStart);
+            return send(req, res, "recommendations", compression, json);
+        }));
+
+        RecommendationPager pager = new RecommendationPager();
+
+        /**
+         * RECOMMENDATION PAGES ROUTE
+         * GET /api/recommendations/page
+         *
+         * Pages through every phone matching the usage strategy, ranked on the same score as /api/recommendations.
+         * Accepts the query params of /api/recommendations (minBudget, maxBudget, os, usageChoice, reviews, fields) and:
+         *  - limit (optional, phones per page, default 20, max 100)
+         *  - cursor (optional, the nextCursor of the previous page)
+         *
+         * Returns {"version", "versionChanged", "nextCursor", "phones": [...]}; nextCursor is null on
+         * the last page. The cursor carries the position, so the server keeps no state between pages.
+         */
+        get("/api/recommendations/page", timed("page", (req, res) -> {
+            res.type("application/json");
+            int minBudget = intParam("minBudget", req.queryParams("minBudget"));
+            int maxBudget = intParam("maxBudget", req.queryParams("maxBudget"));
+            String os = req.queryParams("os");
+            if (os == null || os.isBlank()) os = "No Preference";
+            String usage = portal.getUsageString(intParam("usageChoice", req.queryParams("usageChoice")));
+            int limit = Math.min(intParam("limit", req.queryParams("limit"), RecommendationPager.DEFAULT_LIMIT),
+                    RecommendationPager.MAX_LIMIT);
+            int reviewLimit = parseReviewLimit(req.queryParams("reviews"));
+            PhoneProjection fields = PhoneProjection.parse(req.queryParams("fields"));
+
+            user_preference pref = new user_preference(usage, minBudget, maxBudget, os.trim());
+            String cursor = req.queryParams("cursor");
+            CatalogSnapshot snapshot = library.getSnapshot();
+
+            String etag = conditional.etag(snapshot.getVersion(), usage + "|" + minBudget + "-" + maxBudget + "|"
+                    + os.trim().toLowerCase() + "|limit=" + limit + "|reviews=" + reviewLimit + "|fields=" + fields
+                    + "|gzip=" + ResponseCompression.acceptsGzip(req.headers("Accept-Encoding")) + "|" + cursor);
+            res.header("ETag", etag);
+            res.header("Cache-Control", conditional.getCacheControl());
+            if (ConditionalGet.matches(req.headers("If-None-Match"), etag)) {
+                res.header("Vary", "Accept-Encoding");
+                res.status(304);
+                return "";
+            }
+
+            RecommendationPager.Page page = pager.page(snapshot, pref, usage, cursor, limit);
+
+            long writeStart = System.nanoTime();
+            byte[] json = RecommendationJsonWriter.writePage(page.getPhones(), page.getNextCursor(),
+                    page.getVersion(), page.isVersionChanged(), reviewLimit, fields);
+            SERIALIZATION_TIME.labels("page").observeNanos(System.nanoTime() - writeStart);
+            return send(req, res, "page", compression, json);
+        }));
+
+        /**
+         * CACHE STATISTICS ROUTE
+         * GET /api/cache/stats
+         *
+         * Returns the hit, miss, eviction, expiration and invalidation counters
+         * of the recommendation cache.
+         */
+        get("/api/cache/stats", (req, res) -> {
+            res.type("application/json");
+            return new Gson().toJson(cache.stats());
+        });
+
+        /**
+         * METRICS ROUTE
+         * GET /metrics
+         *
+         * Returns the request rates, latency histograms (per route, per strategy, additional,
+         * bonus and serialization), error counts, result sizes and cache and catalog gauges
+         * in the Prometheus text format.
+         */
+        get("/metrics", (req, res) -> {
+            res.type(MetricsRegistry.CONTENT_TYPE);
+            return METRICS.scrape();
+        });
+
+        BatchRecommender batch = new BatchRecommender(library, portal.controller);
+
+        /**
+         * BATCH RECOMMENDATION API ROUTE
+         * POST /api/recommendations/batch
+         *
+         * Body: a JSON array of preferences (or {"preferences": [...]}), each with
+         *  - id (optional, key of the result, defaults to the position in the array)
+         *  - usage (eg: "Gaming") or usageChoice (1-5)
+         *  - minBudget, maxBudget
+         *  - os or osPreference (optional, default "No Preference")
+         *  - k (optional, default 3)
+         * Query param reviews works like on /api/recommendations.
+         *
+         * Returns {"results": {id: {main, additional, bonus}}}. Cached results are reused and
+         * all remaining preferences are answered together with one pass over the catalog.
+         */
+        post("/api/recommendations/batch", timed("batch", (req, res) -> {
+            res.type("application/json");
+            int reviewLimit = parseReviewLimit(req.queryParams("reviews"));
+            JsonElement body = JsonParser.parseString(req.body());
+            JsonArray items = body.isJsonArray() ? body.getAsJsonArray()
+                    : body.isJsonObject() && body.getAsJsonObject().has("preferences")
+                    ? body.getAsJsonObject().getAsJsonArray("preferences") : null;
+            if (items == null) throw new IllegalArgumentException("Expected a JSON array of preferences");
+            if (items.size() > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " preferences per batch");
+            }
 
-                String usage = portal.getUsageString(usageChoice);
+            CatalogSnapshot snapshot = library.getSnapshot();
+            long version = snapshot.getVersion();
+            int n = items.size();
+            String[] ids = new String[n];
+            RecommendationCache.Key[] keys = new RecommendationCache.Key[n];
+            RecommendationResult[] results = new RecommendationResult[n];
+            List<user_preference> missPrefs = new ArrayList<>();
+            List<Integer> missIndex = new ArrayList<>();
 
+            for (int i = 0; i < n; i++) {
+                JsonObject item = items.get(i).getAsJsonObject();
+                ids[i] = item.has("id") ? item.get("id").getAsString() : String.valueOf(i);
+                String usage = item.has("usage") ? item.get("usage").getAsString().trim()
+                        : portal.getUsageString(intField(item, "usageChoice", 1, ids[i]));
+                String os = item.has("os") ? item.get("os").getAsString()
+                        : item.has("osPreference") ? item.get("osPreference").getAsString() : null;
                 if (os == null || os.isBlank()) os = "No Preference";
                 os = os.trim();
+                if (!item.has("minBudget") || !item.has("maxBudget")) {
+                    throw new IllegalArgumentException("minBudget and maxBudget are required (item " + ids[i] + ")");
+                }
+                int k = TopKSelector.clamp(intField(item, "k", TopKSelector.DEFAULT_K, ids[i]));
+
+                keys[i] = cache.keyOf(new user_preference(usage, numberField(item, "minBudget", ids[i]),
+                        numberField(item, "maxBudget", ids[i]), os), k);
+                results[i] = cache.getIfPresent(keys[i], version);
+                if (results[i] == null) {
+                    missPrefs.add(keys[i].toPreference(usage, os));
+                    missIndex.add(i);
+                }
+            }
 
-                // Create user preferences
-                user_preference pref = new user_preference(usage, minBudget, maxBudget, os);
-
-                // Strategy selection
-                RecommendationStrategy strategy = switch (usage) {
-                    case "Casual" -> new CasualRecom();
-                    case "Entertainment" -> new Entertainment();
-                    case "Gaming" -> new GamingRecom();
-                    case "Photography" -> new PhotographyRecom();
-                    case "Productivity" -> new Productivity();
-                    default -> new CasualRecom();
-                };
-
-                portal.controller.setStrategy(strategy);
-
-                // Main recommendations
-                List<phone> mainRecs = portal.controller.getRecommendation(pref);
-
-                // Filter by OS if needed
-                if (!os.equalsIgnoreCase("No Preference")) {
-                    String finalOs = os.toLowerCase().trim();
-                    mainRecs = mainRecs.stream()
-                            .filter(p -> p.getOs() != null && p.getOs().toLowerCase().contains(finalOs))
-                            .toList();
+            if (!missPrefs.isEmpty()) {
+                int[] ks = new int[missIndex.size()];
+                for (int m = 0; m < ks.length; m++) ks[m] = keys[missIndex.get(m)].getK();
+                List<RecommendationResult> computed = batch.recommendAll(snapshot.getCatalog(), missPrefs, ks);
+                for (int m = 0; m < ks.length; m++) {
+                    int i = missIndex.get(m);
+                    results[i] = computed.get(m);
+                    cache.put(keys[i], version, results[i]);
                 }
+            }
+
+            Map<String, RecommendationResult> byId = new LinkedHashMap<>();
+            for (int i = 0; i < n; i++) {
+                if (byId.put(ids[i], results[i]) != null) {
+                    throw new IllegalArgumentException("Duplicate id: " + ids[i]);
+                }
+            }
+            long writeStart = System.nanoTime();
+            byte[] json = RecommendationJsonWriter.writeResults(byId, reviewLimit);
+            SERIALIZATION_TIME.labels("batch").observeNanos(System.nanoTime() - writeStart);
+            return send(req, res, "batch", compression, json);
+        }));
+
+        /**
+         * REVIEW SEARCH ROUTE
+         * GET /api/phones/search?review=battery+drain
+         *
+         * Finds the phones whose reviews hold every word of the search, in the full-text {@link ReviewIndex}
+         * of the current version, best match first (tf-idf score).
+         *
+         * Accepts query params:
+         *  - review (the words to look for)
+         *  - k (optional, number of phones to return, default 10, max 100)
+         *
+         * Returns {"version", "query", "terms", "total", "phones": [{"id", "name", "brand", "price", "os",
+         * "usage", "sentiment", "score", "review"}]}, where review is the first review holding every term.
+         * Registered before /api/phones/:id, which would take "search" as an id.
+         */
+        get("/api/phones/search", timed("search", (req, res) -> {
+            res.type("application/json");
+            String review = req.queryParams("review");
+            if (review == null || review.isBlank()) throw new IllegalArgumentException("review is required");
+            int k = TopKSelector.clamp(intParam("k", req.queryParams("k"), DEFAULT_SEARCH_K));
+
+            CatalogSnapshot snapshot = library.getSnapshot();
+            PhoneCatalog catalog = snapshot.getCatalog();
+            ReviewIndex.Hits hits = snapshot.getReviewIndex().search(review);
+            TopKSelector top = new TopKSelector(k);
+            for (int h = 0; h < hits.size(); h++) {
+                int row = snapshot.rowOf(hits.id(h));
+                if (row >= 0) top.offer(hits.score(h), row, hits.id(h));
+            }
+
+            List<Map<String, Object>> phones = new ArrayList<>();
+            for (int row : top.drainRows()) {
+                phone p = catalog.phoneAt(row);
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("id", p.getId());
+                item.put("name", p.getName());
+                item.put("brand", p.getBrand());
+                item.put("price", p.getPrice());
+                item.put("os", p.getOs());
+                item.put("usage", p.getUsage());
+                item.put("sentiment", Math.round(catalog.sentiment(row) * 10) / 10.0);
+                item.put("score", Math.round(hits.scoreOf(p.getId()) * 1000) / 1000.0);
+                item.put("review", ReviewIndex.firstMatch(p, review, SNIPPET_REVIEWS));
+                phones.add(item);
+            }
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("version", snapshot.getVersion());
+            response.put("query", review);
+            response.put("terms", hits.getTerms());
+            response.put("total", hits.size());
+            response.put("phones", phones);
+            return new Gson().toJson(response);
+        }));
+
+        /**
+         * PHONE LOOKUP ROUTES
+         * GET /api/phones/:id
+         * GET /api/phones?ids=3,17,42
+         *
+         * Phones are addressed by the id the library gives them at load time. The id is kept while a
+         * reload leaves the phone's row unchanged, so clients can cache the phone details and only
+         * fetch the phones whose ids they have not seen.
+         *
+         * Accepts query params:
+         *  - ids (multi-get only, comma separated, at most 500)
+         *  - reviews (optional, as for /api/recommendations)
+         *
+         * The single lookup returns the phone object, or 404 for an unknown id. The multi-get returns
+         * {"version", "phones": [...], "missing": [ids]} with the phones in the requested order.
+         */
+        get("/api/phones/:id", timed("phone", (req, res) -> {
+            res.type("application/json");
+            int id = intParam("id", req.params(":id"));
+            int reviewLimit = parseReviewLimit(req.queryParams("reviews"));
+            phone p = library.getPhone(id);
+            if (p == null) {
+                return error(res, 404, "Unknown phone id: " + id);
+            }
+            return RecommendationJsonWriter.writePhone(p, reviewLimit);
+        }));
+
+        get("/api/phones", timed("phones", (req, res) -> {
+            res.type("application/json");
+            String idsParam = req.queryParams("ids");
+            if (idsParam == null || idsParam.isBlank()) throw new IllegalArgumentException("ids is required");
+            String[] parts = idsParam.split(",");
+            if (parts.length > MAX_IDS) throw new IllegalArgumentException("At most " + MAX_IDS + " ids per request");
+            int reviewLimit = parseReviewLimit(req.queryParams("reviews"));
+
+            CatalogSnapshot snapshot = library.getSnapshot(); // every id is read from the same version
+            List<phone> found = new ArrayList<>(parts.length);
+            List<Integer> missing = new ArrayList<>();
+            for (String part : parts) {
+                if (part.isBlank()) continue;
+                int id = intParam("ids", part);
+                phone p = snapshot.getPhone(id);
+                if (p == null) missing.add(id);
+                else found.add(p);
+            }
+            return send(req, res, "phones", compression,
+                    RecommendationJsonWriter.writePhones(found, missing, snapshot.getVersion(), reviewLimit));
+        }));
 
-                // Additional recommendations
-                List<phone> additionalRecs = portal.controller.getAdditionalRecommendations(pref);
+        /**
+         * PHONE REVIEWS ROUTE
+         * GET /api/phones/:id/reviews
+         *
+         * Accepts query params:
+         *  - offset (optional, default 0)
+         *  - limit (optional, default 20, max 100)
+         *
+         * Returns {"id", "reviewCount", "offset", "limit", "reviews": [...]}, the reviews are
+         * read from the review store only for the requested page.
+         */
+        get("/api/phones/:id/reviews", timed("reviews", (req, res) -> {
+            res.type("application/json");
+            int id = intParam("id", req.params(":id"));
+            int offset = intParam("offset", req.queryParams("offset"), 0);
+            int limit = Math.min(intParam("limit", req.queryParams("limit"), DEFAULT_REVIEW_PAGE), MAX_REVIEW_PAGE);
+            if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must not be negative");
+
+            phone p = library.getPhone(id);
+            if (p == null) {
+                return error(res, 404, "Unknown phone id: " + id);
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("id", id);
+            response.put("reviewCount", p.getReviewCount());
+            response.put("offset", offset);
+            response.put("limit", limit);
+            response.put("reviews", p.getReviews(offset, limit));
+            return new Gson().toJson(response);
+        }));
+
+        /**
+         * PHONE SENTIMENT ROUTE
+         * GET /api/phones/:id/sentiment
+         *
+         * Returns the running sentiment aggregate of the phone, which the strategies rank on:
+         * {"id", "reviews", "positive", "neutral", "negative", "mean", "score", "revision",
+         *  "aspects": {"battery": {"reviews", "score"}, ...}}.
+         * mean is the plain mean of the reviews and score the confidence weighted one, both 0 to 100;
+         * an aspect score is the confidence weighted score of the reviews naming the aspect (50 for none).
+         */
+        get("/api/phones/:id/sentiment", timed("sentiment", (req, res) -> {
+            res.type("application/json");
+            int id = intParam("id", req.params(":id"));
+            if (library.getPhone(id) == null) {
+                return error(res, 404, "Unknown phone id: " + id);
+            }
 
-                // Bonus suggestions
-                List<String> bonusRecs = portal.controller.getBonusSuggestions(pref);
+            SentimentAggregates aggregates = library.getSentimentAggregates();
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("id", id);
+            response.put("reviews", aggregates.reviews(id));
+            response.put("positive", aggregates.positive(id));
+            response.put("neutral", aggregates.neutral(id));
+            response.put("negative", aggregates.negative(id));
+            response.put("mean", Math.round(aggregates.mean(id) * 10) / 10.0);
+            response.put("score", Math.round(aggregates.score(id) * 10) / 10.0);
+            response.put("revision", aggregates.revision());
+            Map<String, Object> aspects = new LinkedHashMap<>();
+            for (Aspect aspect : Aspect.values()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("reviews", aggregates.aspectReviews(id, aspect));
+                entry.put("score", Math.round(aggregates.aspectScore(id, aspect) * 10) / 10.0);
+                aspects.put(aspect.label(), entry);
+            }
+            response.put("aspects", aspects);
+            return new Gson().toJson(response);
+        }));
 
-                // Prepare JSON output
-                Map<String, Object> response = new HashMap<>();
-                response.put("main", mainRecs);
-                response.put("additional", additionalRecs);
-                response.put("bonus", bonusRecs);
+        /**
+         * REVIEW INGESTION ROUTES
+         * POST /api/phones/:id/reviews   body: {"review": "text"}
+         * POST /api/reviews              body: [{"id": 3, "review": "text"}, ...] (or {"reviews": [...]}), at most 10000
+         *
+         * The reviews go into the bounded buffer of the {@link ReviewIngestor} and the request returns
+         * at once with 202 {"accepted", "rejected"}; the reviews count in the rankings once the writer has
+         * put them in the review file (within a fraction of a second) and show up in the phone's reviews
+         * after the next fold. A full buffer answers 503 with Retry-After; in a bulk request the first
+         * "accepted" reviews were taken and the rest should be sent again. An invalid review answers 400
+         * and none of the request is taken.
+         */
+        post("/api/phones/:id/reviews", timed("review", (req, res) -> {
+            res.type("application/json");
+            int id = intParam("id", req.params(":id"));
+            if (library.getPhone(id) == null) {
+                return error(res, 404, "Unknown phone id: " + id);
+            }
+            JsonObject body = JsonParser.parseString(req.body()).getAsJsonObject();
+            if (!body.has("review")) throw new IllegalArgumentException("review is required");
+            boolean accepted = ingestor.submit(id, body.get("review").getAsString());
+            return reviewsAccepted(res, accepted ? 1 : 0, 1);
+        }));
 
-                res.type("application/json");
-                return new Gson().toJson(response);
+        post("/api/reviews", timed("reviews_bulk", (req, res) -> {
+            res.type("application/json");
+            JsonElement body = JsonParser.parseString(req.body());
+            JsonArray items = body.isJsonArray() ? body.getAsJsonArray()
+                    : body.isJsonObject() && body.getAsJsonObject().has("reviews")
+                    ? body.getAsJsonObject().getAsJsonArray("reviews") : null;
+            if (items == null) throw new IllegalArgumentException("Expected a JSON array of reviews");
+            if (items.size() > MAX_REVIEW_BATCH) {
+                throw new IllegalArgumentException("At most " + MAX_REVIEW_BATCH + " reviews per request");
+            }
+            int[] ids = new int[items.size()];
+            List<String> reviews = new ArrayList<>(items.size());
+            for (int i = 0; i < ids.length; i++) {
+                JsonObject item = items.get(i).getAsJsonObject();
+                if (!item.has("id") || !item.has("review")) {
+                    throw new IllegalArgumentException("id and review are required (item " + i + ")");
+                }
+                ids[i] = intField(item, "id", -1, String.valueOf(i));
+                reviews.add(item.get("review").getAsString());
+            }
+            return reviewsAccepted(res, ingestor.submitAll(ids, reviews), ids.length);
+        }));
+    }
 
+    /** Answers a review submission: 202 when every review was taken, 503 when the buffer was full. */
+    private static String reviewsAccepted(Response res, int accepted, int submitted) {
+        if (accepted < submitted) {
+            res.status(503);
+            res.header("Retry-After", "1");
+        } else {
+            res.status(202);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("accepted", accepted);
+        response.put("rejected", submitted - accepted);
+        return new Gson().toJson(response);
+    }
+
+    /**
+     * Sends a JSON body, gzip compressed when the client accepts it and the body is large enough.
+     * Records the bytes sent and, for compressed bodies, the bytes gzip saved.
+     *
+     * @param req the request, for its Accept-Encoding
+     * @param res the response, its content type must already be set
+     * @param route route label in the metrics
+     * @param compression the compression settings
+     * @param json the JSON body
+     * @return the body for Spark to write
+     */
+    private static Object send(Request req, Response res, String route, ResponseCompression compression,
+                               byte[] json) throws IOException {
+        res.header("Vary", "Accept-Encoding");
+        if (compression.shouldCompress(req.headers("Accept-Encoding"), json.length)) {
+            byte[] gz = ResponseCompression.gzip(json);
+            if (gz.length < json.length) {
+                // written here rather than returned: Spark compresses once more when it sees the header
+                res.header("Content-Encoding", "gzip");
+                res.raw().setContentLength(gz.length);
+                OutputStream out = res.raw().getOutputStream();
+                out.write(gz);
+                out.flush();
+                RESPONSE_BYTES.labels(route, "gzip").observe(gz.length);
+                COMPRESSION_SAVED.labels(route).observe(json.length - gz.length);
+                return "";
+            }
+        }
+        RESPONSE_BYTES.labels(route, "identity").observe(json.length);
+        return json;
+    }
+
+    /**
+     * Wraps a route so its requests are counted by status and timed, and turns its exceptions into JSON
+     * errors: 400 for a bad request (IllegalArgumentException, or a JSON body that cannot be read or is
+     * not shaped as expected), 500 for anything else. The request params are parsed with {@link #intParam}, so a 400 names the param.
+     *
+     * @param name route label in the metrics
+     * @param route the route
+     * @return the instrumented route
+     */
+    private static Route timed(String name, Route route) {
+        Histogram.Child time = HTTP_TIME.labels(name);
+        return (req, res) -> {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object body = route.handle(req, res);
+                failed = false;
+                return body;
+            } catch (JsonParseException e) {
+                failed = false;
+                return error(res, 400, "The request body is not valid JSON");
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                failed = false;
+                return error(res, 400, String.valueOf(e.getMessage()));
             } catch (Exception e) {
                 e.printStackTrace();
-                res.status(500);
-                return new Gson().toJson(Map.of("error", e.getMessage()));
+                failed = false;
+                return error(res, 500, String.valueOf(e.getMessage()));
+            } finally {
+                time.observeNanos(System.nanoTime() - start);
+                int status = failed ? 500 : res.status();
+                HTTP_REQUESTS.labels(name, Integer.toString(status)).inc();
+                if (status >= 400) HTTP_ERRORS.labels(name, Integer.toString(status)).inc();
             }
-        });
+        };
+    }
+
+    /**
+     * Exports the cache counters and the catalog and review store sizes, read on every scrape.
+     */
+    private static void registerGauges(phone_library library, RecommendationCache cache) {
+        METRICS.gauge("pf_cache_entries", "Results in the recommendation cache", () -> cache.stats().get("size"));
+        METRICS.gauge("pf_cache_capacity", "Largest number of results in the recommendation cache",
+                () -> cache.stats().get("capacity"));
+        for (String counter : List.of("hits", "misses", "evictions", "expirations", "invalidations")) {
+            METRICS.counterOf("pf_cache_" + counter + "_total", "Recommendation cache " + counter,
+                    () -> cache.stats().get(counter));
+        }
+        METRICS.gauge("pf_catalog_version", "Version of the phone data being served", () -> library.getVersion());
+        METRICS.gauge("pf_catalog_phones", "Phones in the current catalog", () -> library.getSnapshot().size());
+        METRICS.gauge("pf_sentiment_revision", "Changes of the shown sentiment scores of the aggregates",
+                () -> library.getSentimentAggregates().revision());
+        METRICS.gauge("pf_review_store_bytes", "Bytes of review text in the review store",
+                () -> library.getReviewStore().byteSize());
+        METRICS.gauge("pf_review_index_bytes", "Bytes of the posting lists of the review search index",
+                () -> library.getSnapshot().getReviewIndex().postingBytes());
+    }
+
+    /**
+     * Creates the phone library from the bundled dataset, or from a CSV file when the pf.catalog.file
+     * system property is set. The file is reloaded whenever it changes unless pf.catalog.watch is false.
+     *
+     * With pf.store.dir the library is kept in a {@link CatalogStore} in that folder and recovered from it
+     * at the next start (the CSV only seeds an empty store). The store is configured with:
+     *  - pf.store.segmentBytes   size of a log segment (default 64 MiB)
+     *  - pf.store.snapshotBytes  log bytes after which a new snapshot is written (default 64 MiB)
+     */
+    private static phone_library createLibrary() {
+        String file = System.getProperty("pf.catalog.file");
+        boolean fromFile = file != null && !file.isBlank();
+        String storeDir = System.getProperty("pf.store.dir");
+        if (storeDir != null && !storeDir.isBlank()) {
+            phone_library library = openStore(Path.of(storeDir.trim()), fromFile ? file.trim() : null);
+            if (fromFile) watch(library, file.trim());
+            return library;
+        }
+        if (!fromFile) return new phone_library();
+
+        phone_library library = new phone_library(file.trim());
+        if (library.getVersion() == 0) throw new IllegalStateException("Could not load the catalog file " + file);
+        System.out.println("Catalog loaded from " + file.trim() + ": " + library.getSnapshot().size() + " phones");
+        watch(library, file.trim());
+        return library;
+    }
+
+    private static phone_library openStore(Path dir, String file) {
+        try {
+            CatalogStore store = new CatalogStore(dir,
+                    Long.getLong("pf.store.segmentBytes", SegmentLog.DEFAULT_SEGMENT_BYTES),
+                    Long.getLong("pf.store.snapshotBytes", CatalogStore.DEFAULT_SNAPSHOT_BYTES));
+            phone_library library = new phone_library(store, file);
+            METRICS.gauge("pf_store_log_bytes", "Bytes logged to the catalog store since its last snapshot",
+                    store::bytesSinceSnapshot);
+            System.out.println("Catalog store " + dir + ": " + library.getSnapshot().size() + " phones");
+            return library;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open the catalog store " + dir, e);
+        }
+    }
+
+    /** Reloads the catalog file whenever it changes, unless pf.catalog.watch is false. */
+    private static void watch(phone_library library, String file) {
+        if (Boolean.parseBoolean(System.getProperty("pf.catalog.watch", "true"))) {
+            try {
+                new CatalogWatcher(library, Path.of(file), CatalogWatcher.DEFAULT_QUIET_MILLIS).start();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not watch the catalog file " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Starts the ingestion of submitted reviews, configured with system properties:
+     *  - pf.reviews.file        append-only file of the submitted reviews (default reviews.log),
+     *                           read back at startup; not used when the library has a catalog store,
+     *                           the reviews are then logged to the store
+     *  - pf.reviews.bufferSize  reviews waiting to be written before submissions are refused (default 65536)
+     *  - pf.reviews.foldMillis  time between two folds of the new reviews into the catalog (default 5000)
+     *  - pf.reviews.fsync       force every written batch to the disk (default false)
+     */
+    private static ReviewIngestor createIngestor(phone_library library) {
+        Path file = library.getCatalogStore() != null ? null
+                : Path.of(System.getProperty("pf.reviews.file", "reviews.log").trim());
+        try {
+            ReviewIngestor ingestor = new ReviewIngestor(library, file,
+                    Integer.getInteger("pf.reviews.bufferSize", ReviewIngestor.DEFAULT_CAPACITY),
+                    Long.getLong("pf.reviews.foldMillis", 5000L),
+                    Boolean.parseBoolean(System.getProperty("pf.reviews.fsync", "false")));
+            METRICS.gauge("pf_review_buffer_size", "Submitted reviews waiting to be written", ingestor::buffered);
+            return ingestor;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open the review file " + file, e);
+        }
+    }
+
+    /**
+     * Writes the buffered reviews and closes the review file and the catalog store on shutdown.
+     */
+    private static void shutdown(ReviewIngestor ingestor, phone_library library) {
+        try {
+            ingestor.close();
+            if (library.getCatalogStore() != null) library.getCatalogStore().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Answers with a status and a JSON {"error": message} body. */
+    private static String error(Response res, int status, String message) {
+        res.status(status);
+        res.type("application/json");
+        return new Gson().toJson(Map.of("error", message));
+    }
+
+    /**
+     * Parses a required whole number param of a request.
+     *
+     * @param name name of the param, for the error message
+     * @param value the param as sent
+     * @return the number
+     * @throws IllegalArgumentException naming the param when it is missing or not a whole number
+     */
+    private static int intParam(String name, String value) {
+        if (value == null || value.isBlank()) throw new IllegalArgumentException(name + " is required");
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a whole number");
+        }
+    }
+
+    /**
+     * Parses an optional whole number param of a request.
+     *
+     * @param name name of the param, for the error message
+     * @param value the param as sent, null or blank when missing
+     * @param fallback value of a missing param
+     * @return the number
+     * @throws IllegalArgumentException naming the param when it is not a whole number
+     */
+    private static int intParam(String name, String value, int fallback) {
+        return value == null || value.isBlank() ? fallback : intParam(name, value);
+    }
+
+    /**
+     * Reads an optional whole number field of an item of a JSON body.
+     *
+     * @param item the item
+     * @param name name of the field
+     * @param fallback value of a missing field
+     * @param where id or position of the item, for the error message
+     * @return the number
+     * @throws IllegalArgumentException naming the field when it is not a whole number
+     */
+    private static int intField(JsonObject item, String name, int fallback, String where) {
+        if (!item.has(name)) return fallback;
+        try {
+            return item.get(name).getAsInt();
+        } catch (NumberFormatException | IllegalStateException | UnsupportedOperationException e) {
+            throw new IllegalArgumentException(name + " must be a whole number (item " + where + ")");
+        }
+    }
+
+    /**
+     * Reads a number field of an item of a JSON body.
+     *
+     * @param item the item, which has the field
+     * @param name name of the field
+     * @param where id or position of the item, for the error message
+     * @return the number
+     * @throws IllegalArgumentException naming the field when it is not a number
+     */
+    private static double numberField(JsonObject item, String name, String where) {
+        try {
+            return item.get(name).getAsDouble();
+        } catch (NumberFormatException | IllegalStateException | UnsupportedOperationException e) {
+            throw new IllegalArgumentException(name + " must be a number (item " + where + ")");
+        }
+    }
+
+    /**
+     * Parses the reviewMode query param of a review search.
+     *
+     * @param param "filter", "boost", or null/blank for filter
+     * @return true to boost the matching phones, false to keep only them
+     * @throws IllegalArgumentException for any other value
+     */
+    private static boolean parseReviewMode(String param) {
+        if (param == null || param.isBlank() || param.trim().equalsIgnoreCase("filter")) return false;
+        if (param.trim().equalsIgnoreCase("boost")) return true;
+        throw new IllegalArgumentException("reviewMode must be filter or boost");
+    }
+
+    /**
+     * Reads the reviews query param of the recommendation routes.
+     * Missing, "false" or "0" leaves the reviews out, "true" or "all" adds all of them,
+     * a number adds at most that many reviews to every phone.
+     */
+    private static int parseReviewLimit(String param) {
+        if (param == null || param.isBlank() || param.trim().equalsIgnoreCase("false")) {
+            return RecommendationJsonWriter.NO_REVIEWS;
+        }
+        String value = param.trim();
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("all")) return RecommendationJsonWriter.ALL_REVIEWS;
+        int limit = intParam("reviews", value);
+        if (limit < 0) throw new IllegalArgumentException("reviews must not be negative");
+        return limit;
+    }
+
+    /**
+     * Sizes the thread pool of the embedded Jetty server at startup. Configured with a system property:
+     *  - pf.server.maxThreads  size of the platform thread pool (default: Spark's own default)
+     */
+    private static void configureThreadPool() {
+        int maxThreads = Integer.getInteger("pf.server.maxThreads", -1);
+        if (maxThreads > 0) threadPool(maxThreads);
+        System.out.println("Server thread pool" + (maxThreads > 0 ? ": max " + maxThreads + " threads" : ": Spark default"));
     }
 }
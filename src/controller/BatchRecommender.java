@@ -0,0 +1,175 @@
+package controller;
+
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The BatchRecommender answers many user preferences with a single pass over the catalog
+ * Every preference is turned into the {@link CatalogQuery} of its usage strategy, the queries are
+ * grouped by usage code, and each catalog row is then only checked against the queries of its own
+ * usage group. A matching row is ranked on its sentiment plus the aspect weights of the query
+ * ({@link PhoneCatalog#rankScore}). The premium (slightly above budget) suggestions are collected in the same pass:
+ * the premium price windows are sorted once, and a row only visits the run of windows its price falls in,
+ * found with two binary searches, so the pass does not cost rows times preferences.
+ *
+ * The results are the same as calling the controller once per preference, but the catalog columns
+ * are read once for the whole batch instead of once per preference.
+ */
+public class BatchRecommender {
+
+    private static final int[] NO_QUERIES = new int[0];
+
+    private static final Histogram BATCH_TIME = MetricsRegistry.getDefault().histogram("pf_batch_duration_seconds",
+            "Time to answer a batch of preferences with one catalog pass", Histogram.LATENCY_BUCKETS);
+    private static final Histogram BATCH_SIZE = MetricsRegistry.getDefault().histogram("pf_batch_size",
+            "Number of preferences answered by one catalog pass", Histogram.SIZE_BUCKETS);
+
+    private final phone_library plibrary;
+    private final RecommendationController controller;
+    private final StrategyRegistry strategies = StrategyRegistry.getDefault();
+
+    /**
+     * Creates a batch recommender over a phone library.
+     *
+     * @param plibrary the library whose catalog is scanned
+     * @param controller the controller that provides the bonus suggestions
+     */
+    public BatchRecommender(phone_library plibrary, RecommendationController controller) {
+        this.plibrary = plibrary;
+        this.controller = controller;
+    }
+
+    /**
+     * Computes main, additional and bonus recommendations for every preference.
+     *
+     * @param prefs the preferences, each selecting its strategy by usage type
+     * @param ks number of main recommendations for each preference (same length as prefs)
+     * @return one result per preference, in the same order
+     */
+    public List<RecommendationResult> recommendAll(List<user_preference> prefs, int[] ks) {
+        return recommendAll(plibrary.getCatalog(), prefs, ks);
+    }
+
+    /**
+     * Computes main, additional and bonus recommendations for every preference from a given catalog,
+     * eg: the one of a snapshot the request already holds.
+     *
+     * @param catalog the catalog to scan
+     * @param prefs the preferences, each selecting its strategy by usage type
+     * @param ks number of main recommendations for each preference (same length as prefs)
+     * @return one result per preference, in the same order
+     */
+    public List<RecommendationResult> recommendAll(PhoneCatalog catalog, List<user_preference> prefs, int[] ks) {
+        if (ks.length != prefs.size()) throw new IllegalArgumentException("one k per preference is required");
+        long start = System.nanoTime();
+        int n = prefs.size();
+        int rows = catalog.size();
+
+        CatalogQuery[] queries = new CatalogQuery[n];
+        float[][] weights = new float[n][];
+        TopKSelector[] tops = new TopKSelector[n];
+        double[] floors = new double[n];
+        double[] ceilings = new double[n];
+        List<List<phone>> extras = new ArrayList<>(n);
+
+        // group the queries by usage code, queries that match nothing are left out
+        int[] groupSize = new int[CodeDictionary.USAGE.size()];
+        int anyCount = 0;
+        double scanMin = Double.POSITIVE_INFINITY;
+        double scanMax = Double.NEGATIVE_INFINITY;
+
+        for (int q = 0; q < n; q++) {
+            user_preference pref = prefs.get(q);
+            queries[q] = strategies.forUsage(pref.getUsageCode()).query(catalog, pref);
+            weights[q] = queries[q].getAspectWeights();
+            tops[q] = new TopKSelector(ks[q]);
+            floors[q] = pref.getMaxBudget();
+            ceilings[q] = pref.getMaxBudget() * phone_library.PREMIUM_FACTOR;
+            extras.add(new ArrayList<>());
+
+            scanMin = Math.min(scanMin, floors[q]);
+            scanMax = Math.max(scanMax, ceilings[q]);
+            if (queries[q].matchesNothing()) continue;
+            scanMin = Math.min(scanMin, queries[q].getMinPrice());
+            scanMax = Math.max(scanMax, queries[q].getMaxPrice());
+            if (queries[q].getUsage() == PhoneCatalog.ANY) anyCount++;
+            else if (queries[q].getUsage() < groupSize.length) groupSize[queries[q].getUsage()]++;
+        }
+
+        int[][] groups = new int[groupSize.length][];
+        for (int u = 0; u < groups.length; u++) groups[u] = new int[groupSize[u]];
+        int[] anyGroup = new int[anyCount];
+        Arrays.fill(groupSize, 0);
+        anyCount = 0;
+        for (int q = 0; q < n; q++) {
+            if (queries[q].matchesNothing()) continue;
+            int u = queries[q].getUsage();
+            if (u == PhoneCatalog.ANY) anyGroup[anyCount++] = q;
+            else if (u < groups.length) groups[u][groupSize[u]++] = q;
+        }
+
+        // the premium windows sorted by floor; a ceiling is the floor times PREMIUM_FACTOR, so they are sorted
+        // by ceiling as well and the windows holding a price are one run of them. Empty windows are left out.
+        int[] windows = IntStream.range(0, n).filter(q -> ceilings[q] > floors[q]).boxed()
+                .sorted(Comparator.comparingDouble(q -> floors[q])).mapToInt(Integer::intValue).toArray();
+        double[] windowFloors = new double[windows.length];
+        double[] windowCeilings = new double[windows.length];
+        for (int w = 0; w < windows.length; w++) {
+            windowFloors[w] = floors[windows[w]];
+            windowCeilings[w] = ceilings[windows[w]];
+        }
+
+        // single pass over the catalog
+        for (int row = 0; row < rows; row++) {
+            double price = catalog.price(row);
+            if (price < scanMin || price > scanMax) continue;
+
+            int usage = catalog.usage(row);
+            // a usage type added after the groups were built has no queries
+            for (int q : usage < groups.length ? groups[usage] : NO_QUERIES) {
+                if (catalog.matches(row, queries[q])) tops[q].offer(catalog.rankScore(row, weights[q]), row, catalog.phoneId(row));
+            }
+            for (int q : anyGroup) {
+                if (catalog.matches(row, queries[q])) tops[q].offer(catalog.rankScore(row, weights[q]), row, catalog.phoneId(row));
+            }
+            // windows from the first whose ceiling is not below the price up to the first whose floor is not below it
+            for (int w = firstAtLeast(windowCeilings, price), end = firstAtLeast(windowFloors, price); w < end; w++) {
+                extras.get(windows[w]).add(catalog.phoneAt(row));
+            }
+        }
+
+        List<RecommendationResult> results = new ArrayList<>(n);
+        for (int q = 0; q < n; q++) {
+            List<phone> main = tops[q].toPhones(catalog);
+            // same fallback as phone_library.getAdditionalRecommendation: the strategy's top k
+            List<phone> additional = extras.get(q).isEmpty() ? main : extras.get(q);
+            List<String> bonus = controller.getBonusSuggestions(prefs.get(q));
+            RecommendationController.MAIN_SIZE.observe(main.size());
+            RecommendationController.ADDITIONAL_SIZE.observe(additional.size());
+            RecommendationController.BONUS_SIZE.observe(bonus.size());
+            results.add(new RecommendationResult(main, additional, bonus));
+        }
+        BATCH_TIME.observeNanos(System.nanoTime() - start);
+        BATCH_SIZE.observe(n);
+        return results;
+    }
+
+    /** Index of the first value that is not below the key in an ascending array, its length if none. */
+    private static int firstAtLeast(double[] values, double key) {
+        int lo = 0;
+        int hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,94 @@
+package controller;
+
+import model.CatalogSnapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CatalogWatcher reloads the phone library when its CSV file changes on disk
+ * It watches the folder of the file on a daemon thread, waits until the file has been quiet for a
+ * short time (editors and copy tools write a file in several steps) and then calls
+ * {@link phone_library#reload(String)}, which builds the new version on the side and swaps it in.
+ * Requests keep being answered from the previous version while the file is read, and a file
+ * that cannot be parsed (eg: caught half written) leaves the previous version in place.
+ */
+public class CatalogWatcher implements Closeable {
+
+    /** Time the file must be left alone before it is reloaded. */
+    public static final long DEFAULT_QUIET_MILLIS = 250;
+
+    private final phone_library library;
+    private final Path file;
+    private final long quietMillis;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    /**
+     * Creates a watcher, call {@link #start()} to begin watching.
+     *
+     * @param library the library to reload
+     * @param file the CSV file to watch
+     * @param quietMillis time without changes before the file is reloaded
+     * @throws IOException if the folder of the file cannot be watched
+     */
+    public CatalogWatcher(phone_library library, Path file, long quietMillis) throws IOException {
+        this.library = library;
+        this.file = file.toAbsolutePath().normalize();
+        this.quietMillis = quietMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "catalog-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /** Starts the watching thread. */
+    public void start() {
+        thread.start();
+    }
+
+    /** Stops watching. */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                if (!touchesFile(watchService.take())) continue;
+                // wait until a whole quiet period passes without events
+                WatchKey more;
+                while ((more = watchService.poll(quietMillis, TimeUnit.MILLISECONDS)) != null) touchesFile(more);
+
+                int reused = library.reload(file.toString());
+                if (reused >= 0) {
+                    CatalogSnapshot snapshot = library.getSnapshot();
+                    System.out.println("Catalog reloaded from " + file + ": version " + snapshot.getVersion()
+                            + ", " + snapshot.size() + " phones, " + reused + " unchanged");
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    /** Consumes the events of a key and tells whether one of them is about the watched file. */
+    private boolean touchesFile(WatchKey key) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path name && file.getFileName().equals(name)) touched = true;
+        }
+        key.reset();
+        return touched;
+    }
+}
@@ -1,6 +1,5 @@
 package controller;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import model.*;
 
@@ -8,42 +7,33 @@ import model.*;
 /**
  * The Entertainment class provides  phone recommendations for user
  * Who have "entertainment" usage preference
- * It uses the java streams to :
+ * It scans the phone catalog to :
  * Filter phones with usage = "entertainment"
  * match the user's budget range
  * match the OS Preference
- * Finally it helps in sorting the mobiles based on the highest sentiment score(ie the review), returns the top 3 results
+ * Finally it helps in selecting the mobiles based on the highest sentiment score(ie the review), and the top k results (3 by default) are kept
+ * What the reviews say about single aspects is weighted in as well: the screen and the audio count extra, battery a little
  */
 public class Entertainment implements RecommendationStrategy {
 
+    /** Sentiment points per aspect feature, the aspects of the phone that matter most to entertainment users. */
+    private static final float[] ASPECT_WEIGHTS = Aspect.weights(Map.of(Aspect.SCREEN, 15.0, Aspect.AUDIO, 15.0, Aspect.BATTERY, 10.0));
+
+    private static final int ENTERTAINMENT = CodeDictionary.USAGE.intern("entertainment");
+
     /**
-     /**
-     * Recommends suitable phones for entertainment users based on their budget and OS preference
-     * @param phones the full list of available mobiles
+     * Builds the catalog filter that recommends suitable phones for entertainment users based on their budget and OS preference
+     * @param catalog the column based catalog of all available mobiles
      * @param pref the users chosen preferences such as budget and OS
-     * @return a list of up to 3 phones that best match the user's needs
+     * @return the usage, OS and budget filter for the catalog scan
      */
-
-
     @Override
-    public List<phone> recommend(List<phone> phones, user_preference pref) {
-        return phones.stream()
-                .filter(p -> p.getUsage().equalsIgnoreCase("entertainment"))
-                .filter(p -> p.getPrice() >= pref.getMinBudget())
-                .filter(p -> p.getPrice() <= pref.getMaxBudget())
-                .filter(p -> pref.getOsPreference().equalsIgnoreCase("no preference")
-                        || p.getOs().equalsIgnoreCase(pref.getOsPreference()))
-                .sorted(Comparator.comparing(phone::getSentiment).reversed())
-                .limit(3)
-                .collect(Collectors.toList());
-    }
-
-
+    public CatalogQuery query(PhoneCatalog catalog, user_preference pref) {
+        int usage = ENTERTAINMENT;
+        int os = pref.getOsCode();
+        double min = pref.getMinBudget();
+        double max = pref.getMaxBudget();
 
+        return new CatalogQuery(usage, os, min, max, ASPECT_WEIGHTS);
+    }
 }
-
-
-
-/**
- * In this particular class i use te java stream interface where makes the list into a sequence of elements and consist of various functionalities , make the process of searching easier.
- */
\ No newline at end of file
@@ -0,0 +1,78 @@
+package controller;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * The PageCursor marks where a page of recommendations ended
+ * It holds everything needed to continue, so the server keeps no paging state:
+ * the catalog version the page was read from, the sort key of the last phone (its rank score and id)
+ * and a fingerprint of the query, so a cursor cannot be used with other search parameters.
+ *
+ * Clients see it as an opaque URL safe string.
+ */
+public final class PageCursor {
+
+    private static final byte FORMAT = 1;
+    private static final int LENGTH = 1 + 8 + 8 + 4 + 4;
+
+    private final long version;
+    private final double score;
+    private final int id;
+    private final int query;
+
+    /**
+     * Creates a cursor.
+     *
+     * @param version catalog version of the page
+     * @param score rank score of the last phone of the page
+     * @param id id of the last phone of the page
+     * @param query fingerprint of the query
+     */
+    public PageCursor(long version, double score, int id, int query) {
+        this.version = version;
+        this.score = score;
+        this.id = id;
+        this.query = query;
+    }
+
+    /** @return catalog version the page was read from */
+    public long getVersion() { return version; }
+
+    /** @return rank score of the last phone of the page */
+    public double getScore() { return score; }
+
+    /** @return id of the last phone of the page */
+    public int getId() { return id; }
+
+    /** @return fingerprint of the query the cursor belongs to */
+    public int getQuery() { return query; }
+
+    /**
+     * @return the cursor as an opaque URL safe string
+     */
+    public String encode() {
+        ByteBuffer b = ByteBuffer.allocate(LENGTH);
+        b.put(FORMAT).putLong(version).putDouble(score).putInt(id).putInt(query);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(b.array());
+    }
+
+    /**
+     * Reads a cursor returned by {@link #encode()}.
+     *
+     * @param text the cursor string
+     * @return the cursor
+     * @throws IllegalArgumentException if the string is not a cursor
+     */
+    public static PageCursor decode(String text) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(text.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (bytes.length != LENGTH || bytes[0] != FORMAT) throw new IllegalArgumentException("Invalid cursor");
+        ByteBuffer b = ByteBuffer.wrap(bytes, 1, LENGTH - 1);
+        return new PageCursor(b.getLong(), b.getDouble(), b.getInt(), b.getInt());
+    }
+}
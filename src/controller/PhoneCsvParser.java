@@ -0,0 +1,417 @@
+package controller;
+
+import model.ReviewStore;
+import model.phone;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * The PhoneCsvParser reads the phone CSV (Mobile_name,Brand,Price,OS,Usage,Reviews,Purchase_link,Sentiment_Score)
+ * straight from the bytes of a channel, as a faster alternative to the OpenCSV loader
+ * It :
+ * Fills one reusable byte buffer from the channel and finds the rows and fields by their offsets in a single pass
+ * Parses the price and sentiment from the bytes, without building a String first
+ * Hands the Reviews cell to the {@link ReviewStore} as bytes, where it is split on "||" in place
+ * Reuses one String for text values that repeat (brands, OS, usage types, links, names)
+ *
+ * Fields follow RFC 4180: they may be quoted, a quote inside a quoted field is written twice,
+ * and quoted fields may hold commas and line breaks. Rows end with \n or \r\n.
+ * The columns are found by their header names, so their order does not matter.
+ *
+ * For a reload the caller can pass a lookup of the phones it already has by row hash: a row whose
+ * bytes hash to a known phone is not parsed at all and the known phone is passed on instead.
+ * A parser keeps its buffers between calls, so one instance is used by one thread at a time.
+ */
+public class PhoneCsvParser {
+
+    /** Size of the read buffer, it grows if a single row does not fit. */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private static final String[] COLUMNS =
+            {"Mobile_name", "Brand", "Price", "OS", "Usage", "Reviews", "Purchase_link", "Sentiment_Score"};
+    private static final int NAME = 0, BRAND = 1, PRICE = 2, OS = 3, USAGE = 4, REVIEWS = 5, LINK = 6, SENTIMENT = 7;
+
+    // states of the byte scanner
+    private static final int FIELD_START = 0, UNQUOTED = 1, QUOTED = 2, AFTER_QUOTE = 3;
+
+    /** Exact powers of ten, any of them divides an integer below 2^53 with a single correct rounding. */
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private final ReviewStore reviewStore;
+    private final StringTable strings = new StringTable();
+
+    private byte[] buf;
+    private ByteBuffer window;
+
+    // per row field offsets, reused for every row
+    private int[] fieldStart = new int[COLUMNS.length];
+    private int[] fieldEnd = new int[COLUMNS.length];
+    private boolean[] fieldEscaped = new boolean[COLUMNS.length];
+    private byte[] scratch = new byte[256];
+
+    private int[] column; // field index of each of COLUMNS, null until the header is read
+    private LongFunction<phone> reuse; // known phones by row hash, null when every row is parsed
+    private int fieldCount;
+    private long line; // rows ended so far, the header included
+    private int rows;
+
+    /**
+     * Creates a parser that stores the reviews in the given store.
+     *
+     * @param reviewStore store receiving the reviews of every phone
+     */
+    public PhoneCsvParser(ReviewStore reviewStore) {
+        this(reviewStore, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a parser with a specific initial buffer size.
+     *
+     * @param reviewStore store receiving the reviews of every phone
+     * @param bufferSize initial size of the read buffer in bytes
+     */
+    public PhoneCsvParser(ReviewStore reviewStore, int bufferSize) {
+        this.reviewStore = reviewStore;
+        this.buf = new byte[Math.max(bufferSize, 16)];
+        this.window = ByteBuffer.wrap(buf);
+    }
+
+    /**
+     * Reads every row of the channel and passes the phones to the sink in file order.
+     * The channel is not closed.
+     *
+     * @param in channel with the CSV bytes (UTF-8)
+     * @param sink receives each parsed phone
+     * @return number of phones read
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if the header misses a column or a row is malformed
+     */
+    public int parse(ReadableByteChannel in, Consumer<phone> sink) throws IOException {
+        return parse(in, sink, null);
+    }
+
+    /**
+     * Reads every row of the channel like {@link #parse(ReadableByteChannel, Consumer)}, but rows
+     * that were seen before are not parsed again. Every row is hashed (see {@link #rowHash}) and
+     * looked up first; when the lookup returns a phone, that phone goes to the sink as it is.
+     * The phones created for the other rows carry their row hash ({@link phone#getSourceHash()}).
+     *
+     * @param in channel with the CSV bytes (UTF-8)
+     * @param sink receives each parsed or reused phone
+     * @param reuse returns the phone already read from a row with this hash, or null; null parses every row
+     * @return number of phones read, the reused ones included
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if the header misses a column or a row is malformed
+     */
+    public int parse(ReadableByteChannel in, Consumer<phone> sink, LongFunction<phone> reuse) throws IOException {
+        this.reuse = reuse;
+        column = null;
+        fieldCount = 0;
+        line = 0;
+        rows = 0;
+
+        int limit = 0;      // buf[0, limit) holds data
+        int rowStart = 0;   // start of the row being read
+        int pos = 0;        // next byte to read
+        int start = 0;      // start of the current field
+        int quoteEnd = 0;   // closing quote of the current quoted field
+        int state = FIELD_START;
+        boolean escaped = false;
+        boolean eof = false;
+
+        // one pass over the bytes: the rows and their fields are found together,
+        // the inner loops only look for the one or two bytes that can end the current state
+        while (true) {
+            while (pos < limit) {
+                if (state == FIELD_START) {
+                    start = pos;
+                    escaped = false;
+                    if (buf[pos] == '"') {
+                        start = ++pos;
+                        state = QUOTED;
+                    } else {
+                        state = UNQUOTED;
+                    }
+                } else if (state == UNQUOTED) {
+                    int p = pos;
+                    while (p < limit && buf[p] != ',' && buf[p] != '\n') p++;
+                    pos = p;
+                    if (p == limit) break;
+                    if (buf[p] == ',') {
+                        endField(start, p, false);
+                    } else {
+                        endField(start, p > start && buf[p - 1] == '\r' ? p - 1 : p, false);
+                        endRow(sink, rowStart, p);
+                        rowStart = p + 1;
+                    }
+                    state = FIELD_START;
+                    pos = p + 1;
+                } else if (state == QUOTED) {
+                    int p = pos;
+                    while (p < limit && buf[p] != '"') p++;
+                    pos = p;
+                    if (p == limit) break;
+                    quoteEnd = p;
+                    state = AFTER_QUOTE;
+                    pos = p + 1;
+                } else {
+                    // the quote at quoteEnd closes the field, unless it is doubled
+                    byte b = buf[pos];
+                    if (b == '"') {
+                        escaped = true;
+                        state = QUOTED;
+                    } else if (b == ',') {
+                        endField(start, quoteEnd, escaped);
+                        state = FIELD_START;
+                    } else if (b == '\n') {
+                        endField(start, quoteEnd, escaped);
+                        endRow(sink, rowStart, pos);
+                        rowStart = pos + 1;
+                        state = FIELD_START;
+                    } else if (b != '\r') {
+                        throw new IllegalArgumentException("Row " + (line + 1) + ": unexpected character after a quoted field");
+                    }
+                    pos++;
+                }
+            }
+            if (eof) {
+                if (state == QUOTED) throw new IllegalArgumentException("Row " + (line + 1) + ": unclosed quote");
+                if (state == UNQUOTED) endField(start, limit > start && buf[limit - 1] == '\r' ? limit - 1 : limit, false);
+                else if (state == AFTER_QUOTE) endField(start, quoteEnd, escaped);
+                else if (fieldCount > 0) endField(limit, limit, false); // the row ended with a comma
+                if (fieldCount > 0) endRow(sink, rowStart, limit);
+                return rows;
+            }
+            // keep the unfinished row, move it to the front and read more behind it
+            if (rowStart > 0) {
+                int shift = rowStart;
+                System.arraycopy(buf, shift, buf, 0, limit - shift);
+                for (int f = Math.min(fieldCount, fieldStart.length) - 1; f >= 0; f--) {
+                    fieldStart[f] -= shift;
+                    fieldEnd[f] -= shift;
+                }
+                start -= shift;
+                quoteEnd -= shift;
+                pos -= shift;
+                limit -= shift;
+                rowStart = 0;
+            }
+            if (limit == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+                window = ByteBuffer.wrap(buf);
+            }
+            window.limit(buf.length).position(limit);
+            int n = in.read(window);
+            if (n < 0) eof = true;
+            else limit += n;
+        }
+    }
+
+    // --------------------- Rows ---------------------
+
+    /** Records the field buf[start, end) of the current row. */
+    private void endField(int start, int end, boolean escaped) {
+        if (fieldCount == fieldStart.length) {
+            if (column != null) {
+                fieldCount++; // columns after the known ones are ignored
+                return;
+            }
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+            fieldEscaped = Arrays.copyOf(fieldEscaped, fieldCount * 2);
+        }
+        if (fieldCount < fieldStart.length) {
+            fieldStart[fieldCount] = start;
+            fieldEnd[fieldCount] = end;
+            fieldEscaped[fieldCount] = escaped;
+        }
+        fieldCount++;
+    }
+
+    /** Turns the recorded fields of the row buf[rowStart, rowEnd) into the header or a phone. */
+    private void endRow(Consumer<phone> sink, int rowStart, int rowEnd) {
+        int count = fieldCount;
+        fieldCount = 0;
+        line++;
+        if (count == 1 && fieldStart[0] == fieldEnd[0]) return; // blank line
+
+        if (column == null) {
+            readHeader(count);
+            return;
+        }
+        if (count < fieldStart.length) {
+            throw new IllegalArgumentException("Row " + line + ": expected " + fieldStart.length
+                    + " fields but found " + count);
+        }
+
+        long hash = 0;
+        if (reuse != null) {
+            hash = rowHash(buf, rowStart, rowEnd);
+            phone known = reuse.apply(hash);
+            if (known != null) {
+                rows++;
+                sink.accept(known);
+                return;
+            }
+        }
+
+        int reviewHandle = reviews(column[REVIEWS]);
+        phone p = new phone(text(column[NAME]), text(column[BRAND]), number(column[PRICE]),
+                text(column[OS]), text(column[USAGE]), text(column[LINK]),
+                reviewStore, reviewHandle, number(column[SENTIMENT]), reviewStore.count(reviewHandle));
+        p.setSourceHash(hash);
+        rows++;
+        sink.accept(p);
+    }
+
+    /**
+     * Hashes the raw bytes of a row (64 bit FNV-1a), so an unchanged row is recognized on a reload.
+     *
+     * @param bytes buffer holding the row
+     * @param from index of the first byte of the row
+     * @param to index after the last byte of the row, the line break excluded
+     * @return the hash, never 0 (0 stands for "no hash")
+     */
+    static long rowHash(byte[] bytes, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    private void readHeader(int count) {
+        column = new int[COLUMNS.length];
+        Arrays.fill(column, -1);
+        for (int f = 0; f < count; f++) {
+            String name = new String(buf, fieldStart[f], fieldEnd[f] - fieldStart[f], StandardCharsets.UTF_8)
+                    .replace("\uFEFF", "").trim();
+            for (int c = 0; c < COLUMNS.length; c++) {
+                if (COLUMNS[c].equalsIgnoreCase(name) && column[c] < 0) column[c] = f;
+            }
+        }
+        int last = 0;
+        for (int c = 0; c < COLUMNS.length; c++) {
+            if (column[c] < 0) throw new IllegalArgumentException("Missing CSV column: " + COLUMNS[c]);
+            last = Math.max(last, column[c]);
+        }
+        // rows only need to be split up to the last known column
+        fieldStart = new int[last + 1];
+        fieldEnd = new int[last + 1];
+        fieldEscaped = new boolean[last + 1];
+    }
+
+    // --------------------- Fields ---------------------
+
+    private String text(int f) {
+        if (fieldEscaped[f]) {
+            int length = unescape(f);
+            return strings.get(scratch, 0, length);
+        }
+        return strings.get(buf, fieldStart[f], fieldEnd[f]);
+    }
+
+    private int reviews(int f) {
+        if (fieldEscaped[f]) return reviewStore.addRaw(scratch, 0, unescape(f));
+        return reviewStore.addRaw(buf, fieldStart[f], fieldEnd[f]);
+    }
+
+    /** Copies the field into the scratch buffer with doubled quotes made single, returns the length. */
+    private int unescape(int f) {
+        int from = fieldStart[f], to = fieldEnd[f];
+        if (scratch.length < to - from) scratch = new byte[Math.max(scratch.length * 2, to - from)];
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            scratch[n++] = buf[i];
+            if (buf[i] == '"') i++;
+        }
+        return n;
+    }
+
+    /**
+     * Parses a decimal number from the field bytes. Plain numbers with up to 15 significant digits
+     * are exact as a long and need one division; anything else (exponents, long fractions,
+     * spaces) goes through Double.parseDouble.
+     */
+    private double number(int f) {
+        int i = fieldStart[f], to = fieldEnd[f];
+        if (fieldEscaped[f] || i == to) return slowNumber(f);
+        boolean negative = false;
+        if (buf[i] == '-' || buf[i] == '+') {
+            negative = buf[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int fraction = 0;
+        boolean dot = false;
+        boolean digits = false;
+        for (; i < to; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                digits = true;
+                if (mantissa != 0 || b != '0') significant++;
+                if (significant > 15) return slowNumber(f);
+                mantissa = mantissa * 10 + (b - '0');
+                if (dot) fraction++;
+            } else if (b == '.' && !dot) {
+                dot = true;
+            } else {
+                return slowNumber(f);
+            }
+        }
+        if (!digits || fraction >= POW10.length) return slowNumber(f);
+        double value = fraction == 0 ? mantissa : mantissa / POW10[fraction];
+        return negative ? -value : value;
+    }
+
+    private double slowNumber(int f) {
+        String value = fieldEscaped[f]
+                ? new String(scratch, 0, unescape(f), StandardCharsets.UTF_8)
+                : new String(buf, fieldStart[f], fieldEnd[f] - fieldStart[f], StandardCharsets.UTF_8);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Row " + line + ": not a number: " + value);
+        }
+    }
+
+    /**
+     * Small byte keyed string cache, so a value that repeats in many rows is decoded once and shared.
+     * It stops caching once it is half full; new values are then decoded without being kept.
+     */
+    private static final class StringTable {
+        private static final int SLOTS = 1 << 14;
+        private final byte[][] keys = new byte[SLOTS][];
+        private final String[] values = new String[SLOTS];
+        private int size;
+
+        String get(byte[] bytes, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) hash = 31 * hash + bytes[i];
+            int slot = (hash ^ (hash >>> 16)) & (SLOTS - 1);
+            while (keys[slot] != null) {
+                if (Arrays.equals(keys[slot], 0, keys[slot].length, bytes, from, to)) return values[slot];
+                slot = (slot + 1) & (SLOTS - 1);
+            }
+            String value = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+            if (size < SLOTS / 2) {
+                keys[slot] = Arrays.copyOfRange(bytes, from, to);
+                values[slot] = value;
+                size++;
+            }
+            return value;
+        }
+    }
+}
@@ -1,50 +1,44 @@
 package controller;
 
+import model.Aspect;
+import model.CatalogQuery;
+import model.CodeDictionary;
+import model.PhoneCatalog;
 import model.phone;
 import model.user_preference;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+
 /**
  * The productivity  class provides  phone recommendations for user
  * Who have "productivity" usage preference
- * It uses the java streams to :
+ * It scans the phone catalog to :
  * Filter phones with usage = "productivity"
  * match the user's budget range
  * match the OS Preference
- * Finally it helps in sorting the mobiles based on the highest sentiment score(ie the review), returns the top 3 results
+ * Finally it helps in selecting the mobiles based on the highest sentiment score(ie the review), and the top k results (3 by default) are kept
+ * What the reviews say about single aspects is weighted in as well: battery counts extra, performance and charging a little
  */
 public class Productivity implements  RecommendationStrategy {
 
+    /** Sentiment points per aspect feature, the aspects of the phone that matter most to productivity users. */
+    private static final float[] ASPECT_WEIGHTS = Aspect.weights(Map.of(Aspect.BATTERY, 15.0, Aspect.PERFORMANCE, 10.0, Aspect.CHARGING, 10.0));
+
+    private static final int PRODUCTIVITY = CodeDictionary.USAGE.intern("productivity");
+
     /**
-     /**
-     * Recommends suitable phones for productivity users based on their budget and OS preference
-     * @param phones the full list of available mobiles
+     * Builds the catalog filter that recommends suitable phones for productivity users based on their budget and OS preference
+     * @param catalog the column based catalog of all available mobiles
      * @param pref the users chosen preferences such as budget and OS
-     * @return a list of up to 3 phones that best match the user's needs
+     * @return the usage, OS and budget filter for the catalog scan
      */
-
-
     @Override
-    public List<phone> recommend(List<phone> phones, user_preference pref) {
-        return phones.stream()
-                .filter(p -> p.getUsage().equalsIgnoreCase("productivity"))
-                .filter(p -> p.getPrice() >= pref.getMinBudget())
-                .filter(p -> p.getPrice() <= pref.getMaxBudget())
-                .filter(p -> pref.getOsPreference().equalsIgnoreCase("no preference")
-                        || p.getOs().equalsIgnoreCase(pref.getOsPreference()))
-                .sorted(Comparator.comparing(phone::getSentiment).reversed())
-                .limit(3)
-                .collect(Collectors.toList());
-    }
-
+    public CatalogQuery query(PhoneCatalog catalog, user_preference pref) {
+        int usage = PRODUCTIVITY;
+        int os = pref.getOsCode();
+        double min = pref.getMinBudget();
+        double max = pref.getMaxBudget();
 
+        return new CatalogQuery(usage, os, min, max, ASPECT_WEIGHTS);
+    }
 }
-
-
-
-/**
- * In this particular class i use te java stream interface where makes the list into a sequence of elements and consist of various functionalities , make the process of searching easier.
- */
\ No newline at end of file
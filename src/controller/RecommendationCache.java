@@ -0,0 +1,323 @@
+package controller;
+
+import model.RecommendationResult;
+import model.user_preference;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The RecommendationCache keeps recent recommendation results so that repeated
+ * preferences (same usage, OS and budget) are answered without scanning the catalog again
+ * It :
+ * Normalizes the preference into a {@link Key} (lower case usage and OS, budgets snapped inwards to a step)
+ * Evicts the least recently used entries once the size limit is reached
+ * Optionally expires entries after a time to live
+ * Drops every entry when the phone library version moves on (new phone added or CSV reloaded)
+ * Counts hits, misses, evictions, expirations and invalidations so the cache can be sized
+ *
+ * The entries are kept in a {@link ConcurrentHashMap}, so a lookup takes no lock: a hit only stamps the
+ * entry with the time it was used. When a put takes the cache over its size, one thread evicts the least
+ * recently used sixteenth of the entries by those stamps, so a full cache does not sort its entries on
+ * every miss.
+ */
+public class RecommendationCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final double budgetStep;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries largest number of results kept, at least 1
+     * @param ttlMillis how long a result stays valid, 0 or less for no expiry
+     * @param budgetStep budgets are snapped to multiples of this value (min up, max down), 0 or less keeps them as they are
+     */
+    public RecommendationCache(int maxEntries, long ttlMillis, double budgetStep) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be at least 1");
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1_000_000L : 0;
+        this.budgetStep = budgetStep;
+    }
+
+    /**
+     * Builds the normalized key of a preference. The usage and OS are lower cased and trimmed,
+     * an empty OS becomes "no preference", and the budgets are narrowed to the budget step, so the
+     * result of a key never holds a phone outside the budget asked for. A budget narrower than one
+     * step is kept as it is.
+     *
+     * @param pref the user's preference
+     * @param k number of main recommendations requested
+     * @return the cache key
+     */
+    public Key keyOf(user_preference pref, int k) {
+        String usage = pref.getUsage() == null ? "" : pref.getUsage().trim().toLowerCase(Locale.ROOT);
+        String os = pref.getOsPreference() == null ? "" : pref.getOsPreference().trim().toLowerCase(Locale.ROOT);
+        if (os.isEmpty()) os = "no preference";
+        double min = pref.getMinBudget();
+        double max = pref.getMaxBudget();
+        if (budgetStep > 0) {
+            double snappedMin = Math.ceil(min / budgetStep) * budgetStep;
+            double snappedMax = Math.floor(max / budgetStep) * budgetStep;
+            if (snappedMin <= snappedMax) {
+                min = snappedMin;
+                max = snappedMax;
+            }
+        }
+        return new Key(usage, os, min, max, k);
+    }
+
+    /**
+     * Returns the cached result for the key, or computes and stores it with the loader.
+     * The loader runs in the calling thread without any lock, so a slow computation never blocks other keys.
+     *
+     * @param key normalized key, see {@link #keyOf}
+     * @param libraryVersion current version of the phone library; a newer version than the
+     *                       cached entries were built with drops all of them
+     * @param loader computes the result on a miss
+     * @return the cached or freshly computed result
+     */
+    public RecommendationResult get(Key key, long libraryVersion, Supplier<RecommendationResult> loader) {
+        RecommendationResult cached = getIfPresent(key, libraryVersion);
+        if (cached != null) return cached;
+        RecommendationResult result = loader.get();
+        put(key, libraryVersion, result);
+        return result;
+    }
+
+    /**
+     * Returns the cached result for the key without computing it. Counts a hit or a miss.
+     *
+     * @param key normalized key, see {@link #keyOf}
+     * @param libraryVersion current version of the phone library
+     * @return the cached result, or null on a miss
+     */
+    public RecommendationResult getIfPresent(Key key, long libraryVersion) {
+        long now = System.nanoTime();
+        checkVersion(libraryVersion);
+        Entry e = entries.get(key);
+        if (e != null && e.version == libraryVersion) {
+            if (ttlNanos == 0 || now - e.createdAt < ttlNanos) {
+                e.lastUsed = now;
+                hits.increment();
+                return e.result;
+            }
+            if (entries.remove(key, e)) expirations.increment();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores a result computed for the given library version. It is ignored if the library
+     * has changed in the meantime, so a result of old data is never cached.
+     *
+     * @param key normalized key, see {@link #keyOf}
+     * @param libraryVersion library version the result was computed with
+     * @param result the result to cache
+     */
+    public void put(Key key, long libraryVersion, RecommendationResult result) {
+        checkVersion(libraryVersion);
+        if (libraryVersion != version.get()) return;
+        entries.put(key, new Entry(result, System.nanoTime(), libraryVersion));
+        evict();
+    }
+
+    /**
+     * Drops all entries when a newer library version is seen. An entry of an older version that is put
+     * while they are dropped is never returned, lookups compare the version of the entry.
+     */
+    private void checkVersion(long libraryVersion) {
+        long seen = version.get();
+        if (libraryVersion > seen && version.compareAndSet(seen, libraryVersion)) invalidateAll();
+    }
+
+    /**
+     * Removes the least recently used entries, a sixteenth of the limit more than needed. When another
+     * thread is evicting it is left to it: that thread checks the size again once it is done.
+     */
+    private void evict() {
+        while (entries.size() > maxEntries && evicting.compareAndSet(false, true)) {
+            try {
+                int excess = entries.size() - maxEntries;
+                if (excess <= 0) return;
+                // the stamps are read once, hits go on stamping the entries while they are sorted
+                List<Used> all = new ArrayList<>(entries.size());
+                entries.forEach((key, e) -> all.add(new Used(key, e, e.lastUsed)));
+                all.sort(Comparator.comparingLong(u -> u.lastUsed));
+                int count = Math.min(all.size(), excess + maxEntries / 16);
+                for (int i = 0; i < count; i++) {
+                    if (entries.remove(all.get(i).key, all.get(i).entry)) evictions.increment();
+                }
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Drops every cached result.
+     */
+    public void invalidateAll() {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            it.next();
+            it.remove();
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * Removes expired entries. Expired entries are also dropped lazily when they are looked up.
+     */
+    public void purgeExpired() {
+        if (ttlNanos == 0) return;
+        long now = System.nanoTime();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().createdAt >= ttlNanos) {
+                it.remove();
+                expirations.increment();
+            }
+        }
+    }
+
+    /** @return number of cached results */
+    public int size() { return entries.size(); }
+
+    /**
+     * Returns the cache counters.
+     *
+     * @return map with size, capacity, hits, misses, evictions, expirations and invalidations
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) size());
+        stats.put("capacity", (long) maxEntries);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    /** @return budget step used when normalizing keys */
+    public double getBudgetStep() { return budgetStep; }
+
+    private static class Entry {
+        final RecommendationResult result;
+        final long createdAt;
+        final long version;
+        volatile long lastUsed;
+
+        Entry(RecommendationResult result, long createdAt, long version) {
+            this.result = result;
+            this.createdAt = createdAt;
+            this.version = version;
+            this.lastUsed = createdAt;
+        }
+    }
+
+    /** An entry with the time it was last used, as read when an eviction started. */
+    private static final class Used {
+        final Key key;
+        final Entry entry;
+        final long lastUsed;
+
+        Used(Key key, Entry entry, long lastUsed) {
+            this.key = key;
+            this.entry = entry;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * Normalized preference used as the cache key. The budgets of the key are the ones
+     * the result is computed with, so a cached result is exact for its key.
+     */
+    public static final class Key {
+        private final String usage;
+        private final String os;
+        private final double minBudget;
+        private final double maxBudget;
+        private final int k;
+
+        Key(String usage, String os, double minBudget, double maxBudget, int k) {
+            this.usage = usage;
+            this.os = os;
+            this.minBudget = minBudget;
+            this.maxBudget = maxBudget;
+            this.k = k;
+        }
+
+        /** @return lower case usage type */
+        public String getUsage() { return usage; }
+
+        /** @return lower case OS preference, "no preference" when any OS is fine */
+        public String getOs() { return os; }
+
+        /** @return the snapped minimum budget */
+        public double getMinBudget() { return minBudget; }
+
+        /** @return the snapped maximum budget */
+        public double getMaxBudget() { return maxBudget; }
+
+        /** @return number of main recommendations */
+        public int getK() { return k; }
+
+        /**
+         * Returns a preference with the normalized budgets of this key and the given display values.
+         *
+         * @param usage usage type to put into the preference
+         * @param os OS preference to put into the preference
+         * @return preference to compute the result for this key with
+         */
+        public user_preference toPreference(String usage, String os) {
+            return new user_preference(usage, minBudget, maxBudget, os);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return k == other.k
+                    && Double.compare(minBudget, other.minBudget) == 0
+                    && Double.compare(maxBudget, other.maxBudget) == 0
+                    && usage.equals(other.usage)
+                    && os.equals(other.os);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(usage, os, minBudget, maxBudget, k);
+        }
+
+        @Override
+        public String toString() {
+            return usage + "|" + minBudget + "-" + maxBudget + "|" + os + "|k=" + k;
+        }
+    }
+}
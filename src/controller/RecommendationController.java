@@ -1,5 +1,7 @@
 package controller;
 
+import metrics.Histogram;
+import metrics.MetricsRegistry;
 import model.*;
 import com.opencsv.CSVReader;
 import java.io.InputStream;
@@ -9,14 +11,33 @@ import java.util.*;
 /**
  * The RecomendationController class manages the entire recomendation process
  * It : Loads the additional bonus phone suggestion from the CSV file
- * Applies the selected recomendation strategy (strategy pattern)
+ * Applies the recomendation strategy of the user's usage type (strategy pattern)
  * Provides  main , bonus, and additional premium recomendation
+ *
+ * The controller keeps no per request state: the strategy is looked up in the
+ * {@link StrategyRegistry} on every call, so one controller can be shared by all server threads.
+ *
+ * The time of the strategies (by usage type), of the additional recommendations and of the bonus
+ * lookup, and the sizes of the returned lists, are recorded in the {@link MetricsRegistry}.
  */
 public class RecommendationController {
 
-    private RecommendationStrategy strategy;
-    private phone_library plibrary;
-    private Map<String, List<String>> bonusMap = new HashMap<>();
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final Histogram STRATEGY_TIME = METRICS.histogram("pf_strategy_duration_seconds",
+            "Time of the main recommendation strategy, by usage type", Histogram.LATENCY_BUCKETS, "usage");
+    private static final Histogram ADDITIONAL_TIME = METRICS.histogram("pf_additional_duration_seconds",
+            "Time of the additional (slightly above budget) recommendations", Histogram.LATENCY_BUCKETS);
+    private static final Histogram BONUS_TIME = METRICS.histogram("pf_bonus_duration_seconds",
+            "Time of the bonus suggestion lookup", Histogram.LATENCY_BUCKETS);
+    static final Histogram RESULT_SIZE = METRICS.histogram("pf_result_size",
+            "Number of phones or names in a returned list", Histogram.SIZE_BUCKETS, "list");
+    static final Histogram.Child MAIN_SIZE = RESULT_SIZE.labels("main");
+    static final Histogram.Child ADDITIONAL_SIZE = RESULT_SIZE.labels("additional");
+    static final Histogram.Child BONUS_SIZE = RESULT_SIZE.labels("bonus");
+
+    private final phone_library plibrary;
+    private final StrategyRegistry strategies = StrategyRegistry.getDefault();
+    private final Map<String, List<String>> bonusMap;
 
     /**
      * Creates a RecommendationController with access to the phone library.
@@ -27,24 +48,17 @@ public class RecommendationController {
 
     public RecommendationController(phone_library plibrary) {
         this.plibrary = plibrary;
-        loadBonusCSV("bonus_suggestions.csv");
-    }
-    /**
-     * Sets the current strategy for recommendations.
-     *
-     * @param strategy the recommendation strategy to apply
-     */
-
-    public void setStrategy(RecommendationStrategy strategy) {
-        this.strategy = strategy;
+        this.bonusMap = loadBonusCSV("bonus_suggestions.csv");
     }
     /**
      * Loads extra bonus phone suggestions from a CSV file.
      * These suggestions are based on the user's usage type.
      *
      * @param csvFileName CSV file containing bonus phone data
+     * @return read only map from lower case usage type to bonus names
      */
-    private void loadBonusCSV(String csvFileName) {
+    private Map<String, List<String>> loadBonusCSV(String csvFileName) {
+        Map<String, List<String>> bonusMap = new HashMap<>();
         try {
             InputStream is = getClass().getClassLoader().getResourceAsStream(csvFileName);
             if (is == null) throw new RuntimeException(csvFileName + " not found in resources");
@@ -63,20 +77,137 @@ public class RecommendationController {
         } catch (Exception e) {
             e.printStackTrace();
         }
+
+        Map<String, List<String>> readOnly = new HashMap<>();
+        bonusMap.forEach((usage, names) -> readOnly.put(usage, List.copyOf(names)));
+        return Collections.unmodifiableMap(readOnly);
     }
 
     // --------------------- Main Recommendations ---------------------
     /**
-     * Generates phone recommendations using the current strategy
-     * and user preferences.
+     * Generates phone recommendations using the strategy of the preference's usage type.
      *
      * @param pref the user's preferences such as usage, OS, and budget
      * @return a list of recommended phones
      */
     public List<phone> getRecommendation(user_preference pref) {
-        if (strategy == null) throw new IllegalArgumentException("Strategy not set");
-        List<phone> all = plibrary.getallphones();
-        return strategy.recommend(all, pref);
+        return getRecommendation(pref, pref.getUsage(), TopKSelector.DEFAULT_K);
+    }
+
+    /**
+     * Generates the top k phone recommendations using the strategy of the preference's usage type.
+     *
+     * @param pref the user's preferences such as usage, OS, and budget
+     * @param k how many phones to return
+     * @return a list of up to k recommended phones
+     */
+    public List<phone> getRecommendation(user_preference pref, int k) {
+        return recommendMain(plibrary.getCatalog(), pref, pref.getUsageCode(), k);
+    }
+
+    /**
+     * Generates phone recommendations using the strategy registered for the given usage type.
+     *
+     * @param pref the user's preferences such as usage, OS, and budget
+     * @param usage usage type selecting the strategy (eg: "Gaming")
+     * @return a list of recommended phones
+     */
+    public List<phone> getRecommendation(user_preference pref, String usage) {
+        return getRecommendation(pref, usage, TopKSelector.DEFAULT_K);
+    }
+
+    /**
+     * Generates the top k phone recommendations using the strategy registered for the given usage type.
+     * Safe to call from any number of threads.
+     *
+     * @param pref the user's preferences such as usage, OS, and budget
+     * @param usage usage type selecting the strategy (eg: "Gaming")
+     * @param k how many phones to return
+     * @return a list of up to k recommended phones
+     */
+    public List<phone> getRecommendation(user_preference pref, String usage, int k) {
+        return recommendMain(plibrary.getCatalog(), pref, CodeDictionary.USAGE.find(usage), k);
+    }
+
+    /**
+     * Computes main, additional and bonus recommendations from one snapshot of the phone data,
+     * so all three lists come from the same version even while the library is being updated.
+     *
+     * @param snapshot the version of the phone data to use
+     * @param pref the user's preferences such as usage, OS, and budget
+     * @param usage usage type selecting the strategy (eg: "Gaming")
+     * @param k how many phones to return
+     * @return the main, additional and bonus recommendations
+     */
+    public RecommendationResult recommend(CatalogSnapshot snapshot, user_preference pref, String usage, int k) {
+        PhoneCatalog catalog = snapshot.getCatalog();
+        List<phone> main = recommendMain(catalog, pref, CodeDictionary.USAGE.find(usage), k);
+        List<phone> additional = recommendAdditional(catalog, pref, k);
+        List<String> bonus = getBonusSuggestions(pref);
+        MAIN_SIZE.observe(main.size());
+        ADDITIONAL_SIZE.observe(additional.size());
+        BONUS_SIZE.observe(bonus.size());
+        return new RecommendationResult(main, additional, bonus);
+    }
+
+    /**
+     * Computes main, additional and bonus recommendations from one snapshot, where the main ones also
+     * depend on a search of the reviews: only phones whose reviews hold every searched term are kept,
+     * or, when boosting, phones whose reviews match are ranked higher (see {@link RecommendationStrategy#recommendBoosted}).
+     *
+     * @param snapshot the version of the phone data to use
+     * @param pref the user's preferences such as usage, OS, and budget
+     * @param usage usage type selecting the strategy (eg: "Gaming")
+     * @param k how many phones to return
+     * @param review words to look for in the reviews (eg: "battery drain"), null or blank for none
+     * @param boost true to rank matching phones higher, false to keep only them
+     * @return the main, additional and bonus recommendations
+     */
+    public RecommendationResult recommend(CatalogSnapshot snapshot, user_preference pref, String usage, int k,
+                                          String review, boolean boost) {
+        if (review == null || review.isBlank()) return recommend(snapshot, pref, usage, k);
+        int usageCode = CodeDictionary.USAGE.find(usage);
+        long start = System.nanoTime();
+        ReviewIndex.Hits hits = snapshot.getReviewIndex().search(review);
+        RecommendationStrategy strategy = strategies.forUsage(usageCode);
+        List<phone> main = boost
+                ? strategy.recommendBoosted(snapshot, pref, hits, k)
+                : strategy.recommendMatching(snapshot, pref, hits, k);
+        STRATEGY_TIME.labels(usageLabel(usageCode)).observeNanos(System.nanoTime() - start);
+
+        List<phone> additional = recommendAdditional(snapshot.getCatalog(), pref, k);
+        List<String> bonus = getBonusSuggestions(pref);
+        MAIN_SIZE.observe(main.size());
+        ADDITIONAL_SIZE.observe(additional.size());
+        BONUS_SIZE.observe(bonus.size());
+        return new RecommendationResult(main, additional, bonus);
+    }
+
+    /** Runs the strategy of a usage code and records its time. */
+    private List<phone> recommendMain(PhoneCatalog catalog, user_preference pref, int usageCode, int k) {
+        long start = System.nanoTime();
+        List<phone> main = strategies.forUsage(usageCode).recommend(catalog, pref, k);
+        STRATEGY_TIME.labels(usageLabel(usageCode)).observeNanos(System.nanoTime() - start);
+        return main;
+    }
+
+    /** Finds the additional recommendations and records their time. */
+    private List<phone> recommendAdditional(PhoneCatalog catalog, user_preference pref, int k) {
+        long start = System.nanoTime();
+        List<phone> additional = phone_library.getAdditionalRecommendation(catalog, pref,
+                strategies.forUsage(pref.getUsageCode()), k);
+        ADDITIONAL_TIME.observeNanos(System.nanoTime() - start);
+        return additional;
+    }
+
+    /**
+     * Returns the label of a usage code in the metrics.
+     *
+     * @param usageCode code from {@link CodeDictionary#USAGE}
+     * @return the usage name, or "unknown" when the usage is not in the dictionary
+     */
+    static String usageLabel(int usageCode) {
+        return usageCode >= 0 ? CodeDictionary.USAGE.nameOf(usageCode) : "unknown";
     }
 
     // --------------------- Bonus Suggestions ---------------------
@@ -88,20 +219,34 @@ public class RecommendationController {
      * @return list of bonus phone names
      */
     public List<String> getBonusSuggestions(user_preference pref) {
-        return bonusMap.getOrDefault(pref.getUsage().toLowerCase(), new ArrayList<>());
+        long start = System.nanoTime();
+        List<String> bonus = bonusMap.getOrDefault(pref.getUsage().toLowerCase(), List.of());
+        BONUS_TIME.observeNanos(System.nanoTime() - start);
+        return bonus;
     }
 
     // --------------------- Additional Premium Recommendations ---------------------
     /**
      * Returns additional phone recommendations that fall slightly
      * above the user's budget (up to 15% extra).
-     * If none exist, it falls back to the main strategy recommendations.
+     * If none exist, it falls back to the recommendations of the preference's usage strategy.
      *
      * @param pref the user's budget and preferences
      * @return list of additional premium phone options
      */
     public List<phone> getAdditionalRecommendations(user_preference pref) {
-        if (strategy == null) throw new IllegalArgumentException("Strategy not set");
-        return plibrary.getAdditionalRecommendation(pref, strategy);
+        return getAdditionalRecommendations(pref, TopKSelector.DEFAULT_K);
+    }
+
+    /**
+     * Returns additional phone recommendations slightly above the user's budget,
+     * falling back to the top k strategy recommendations when there are none.
+     *
+     * @param pref the user's budget and preferences
+     * @param k how many phones the fallback returns
+     * @return list of additional premium phone options
+     */
+    public List<phone> getAdditionalRecommendations(user_preference pref, int k) {
+        return recommendAdditional(plibrary.getCatalog(), pref, k);
     }
 }
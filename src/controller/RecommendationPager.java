@@ -0,0 +1,123 @@
+package controller;
+
+import model.CatalogQuery;
+import model.CatalogSnapshot;
+import model.PhoneCatalog;
+import model.phone;
+import model.user_preference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The RecommendationPager pages through every phone that matches a strategy's query, best first
+ * The phones are ranked on the same score as the top-k recommendations of the strategy
+ * ({@link PhoneCatalog#rankScore} with the aspect weights of its query), so the first page and the
+ * recommendations of one catalog version agree.
+ * It replaces the batch pointer the phone library used to keep: nothing is stored between calls.
+ * Each page ends with a {@link PageCursor} holding the sort key of its last phone, and the next
+ * call seeks to that key in the rank order of the query's usage and OS group ({@link PhoneCatalog#seekAfter})
+ * and scans on from there, so any number of clients can page at once and no result list is built up front.
+ * Only the price is checked row by row, so a page of a narrow usage or OS costs the rows of that group
+ * it looks at, not a walk through the whole catalog.
+ *
+ * A cursor from an older catalog version still works: the pages simply continue in the current
+ * version after the same sort key, and the page reports that the version changed.
+ */
+public class RecommendationPager {
+
+    /** Phones per page when the caller does not ask for a size. */
+    public static final int DEFAULT_LIMIT = 20;
+
+    /** Largest page size accepted from a request. */
+    public static final int MAX_LIMIT = 100;
+
+    private final StrategyRegistry strategies = StrategyRegistry.getDefault();
+
+    /**
+     * Reads one page of the phones matching the strategy of the usage type.
+     *
+     * @param snapshot the catalog version to read
+     * @param pref budget and OS preference
+     * @param usage usage type selecting the strategy (eg: "Gaming")
+     * @param cursor the cursor of the previous page, null for the first page
+     * @param limit largest number of phones on the page, 1 to {@link #MAX_LIMIT}
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is invalid or belongs to another query
+     */
+    public Page page(CatalogSnapshot snapshot, user_preference pref, String usage, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        PhoneCatalog catalog = snapshot.getCatalog();
+        CatalogQuery query = strategies.forUsage(usage).query(catalog, pref);
+        int fingerprint = fingerprint(query);
+
+        int from = 0;
+        boolean versionChanged = false;
+        if (cursor != null && !cursor.isBlank()) {
+            PageCursor after = PageCursor.decode(cursor);
+            if (after.getQuery() != fingerprint) throw new IllegalArgumentException("The cursor belongs to another search");
+            from = catalog.seekAfter(query.getAspectWeights(), query.getUsage(), query.getOs(),
+                    after.getScore(), after.getId());
+            versionChanged = after.getVersion() != snapshot.getVersion();
+        }
+        if (query.matchesNothing()) return new Page(Collections.emptyList(), null, snapshot.getVersion(), versionChanged);
+
+        int[] order = catalog.rankOrder(query.getAspectWeights(), query.getUsage(), query.getOs());
+        List<phone> phones = new ArrayList<>(limit);
+        int lastRow = -1;
+        int i = from;
+        for (; i < order.length && phones.size() < limit; i++) {
+            if (!catalog.matches(order[i], query)) continue;
+            lastRow = order[i];
+            phones.add(catalog.phoneAt(lastRow));
+        }
+        // only hand out a cursor when another match of the group exists, so the last page says it is the last
+        while (i < order.length && !catalog.matches(order[i], query)) i++;
+
+        String next = null;
+        if (i < order.length && !phones.isEmpty()) {
+            double score = catalog.rankScore(lastRow, query.getAspectWeights());
+            next = new PageCursor(snapshot.getVersion(), score, catalog.phoneId(lastRow), fingerprint).encode();
+        }
+        return new Page(phones, next, snapshot.getVersion(), versionChanged);
+    }
+
+    /** Fingerprint of the filter a cursor was made for. */
+    static int fingerprint(CatalogQuery query) {
+        int h = Integer.hashCode(query.getUsage());
+        h = 31 * h + Integer.hashCode(query.getOs());
+        h = 31 * h + Double.hashCode(query.getMinPrice());
+        h = 31 * h + Double.hashCode(query.getMaxPrice());
+        return h;
+    }
+
+    /**
+     * One page of matching phones.
+     */
+    public static final class Page {
+        private final List<phone> phones;
+        private final String nextCursor;
+        private final long version;
+        private final boolean versionChanged;
+
+        Page(List<phone> phones, String nextCursor, long version, boolean versionChanged) {
+            this.phones = Collections.unmodifiableList(phones);
+            this.nextCursor = nextCursor;
+            this.version = version;
+            this.versionChanged = versionChanged;
+        }
+
+        /** @return the phones of the page, best first */
+        public List<phone> getPhones() { return phones; }
+
+        /** @return cursor of the next page, null when this is the last page */
+        public String getNextCursor() { return nextCursor; }
+
+        /** @return catalog version the page was read from */
+        public long getVersion() { return version; }
+
+        /** @return true when the cursor was made on an older catalog version */
+        public boolean isVersionChanged() { return versionChanged; }
+    }
+}
@@ -6,10 +6,92 @@ import model.*;
 
 /**
  * It is interface where it gets the list of phones and the user preference based on it , the strategies are divided and different classes are formed.
+ * A strategy describes its filter over the column based {@link PhoneCatalog} as a {@link CatalogQuery};
+ * the scan and the {@link TopKSelector} that keeps the best K phones are shared, so many queries can
+ * also be evaluated together in one catalog pass (see {@link BatchRecommender}).
+ * The list version is kept for callers that only have a plain list of phones.
+ * A query can weight the aspects the strategy's users care about ({@link CatalogQuery#getAspectWeights()}),
+ * the phones are then ranked on their sentiment plus those weighted aspect features.
+ * A review search ({@link ReviewIndex}) can narrow the phones down to those whose reviews hold its terms,
+ * or only lift them in the ranking by up to {@link #reviewBoost()} sentiment points.
  */
 public interface RecommendationStrategy {
-    List<phone> recommend(List<phone> phones,user_preference pref);
 
-}
+    /** Sentiment points the best match of a review search gets on top of its score, when boosting. */
+    double DEFAULT_REVIEW_BOOST = 10;
+
+    CatalogQuery query(PhoneCatalog catalog, user_preference pref);
+
+    /**
+     * Recommends the k phones with the highest sentiment that match the strategy's query.
+     *
+     * @param catalog the catalog to choose from
+     * @param pref the user's preferences
+     * @param k how many phones to return
+     * @return up to k recommended phones, best first
+     */
+    default List<phone> recommend(PhoneCatalog catalog, user_preference pref, int k) {
+        return TopKSelector.select(catalog, query(catalog, pref), k);
+    }
+
+    /**
+     * Recommends the k phones with the highest sentiment among those matching the strategy's query
+     * and a review search.
+     *
+     * @param snapshot the version to choose from, the one the hits were found in
+     * @param pref the user's preferences
+     * @param hits the phones whose reviews hold the searched terms
+     * @param k how many phones to return
+     * @return up to k recommended phones, best first
+     */
+    default List<phone> recommendMatching(CatalogSnapshot snapshot, user_preference pref, ReviewIndex.Hits hits, int k) {
+        return TopKSelector.select(snapshot, query(snapshot.getCatalog(), pref), hits, k);
+    }
+
+    /**
+     * Recommends the k phones matching the strategy's query with the highest sentiment, where phones whose
+     * reviews match a review search get up to {@link #reviewBoost()} points more.
+     *
+     * @param snapshot the version to choose from, the one the hits were found in
+     * @param pref the user's preferences
+     * @param hits the phones whose reviews hold the searched terms
+     * @param k how many phones to return
+     * @return up to k recommended phones, best first
+     */
+    default List<phone> recommendBoosted(CatalogSnapshot snapshot, user_preference pref, ReviewIndex.Hits hits, int k) {
+        return TopKSelector.selectBoosted(snapshot, query(snapshot.getCatalog(), pref), hits, reviewBoost(), k);
+    }
 
+    /**
+     * Returns how much a review search counts for this strategy, see {@link #recommendBoosted}.
+     *
+     * @return sentiment points given to the best match
+     */
+    default double reviewBoost() {
+        return DEFAULT_REVIEW_BOOST;
+    }
+
+    /**
+     * Recommends the default number ({@link TopKSelector#DEFAULT_K}) of phones from the catalog.
+     *
+     * @param catalog the catalog to choose from
+     * @param pref the user's preferences
+     * @return the recommended phones
+     */
+    default List<phone> recommend(PhoneCatalog catalog, user_preference pref) {
+        return recommend(catalog, pref, TopKSelector.DEFAULT_K);
+    }
+
+    /**
+     * Recommends phones from a plain list by wrapping it into a catalog first.
+     *
+     * @param phones the phones to choose from
+     * @param pref the user's preferences
+     * @return the recommended phones
+     */
+    default List<phone> recommend(List<phone> phones, user_preference pref) {
+        return recommend(PhoneCatalog.of(phones), pref);
+    }
+
+}
 
@@ -0,0 +1,403 @@
+package controller;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.phone;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ReviewIngestor takes reviews submitted over the API and gets them into the phone library
+ * It :
+ * Accepts a review into a bounded in-memory buffer; a request never waits, a full buffer rejects it
+ * Writes the buffered reviews in batches on one background thread, to an append-only file or, for a
+ * library kept in a {@link storage.CatalogStore}, to the log of that store ({@link phone_library#appendReviews})
+ * Adds every written review to the running sentiment of its phone, so the rankings follow within one batch
+ * Folds the review texts into the catalog every few seconds ({@link phone_library#foldReviews}), as
+ * one new version for all reviews since the last fold
+ * Reads the file back on start, so the reviews of earlier runs are not lost (the catalog store
+ * recovers its own)
+ *
+ * A review is visible (in the rankings) only once it is written. The file has one line per review:
+ * phone key, time in milliseconds and the text, separated by tabs, with \, tab and line breaks escaped.
+ * The phone key ({@link #phoneKey}) is a hash of the listing columns of the phone, not its id: ids are given
+ * in load order, so they can differ after a restart or a changed CSV, while the key finds the same phone
+ * again. Reviews of a phone whose listing changed (or which is gone) are skipped when the file is read.
+ */
+public class ReviewIngestor implements Closeable {
+
+    /** Reviews the buffer holds when no capacity is given. */
+    public static final int DEFAULT_CAPACITY = 65_536;
+
+    /** Largest number of reviews written with one write. */
+    public static final int MAX_BATCH = 4096;
+
+    /** Longest accepted review, in characters. */
+    public static final int MAX_REVIEW_LENGTH = 5000;
+
+    private static final Counter SUBMITTED = MetricsRegistry.getDefault().counter("pf_reviews_submitted_total",
+            "Reviews submitted to the ingestion buffer, by result", "result");
+    private static final Counter WRITTEN = MetricsRegistry.getDefault().counter("pf_reviews_written_total",
+            "Reviews written to the review file");
+    private static final Histogram BATCH_SIZE = MetricsRegistry.getDefault().histogram("pf_review_batch_size",
+            "Reviews written to the review file at once", Histogram.SIZE_BUCKETS);
+    private static final Histogram FLUSH_TIME = MetricsRegistry.getDefault().histogram("pf_review_flush_duration_seconds",
+            "Time to write a batch of reviews to the review file", Histogram.LATENCY_BUCKETS);
+    private static final Histogram FOLD_TIME = MetricsRegistry.getDefault().histogram("pf_review_fold_duration_seconds",
+            "Time to fold the new reviews into a catalog version", Histogram.LATENCY_BUCKETS);
+
+    private final phone_library library;
+    private final Path file;
+    private final long foldMillis;
+    private final boolean fsync;
+    private final BlockingQueue<Pending> buffer;
+    private final FileChannel channel; // null when the reviews go to the catalog store of the library
+    private final Thread writer;
+    private final AtomicInteger submitting = new AtomicInteger(); // threads between checking running and their offer
+    private volatile boolean running = true;
+
+    /**
+     * Creates an ingestor, reads the reviews already in the file and starts the writer thread.
+     *
+     * @param library the library the reviews go to
+     * @param file the append-only review file, created when missing; null to write the reviews only
+     *             to the catalog store of the library (they are then not saved if it has none)
+     * @param capacity largest number of reviews waiting to be written
+     * @param foldMillis time between two folds of the new reviews into the catalog
+     * @param fsync true to force every batch to the disk before its reviews are used
+     * @throws IOException if the file cannot be read or opened
+     */
+    public ReviewIngestor(phone_library library, Path file, int capacity, long foldMillis, boolean fsync) throws IOException {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.library = library;
+        this.file = file;
+        this.foldMillis = foldMillis;
+        this.fsync = fsync;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        if (file != null) {
+            replay();
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } else {
+            this.channel = null;
+        }
+        this.writer = new Thread(this::run, "review-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Accepts a review into the buffer, without waiting.
+     *
+     * @param id id of the phone
+     * @param review text of the review
+     * @return true if accepted, false when the buffer is full (the caller should retry later)
+     * @throws IllegalArgumentException if no phone has the id or the review is empty or too long
+     */
+    public boolean submit(int id, String review) {
+        Pending pending = validate(id, review);
+        boolean accepted;
+        submitting.incrementAndGet();
+        try {
+            accepted = running && buffer.offer(pending);
+        } finally {
+            submitting.decrementAndGet();
+        }
+        if (!accepted) {
+            SUBMITTED.labels("rejected").inc();
+            return false;
+        }
+        SUBMITTED.labels("accepted").inc();
+        return true;
+    }
+
+    /**
+     * Accepts reviews of several phones into the buffer, without waiting. All of them are checked first;
+     * then they are accepted in order until the buffer is full.
+     *
+     * @param ids ids of the phones
+     * @param reviews texts of the reviews, same length as ids
+     * @return number of reviews accepted, the first ones of the lists
+     * @throws IllegalArgumentException if one of the reviews is invalid, then none is accepted
+     */
+    public int submitAll(int[] ids, List<String> reviews) {
+        if (ids.length != reviews.size()) throw new IllegalArgumentException("One id per review is needed");
+        Pending[] all = new Pending[ids.length];
+        for (int i = 0; i < all.length; i++) all[i] = validate(ids[i], reviews.get(i));
+        int accepted = 0;
+        submitting.incrementAndGet();
+        try {
+            while (running && accepted < all.length && buffer.offer(all[accepted])) accepted++;
+        } finally {
+            submitting.decrementAndGet();
+        }
+        SUBMITTED.labels("accepted").add(accepted);
+        SUBMITTED.labels("rejected").add(all.length - accepted);
+        return accepted;
+    }
+
+    /**
+     * Waits until every review accepted before the call is written and folded into the catalog.
+     * Returns at once when the ingestor is closed, closing writes the buffered reviews itself.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        Pending marker = new Pending(-1, null, new CountDownLatch(1));
+        while (true) {
+            submitting.incrementAndGet();
+            try {
+                if (!running) return;
+                if (buffer.offer(marker)) break;
+            } finally {
+                submitting.decrementAndGet();
+            }
+            Thread.sleep(1); // the buffer is full, the writer is emptying it
+        }
+        marker.done.await();
+    }
+
+    /** @return number of entries waiting for the writer: reviews and pending flushes */
+    public int buffered() {
+        return buffer.size();
+    }
+
+    /** @return largest number of reviews the buffer holds */
+    public int capacity() {
+        return buffer.size() + buffer.remainingCapacity();
+    }
+
+    /**
+     * Stops accepting reviews, writes and folds the buffered ones and closes the file.
+     * Submitting takes no lock: a thread counts itself in {@code submitting} before it reads running, so once
+     * running is cleared and that count has dropped to zero nothing more is put into the buffer. What is in
+     * it then (left by the writer thread, or offered by a submitter that saw running just before it was
+     * cleared) is drained and written here, and every pending flush is released.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        while (submitting.get() > 0) Thread.onSpinWait(); // submitters that saw running finish their offer
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Pending> left = new ArrayList<>();
+        buffer.drainTo(left);
+        try {
+            int reviews = 0;
+            for (Pending p : left) if (p.done == null) reviews++;
+            if (reviews > 0) write(left, reviews);
+            fold();
+        } finally {
+            for (Pending p : left) if (p.done != null) p.done.countDown();
+            if (channel != null) channel.close();
+        }
+    }
+
+    private Pending validate(int id, String review) {
+        if (review == null || review.isBlank()) throw new IllegalArgumentException("The review is empty");
+        if (review.length() > MAX_REVIEW_LENGTH) {
+            throw new IllegalArgumentException("A review has at most " + MAX_REVIEW_LENGTH + " characters");
+        }
+        if (library.getPhone(id) == null) throw new IllegalArgumentException("Unknown phone id: " + id);
+        return new Pending(id, review.trim(), null);
+    }
+
+    // --------------------- Writer thread ---------------------
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        long nextFold = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(foldMillis);
+        while (running || !buffer.isEmpty()) {
+            try {
+                Pending first = buffer.poll(Math.max(1, Math.min(foldMillis, 100)), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    buffer.drainTo(batch, MAX_BATCH - 1);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            List<CountDownLatch> flushed = new ArrayList<>();
+            int reviews = 0;
+            for (Pending p : batch) {
+                if (p.done != null) flushed.add(p.done);
+                else reviews++;
+            }
+            try {
+                if (reviews > 0) write(batch, reviews);
+                if (!flushed.isEmpty() || !running || System.nanoTime() >= nextFold) {
+                    fold();
+                    nextFold = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(foldMillis);
+                }
+            } catch (IOException e) {
+                // the batch is lost for the file, but it is not used either, so the rankings match the file
+                e.printStackTrace();
+            } finally {
+                for (CountDownLatch done : flushed) done.countDown();
+                batch.clear();
+            }
+        }
+        fold();
+    }
+
+    /** Writes a batch to the file, then hands the reviews to the library, which logs them to its store. */
+    private void write(List<Pending> batch, int reviews) throws IOException {
+        long start = System.nanoTime();
+        int[] ids = new int[reviews];
+        List<String> texts = new ArrayList<>(reviews);
+        for (Pending p : batch) {
+            if (p.done != null) continue;
+            ids[texts.size()] = p.id;
+            texts.add(p.review);
+        }
+        if (channel != null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(reviews * 128);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < reviews; i++) {
+                phone p = library.getPhone(ids[i]);
+                if (p != null) out.writeBytes(encode(phoneKey(p), now, texts.get(i))); // gone phones are skipped below too
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(out.toByteArray());
+            while (bytes.hasRemaining()) channel.write(bytes);
+            if (fsync) channel.force(false);
+        }
+        // reviews of phones removed by a reload since they were accepted are skipped
+        library.appendReviews(ids, texts, fsync && channel == null);
+        FLUSH_TIME.observeNanos(System.nanoTime() - start);
+        BATCH_SIZE.observe(reviews);
+        WRITTEN.add(reviews);
+    }
+
+    private void fold() {
+        long start = System.nanoTime();
+        if (library.foldReviews() > 0) FOLD_TIME.observeNanos(System.nanoTime() - start);
+    }
+
+    // --------------------- File format ---------------------
+
+    /** Reads the reviews of earlier runs back into the library, finding their phones by key. */
+    private void replay() throws IOException {
+        if (!Files.exists(file)) return;
+        Map<Long, Integer> ids = new HashMap<>();
+        for (phone p : library.getallphones()) ids.putIfAbsent(phoneKey(p), p.getId()); // identical listings: the first
+        int read = 0;
+        int skipped = 0;
+        int[] batch = new int[MAX_BATCH];
+        List<String> reviews = new ArrayList<>(MAX_BATCH);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab1 = line.indexOf('\t');
+                int tab2 = tab1 < 0 ? -1 : line.indexOf('\t', tab1 + 1);
+                try {
+                    if (tab2 < 0) throw new IllegalArgumentException("Not a review line");
+                    Integer id = ids.get(Long.parseUnsignedLong(line.substring(0, tab1), 16));
+                    if (id == null) {
+                        skipped++; // the phone is not in the catalog any more, or its listing changed
+                        continue;
+                    }
+                    batch[reviews.size()] = id;
+                    reviews.add(unescape(line.substring(tab2 + 1)));
+                } catch (IllegalArgumentException e) {
+                    skipped++; // a damaged line
+                }
+                if (reviews.size() == MAX_BATCH) {
+                    int added = library.appendReviews(Arrays.copyOf(batch, reviews.size()), reviews, false);
+                    read += added;
+                    skipped += reviews.size() - added; // phones that are not in the catalog any more
+                    reviews.clear();
+                }
+            }
+        }
+        int added = library.appendReviews(Arrays.copyOf(batch, reviews.size()), reviews, false);
+        read += added;
+        skipped += reviews.size() - added;
+        fold();
+        System.out.println("Reviews read from " + file + ": " + read + (skipped > 0 ? ", " + skipped + " skipped" : ""));
+    }
+
+    /**
+     * Returns the key a phone is written to the review file with: a 64 bit FNV-1a hash of its name, brand,
+     * price, OS, usage and purchase link. Unlike the id it does not depend on the order the phones were
+     * loaded in, and unlike the reviews and the score it does not change when reviews are folded in.
+     *
+     * @param p the phone
+     * @return the key of the phone
+     */
+    static long phoneKey(phone p) {
+        long hash = 0xcbf29ce484222325L;
+        for (String field : new String[]{p.getName(), p.getBrand(), Double.toString(p.getPrice()), p.getOs(),
+                p.getUsage(), p.getPurchaseLink()}) {
+            String value = field == null ? "" : field;
+            for (int i = 0; i < value.length(); i++) hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+            hash = (hash ^ 0x1f) * 0x100000001b3L; // separator, so "ab"+"c" and "a"+"bc" differ
+        }
+        return hash;
+    }
+
+    static byte[] encode(long key, long millis, String review) {
+        StringBuilder sb = new StringBuilder(review.length() + 40);
+        sb.append(Long.toHexString(key)).append('\t').append(millis).append('\t');
+        for (int i = 0; i < review.length(); i++) {
+            char c = review.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+        return sb.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String unescape(String text) {
+        if (text.indexOf('\\') < 0) return text;
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = text.charAt(++i);
+            sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+        }
+        return sb.toString();
+    }
+
+    /** A review waiting to be written, or a flush marker (done is set, id and review are not). */
+    private static final class Pending {
+        final int id;
+        final String review;
+        final CountDownLatch done;
+
+        Pending(int id, String review, CountDownLatch done) {
+            this.id = id;
+            this.review = review;
+            this.done = done;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package controller;
+
+import model.CodeDictionary;
+
+import java.util.Arrays;
+
+/**
+ * The StrategyRegistry maps every usage type to one shared strategy instance
+ * The strategies keep no state between calls, so a single instance of each can serve
+ * any number of threads, and a request only needs a map lookup instead of creating a strategy
+ * Unknown usage types fall back to the casual strategy, like the old switch statements did
+ */
+public class StrategyRegistry {
+
+    private static final StrategyRegistry DEFAULT = new StrategyRegistry();
+
+    private RecommendationStrategy[] strategies = new RecommendationStrategy[0]; // indexed by usage code
+    private final RecommendationStrategy fallback;
+
+    /**
+     * Creates a registry with the five built in strategies.
+     */
+    private StrategyRegistry() {
+        fallback = new CasualRecom();
+        register("casual", fallback);
+        register("entertainment", new Entertainment());
+        register("gaming", new GamingRecom());
+        register("photography", new PhotographyRecom());
+        register("productivity", new Productivity());
+    }
+
+    private void register(String usage, RecommendationStrategy strategy) {
+        int code = CodeDictionary.USAGE.intern(usage);
+        if (code >= strategies.length) strategies = Arrays.copyOf(strategies, code + 1);
+        strategies[code] = strategy;
+    }
+
+    /**
+     * @return the shared registry with the built in strategies
+     */
+    public static StrategyRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the strategy for a usage type, ignoring case.
+     *
+     * @param usage usage type such as "Gaming"
+     * @return the shared strategy for the usage, or the casual strategy if the usage is unknown
+     */
+    public RecommendationStrategy forUsage(String usage) {
+        return forUsage(CodeDictionary.USAGE.find(usage));
+    }
+
+    /**
+     * Returns the strategy for a usage code.
+     *
+     * @param usageCode code from {@link CodeDictionary#USAGE}
+     * @return the shared strategy for the usage, or the casual strategy if there is none for the code
+     */
+    public RecommendationStrategy forUsage(int usageCode) {
+        if (usageCode < 0 || usageCode >= strategies.length || strategies[usageCode] == null) return fallback;
+        return strategies[usageCode];
+    }
+}
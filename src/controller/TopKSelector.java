@@ -0,0 +1,260 @@
+package controller;
+
+import model.CatalogQuery;
+import model.CatalogSnapshot;
+import model.PhoneCatalog;
+import model.ReviewIndex;
+import model.phone;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The TopKSelector keeps the K best rows of a catalog scan without sorting all of them
+ * It is a fixed size min heap over primitive keys (the sentiment score, plus the weighted aspect features
+ * when the query of the strategy has aspect weights) and row numbers:
+ * the root is always the weakest of the kept rows, so a new row only costs a comparison
+ * unless it beats the root, and then O(log K) to restore the heap
+ *
+ * Ties are broken by phone id, the lower id wins (then by row), which is the order of
+ * {@link PhoneCatalog#rankOrder}: rows and ids part ways once a reload reuses phones, and the
+ * first page of {@link RecommendationPager} must still hold the same phones as the top-k result.
+ */
+public class TopKSelector {
+
+    /** Number of phones returned when the caller does not ask for a specific K. */
+    public static final int DEFAULT_K = 3;
+
+    /** Largest K accepted from a request. */
+    public static final int MAX_K = 100;
+
+    private final double[] keys;
+    private final int[] rows;
+    private final int[] ids;
+    private int size;
+
+    /**
+     * Creates a selector that keeps at most k rows.
+     *
+     * @param k number of rows to keep, at least 1
+     */
+    public TopKSelector(int k) {
+        if (k < 1) throw new IllegalArgumentException("k must be at least 1");
+        keys = new double[k];
+        rows = new int[k];
+        ids = new int[k];
+    }
+
+    /**
+     * Scans the catalog with the given filter and returns the k phones with the highest sentiment.
+     *
+     * @param catalog the catalog to scan
+     * @param usage usage code or {@link PhoneCatalog#ANY}
+     * @param os OS code or {@link PhoneCatalog#ANY}
+     * @param minPrice lowest accepted price
+     * @param maxPrice highest accepted price
+     * @param k number of phones to return
+     * @return up to k phones, best first
+     */
+    public static List<phone> select(PhoneCatalog catalog, int usage, int os,
+                                     double minPrice, double maxPrice, int k) {
+        TopKSelector top = new TopKSelector(k);
+        for (int i = catalog.nextMatch(0, usage, os, minPrice, maxPrice); i >= 0;
+             i = catalog.nextMatch(i + 1, usage, os, minPrice, maxPrice)) {
+            top.offer(catalog.sentiment(i), i, catalog.phoneId(i));
+        }
+        return top.toPhones(catalog);
+    }
+
+    /**
+     * Scans the catalog with the query of a strategy and returns the k phones with the highest rank score
+     * ({@link PhoneCatalog#rankScore}, the sentiment when the query weights no aspects).
+     *
+     * @param catalog the catalog to scan
+     * @param query the usage, OS and price filter, and the aspect weights
+     * @param k number of phones to return
+     * @return up to k phones, best first
+     */
+    public static List<phone> select(PhoneCatalog catalog, CatalogQuery query, int k) {
+        float[] weights = query.getAspectWeights();
+        if (weights == null) {
+            return select(catalog, query.getUsage(), query.getOs(), query.getMinPrice(), query.getMaxPrice(), k);
+        }
+        TopKSelector top = new TopKSelector(k);
+        for (int i = catalog.nextMatch(0, query); i >= 0; i = catalog.nextMatch(i + 1, query)) {
+            top.offer(catalog.rankScore(i, weights), i, catalog.phoneId(i));
+        }
+        return top.toPhones(catalog);
+    }
+
+    /**
+     * Returns the k phones with the highest rank score among the phones matching a review search and the
+     * query of a strategy. Only the rows of the hits are looked at, not the whole catalog.
+     *
+     * @param snapshot the version the hits were found in
+     * @param query the usage, OS and price filter
+     * @param hits the phones whose reviews hold the searched terms
+     * @param k number of phones to return
+     * @return up to k phones, best first
+     */
+    public static List<phone> select(CatalogSnapshot snapshot, CatalogQuery query, ReviewIndex.Hits hits, int k) {
+        PhoneCatalog catalog = snapshot.getCatalog();
+        float[] weights = query.getAspectWeights();
+        TopKSelector top = new TopKSelector(k);
+        for (int h = 0; h < hits.size(); h++) {
+            int row = snapshot.rowOf(hits.id(h));
+            if (row >= 0 && catalog.matches(row, query)) top.offer(catalog.rankScore(row, weights), row, hits.id(h));
+        }
+        return top.toPhones(catalog);
+    }
+
+    /**
+     * Scans the catalog with the query of a strategy and returns the k phones with the highest rank score
+     * plus a boost for matching a review search: weight times the search score of the phone divided by the
+     * best search score, so the best match gets the whole weight and phones that do not match get none.
+     * The search score of a matching row is looked up in the hits ({@link ReviewIndex.Hits#scoreOf}, a binary
+     * search over their ids), so nothing the size of the catalog is allocated per request.
+     *
+     * @param snapshot the version the hits were found in
+     * @param query the usage, OS and price filter
+     * @param hits the phones whose reviews hold the searched terms
+     * @param weight sentiment points added to the best match
+     * @param k number of phones to return
+     * @return up to k phones, best first
+     */
+    public static List<phone> selectBoosted(CatalogSnapshot snapshot, CatalogQuery query, ReviewIndex.Hits hits,
+                                            double weight, int k) {
+        PhoneCatalog catalog = snapshot.getCatalog();
+        float max = hits.maxScore();
+        float[] weights = query.getAspectWeights();
+        TopKSelector top = new TopKSelector(k);
+        for (int i = catalog.nextMatch(0, query); i >= 0; i = catalog.nextMatch(i + 1, query)) {
+            double score = catalog.rankScore(i, weights);
+            if (max > 0) score += (float) (weight * hits.scoreOf(catalog.phoneId(i)) / max);
+            top.offer(score, i, catalog.phoneId(i));
+        }
+        return top.toPhones(catalog);
+    }
+
+    /**
+     * Clamps a requested K into the accepted range.
+     *
+     * @param k requested number of results
+     * @return k limited to 1..{@link #MAX_K}
+     */
+    public static int clamp(int k) {
+        return Math.max(1, Math.min(k, MAX_K));
+    }
+
+    /**
+     * Offers a row to the selector. It is kept if fewer than K rows are held
+     * or if it beats the weakest kept row. Rows with the same key are ranked by row number.
+     *
+     * @param key ranking key, higher is better
+     * @param row catalog row of the candidate
+     */
+    public void offer(double key, int row) {
+        offer(key, row, row);
+    }
+
+    /**
+     * Offers a row of a catalog to the selector. It is kept if fewer than K rows are held
+     * or if it beats the weakest kept row. Rows with the same key are ranked by phone id.
+     *
+     * @param key ranking key, higher is better
+     * @param row catalog row of the candidate
+     * @param id id of the phone in the row ({@link PhoneCatalog#phoneId})
+     */
+    public void offer(double key, int row, int id) {
+        if (size < keys.length) {
+            keys[size] = key;
+            rows[size] = row;
+            ids[size] = id;
+            siftUp(size++);
+        } else if (worse(0, key, id, row)) {
+            keys[0] = key;
+            rows[0] = row;
+            ids[0] = id;
+            siftDown(0, size);
+        }
+    }
+
+    /** @return number of rows currently kept */
+    public int size() { return size; }
+
+    /**
+     * Removes all kept rows so the selector can be reused for another scan.
+     */
+    public void clear() { size = 0; }
+
+    /**
+     * Returns the kept rows ordered best first. The selector is emptied by this call.
+     *
+     * @return kept row numbers, best first
+     */
+    public int[] drainRows() {
+        int[] out = new int[size];
+        for (int n = size - 1; n >= 0; n--) {
+            out[n] = rows[0];
+            swap(0, n);
+            siftDown(0, n);
+        }
+        size = 0;
+        return out;
+    }
+
+    /**
+     * Returns the phones of the kept rows ordered best first. The selector is emptied by this call.
+     *
+     * @param catalog the catalog the rows belong to
+     * @return kept phones, best first
+     */
+    public List<phone> toPhones(PhoneCatalog catalog) {
+        int[] order = drainRows();
+        List<phone> result = new ArrayList<>(order.length);
+        for (int row : order) result.add(catalog.phoneAt(row));
+        return result;
+    }
+
+    // --------------------- Heap helpers ---------------------
+
+    /** True when the entry at index i ranks below (key, id, row). */
+    private boolean worse(int i, double key, int id, int row) {
+        int c = Double.compare(keys[i], key);
+        if (c == 0) c = Integer.compare(id, ids[i]);
+        return c < 0 || (c == 0 && rows[i] > row);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(i, keys[parent], ids[parent], rows[parent])) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int n) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= n) break;
+            int right = left + 1;
+            int weakest = (right < n && worse(right, keys[left], ids[left], rows[left])) ? right : left;
+            if (!worse(weakest, keys[i], ids[i], rows[i])) break;
+            swap(i, weakest);
+            i = weakest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        double k = keys[a];
+        keys[a] = keys[b];
+        keys[b] = k;
+        int r = rows[a];
+        rows[a] = rows[b];
+        rows[b] = r;
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+    }
+}
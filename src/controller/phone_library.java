@@ -1,35 +1,89 @@
 package controller;
 
+import model.CatalogSnapshot;
+import model.PhoneCatalog;
+import model.ReviewIndex;
+import model.ReviewStore;
+import model.SentimentAggregates;
 import model.phone;
 import model.store;
+import model.StoreIndex;
 import model.user_preference;
 import com.opencsv.CSVReader;
+import sentiment.AspectAnalyzer;
+import sentiment.SentimentAnalyzer;
+import sentiment.SentimentScorer;
+import storage.CatalogStore;
 
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * phone_library class manages all phones data used in the system
- * Loads the phones from the csv file, stores them in lists and provides helper methods for filtering , recomending , and batching the results
+ * Loads the phones from the csv file, stores them in lists and provides helper methods for filtering and recomending
+ * (paging through the matches is done by the stateless {@link RecommendationPager})
  * This class also works with different recommendation stratergies
  * (strategy pattern) to recommend phones based on user preference
+ *
+ * The phones are published as immutable {@link CatalogSnapshot} versions through an atomic reference.
+ * Readers take the current snapshot once ({@link #getSnapshot()}) and use it for the whole request,
+ * without locks or copies. Writers (adding phones, loading or reloading a CSV) take a lock, build the
+ * next snapshot on the side and swap it in, so a reader never sees a half loaded file.
+ *
+ * The sentiment of loaded phones is scored from their reviews by the {@link SentimentScorer}, in parallel,
+ * before they are published. The pf.sentiment system property picks the source: "lexicon" (default)
+ * or "csv" to keep the Sentiment_Score column of the file. Every review also goes into the running
+ * {@link SentimentAggregates} of its phone, which the strategies rank on; a review added later with
+ * {@link #addReview(int, String)} updates them at once, without building a new version.
+ *
+ * A library created with a {@link CatalogStore} survives restarts: every phone, store, phone put in a
+ * store and review added with {@link #appendReviews} is logged to it before it is published, a snapshot
+ * is written whenever enough was logged ({@link #checkpoint()}), and the next library created on the
+ * same store starts from what it holds instead of the CSV.
  */
 public class phone_library {
 
-    private ArrayList<phone> phones = new ArrayList<>();
-    private ArrayList<store> stores = new ArrayList<>();
-    private List<phone> recommendation = new ArrayList<>();
-    private int batchpointer = 0;
+    /** Additional recommendations may cost up to this factor times the user's maximum budget. */
+    public static final double PREMIUM_FACTOR = 1.15;
+
+    /** Phone dataset bundled in the resources. */
+    public static final String DATASET = "mobile_phone_1000_rec_sent_score_cleaned.csv";
+
+    private final AtomicReference<CatalogSnapshot> snapshot = new AtomicReference<>(CatalogSnapshot.EMPTY);
+    private final Object writeLock = new Object();
+    private int nextId = 0; // guarded by writeLock
+    private final ReviewStore reviewStore = new ReviewStore();
+    private final List<store> stores = new ArrayList<>(); // guarded by writeLock
+    private final Map<store, Integer> storeNumbers = new ConcurrentHashMap<>(); // position in stores, stores are compared by identity
+    private final StoreIndex storeIndex = new StoreIndex(this::logStorePhone);
+    private final SentimentAggregates aggregates = new SentimentAggregates();
+    private final Map<Integer, List<String>> unfolded = new LinkedHashMap<>(); // reviews not in the catalog yet, guarded by writeLock
+    private final Set<Integer> rescored = ConcurrentHashMap.newKeySet(); // phones with unsaved reviews since the last fold
+    private final Object checkpointLock = new Object();
+    private volatile CatalogStore catalogStore; // set once the library is loaded, null when nothing is saved
+    private final boolean scoreReviews = !System.getProperty("pf.sentiment", "lexicon").trim().equalsIgnoreCase("csv");
 
     /**
      * Loads the phone data from a csv file in the resources folder
+     * (or from a file path when no such resource exists) with OpenCSV
+     * The phones are added to the current ones as one new version, once the whole file is read.
      * @param csvFileName the csv file name inside the resources directory
      */
     public void loadCSV(String csvFileName) {
         try {
-            InputStream is = getClass().getClassLoader().getResourceAsStream(csvFileName);
-            if (is == null) throw new RuntimeException(csvFileName + " not found in resources");
+            InputStream is = openCSV(csvFileName);
+            List<phone> loaded = new ArrayList<>();
 
             try (CSVReader reader = new CSVReader(new InputStreamReader(is))) {
                 String[] row;
@@ -42,102 +96,531 @@ public class phone_library {
                     String os = row[3];
                     String usage = row[4];
 
-                    List<String> reviewsList = Arrays.asList(row[5].split("\\|\\|"));
+                    // the reviews go to the review store, the phone only keeps a handle to them
+                    int reviewHandle = reviewStore.addRaw(row[5]);
                     String purchaseLink = row[6];
                     double sentimentScore = Double.parseDouble(row[7]);
-                    int totalReviews = reviewsList.size();
+                    int totalReviews = reviewStore.count(reviewHandle);
 
                     phone p = new phone(name, brand, price, os, usage,
-                            purchaseLink, reviewsList, sentimentScore, totalReviews);
+                            purchaseLink, reviewStore, reviewHandle, sentimentScore, totalReviews);
 
-                    phones.add(p);
+                    loaded.add(p);
                 }
             }
+            append(loaded, scoreReviews);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads the phone data with the streaming {@link PhoneCsvParser} instead of OpenCSV.
+     * The file is read through NIO buffers, numbers are parsed from the bytes and the reviews
+     * are split in place (see benchmark.CsvLoadBenchmark for the numbers against loadCSV).
+     * @param csvFileName the csv file name inside the resources directory, or a file path
+     */
+    public void loadCSVStreaming(String csvFileName) {
+        try (ReadableByteChannel channel = openCSVChannel(csvFileName)) {
+            List<phone> loaded = new ArrayList<>();
+            new PhoneCsvParser(reviewStore).parse(channel, loaded::add);
+            append(loaded, scoreReviews);
 
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Replaces all phones with the content of a CSV file, as one new version.
+     * Rows that are byte for byte the same as a row of the current version are not parsed again:
+     * their phone objects are reused, with the same id, reviews and pre-serialized JSON.
+     * When the file cannot be read or parsed the current version stays as it is.
+     *
+     * @param csvFileName the csv file name inside the resources directory, or a file path
+     * @return number of phones reused from the previous version, -1 if the reload failed
+     */
+    public int reload(String csvFileName) {
+        int reused;
+        synchronized (writeLock) {
+            CatalogSnapshot current = snapshot.get();
+            // the current phones by the hash of the row they were read from, identical rows queue up
+            Map<Long, ArrayDeque<phone>> known = new HashMap<>();
+            for (phone p : current.getPhones()) {
+                if (p.getSourceHash() != 0) known.computeIfAbsent(p.getSourceHash(), h -> new ArrayDeque<>()).add(p);
+            }
+
+            List<phone> rows = new ArrayList<>(Math.max(current.size(), 16));
+            List<phone> fresh = new ArrayList<>();
+            try (ReadableByteChannel channel = openCSVChannel(csvFileName)) {
+                new PhoneCsvParser(reviewStore).parse(channel, p -> {
+                    rows.add(p);
+                    if (p.id < 0) fresh.add(p);
+                }, hash -> {
+                    ArrayDeque<phone> same = known.get(hash);
+                    return same == null ? null : same.poll();
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                return -1;
+            }
+            for (phone p : fresh) p.id = nextId++;
+            score(fresh, scoreReviews); // reused phones keep their score and their aggregate
+
+            PhoneCatalog next = new PhoneCatalog(Math.max(rows.size(), 16));
+            next.rankBy(aggregates);
+            for (phone p : rows) next.add(p);
+            snapshot.set(new CatalogSnapshot(current.getVersion() + 1, next, ReviewIndex.build(rows)));
+            reused = rows.size() - fresh.size();
+        }
+        // a reload replaces every phone, so it is saved as a snapshot rather than logged
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return reused;
+    }
+
+    /**
+     * Starts the aggregates of new phones, which have their ids: from their reviews, which also gives
+     * them their score, or from the score they came with (a CSV with pf.sentiment=csv, or {@link #addphone}).
+     */
+    private void score(List<phone> phones, boolean fromReviews) {
+        if (phones.isEmpty()) return;
+        if (!fromReviews) {
+            for (phone p : phones) aggregates.addMean(p.getId(), p.getTotalReviews(), p.getSentiment() / 50 - 1);
+            return;
+        }
+        SentimentScorer.Stats stats = SentimentScorer.getDefault().scoreAll(phones, aggregates);
+        // the phones were just read and are in no catalog yet, so they can take their score in place
+        for (int i = 0; i < phones.size(); i++) phones.get(i).sentiment = stats.getScore(i);
+        System.out.println("Sentiment scored: " + stats);
+    }
+
+    /** Publishes a new version holding the current phones followed by the given ones. */
+    private void append(List<phone> added, boolean fromReviews) {
+        synchronized (writeLock) {
+            CatalogSnapshot current = snapshot.get();
+            PhoneCatalog next = current.getCatalog().copy(current.size() + added.size());
+            next.rankBy(aggregates);
+            for (phone p : added) p.id = nextId++;
+            score(added, fromReviews);
+            CatalogStore saved = catalogStore;
+            if (saved != null) {
+                try {
+                    saved.logPhones(added, aggregates);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not log the new phones", e);
+                }
+            }
+            for (phone p : added) {
+                p.refreshJson(); // the JSON holds the id and the score
+                next.add(p);
+            }
+            snapshot.set(new CatalogSnapshot(current.getVersion() + 1, next,
+                    current.getReviewIndex().withPhones(added)));
+        }
+        checkpointIfDue();
+    }
+
+    /**
+     * Publishes the phones and stores recovered from the catalog store, in place of the current ones.
+     * The recovered phones are new objects without a JSON form, and the review index is not saved; both
+     * are built when first needed (the first response returning a phone, the first search or fold),
+     * so a restart does not serialize every phone nor read every review.
+     */
+    private void restore(CatalogStore.State state) {
+        synchronized (writeLock) {
+            List<phone> phones = state.getPhones();
+            PhoneCatalog next = new PhoneCatalog(Math.max(phones.size(), 16));
+            next.rankBy(aggregates);
+            for (int i = 0; i < phones.size(); i++) {
+                phone p = phones.get(i);
+                aggregates.restore(p.getId(), state.getAggregates(), i * SentimentAggregates.STATE_LONGS);
+                next.add(p, false);
+            }
+            nextId = state.getNextId();
+            CatalogSnapshot restored = new CatalogSnapshot(state.getVersion(), next);
+            snapshot.set(restored);
+
+            for (int number = 0; number < state.getStoreNames().size(); number++) {
+                store s = new store(state.getStoreNames().get(number));
+                for (int id : state.getStorePhones().get(number)) {
+                    phone p = restored.getPhone(id);
+                    if (p != null) s.addPhone(p);
+                }
+                storeNumbers.put(s, number);
+                stores.add(s);
+                s.attach(storeIndex);
+            }
+        }
+    }
+
+    private InputStream openCSV(String csvFileName) throws Exception {
+        InputStream is = getClass().getClassLoader().getResourceAsStream(csvFileName);
+        if (is != null) return is;
+        Path path = Path.of(csvFileName);
+        if (Files.isRegularFile(path)) return Files.newInputStream(path);
+        throw new RuntimeException(csvFileName + " not found in resources");
+    }
+
+    private ReadableByteChannel openCSVChannel(String csvFileName) throws Exception {
+        InputStream is = getClass().getClassLoader().getResourceAsStream(csvFileName);
+        if (is != null) return Channels.newChannel(is);
+        Path path = Path.of(csvFileName);
+        if (Files.isRegularFile(path)) return FileChannel.open(path, StandardOpenOption.READ);
+        throw new RuntimeException(csvFileName + " not found in resources");
+    }
+
     /**
      * Constructor that automatically loads the phone dataset when the library is created
+     * The loader is picked with the pf.csv.parser system property: "opencsv" (default) or "streaming"
      */
 
     public phone_library() {
-        loadCSV("mobile_phone_1000_rec_sent_score_cleaned.csv");
+        loadDataset();
+    }
+
+    private void loadDataset() {
+        String parser = System.getProperty("pf.csv.parser", "opencsv").trim();
+        if (parser.equalsIgnoreCase("streaming")) loadCSVStreaming(DATASET);
+        else loadCSV(DATASET);
+    }
+
+    /**
+     * Constructor that loads the phones from the given CSV instead of the bundled dataset.
+     * The file is read with {@link #reload(String)}, so a later reload of it reuses the unchanged rows.
+     * @param csvFileName the csv file name inside the resources directory, or a file path
+     */
+    public phone_library(String csvFileName) {
+        reload(csvFileName);
+    }
+
+    /**
+     * Constructor that keeps the library in a catalog store. When the store holds a saved library, it is
+     * recovered from it (the CSV is not read); otherwise the CSV is loaded and saved as the first snapshot.
+     *
+     * @param catalogStore the store to recover from and log to
+     * @param csvFileName the csv file to start from when the store is empty, null for the bundled dataset
+     * @throws IOException if the store cannot be read or written, or the CSV cannot be loaded
+     */
+    public phone_library(CatalogStore catalogStore, String csvFileName) throws IOException {
+        long start = System.nanoTime();
+        CatalogStore.State state = catalogStore.recover(reviewStore);
+        if (state != null) {
+            restore(state);
+            System.out.printf("Catalog recovered: %d phones, %d stores, %d reviews in the review store in %.0f ms%n",
+                    state.getPhones().size(), state.getStoreNames().size(), reviewStore.size(),
+                    (System.nanoTime() - start) / 1e6);
+        } else if (csvFileName == null) {
+            loadDataset();
+        } else {
+            reload(csvFileName);
+        }
+        if (getVersion() == 0) throw new IOException("Could not load " + (csvFileName == null ? DATASET : csvFileName));
+        this.catalogStore = catalogStore;
+        if (state == null) checkpoint();
+    }
+    /**
+     * Returns the current version of the phone data. A request should call this once and
+     * use the snapshot for all its work, so every part of the answer comes from the same version.
+     *
+     * @return the current snapshot
+     */
+    public CatalogSnapshot getSnapshot() {
+        return snapshot.get();
     }
     /**
      * Returns all phones stored in the library.
      *
-     * @return list of all phones
+     * @return read only list of all phones of the current version (not a copy)
      */
     public List<phone> getallphones() {
-        return new ArrayList<>(phones);
+        return snapshot.get().getPhones();
     }
     /**
-     * Adds  new phone to the database.
+     * Returns the column based view of the phones, which the strategies scan
+     * without copying the list or touching every phone object.
      *
-     * @param p the phone object to add
+     * @return the catalog of the current version
      */
-    public void addphone(phone p) {
-        phones.add(p);
+    public PhoneCatalog getCatalog() {
+        return snapshot.get().getCatalog();
     }
     /**
-     * Adds a store to the library.
+     * Returns the phone with the given id.
      *
-     * @param s store object containing phones sold by that store
+     * @param id id of the phone, given when it was added to the library
+     * @return the phone, or null when the current version has no phone with this id
      */
-    public void addstore(store s) {
-        stores.add(s);
+    public phone getPhone(int id) {
+        return snapshot.get().getPhone(id);
     }
     /**
-     * Returns the list of stores that sell a specific phone.
+     * Adds a review to the running sentiment of a phone. It is scored with the {@link SentimentAnalyzer}
+     * and added to the aggregate of the phone without any lock; the review is not saved nor added to the
+     * phone's reviews (see {@link #appendReviews} for that). The aspects it names ({@link AspectAnalyzer})
+     * are added too. The new score reaches the rankings with the next {@link #foldReviews()}.
      *
-     * @param p the phone object
-     * @return list of stores containing that phone
+     * @param id id of the phone
+     * @param review text of the review
+     * @return compound score of the review, -1 to +1
+     * @throws IllegalArgumentException if the current version has no phone with this id
      */
-    public List<store> getStoreForPhone(phone p) {
-        List<store> available = new ArrayList<>();
-        for (store s : stores)
-            if (s.getPhones().contains(p)) available.add(s);
-        return available;
+    public double addReview(int id, String review) {
+        if (getPhone(id) == null) throw new IllegalArgumentException("Unknown phone id: " + id);
+        double compound = SentimentAnalyzer.getDefault().compound(review);
+        aggregates.add(id, compound);
+        aggregates.addAspects(id, AspectAnalyzer.getDefault().analyze(review, compound));
+        rescored.add(id);
+        return compound;
     }
+    /**
+     * Adds reviews to the phones for good: they are logged to the catalog store (when the library has one),
+     * added to the running sentiment of their phones, and kept for the next {@link #foldReviews()}, which
+     * puts them in the phones' review lists. Unlike {@link #addReview}, reviews added this way are saved.
+     * The reviews and their aspects are scored before the write lock is taken; the aspect features of the
+     * phones in the catalog are brought up to date by the fold.
+     *
+     * @param ids ids of the phones
+     * @param reviews texts of the reviews, one per id
+     * @param force true to wait until the logged reviews are on the disk
+     * @return number of reviews added; reviews of phones that are not in the current version are skipped
+     * @throws IOException if the reviews cannot be logged, then none of them is added
+     */
+    public int appendReviews(int[] ids, List<String> reviews, boolean force) throws IOException {
+        if (ids.length != reviews.size()) throw new IllegalArgumentException("One id per review is needed");
+        SentimentAnalyzer analyzer = SentimentAnalyzer.getDefault();
+        AspectAnalyzer aspectAnalyzer = AspectAnalyzer.getDefault();
+        double[] compounds = new double[ids.length];
+        double[][] aspects = new double[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            compounds[i] = analyzer.compound(reviews.get(i));
+            aspects[i] = aspectAnalyzer.analyze(reviews.get(i), compounds[i]);
+        }
 
-    // ------------------------- STRATEGY FILTERING -------------------------
+        int added = 0;
+        synchronized (writeLock) {
+            CatalogSnapshot current = snapshot.get();
+            int[] keptIds = new int[ids.length];
+            double[] keptCompounds = new double[ids.length];
+            double[][] keptAspects = new double[ids.length][];
+            String[] keptReviews = new String[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                if (current.rowOf(ids[i]) < 0) continue;
+                keptIds[added] = ids[i];
+                keptCompounds[added] = compounds[i];
+                keptAspects[added] = aspects[i];
+                keptReviews[added++] = reviews.get(i);
+            }
+            CatalogStore saved = catalogStore;
+            if (saved != null && added > 0) saved.logReviews(keptIds, keptCompounds, keptAspects, keptReviews, added, force);
+            for (int k = 0; k < added; k++) {
+                aggregates.add(keptIds[k], keptCompounds[k]);
+                aggregates.addAspects(keptIds[k], keptAspects[k]);
+                unfolded.computeIfAbsent(keptIds[k], id -> new ArrayList<>()).add(keptReviews[k]);
+            }
+        }
+        checkpointIfDue();
+        return added;
+    }
     /**
-     * Filters and generates recommendations based on the provided strategy.
+     * Puts the reviews added since the last fold ({@link #appendReviews}) in their phones, as one new version.
+     * Every phone with new reviews is replaced by a copy ({@link phone#withReviews}) with the same id, its
+     * reviews and review count brought up to date and the mean of its aggregate as its score; its row gets
+     * the current score and aspect features of its aggregate (see {@link PhoneCatalog#replace}). The rows of
+     * phones that only got reviews through {@link #addReview} are rescored ({@link PhoneCatalog#rescore}).
+     * Reviews of phones that are no longer in the catalog are dropped.
+     *
+     * Only those rows are written: the next catalog is a {@link PhoneCatalog#copy} that shares every other
+     * row with the current one, moves the rescored rows to their new places in the rank orders already
+     * built, and keeps the id index of the current snapshot ({@link CatalogSnapshot#withCatalog}), so a fold
+     * costs what the new reviews touched, not what the catalog holds.
      *
-     * @param pref the user preferences (budget, OS, usage)
-     * @param strategy the chosen recommendation strategy
+     * This is the only way new reviews reach the rankings, so they move once per fold (the review ingestor
+     * folds every few seconds) rather than with every review, and a cached result or an ETag stays
+     * valid for a whole version.
+     *
+     * @return number of phones that got reviews
      */
-    public void filterWithStrategy(user_preference pref, RecommendationStrategy strategy) {
-        recommendation.clear();
-        recommendation = strategy.recommend(phones, pref);
-        batchpointer = 0;
+    public int foldReviews() {
+        synchronized (writeLock) {
+            return foldUnfolded();
+        }
+    }
+
+    /** Folds the unfolded reviews, under the write lock. */
+    private int foldUnfolded() {
+        if (unfolded.isEmpty() && rescored.isEmpty()) return 0;
+        CatalogSnapshot current = snapshot.get();
+        PhoneCatalog next = current.getCatalog().copy(current.size());
+        Map<Integer, List<String>> folded = new HashMap<>();
+        for (Map.Entry<Integer, List<String>> e : unfolded.entrySet()) {
+            int row = current.rowOf(e.getKey());
+            if (row < 0) continue;
+            double score = Math.round(aggregates.mean(e.getKey()) * 10) / 10.0;
+            next.replace(row, next.phoneAt(row).withReviews(e.getValue(), score));
+            folded.put(e.getKey(), e.getValue());
+        }
+        unfolded.clear();
+        boolean changed = !folded.isEmpty();
+        for (Iterator<Integer> it = rescored.iterator(); it.hasNext(); ) {
+            int row = current.rowOf(it.next());
+            it.remove();
+            if (row >= 0 && next.rescore(row)) changed = true;
+        }
+        if (changed) {
+            snapshot.set(current.withCatalog(current.getVersion() + 1, next,
+                    folded.isEmpty() ? current.getReviewIndex() : current.getReviewIndex().withReviews(folded)));
+        }
+        return folded.size();
     }
     /**
-     * Returns the next batch of recommended phones.
+     * Writes a snapshot of the library to its catalog store, after which the log before the previous
+     * snapshot is deleted. The unfolded reviews are folded first, so the snapshot holds everything that
+     * was logged up to its position. Changes can go on while the snapshot is written: only taking its
+     * content holds the write lock, which is a copy of the aggregates of the current version.
      *
-     * @param batchsize number of phones to return
-     * @return a list of phones in the current batch
+     * @return true if a snapshot was written, false when the library has no catalog store
+     * @throws IOException if the snapshot cannot be written
      */
-    public List<phone> getnextbatch(int batchsize) {
-        List<phone> batch = new ArrayList<>();
-        int end = Math.min(batchpointer + batchsize, recommendation.size());
+    public boolean checkpoint() throws IOException {
+        CatalogStore saved = catalogStore;
+        if (saved == null) return false;
+        synchronized (checkpointLock) {
+            CatalogSnapshot current;
+            long[] state;
+            long position;
+            int next;
+            List<store> saving;
+            synchronized (writeLock) {
+                foldUnfolded();
+                current = snapshot.get();
+                List<phone> phones = current.getPhones();
+                state = new long[phones.size() * SentimentAggregates.STATE_LONGS];
+                for (int i = 0; i < phones.size(); i++) {
+                    aggregates.copyTo(phones.get(i).getId(), state, i * SentimentAggregates.STATE_LONGS);
+                }
+                position = saved.mark();
+                next = nextId;
+                saving = new ArrayList<>(stores);
+            }
+            // store.addPhone logs through the index without the write lock, so the inventories are read
+            // after it; a phone both in here and in a later record is put in its store once on recovery
+            List<String> names = new ArrayList<>(saving.size());
+            List<int[]> inventories = new ArrayList<>(saving.size());
+            for (store s : saving) {
+                names.add(s.getName());
+                inventories.add(s.copyOfPhones().stream().mapToInt(phone::getId).toArray());
+            }
+            saved.writeSnapshot(new CatalogStore.State(position, current.getVersion(), next,
+                    current.getPhones(), state, names, inventories));
+            return true;
+        }
+    }
 
-        for (int i = batchpointer; i < end; i++)
-            batch.add(recommendation.get(i));
+    /** Writes a snapshot when enough was logged since the last one; a failure leaves the log in use. */
+    private void checkpointIfDue() {
+        CatalogStore saved = catalogStore;
+        if (saved == null || !saved.isSnapshotDue()) return;
+        synchronized (checkpointLock) {
+            if (!saved.isSnapshotDue()) return; // written by another thread meanwhile
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    /**
+     * Returns the store the library is saved in.
+     *
+     * @return the catalog store, null when the library is not saved
+     */
+    public CatalogStore getCatalogStore() {
+        return catalogStore;
+    }
+    /**
+     * Returns the running sentiment aggregates of the phones, by phone id.
+     *
+     * @return the aggregates of this library
+     */
+    public SentimentAggregates getSentimentAggregates() {
+        return aggregates;
+    }
+    /**
+     * Returns the store holding the reviews of the phones loaded from the CSV.
+     *
+     * @return the review store of this library
+     */
+    public ReviewStore getReviewStore() {
+        return reviewStore;
+    }
+    /**
+     * Adds  new phone to the database.
+     * The phone is published with a new version, readers of the previous one are not affected.
+     *
+     * @param p the phone object to add
+     */
+    public void addphone(phone p) {
+        append(List.of(p), false);
+    }
+    /**
+     * Returns the version of the phone data. It changes every time a phone is added
+     * or a CSV is loaded, so caches built on the data know when to throw results away.
+     *
+     * @return current data version
+     */
+    public long getVersion() {
+        return snapshot.get().getVersion();
+    }
+    /**
+     * Adds a store to the library.
+     * Its phones go into the library's phone to store index, and so do the phones the store gets later.
+     *
+     * @param s store object containing phones sold by that store
+     * @throws IllegalArgumentException if the store has a phone that is not in the library
+     */
+    public void addstore(store s) {
+        for (phone p : s.copyOfPhones()) StoreIndex.check(p);
+        synchronized (writeLock) {
+            CatalogStore saved = catalogStore;
+            if (saved != null) {
+                try {
+                    saved.logStore(stores.size(), s.getName());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not log the new store", e);
+                }
+            }
+            storeNumbers.put(s, stores.size());
+            stores.add(s);
+        }
+        s.attach(storeIndex);
+        checkpointIfDue();
+    }
 
-        batchpointer = end;
-        return batch;
+    /** Logs a phone newly listed for a store of this library, told by the store index. */
+    private void logStorePhone(store s, phone p) {
+        CatalogStore saved = catalogStore;
+        Integer number = storeNumbers.get(s);
+        if (saved == null || number == null) return;
+        try {
+            saved.logStorePhone(number, p.getId());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not log the phone of store " + s.getName(), e);
+        }
     }
     /**
-     * Checks if more recommendation batches are available.
+     * Returns the list of stores that sell a specific phone.
+     * This is a lookup in the phone to store index, it does not search the stores.
      *
-     * @return true if more batches remain, otherwise false
+     * @param p the phone object
+     * @return list of stores containing that phone (read only)
      */
-    public boolean hasnextbatch() {
-        return batchpointer < recommendation.size();
+    public List<store> getStoreForPhone(phone p) {
+        return storeIndex.storesOf(p);
     }
 
     // ------------------------- ADDITIONAL RECOMMENDATIONS -------------------------
@@ -150,20 +633,45 @@ public class phone_library {
      * @return list of additional recommended phones
      */
     public List<phone> getAdditionalRecommendation(user_preference pref, RecommendationStrategy strategy) {
-        List<phone> all = getallphones();
+        return getAdditionalRecommendation(pref, strategy, TopKSelector.DEFAULT_K);
+    }
+
+    /**
+     * Provides additional phone suggestions slightly above the user's budget.
+     * If none are found, it falls back to the top k phones of the strategy.
+     *
+     * @param pref  user preferences
+     * @param strategy the recommendation strategy to use
+     * @param k how many phones the fallback returns
+     * @return list of additional recommended phones
+     */
+    public List<phone> getAdditionalRecommendation(user_preference pref, RecommendationStrategy strategy, int k) {
+        return getAdditionalRecommendation(getCatalog(), pref, strategy, k);
+    }
+
+    /**
+     * Provides additional phone suggestions slightly above the user's budget from a given catalog,
+     * so a request can use the same version for all of its recommendations.
+     *
+     * @param catalog the catalog to search, eg: the one of the request's snapshot
+     * @param pref  user preferences
+     * @param strategy the recommendation strategy to use
+     * @param k how many phones the fallback returns
+     * @return list of additional recommended phones
+     */
+    public static List<phone> getAdditionalRecommendation(PhoneCatalog catalog, user_preference pref,
+                                                          RecommendationStrategy strategy, int k) {
         List<phone> extra = new ArrayList<>();
 
         double max = pref.getMaxBudget();
-        double upper = max * 1.15;
+        double upper = max * PREMIUM_FACTOR;
 
-        for (phone p : all) {
-            if (p.getPrice() > max && p.getPrice() <= upper) {
-                extra.add(p);
-            }
+        for (int i = catalog.nextAbove(0, max, upper); i >= 0; i = catalog.nextAbove(i + 1, max, upper)) {
+            extra.add(catalog.phoneAt(i));
         }
         // If no phones found slightly above budget,fallback to main strategy
         if (extra.isEmpty()) {
-            extra.addAll(strategy.recommend(all, pref));
+            extra.addAll(strategy.recommend(catalog, pref, k));
         }
 
         return extra;
@@ -1,5 +1,8 @@
 const loader = document.getElementById("loader");
 
+// The phone fields the cards show, the server leaves out the rest
+const CARD_FIELDS = "id,name,price,sentiment,summaryReview,purchaseLink";
+
 document.getElementById("searchBtn").addEventListener("click", function () {
     const minBudget = document.getElementById("minBudget").value || 0;
     const maxBudget = document.getElementById("maxBudget").value || 100000;
@@ -7,10 +10,12 @@ document.getElementById("searchBtn").addEventListener("click", function () {
     const usageChoice = document.getElementById("usage").value || 1;
     const usageText = ["Casual","Entertainment","Gaming","Photography","Productivity"][usageChoice-1];
 
-    const url = `http://localhost:4567/api/recommendations?minBudget=${minBudget}&maxBudget=${maxBudget}&os=${os}&usageChoice=${usageChoice}`;
+    const query = `minBudget=${minBudget}&maxBudget=${maxBudget}&os=${os}&usageChoice=${usageChoice}&fields=${CARD_FIELDS}`;
+    const url = `http://localhost:4567/api/recommendations?${query}`;
 
     loader.style.display = "block";
     clearPanels();
+    startPaging(query);
 
     fetch(url)
         .then(response => {
@@ -32,8 +37,50 @@ function clearPanels() {
     document.getElementById("mainPhones").innerHTML = "";
     document.getElementById("additionalPhones").innerHTML = "";
     document.getElementById("bonusPhones").innerHTML = "";
+    document.getElementById("allMatches").innerHTML = "";
+}
+
+// All matches, loaded a page at a time while the panel is scrolled.
+// The server keeps no paging state: every page returns the cursor of the next one.
+const paging = { query: null, cursor: null, loading: false, done: true };
+const allMatches = document.getElementById("allMatches");
+
+function startPaging(query) {
+    paging.query = query;
+    paging.cursor = null;
+    paging.loading = false;
+    paging.done = false;
+    loadNextPage();
+}
+
+function loadNextPage() {
+    if (paging.loading || paging.done) return;
+    paging.loading = true;
+    const query = paging.query;
+    const cursor = paging.cursor ? `&cursor=${encodeURIComponent(paging.cursor)}` : "";
+
+    fetch(`http://localhost:4567/api/recommendations/page?${query}&limit=20${cursor}`)
+        .then(response => {
+            if (!response.ok) throw new Error("Network response was not OK");
+            return response.json();
+        })
+        .then(page => {
+            if (query !== paging.query) return; // a new search started meanwhile
+            page.phones.forEach(p => allMatches.appendChild(createPhoneCard(p)));
+            paging.cursor = page.nextCursor;
+            paging.done = !page.nextCursor;
+            paging.loading = false;
+        })
+        .catch(err => {
+            paging.loading = false;
+            console.error("ERROR:", err);
+        });
 }
 
+allMatches.addEventListener("scroll", () => {
+    if (allMatches.scrollLeft + allMatches.clientWidth >= allMatches.scrollWidth - 300) loadNextPage();
+});
+
 // Accordion functionality
 document.querySelectorAll(".accordion").forEach(btn => {
     btn.addEventListener("click", () => {
@@ -51,24 +98,24 @@ function getSentimentText(score) {
     return "<span style='color:red;font-weight:bold;'>Negative</span>";
 }
 
+function createPhoneCard(p) {
+    const div = document.createElement("div");
+    div.className = "phone";
+    div.innerHTML = `
+        <h3>${p.name}</h3>
+        <p>₹${p.price}</p>
+        <p>"${p.summaryReview || ""}"</p>
+        <p>Sentiment: ${p.sentiment || "N/A"}% ${getSentimentText(p.sentiment)}</p>
+        ${p.purchaseLink ? `<a href="${p.purchaseLink}" target="_blank" class="buy-btn">Buy →</a>` : ""}
+    `;
+    return div;
+}
+
 function displayResults(data, usage) {
     const mainDiv = document.getElementById("mainPhones");
     const additionalDiv = document.getElementById("additionalPhones");
     const bonusDiv = document.getElementById("bonusPhones");
 
-    const createPhoneCard = (p) => {
-        const div = document.createElement("div");
-        div.className = "phone";
-        div.innerHTML = `
-            <h3>${p.name}</h3>
-            <p>₹${p.price}</p>
-            <p>"${p.reviews && p.reviews.length ? p.reviews[0] : ""}"</p>
-            <p>Sentiment: ${p.sentiment || "N/A"}% ${getSentimentText(p.sentiment)}</p>
-            ${p.purchaseLink ? `<a href="${p.purchaseLink}" target="_blank" class="buy-btn">Buy →</a>` : ""}
-        `;
-        return div;
-    };
-
     data.main?.forEach(p => mainDiv.appendChild(createPhoneCard(p)));
     data.additional?.forEach(p => additionalDiv.appendChild(createPhoneCard(p)));
 
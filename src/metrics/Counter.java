@@ -0,0 +1,65 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter that only goes up (eg: requests served, errors)
+ * Every child counts with a {@link LongAdder}, so threads that count at the same time
+ * update different cells instead of fighting over one value.
+ */
+public final class Counter extends Metric<Counter.Child> {
+
+    private final Child unlabeled;
+
+    Counter(String name, String help, String... labelNames) {
+        super(name, help, "counter", labelNames);
+        this.unlabeled = labelNames.length == 0 ? labels() : null;
+    }
+
+    /** Adds one to the counter of a family without labels. */
+    public void inc() {
+        unlabeled.inc();
+    }
+
+    /**
+     * Adds to the counter of a family without labels.
+     *
+     * @param amount value to add, not negative
+     */
+    public void add(long amount) {
+        unlabeled.add(amount);
+    }
+
+    @Override
+    Child newChild() {
+        return new Child();
+    }
+
+    @Override
+    void writeChild(StringBuilder out, String labels, Child child) {
+        sample(out, getName(), labels, null, child.get());
+    }
+
+    /** Counter of one combination of label values. */
+    public static final class Child {
+        private final LongAdder value = new LongAdder();
+
+        /** Adds one. */
+        public void inc() {
+            value.increment();
+        }
+
+        /**
+         * @param amount value to add, not negative
+         */
+        public void add(long amount) {
+            if (amount < 0) throw new IllegalArgumentException("A counter cannot go down");
+            value.add(amount);
+        }
+
+        /** @return current value */
+        public long get() {
+            return value.sum();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * A value read when the metrics are scraped (eg: cache size, catalog version), or a counter
+ * kept elsewhere (eg: the cache's own hit counter) exported under a metric name.
+ */
+final class Gauge extends Metric<DoubleSupplier> {
+
+    private final DoubleSupplier value;
+
+    Gauge(String name, String help, String type, DoubleSupplier value) {
+        super(name, help, type);
+        this.value = value;
+        labels();
+    }
+
+    @Override
+    DoubleSupplier newChild() {
+        return value;
+    }
+
+    @Override
+    void writeChild(StringBuilder out, String labels, DoubleSupplier child) {
+        sample(out, getName(), labels, null, child.getAsDouble());
+    }
+}
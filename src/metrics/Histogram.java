@@ -0,0 +1,118 @@
+package metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of observed values (eg: latencies, result sizes) in fixed buckets
+ * Each bucket counts with its own {@link LongAdder}, so recording is a short scan over the bucket
+ * bounds and two adder updates without any lock. The cumulative counts Prometheus expects are only
+ * added up when the metrics are read.
+ */
+public final class Histogram extends Metric<Histogram.Child> {
+
+    /** Latency buckets in seconds, from 10 microseconds to 10 seconds. */
+    public static final double[] LATENCY_BUCKETS = {
+            0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005,
+            0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    /** Buckets for the number of items in a result. */
+    public static final double[] SIZE_BUCKETS = {0, 1, 2, 3, 5, 10, 20, 50, 100, 250, 500, 1000, 10000};
+
+    /** Buckets for byte counts, from 256 bytes to 4 MiB. */
+    public static final double[] BYTES_BUCKETS = {256, 1024, 4096, 16384, 65536, 262144, 1048576, 4194304};
+
+    private final double[] bounds;
+    private final Child unlabeled;
+
+    Histogram(String name, String help, double[] bounds, String... labelNames) {
+        super(name, help, "histogram", labelNames);
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) throw new IllegalArgumentException("Bucket bounds must increase");
+        }
+        this.bounds = bounds.clone();
+        this.unlabeled = labelNames.length == 0 ? labels() : null;
+    }
+
+    /**
+     * Records a value in the histogram of a family without labels.
+     *
+     * @param value the observed value
+     */
+    public void observe(double value) {
+        unlabeled.observe(value);
+    }
+
+    /**
+     * Records a duration in seconds in the histogram of a family without labels.
+     *
+     * @param nanos the duration in nanoseconds, eg: the difference of two System.nanoTime() calls
+     */
+    public void observeNanos(long nanos) {
+        unlabeled.observeNanos(nanos);
+    }
+
+    @Override
+    Child newChild() {
+        return new Child(bounds);
+    }
+
+    @Override
+    void writeChild(StringBuilder out, String labels, Child child) {
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += child.counts[i].sum();
+            sample(out, getName() + "_bucket", labels, "le=\"" + format(bounds[i]) + "\"", cumulative);
+        }
+        cumulative += child.counts[bounds.length].sum();
+        sample(out, getName() + "_bucket", labels, "le=\"+Inf\"", cumulative);
+        sample(out, getName() + "_sum", labels, null, child.sum.sum());
+        sample(out, getName() + "_count", labels, null, cumulative);
+    }
+
+    /** Histogram of one combination of label values. */
+    public static final class Child {
+        private final double[] bounds;
+        private final LongAdder[] counts; // one per bound, the last one for values above every bound
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Child(double[] bounds) {
+            this.bounds = bounds;
+            this.counts = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < counts.length; i++) counts[i] = new LongAdder();
+        }
+
+        /**
+         * Records a value.
+         *
+         * @param value the observed value
+         */
+        public void observe(double value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) i++;
+            counts[i].increment();
+            sum.add(value);
+        }
+
+        /**
+         * Records a duration in seconds.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        public void observeNanos(long nanos) {
+            observe(nanos / 1e9);
+        }
+
+        /** @return number of recorded values */
+        public long count() {
+            long n = 0;
+            for (LongAdder c : counts) n += c.sum();
+            return n;
+        }
+
+        /** @return sum of the recorded values */
+        public double sum() {
+            return sum.sum();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Base of the metric families of the {@link MetricsRegistry}
+ * A family has a name, a help text and label names; every combination of label values gets its own
+ * child, created the first time it is used and kept in a concurrent map, so finding a child never locks.
+ * Families without labels have a single child.
+ *
+ * @param <C> type of the children
+ */
+public abstract class Metric<C> {
+
+    private final String name;
+    private final String help;
+    private final String type;
+    private final String[] labelNames;
+    private final Map<Object, C> children = new ConcurrentHashMap<>();
+    private final Map<Object, String[]> labelValues = new ConcurrentHashMap<>();
+    private final Function<Object, C> create = key -> newChild();
+
+    Metric(String name, String help, String type, String... labelNames) {
+        if (!name.matches("[a-zA-Z_:][a-zA-Z0-9_:]*")) throw new IllegalArgumentException("Invalid metric name: " + name);
+        this.name = name;
+        this.help = help;
+        this.type = type;
+        this.labelNames = labelNames.clone();
+    }
+
+    /**
+     * Returns the child of the given label values, creating it on first use.
+     *
+     * @param values one value per label name, in the same order
+     * @return the child
+     */
+    public C labels(String... values) {
+        if (values.length != labelNames.length) {
+            throw new IllegalArgumentException(name + " expects " + labelNames.length + " label values");
+        }
+        Object key = values.length == 1 ? values[0] : String.join("\u0000", values);
+        C child = children.get(key);
+        if (child != null) return child;
+        labelValues.putIfAbsent(key, values.clone());
+        return children.computeIfAbsent(key, create);
+    }
+
+    /** @return name of the family */
+    public String getName() { return name; }
+
+    abstract C newChild();
+
+    /** Writes the samples of one child, {@code labels} is "" or "a=\"x\",b=\"y\"". */
+    abstract void writeChild(StringBuilder out, String labels, C child);
+
+    /** Writes the family in the Prometheus text format. */
+    void write(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (Map.Entry<Object, C> e : children.entrySet()) {
+            String[] values = labelValues.get(e.getKey());
+            StringBuilder labels = new StringBuilder();
+            for (int i = 0; i < labelNames.length; i++) {
+                if (i > 0) labels.append(',');
+                labels.append(labelNames[i]).append("=\"").append(escape(values[i])).append('"');
+            }
+            writeChild(out, labels.toString(), e.getValue());
+        }
+    }
+
+    /** Writes one sample line. */
+    static void sample(StringBuilder out, String name, String labels, String extraLabel, double value) {
+        out.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            out.append('{').append(labels);
+            if (extraLabel != null) out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            out.append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    static String format(double value) {
+        if (value == Double.POSITIVE_INFINITY) return "+Inf";
+        if (value == (long) value) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
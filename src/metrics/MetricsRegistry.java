@@ -0,0 +1,106 @@
+package metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The MetricsRegistry holds the counters, histograms and gauges of the application
+ * and writes them in the Prometheus text format (served at /metrics).
+ *
+ * Recording is lock free: counters and histogram buckets are LongAdders and the labeled children are
+ * found in a concurrent map, so instrumenting a hot path costs a few adder updates. Metrics are
+ * usually created once, in static fields of the class that records them.
+ */
+public final class MetricsRegistry {
+
+    /** Content type of the Prometheus text format. */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Metric<?>> metrics = new ConcurrentSkipListMap<>();
+
+    /** @return the registry shared by the whole application */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates a counter.
+     *
+     * @param name metric name, eg: pf_http_requests_total
+     * @param help description shown by Prometheus
+     * @param labelNames names of the labels, none for a single counter
+     * @return the new counter
+     * @throws IllegalArgumentException if a metric with this name already exists
+     */
+    public Counter counter(String name, String help, String... labelNames) {
+        return add(new Counter(name, help, labelNames));
+    }
+
+    /**
+     * Creates a histogram.
+     *
+     * @param name metric name, eg: pf_strategy_duration_seconds
+     * @param help description shown by Prometheus
+     * @param buckets upper bounds of the buckets, increasing, eg: {@link Histogram#LATENCY_BUCKETS}
+     * @param labelNames names of the labels, none for a single histogram
+     * @return the new histogram
+     * @throws IllegalArgumentException if a metric with this name already exists
+     */
+    public Histogram histogram(String name, String help, double[] buckets, String... labelNames) {
+        return add(new Histogram(name, help, buckets, labelNames));
+    }
+
+    /**
+     * Registers a gauge whose value is read on every scrape.
+     *
+     * @param name metric name, eg: pf_cache_size
+     * @param help description shown by Prometheus
+     * @param value supplier of the current value
+     * @throws IllegalArgumentException if a metric with this name already exists
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        add(new Gauge(name, help, "gauge", value));
+    }
+
+    /**
+     * Registers a counter kept by another component, read on every scrape.
+     *
+     * @param name metric name, eg: pf_cache_hits_total
+     * @param help description shown by Prometheus
+     * @param value supplier of the current count, it must never go down
+     * @throws IllegalArgumentException if a metric with this name already exists
+     */
+    public void counterOf(String name, String help, DoubleSupplier value) {
+        add(new Gauge(name, help, "counter", value));
+    }
+
+    /**
+     * Removes a metric, eg: one registered by a component that is shut down.
+     *
+     * @param name metric name
+     */
+    public void remove(String name) {
+        metrics.remove(name);
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format, sorted by name.
+     *
+     * @return the scrape body
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric<?> metric : metrics.values()) metric.write(out);
+        return out.toString();
+    }
+
+    private <M extends Metric<?>> M add(M metric) {
+        if (metrics.putIfAbsent(metric.getName(), metric) != null) {
+            throw new IllegalArgumentException("Metric already registered: " + metric.getName());
+        }
+        return metric;
+    }
+}
@@ -0,0 +1,65 @@
+package model;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The Aspect enum lists the parts of a phone the reviews talk about, with the words that name them
+ * Every phone gets one sentiment feature per aspect ({@link SentimentAggregates#aspectFeature}), kept in
+ * a primitive column of the {@link PhoneCatalog}, and the strategies weight the aspects their users care
+ * about (see {@link CatalogQuery#getAspectWeights()}). The ordinal of an aspect is its index in those arrays.
+ */
+public enum Aspect {
+
+    BATTERY("battery", "batteries", "backup"),
+    CAMERA("camera", "cameras", "photo", "photos", "photography", "picture", "pictures", "selfie", "selfies", "lens", "zoom"),
+    HEATING("heating", "heat", "heats", "heated", "overheat", "overheats", "overheating", "hot", "warm", "thermal", "thermals", "temperature"),
+    SCREEN("screen", "screens", "display", "displays", "brightness"),
+    AUDIO("audio", "speaker", "speakers", "sound", "volume", "earpiece"),
+    CHARGING("charging", "charge", "charges", "charged", "charger"),
+    PERFORMANCE("performance", "lag", "lags", "laggy", "lagging", "processor", "chipset", "speed", "fps", "stutter", "stutters");
+
+    /** Number of aspects, the length of a weight array and of the features of one catalog row. */
+    public static final int COUNT = values().length;
+
+    private static final Aspect[] ALL = values();
+
+    private final List<String> words;
+
+    Aspect(String... words) {
+        this.words = List.of(words);
+    }
+
+    /** @return the lower case words that name this aspect in a review */
+    public List<String> getWords() {
+        return words;
+    }
+
+    /** @return the aspect name as it is shown in the API, eg: "battery" */
+    public String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the aspect with the given ordinal.
+     *
+     * @param index ordinal of the aspect, 0 to {@link #COUNT} - 1
+     * @return the aspect
+     */
+    public static Aspect of(int index) {
+        return ALL[index];
+    }
+
+    /**
+     * Builds the weight array a strategy puts into its {@link CatalogQuery}.
+     *
+     * @param weights sentiment points per aspect, given to a phone whose feature for the aspect is +1
+     * @return one weight per aspect, by ordinal, 0 for the aspects not given
+     */
+    public static float[] weights(Map<Aspect, Double> weights) {
+        float[] array = new float[COUNT];
+        weights.forEach((aspect, weight) -> array[aspect.ordinal()] = weight.floatValue());
+        return array;
+    }
+}
@@ -0,0 +1,81 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The CatalogQuery class describes the filter a recommendation strategy applies to the catalog:
+ * a usage code, an OS code and a price range (both ends included)
+ * Strategies return a query instead of scanning the catalog themselves, so the same filter
+ * can be used for a single request or evaluated together with many others in one catalog pass
+ * A strategy class therefore only describes its filter: the shared catalog scan and the TopKSelector
+ * keep the best k phones, so the matches never have to be fully sorted
+ * A query can also weight the aspects of the phones ({@link Aspect}), then the matches are ranked on
+ * {@link PhoneCatalog#rankScore} instead of the plain sentiment
+ */
+public class CatalogQuery {
+
+    private final int usage;
+    private final int os;
+    private final double minPrice;
+    private final double maxPrice;
+    private final float[] aspectWeights;
+
+    /**
+     * Creates a query.
+     *
+     * @param usage usage code from {@link CodeDictionary#USAGE}, or {@link PhoneCatalog#ANY}
+     * @param os OS code from {@link CodeDictionary#OS}, or {@link PhoneCatalog#ANY}
+     * @param minPrice lowest accepted price
+     * @param maxPrice highest accepted price
+     */
+    public CatalogQuery(int usage, int os, double minPrice, double maxPrice) {
+        this(usage, os, minPrice, maxPrice, null);
+    }
+
+    /**
+     * Creates a query that ranks the matches on their sentiment plus weighted aspect features.
+     *
+     * @param usage usage code from {@link CodeDictionary#USAGE}, or {@link PhoneCatalog#ANY}
+     * @param os OS code from {@link CodeDictionary#OS}, or {@link PhoneCatalog#ANY}
+     * @param minPrice lowest accepted price
+     * @param maxPrice highest accepted price
+     * @param aspectWeights sentiment points per aspect by ordinal (see {@link Aspect#weights}), null to rank on sentiment only;
+     *                      the array is shared, not copied
+     */
+    public CatalogQuery(int usage, int os, double minPrice, double maxPrice, float[] aspectWeights) {
+        this.usage = usage;
+        this.os = os;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.aspectWeights = aspectWeights;
+    }
+
+    /** @return usage code, or {@link PhoneCatalog#ANY} */
+    public int getUsage() { return usage; }
+
+    /** @return OS code, or {@link PhoneCatalog#ANY} */
+    public int getOs() { return os; }
+
+    /** @return lowest accepted price */
+    public double getMinPrice() { return minPrice; }
+
+    /** @return highest accepted price */
+    public double getMaxPrice() { return maxPrice; }
+
+    /** @return sentiment points per aspect by ordinal, or null when the query ranks on sentiment only; do not modify */
+    public float[] getAspectWeights() { return aspectWeights; }
+
+    /** @return true if no phone can match, because the usage or OS is unknown */
+    public boolean matchesNothing() {
+        return usage == PhoneCatalog.NO_MATCH || os == PhoneCatalog.NO_MATCH;
+    }
+
+    /**
+     * Returns a string with the codes, the price range and the aspect weights if any.
+     */
+    @Override
+    public String toString() {
+        String range = "usage=" + usage + "|os=" + os + "|" + minPrice + "-" + maxPrice;
+        return aspectWeights == null ? range : range + "|aspects=" + Arrays.toString(aspectWeights);
+    }
+}
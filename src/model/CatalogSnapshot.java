@@ -0,0 +1,167 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The CatalogSnapshot is one immutable version of the phone data
+ * It holds the {@link PhoneCatalog} of that version, a read only list view of its phones,
+ * a hash index from phone id to catalog row and the {@link ReviewIndex} of the reviews.
+ *
+ * Ids are given by the library and kept by reloads for unchanged rows, so after many reloads they
+ * are no longer dense; the index is an open addressing table sized by the number of phones
+ * rather than by the largest id.
+ *
+ * The phone library publishes snapshots through an atomic reference: a request reads the
+ * reference once and works on that version until it is done, without locks or copies, while
+ * a writer builds the next snapshot on the side and swaps it in. Nothing in a published
+ * snapshot changes, so it can be shared by any number of threads.
+ */
+public final class CatalogSnapshot {
+
+    /** Snapshot of a library before anything is loaded. */
+    public static final CatalogSnapshot EMPTY = new CatalogSnapshot(0, new PhoneCatalog(1));
+
+    private final long version;
+    private final PhoneCatalog catalog;
+    private final List<phone> phones;
+    private final int[] ids;  // open addressing table: id of the slot, -1 when empty
+    private final int[] rows; // catalog row of the id in the same slot
+    private final int mask;
+    private final int shift;
+    private volatile ReviewIndex reviewIndex; // built on first use when not given
+
+    /**
+     * Creates a snapshot whose review index is built when it is first used. The catalog must not be
+     * changed after this.
+     *
+     * @param version version of the phone data, higher means newer
+     * @param catalog the phones of this version
+     */
+    public CatalogSnapshot(long version, PhoneCatalog catalog) {
+        this(version, catalog, null);
+    }
+
+    /**
+     * Creates a snapshot. The catalog must not be changed after this.
+     *
+     * @param version version of the phone data, higher means newer
+     * @param catalog the phones of this version
+     * @param reviewIndex index of the reviews of exactly these phones, null to build it when first used
+     */
+    public CatalogSnapshot(long version, PhoneCatalog catalog, ReviewIndex reviewIndex) {
+        this.version = version;
+        this.catalog = catalog;
+        this.reviewIndex = reviewIndex;
+        this.phones = catalog.asList();
+
+        int capacity = Integer.highestOneBit(Math.max(catalog.size(), 1) * 2 - 1) << 1; // load factor <= 0.5
+        this.ids = new int[capacity];
+        this.rows = new int[capacity];
+        this.mask = capacity - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        Arrays.fill(ids, -1);
+        for (int row = 0; row < catalog.size(); row++) {
+            int id = catalog.phoneAt(row).getId();
+            if (id < 0) continue;
+            int slot = slot(id);
+            while (ids[slot] != -1 && ids[slot] != id) slot = (slot + 1) & mask;
+            ids[slot] = id;
+            rows[slot] = row;
+        }
+    }
+
+    /** Snapshot of a catalog with the same phones in the same rows as another, sharing its id index. */
+    private CatalogSnapshot(long version, PhoneCatalog catalog, ReviewIndex reviewIndex, CatalogSnapshot same) {
+        this.version = version;
+        this.catalog = catalog;
+        this.reviewIndex = reviewIndex;
+        this.phones = catalog.asList();
+        this.ids = same.ids;
+        this.rows = same.rows;
+        this.mask = same.mask;
+        this.shift = same.shift;
+    }
+
+    /**
+     * Creates the next snapshot of a catalog that holds the phones of this one, with the same ids in the
+     * same rows, eg: after new reviews were folded into some of them. The id index of this snapshot is
+     * shared instead of built again, so the new version costs nothing per phone.
+     *
+     * @param version version of the phone data, higher means newer
+     * @param next the phones of the new version, a {@link PhoneCatalog#copy} of this snapshot's catalog
+     *             with rows replaced or rescored but none added
+     * @param reviewIndex index of the reviews of exactly these phones, null to build it when first used
+     * @return the new snapshot
+     * @throws IllegalArgumentException if the catalog does not have the same number of rows
+     */
+    public CatalogSnapshot withCatalog(long version, PhoneCatalog next, ReviewIndex reviewIndex) {
+        if (next.size() != catalog.size()) throw new IllegalArgumentException("The catalog has other rows");
+        return new CatalogSnapshot(version, next, reviewIndex, this);
+    }
+
+    /**
+     * Returns the version of the phone data. The rankings of a snapshot do not change either (see
+     * {@link PhoneCatalog#rankBy}), so results computed from it stay valid for the whole version.
+     *
+     * @return version of the phone data and of the rankings
+     */
+    public long getVersion() { return version; }
+
+    /** @return the column view of the phones of this version */
+    public PhoneCatalog getCatalog() { return catalog; }
+
+    /** @return read only list of the phones of this version, in catalog order */
+    public List<phone> getPhones() { return phones; }
+
+    /** @return number of phones in this version */
+    public int size() { return catalog.size(); }
+
+    /**
+     * Returns the full-text index of the reviews of this version.
+     *
+     * @return the review index
+     */
+    public ReviewIndex getReviewIndex() {
+        ReviewIndex index = reviewIndex;
+        if (index == null) {
+            // two threads may both build it, they get equal indexes
+            index = ReviewIndex.build(phones);
+            reviewIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the phone with the given id.
+     *
+     * @param id id of the phone
+     * @return the phone, or null when this version has no phone with this id
+     */
+    public phone getPhone(int id) {
+        if (id < 0) return null;
+        for (int slot = slot(id); ids[slot] != -1; slot = (slot + 1) & mask) {
+            if (ids[slot] == id) return catalog.phoneAt(rows[slot]);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the catalog row of the phone with the given id.
+     *
+     * @param id id of the phone
+     * @return the row, or -1 when this version has no phone with this id
+     */
+    public int rowOf(int id) {
+        if (id < 0) return -1;
+        for (int slot = slot(id); ids[slot] != -1; slot = (slot + 1) & mask) {
+            if (ids[slot] == id) return rows[slot];
+        }
+        return -1;
+    }
+
+    /** Spreads consecutive ids over the table (Fibonacci hashing). */
+    private int slot(int id) {
+        return (id * 0x9E3779B9) >>> shift;
+    }
+}
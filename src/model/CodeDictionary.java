@@ -0,0 +1,116 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The CodeDictionary turns the free text usage types and operating systems into small integer codes
+ * Values are normalized once (trimmed and lower cased) and every distinct value gets the next code,
+ * so phones, preferences and the catalog compare codes with == instead of calling equalsIgnoreCase
+ * The known values are registered up front; values that are not known yet (eg: a new usage type
+ * in a CSV) are added when a phone is loaded, so the dictionary grows instead of rejecting them
+ *
+ * Lookups are lock free. Adding a value takes a lock, which only happens for new values.
+ */
+public final class CodeDictionary {
+
+    /** Code of a preference that accepts any value (eg: OS "No Preference"). */
+    public static final int ANY = -1;
+
+    /** Code of a value that is not in the dictionary, nothing has it. */
+    public static final int UNKNOWN = -2;
+
+    /** Largest number of values, so a code always fits into a short catalog column. */
+    public static final int MAX_CODES = Short.MAX_VALUE;
+
+    /** Usage types of the phones and preferences. */
+    public static final CodeDictionary USAGE =
+            new CodeDictionary("casual", "entertainment", "gaming", "photography", "productivity");
+
+    /** Operating systems of the phones and preferences. */
+    public static final CodeDictionary OS = new CodeDictionary("android", "ios");
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[0];
+
+    /**
+     * Creates a dictionary with the given values registered in order (the first gets code 0).
+     *
+     * @param known values known up front
+     */
+    public CodeDictionary(String... known) {
+        for (String value : known) intern(value);
+    }
+
+    /**
+     * Returns the code of a value, adding the value if it is new.
+     *
+     * @param value the value in any case, null is treated as ""
+     * @return the code of the normalized value
+     * @throws IllegalStateException if the dictionary already holds {@link #MAX_CODES} values
+     */
+    public int intern(String value) {
+        String key = normalize(value);
+        Integer code = codes.get(key);
+        if (code != null) return code;
+        synchronized (this) {
+            code = codes.get(key);
+            if (code != null) return code;
+            int next = names.length;
+            if (next >= MAX_CODES) throw new IllegalStateException("Too many distinct values: " + value);
+            String[] grown = Arrays.copyOf(names, next + 1);
+            grown[next] = key;
+            names = grown;
+            codes.put(key, next);
+            return next;
+        }
+    }
+
+    /**
+     * Returns the code of a value without adding it.
+     *
+     * @param value the value in any case
+     * @return the code, or {@link #UNKNOWN} if the value is not in the dictionary
+     */
+    public int find(String value) {
+        return codes.getOrDefault(normalize(value), UNKNOWN);
+    }
+
+    /**
+     * Returns the code of a preference value: blank or "no preference" accept any value,
+     * other values are looked up without being added.
+     *
+     * @param value the preferred value, eg: "iOS" or "No Preference"
+     * @return the code, {@link #ANY} or {@link #UNKNOWN}
+     */
+    public int preference(String value) {
+        String key = normalize(value);
+        if (key.isEmpty() || key.equals("no preference")) return ANY;
+        return codes.getOrDefault(key, UNKNOWN);
+    }
+
+    /**
+     * @param code a code of this dictionary
+     * @return the normalized value of the code
+     */
+    public String nameOf(int code) {
+        String[] n = names;
+        if (code < 0 || code >= n.length) throw new IllegalArgumentException("Unknown code: " + code);
+        return n[code];
+    }
+
+    /** @return number of values in the dictionary */
+    public int size() { return names.length; }
+
+    /**
+     * Normalizes a value the way the dictionary stores it.
+     *
+     * @param value a usage type or OS in any case
+     * @return the trimmed, lower case value, "" for null
+     */
+    public static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,744 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The PhoneCatalog class keeps the phones in a column (structure of arrays) layout
+ * Every field the recommendation strategies filter or rank on is stored in its own primitive array:
+ * price and sentiment as doubles, usage and OS as short codes and the review count as an int
+ * A scan over the catalog therefore walks a few flat arrays instead of chasing a pointer per phone,
+ * and the phone objects are only touched for the rows that are actually returned
+ *
+ * Adding a phone also builds its JSON form ({@link phone#toJsonBytes()}), so responses can copy
+ * ready made bytes instead of serializing the phone on every request.
+ *
+ * The usage and OS codes come from the shared {@link CodeDictionary} instances, the phones carry
+ * them already, so the filters are plain integer comparisons.
+ *
+ * A catalog is filled by one thread and is not changed any more once it is published in a
+ * {@link CatalogSnapshot}; a writer builds the next catalog with {@link #copy(int)} instead. The columns
+ * a new review changes (the phone, its score, review count and aspect features) are kept in chunks of
+ * 1024 rows that a copy shares until it writes to one, so the next version of a catalog in which a few
+ * phones got reviews costs a few chunks, not a copy of every column.
+ *
+ * A catalog that {@link #rankBy ranks by} the library's {@link SentimentAggregates} takes the score of a
+ * row from them when the row is filled (a phone without any reviews keeps the score it was added with),
+ * and a writer brings rows up to date with {@link #rescore}. The scores of a published catalog therefore
+ * never move: the rankings only change with the version, which is what the caches and ETags key on, and
+ * the top-k results and the pages ({@link #rankOrder}) of one version always agree.
+ *
+ * The aspect features ({@link SentimentAggregates#aspectFeature}, one float per {@link Aspect}) are a column
+ * as well, {@link Aspect#COUNT} values per row, filled from the aggregates in the same way. A strategy that
+ * weights aspects ranks on {@link #rankScore}, the sentiment plus one multiply-add per aspect, without
+ * leaving the flat arrays.
+ */
+public class PhoneCatalog {
+
+    /** Code used in a query when any value is accepted (eg: OS "No Preference"). */
+    public static final int ANY = CodeDictionary.ANY;
+
+    /** Code of a value that no phone has, so nothing matches it. */
+    public static final int NO_MATCH = CodeDictionary.UNKNOWN;
+
+    private static final float[] NO_WEIGHTS = new float[0]; // key of the sentiment order
+    private static final int MAX_ORDERS = 32; // rank orders kept per catalog, one per strategy and OS in use
+    private static final int[] NO_ROWS = new int[0];
+    private static final int CHUNK_BITS = 10; // 1024 rows per chunk of the columns a fold rewrites
+    private static final int CHUNK_ROWS = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+    // set when a row is added and the same for every copy, so copies share them until one adds a row
+    private double[] price;
+    private short[] usage;
+    private short[] os;
+    private int[] id; // phone ids as they were when the rows were added, for the aggregate lookup
+    private boolean rowsShared;
+    // rewritten when a phone gets reviews, in chunks that copies share until one of them writes to it
+    private phone[][] phones;
+    private double[][] sentiment; // score each row is ranked by, taken when the row is filled
+    private int[][] reviewCount;
+    private float[][] aspects; // Aspect.COUNT features per row, 0 without live aggregates
+    private boolean[] owned; // chunks only this catalog uses, which it may write in place
+    private int size;
+    private SentimentAggregates live; // scores to rank on instead of the loaded ones, null for none
+    private final ConcurrentHashMap<OrderKey, int[]> orders = new ConcurrentHashMap<>(); // built on first use
+    private Map<OrderKey, int[]> inherited = Collections.emptyMap(); // orders of the catalog this one was copied from
+    private final Map<Integer, Before> before = new HashMap<>(); // rows rewritten since the copy, as they were
+
+    /**
+     * Creates an empty catalog.
+     */
+    public PhoneCatalog() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty catalog with room for the given number of phones.
+     *
+     * @param capacity initial number of rows
+     */
+    public PhoneCatalog(int capacity) {
+        int cap = Math.max(capacity, 1);
+        price = new double[cap];
+        usage = new short[cap];
+        os = new short[cap];
+        id = new int[cap];
+        int chunks = (cap + CHUNK_MASK) >>> CHUNK_BITS;
+        phones = new phone[chunks][];
+        sentiment = new double[chunks][];
+        reviewCount = new int[chunks][];
+        aspects = new float[chunks][];
+        owned = new boolean[chunks];
+    }
+
+    /**
+     * Builds a catalog from an existing list of phones, keeping the list order.
+     *
+     * @param list the phones to put into the catalog
+     * @return a catalog containing all phones of the list
+     */
+    public static PhoneCatalog of(List<phone> list) {
+        PhoneCatalog catalog = new PhoneCatalog(list.size());
+        for (phone p : list) catalog.add(p);
+        return catalog;
+    }
+
+    /**
+     * Appends a phone as a new row of the catalog.
+     *
+     * @param p the phone to add
+     */
+    public void add(phone p) {
+        add(p, true);
+    }
+
+    /**
+     * Appends a phone as a new row of the catalog.
+     *
+     * @param p the phone to add
+     * @param serialize true to build its JSON form now, false to leave it to the first response that
+     *                  returns the phone ({@link phone#toJsonBytes()} builds it on first use), eg: on recovery
+     */
+    public void add(phone p, boolean serialize) {
+        if (rowsShared || size == price.length) ownRows(Math.max(size + 1, rowsShared ? price.length : price.length * 2));
+        int row = size;
+        price[row] = p.getPrice();
+        usage[row] = (short) p.getUsageCode();
+        os[row] = (short) p.getOsCode();
+        id[row] = p.getId();
+        fill(row, p);
+        if (serialize) p.toJsonBytes(); // serialize once at load, responses only copy the bytes
+        size++;
+        orders.clear();
+        inherited = Collections.emptyMap(); // the new row is in none of them
+        before.clear();
+    }
+
+    /**
+     * Puts another phone into a row, eg: a copy of the phone with more reviews.
+     * Like {@link #add}, only for a catalog that is not published yet.
+     *
+     * @param row the row to change
+     * @param p the phone to put there
+     */
+    public void replace(int row, phone p) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row " + row + " of " + size);
+        if (price[row] != p.getPrice() || usage[row] != p.getUsageCode() || os[row] != p.getOsCode() || id[row] != p.getId()) {
+            if (rowsShared) ownRows(price.length);
+            price[row] = p.getPrice();
+            usage[row] = (short) p.getUsageCode();
+            os[row] = (short) p.getOsCode();
+            id[row] = p.getId();
+            inherited = Collections.emptyMap(); // the row may have left or joined the filters of an order
+            before.clear();
+        }
+        remember(row);
+        fill(row, p);
+        p.toJsonBytes();
+        orders.clear();
+    }
+
+    /**
+     * Brings the score and the aspect features of a row up to date with the aggregates, eg: after reviews
+     * were added to its phone. Like {@link #add}, only for a catalog that is not published yet.
+     *
+     * @param row the row to update
+     * @return true if its score or an aspect feature changed
+     */
+    public boolean rescore(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row " + row + " of " + size);
+        if (live == null) return false;
+        phone p = phoneAt(row);
+        double score = scoreOf(p);
+        float[] features = new float[Aspect.COUNT];
+        if (id[row] >= 0) live.aspectFeatures(id[row], features, 0);
+        float[] chunk = aspects[row >>> CHUNK_BITS];
+        int base = (row & CHUNK_MASK) * Aspect.COUNT;
+        if (score == sentiment(row) && Arrays.equals(features, 0, Aspect.COUNT, chunk, base, base + Aspect.COUNT)) return false;
+        remember(row);
+        int c = writable(row);
+        sentiment[c][row & CHUNK_MASK] = score;
+        System.arraycopy(features, 0, aspects[c], base, Aspect.COUNT);
+        orders.clear();
+        return true;
+    }
+
+    /**
+     * Copies the catalog, which the caller can then change without changing this one. Nothing is copied
+     * up front: the copy shares the columns with this catalog, and whichever of the two writes a row first
+     * copies the chunk of 1024 rows holding it (adding a row copies the columns of the
+     * filters once). Rescoring or replacing k rows of the copy therefore costs O(k), not O(rows).
+     * The copy also starts from the rank orders this catalog has built, and moves the rows whose rank
+     * score changed to their new places in them ({@link #rankOrder}) instead of sorting all rows again.
+     * The phone objects are shared, not copied.
+     *
+     * @param capacity number of rows the copy needs room for, more than {@link #size()} to add rows to it
+     * @return the copy
+     */
+    public PhoneCatalog copy(int capacity) {
+        PhoneCatalog copy = new PhoneCatalog(0);
+        copy.price = price;
+        copy.usage = usage;
+        copy.os = os;
+        copy.id = id;
+        copy.rowsShared = rowsShared = true;
+        copy.phones = phones.clone();
+        copy.sentiment = sentiment.clone();
+        copy.reviewCount = reviewCount.clone();
+        copy.aspects = aspects.clone();
+        copy.owned = new boolean[owned.length];
+        Arrays.fill(owned, false);
+        copy.size = size;
+        copy.live = live;
+        copy.inherited = new HashMap<>(orders);
+        if (capacity > size) copy.ownRows(capacity);
+        return copy;
+    }
+
+    /** Gives this catalog its own filter columns with room for the given number of rows. */
+    private void ownRows(int capacity) {
+        int cap = Math.max(capacity, size);
+        price = Arrays.copyOf(price, cap);
+        usage = Arrays.copyOf(usage, cap);
+        os = Arrays.copyOf(os, cap);
+        id = Arrays.copyOf(id, cap);
+        rowsShared = false;
+    }
+
+    /** Makes the chunk of a row writable, copying it when it is shared, and returns its number. */
+    private int writable(int row) {
+        int c = row >>> CHUNK_BITS;
+        if (c >= owned.length) {
+            int chunks = Math.max(c + 1, owned.length * 2);
+            phones = Arrays.copyOf(phones, chunks);
+            sentiment = Arrays.copyOf(sentiment, chunks);
+            reviewCount = Arrays.copyOf(reviewCount, chunks);
+            aspects = Arrays.copyOf(aspects, chunks);
+            owned = Arrays.copyOf(owned, chunks);
+        }
+        if (owned[c]) return c;
+        if (phones[c] == null) {
+            phones[c] = new phone[CHUNK_ROWS];
+            sentiment[c] = new double[CHUNK_ROWS];
+            reviewCount[c] = new int[CHUNK_ROWS];
+            aspects[c] = new float[CHUNK_ROWS * Aspect.COUNT];
+        } else {
+            phones[c] = phones[c].clone();
+            sentiment[c] = sentiment[c].clone();
+            reviewCount[c] = reviewCount[c].clone();
+            aspects[c] = aspects[c].clone();
+        }
+        owned[c] = true;
+        return c;
+    }
+
+    /** Writes the phone, its score, review count and aspect features into a row. */
+    private void fill(int row, phone p) {
+        int c = writable(row);
+        int r = row & CHUNK_MASK;
+        phones[c][r] = p;
+        sentiment[c][r] = scoreOf(p);
+        reviewCount[c][r] = p.getTotalReviews();
+        setAspects(row, p.getId());
+    }
+
+    /** Keeps the rank score inputs a row had when the catalog was copied, to find it in the inherited orders. */
+    private void remember(int row) {
+        if (inherited.isEmpty() || before.containsKey(row)) return;
+        int base = (row & CHUNK_MASK) * Aspect.COUNT;
+        before.put(row, new Before(sentiment(row),
+                Arrays.copyOfRange(aspects[row >>> CHUNK_BITS], base, base + Aspect.COUNT)));
+    }
+
+    /** Score to rank a phone on: that of its aggregate, or the loaded one without aggregates or reviews. */
+    private double scoreOf(phone p) {
+        return live == null || p.getId() < 0 ? p.getSentiment() : live.score(p.getId(), p.getSentiment());
+    }
+
+    /** Fills the aspect features of a row from the live aggregates, or clears them. */
+    private void setAspects(int row, int phoneId) {
+        float[] chunk = aspects[writable(row)];
+        int base = (row & CHUNK_MASK) * Aspect.COUNT;
+        if (live == null || phoneId < 0) Arrays.fill(chunk, base, base + Aspect.COUNT, 0f);
+        else live.aspectFeatures(phoneId, chunk, base);
+    }
+
+    /**
+     * Ranks the phones by the scores of the aggregates instead of the scores they were loaded with; the rows
+     * already in the catalog take their scores and aspect features from them too.
+     * Call it before the catalog is published; copies keep it.
+     *
+     * @param aggregates running sentiment of the phones by id, null to rank on the loaded scores
+     */
+    public void rankBy(SentimentAggregates aggregates) {
+        if (aggregates == live) return;
+        this.live = aggregates;
+        for (int row = 0; row < size; row++) {
+            int c = writable(row);
+            sentiment[c][row & CHUNK_MASK] = scoreOf(phoneAt(row));
+            setAspects(row, id[row]);
+        }
+        orders.clear();
+        inherited = Collections.emptyMap();
+        before.clear();
+    }
+
+    // --------------------- Dictionary lookups ---------------------
+
+    /**
+     * Returns the code of a usage type, for use in {@link #nextMatch}.
+     *
+     * @param value usage type such as "gaming" (any case)
+     * @return the usage code, or {@link #NO_MATCH} if the usage is not in the dictionary
+     */
+    public int usageCode(String value) {
+        return CodeDictionary.USAGE.find(value);
+    }
+
+    /**
+     * Returns the code of an OS preference, for use in {@link #nextMatch}.
+     * "No Preference" (or an empty value) accepts every OS.
+     *
+     * @param value OS preference such as "Android", "iOS" or "No Preference"
+     * @return the OS code, {@link #ANY} for no preference, or {@link #NO_MATCH} if the OS is not in the dictionary
+     */
+    public int osCode(String value) {
+        return CodeDictionary.OS.preference(value);
+    }
+
+    // --------------------- Scans ---------------------
+
+    /**
+     * Finds the next row, starting at {@code from}, that matches the usage, the OS and
+     * lies inside the price range (both ends included). The scan does not allocate,
+     * so a strategy can walk all matches with a plain loop:
+     * {@code for (int i = c.nextMatch(0, ...); i >= 0; i = c.nextMatch(i + 1, ...))}
+     *
+     * @param from first row to check
+     * @param usageCode usage code or {@link #ANY}
+     * @param osCode OS code or {@link #ANY}
+     * @param minPrice lowest accepted price
+     * @param maxPrice highest accepted price
+     * @return the matching row, or -1 when there are no more matches
+     */
+    public int nextMatch(int from, int usageCode, int osCode, double minPrice, double maxPrice) {
+        if (usageCode == NO_MATCH || osCode == NO_MATCH) return -1;
+        for (int i = from; i < size; i++) {
+            double p = price[i];
+            if (p < minPrice || p > maxPrice) continue;
+            if (usageCode != ANY && usage[i] != usageCode) continue;
+            if (osCode != ANY && os[i] != osCode) continue;
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the next row, starting at {@code from}, that matches the query.
+     *
+     * @param from first row to check
+     * @param query usage, OS and price filter
+     * @return the matching row, or -1 when there are no more matches
+     */
+    public int nextMatch(int from, CatalogQuery query) {
+        return nextMatch(from, query.getUsage(), query.getOs(), query.getMinPrice(), query.getMaxPrice());
+    }
+
+    /**
+     * Checks a single row against a query, for callers that walk the rows themselves.
+     *
+     * @param row the row to check
+     * @param query usage, OS and price filter
+     * @return true if the row matches
+     */
+    public boolean matches(int row, CatalogQuery query) {
+        int u = query.getUsage();
+        int o = query.getOs();
+        double p = price[row];
+        return p >= query.getMinPrice() && p <= query.getMaxPrice()
+                && (u == ANY || (u != NO_MATCH && usage[row] == u))
+                && (o == ANY || (o != NO_MATCH && os[row] == o));
+    }
+
+    /**
+     * Finds the next row, starting at {@code from}, whose price is above {@code floor}
+     * and at most {@code ceiling}. Used for the premium (slightly above budget) suggestions.
+     *
+     * @param from first row to check
+     * @param floor prices must be strictly greater than this
+     * @param ceiling prices must be lower than or equal to this
+     * @return the matching row, or -1 when there are no more matches
+     */
+    public int nextAbove(int from, double floor, double ceiling) {
+        for (int i = from; i < size; i++) {
+            double p = price[i];
+            if (p > floor && p <= ceiling) return i;
+        }
+        return -1;
+    }
+
+    // --------------------- Rank order ---------------------
+
+    /**
+     * Returns the rows ranked by sentiment, highest first, phones with the same sentiment by id (lowest first).
+     *
+     * @return row numbers in rank order, do not modify
+     */
+    public int[] sentimentOrder() {
+        return rankOrder(null);
+    }
+
+    /**
+     * Returns the rows ranked by {@link #rankScore}, highest first, phones with the same score by id
+     * (lowest first). An order is built with one sort on first use and kept per weight array, the catalog
+     * does not change once it is published, so paging through the matches in this order is a seek and a
+     * scan. Pass the weights of a strategy's query (a constant of the strategy), not a fresh array per call.
+     *
+     * @param weights sentiment points per aspect, by ordinal ({@link CatalogQuery#getAspectWeights()}); null for none
+     * @return row numbers in rank order, do not modify
+     */
+    public int[] rankOrder(float[] weights) {
+        return rankOrder(weights, ANY, ANY);
+    }
+
+    /**
+     * Returns the rows of one usage and OS group ranked like {@link #rankOrder(float[])}, so a query that
+     * filters on them can seek and scan inside its group rather than skip through all rows. A group order
+     * is taken from the order of all rows on first use and kept like it.
+     *
+     * @param weights sentiment points per aspect, by ordinal ({@link CatalogQuery#getAspectWeights()}); null for none
+     * @param usageCode usage code or {@link #ANY}
+     * @param osCode OS code or {@link #ANY}
+     * @return row numbers of the group in rank order, do not modify
+     */
+    public int[] rankOrder(float[] weights, int usageCode, int osCode) {
+        if (usageCode == NO_MATCH || osCode == NO_MATCH) return NO_ROWS;
+        OrderKey key = new OrderKey(weights == null ? NO_WEIGHTS : weights, usageCode, osCode);
+        int[] order = orders.get(key);
+        if (order == null) {
+            // several threads may build it at once, they all get the same order
+            int[] earlier = inherited.get(key);
+            if (earlier != null) order = reposition(earlier, weights, usageCode, osCode);
+            else if (usageCode == ANY && osCode == ANY) order = sort(weights);
+            else order = group(rankOrder(weights), usageCode, osCode);
+            if (orders.size() < MAX_ORDERS) orders.put(key, order);
+        }
+        return order;
+    }
+
+    /** Keeps the rows of a group, in the order they have. */
+    private int[] group(int[] all, int usageCode, int osCode) {
+        int[] rows = new int[all.length];
+        int n = 0;
+        for (int row : all) {
+            if (inGroup(row, usageCode, osCode)) rows[n++] = row;
+        }
+        return Arrays.copyOf(rows, n);
+    }
+
+    private boolean inGroup(int row, int usageCode, int osCode) {
+        return (usageCode == ANY || usage[row] == usageCode) && (osCode == ANY || os[row] == osCode);
+    }
+
+    /** Sorts all rows by rank. */
+    private int[] sort(float[] weights) {
+        double[] scores = new double[size];
+        int[] ids = new int[size];
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            scores[i] = rankScore(i, weights);
+            ids[i] = id[i];
+            order[i] = i;
+        }
+        mergeSort(order, new int[size], 0, size, scores, ids);
+        return order;
+    }
+
+    /**
+     * Builds the order of this catalog from the order of the catalog it was copied from: the rows whose rank
+     * score changed since the copy are taken out of their old places and put into their new ones, the runs
+     * in between are copied as they are. That is O(k log k + k log n) comparisons for k changed rows.
+     */
+    private int[] reposition(int[] earlier, float[] weights, int usageCode, int osCode) {
+        int n = earlier.length;
+        int[] moved = new int[before.size()];
+        double[] scores = new double[moved.length];
+        int[] ids = new int[moved.length];
+        int k = 0;
+        for (Map.Entry<Integer, Before> e : before.entrySet()) {
+            int row = e.getKey();
+            if (!inGroup(row, usageCode, osCode)) continue;
+            double score = rankScore(row, weights);
+            if (Double.compare(score, e.getValue().rankScore(weights)) == 0) continue;
+            moved[k] = row;
+            scores[k] = score;
+            ids[k++] = this.id[row];
+        }
+        int[] byRank = new int[k];
+        for (int j = 0; j < k; j++) byRank[j] = j;
+        mergeSort(byRank, new int[k], 0, k, scores, ids);
+
+        int[] removeAt = new int[k];
+        int[] insertAt = new int[k];
+        int[] inserted = new int[k];
+        for (int j = 0; j < k; j++) {
+            int row = moved[j];
+            removeAt[j] = position(earlier, weights, before.get(row).rankScore(weights), ids[j], false);
+            int m = byRank[j];
+            inserted[j] = moved[m];
+            insertAt[j] = position(earlier, weights, scores[m], ids[m], true);
+        }
+        Arrays.sort(removeAt);
+
+        int[] order = new int[n];
+        int from = 0;
+        int to = 0;
+        int r = 0;
+        int a = 0;
+        while (r < k || a < k) {
+            int until = Math.min(r < k ? removeAt[r] : n, a < k ? insertAt[a] : n);
+            System.arraycopy(earlier, from, order, to, until - from);
+            to += until - from;
+            from = until;
+            if (a < k && insertAt[a] == from) order[to++] = inserted[a++];
+            else {
+                from++; // removeAt[r] == from
+                r++;
+            }
+        }
+        System.arraycopy(earlier, from, order, to, n - from);
+        return order;
+    }
+
+    /**
+     * Binary search in an inherited order, which is ranked on the scores the rows had when this catalog was
+     * copied: the position of the first row not ranked before (score, id), or ranked after it when
+     * {@code after} is set.
+     */
+    private int position(int[] earlier, float[] weights, double score, int id, boolean after) {
+        int lo = 0;
+        int hi = earlier.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int row = earlier[mid];
+            Before was = before.get(row);
+            int c = compareRank(was == null ? rankScore(row, weights) : was.rankScore(weights), this.id[row], score, id);
+            if (c < 0 || (after && c == 0)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Finds where a phone with the given rank score and id is, or would be, in the order of a group
+     * ({@link #rankOrder(float[], int, int)}). The phone does not need to be in the catalog, so a position
+     * saved in an older version can be found again in this one.
+     *
+     * @param weights the weights the order is ranked by, null for none
+     * @param usageCode usage code of the group or {@link #ANY}
+     * @param osCode OS code of the group or {@link #ANY}
+     * @param score rank score of the last phone seen
+     * @param id id of the last phone seen
+     * @return position in the group order of the first row ranked after (score, id)
+     */
+    public int seekAfter(float[] weights, int usageCode, int osCode, double score, int id) {
+        int[] order = rankOrder(weights, usageCode, osCode);
+        int lo = 0;
+        int hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int row = order[mid];
+            if (compareRank(rankScore(row, weights), this.id[row], score, id) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Negative when (s1, id1) ranks before (s2, id2): higher score first, then lower id. */
+    private static int compareRank(double s1, int id1, double s2, int id2) {
+        int c = Double.compare(s2, s1);
+        return c != 0 ? c : Integer.compare(id1, id2);
+    }
+
+    /** Stable merge sort of rows[from, to) by rank, without boxing the row numbers. */
+    private static void mergeSort(int[] rows, int[] tmp, int from, int to, double[] scores, int[] ids) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        mergeSort(rows, tmp, from, mid, scores, ids);
+        mergeSort(rows, tmp, mid, to, scores, ids);
+        int a = rows[mid - 1];
+        int b = rows[mid];
+        if (compareRank(scores[a], ids[a], scores[b], ids[b]) <= 0) return; // already in order
+        System.arraycopy(rows, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to) rows[k] = tmp[i++];
+            else if (i >= mid) rows[k] = tmp[j++];
+            else {
+                int x = tmp[i];
+                int y = tmp[j];
+                rows[k] = compareRank(scores[y], ids[y], scores[x], ids[x]) < 0 ? tmp[j++] : tmp[i++];
+            }
+        }
+    }
+
+    // --------------------- Column access ---------------------
+
+    /** @return number of phones in the catalog */
+    public int size() { return size; }
+
+    /** @return the phone object stored in the row */
+    public phone phoneAt(int row) { return phones[row >>> CHUNK_BITS][row & CHUNK_MASK]; }
+
+    /** @return id of the phone in the row, without touching the phone object */
+    public int phoneId(int row) { return id[row]; }
+
+    /** @return price of the phone in the row */
+    public double price(int row) { return price[row]; }
+
+    /** @return sentiment score the phone in the row is ranked by, as it was when the row was filled */
+    public double sentiment(int row) { return sentiment[row >>> CHUNK_BITS][row & CHUNK_MASK]; }
+
+    /**
+     * Returns the score a strategy weighting the aspects ranks the row on.
+     *
+     * @param row the row
+     * @param weights sentiment points per aspect, by ordinal ({@link CatalogQuery#getAspectWeights()}); null for none
+     * @return {@link #sentiment(int)} plus the weighted aspect features of the row
+     */
+    public double rankScore(int row, float[] weights) {
+        return rankScore(sentiment(row), aspects[row >>> CHUNK_BITS], (row & CHUNK_MASK) * Aspect.COUNT, weights);
+    }
+
+    private static double rankScore(double sentiment, float[] aspects, int base, float[] weights) {
+        double score = sentiment;
+        if (weights == null) return score;
+        for (int a = 0; a < weights.length; a++) score += weights[a] * aspects[base + a];
+        return score;
+    }
+
+    /** @return feature of the aspect for the phone in the row, -1 to +1, as it was when the row was filled */
+    public float aspect(int row, Aspect aspect) {
+        return aspects[row >>> CHUNK_BITS][(row & CHUNK_MASK) * Aspect.COUNT + aspect.ordinal()];
+    }
+
+    /** @return usage code of the phone in the row */
+    public int usage(int row) { return usage[row]; }
+
+    /** @return OS code of the phone in the row */
+    public int os(int row) { return os[row]; }
+
+    /** @return number of reviews of the phone in the row */
+    public int reviewCount(int row) { return reviewCount[row >>> CHUNK_BITS][row & CHUNK_MASK]; }
+
+    /**
+     * Returns the phones of the catalog as a list, in row order.
+     *
+     * @return a new list with all phones
+     */
+    public List<phone> toList() {
+        List<phone> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) list.add(phoneAt(i));
+        return list;
+    }
+
+    /**
+     * Returns a read only view of the phones, in row order, without copying them.
+     * Rows added later are not part of the view.
+     *
+     * @return an unmodifiable list backed by the catalog
+     */
+    public List<phone> asList() {
+        return new Rows(size);
+    }
+
+    /** Read only list of the first rows of the catalog. */
+    private final class Rows extends AbstractList<phone> implements RandomAccess {
+        private final int size;
+
+        Rows(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public phone get(int index) {
+            Objects.checkIndex(index, size);
+            return phoneAt(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /** Weights (compared by identity), usage and OS of a rank order. */
+    private static final class OrderKey {
+        private final float[] weights;
+        private final int usage;
+        private final int os;
+
+        OrderKey(float[] weights, int usage, int os) {
+            this.weights = weights;
+            this.usage = usage;
+            this.os = os;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof OrderKey)) return false;
+            OrderKey other = (OrderKey) o;
+            return weights == other.weights && usage == other.usage && os == other.os;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(weights) * 31 + usage) * 31 + os;
+        }
+    }
+
+    /** Rank score inputs of a row as they were when the catalog was copied. */
+    private static final class Before {
+        private final double sentiment;
+        private final float[] aspects;
+
+        Before(double sentiment, float[] aspects) {
+            this.sentiment = sentiment;
+            this.aspects = aspects;
+        }
+
+        double rankScore(float[] weights) {
+            return PhoneCatalog.rankScore(sentiment, aspects, 0, weights);
+        }
+    }
+}
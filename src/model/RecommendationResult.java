@@ -0,0 +1,45 @@
+package model;
+
+import java.util.List;
+
+/**
+ * The RecommendationResult class groups everything the recommendation API returns for one preference:
+ * the main phones, the additional (slightly above budget) phones and the bonus suggestions
+ * The lists are copied into unmodifiable lists, so a result can be cached and shared between requests
+ */
+public class RecommendationResult {
+
+    private final List<phone> main;
+    private final List<phone> additional;
+    private final List<String> bonus;
+
+    /**
+     * Creates a result from the three recommendation lists.
+     *
+     * @param main the main recommendations
+     * @param additional the premium recommendations slightly above the budget
+     * @param bonus the bonus suggestions (accessories, apps, games)
+     */
+    public RecommendationResult(List<phone> main, List<phone> additional, List<String> bonus) {
+        this.main = List.copyOf(main);
+        this.additional = List.copyOf(additional);
+        this.bonus = List.copyOf(bonus);
+    }
+
+    /** @return the main recommendations */
+    public List<phone> getMain() { return main; }
+
+    /** @return the additional premium recommendations */
+    public List<phone> getAdditional() { return additional; }
+
+    /** @return the bonus suggestions */
+    public List<String> getBonus() { return bonus; }
+
+    /**
+     * Returns a string with the sizes of the three lists.
+     */
+    @Override
+    public String toString() {
+        return "main=" + main.size() + "|additional=" + additional.size() + "|bonus=" + bonus.size();
+    }
+}
@@ -0,0 +1,532 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The ReviewIndex is a full-text inverted index over the reviews of the phones of a catalog version
+ * It maps every term to the phones whose reviews use it, with how often they do, so finding the phones
+ * whose reviews mention "battery drain" reads two posting lists instead of every review.
+ *
+ * Terms are the lower case words of the reviews (letters and digits), with a plural "s" taken off and
+ * common stop words left out; a search uses the same rules, so "Drains" finds "drain". A search matches
+ * the phones whose reviews hold every term of the query (not necessarily in the same review), scored
+ * with tf-idf: the sum over the terms of (1 + ln tf) * ln(1 + phones / phones with the term).
+ *
+ * Posting lists are compressed: the phone ids are sorted and stored as the difference to the previous
+ * id, followed by the term frequency, both as variable length integers (7 bits per byte), so most
+ * entries take two bytes.
+ *
+ * An index is immutable like the catalog snapshot it belongs to. When phones are added or get new
+ * reviews ({@link #withPhones}, {@link #withReviews}), the new index shares the posting lists of this
+ * one and keeps the term counts of the changed phones in a small second index, whose entries win over
+ * the stale ones of the first. Only the new reviews are tokenized. Once the changed phones are more than
+ * a sixteenth of the catalog, both are merged list by list into one index, without reading any review.
+ */
+public final class ReviewIndex {
+
+    /** Index of a catalog without reviews. */
+    public static final ReviewIndex EMPTY = build(List.of());
+
+    /** Changed phones kept in the second index before the two are merged, at least. */
+    public static final int MIN_DELTA_PHONES = 64;
+
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "but", "by",
+            "for", "from", "has", "have", "i", "in", "is", "it", "its", "my", "of", "on", "or", "so", "than", "that",
+            "the", "this", "to", "was", "were", "with");
+
+    private final Postings base;
+    private final Postings delta;
+    private final BitSet changed;                           // ids whose entries in base are stale
+    private final Map<Integer, Map<String, Integer>> counts; // term counts of the changed phones
+    private final int phones;
+
+    private ReviewIndex(Postings base, Map<Integer, Map<String, Integer>> counts, int phones) {
+        this.base = base;
+        this.counts = counts;
+        this.phones = phones;
+        this.changed = new BitSet();
+        for (int id : counts.keySet()) changed.set(id);
+        Writers writers = new Writers();
+        counts.keySet().stream().sorted().forEach(id -> writers.add(id, counts.get(id)));
+        this.delta = writers.toPostings();
+    }
+
+    /**
+     * Builds the index of a list of phones, reading all their reviews.
+     *
+     * @param phones the phones, with their ids given
+     * @return the index
+     */
+    public static ReviewIndex build(List<phone> phones) {
+        phone[] byId = phones.toArray(new phone[0]);
+        Arrays.sort(byId, Comparator.comparingInt(phone::getId));
+        Writers writers = new Writers();
+        for (phone p : byId) writers.add(p.getId(), count(new HashMap<>(), p.getReviews()));
+        return new ReviewIndex(writers.toPostings(), Map.of(), byId.length);
+    }
+
+    /**
+     * Returns the index with new phones added. This index is not changed.
+     *
+     * @param added the new phones, with their ids given
+     * @return the index of the new version
+     */
+    public ReviewIndex withPhones(List<phone> added) {
+        if (added.isEmpty()) return this;
+        Map<Integer, Map<String, Integer>> next = new HashMap<>(counts);
+        for (phone p : added) next.put(p.getId(), count(new HashMap<>(), p.getReviews()));
+        return next(next, phones + added.size());
+    }
+
+    /**
+     * Returns the index with reviews added to phones it holds. This index is not changed.
+     * Only the new reviews are tokenized; the terms of the older ones are taken from the index.
+     *
+     * @param added the new reviews by phone id, in the order they were added
+     * @return the index of the new version
+     */
+    public ReviewIndex withReviews(Map<Integer, List<String>> added) {
+        if (added.isEmpty()) return this;
+        Map<Integer, Map<String, Integer>> next = new HashMap<>(counts);
+        BitSet fromBase = new BitSet();
+        for (int id : added.keySet()) if (!next.containsKey(id)) fromBase.set(id);
+        if (!fromBase.isEmpty()) next.putAll(base.countsOf(fromBase));
+        for (Map.Entry<Integer, List<String>> e : added.entrySet()) {
+            Map<String, Integer> before = next.get(e.getKey());
+            next.put(e.getKey(), count(before == null ? new HashMap<>() : new HashMap<>(before), e.getValue()));
+        }
+        return next(next, phones);
+    }
+
+    /** Returns the index with the given changed phones, merging both indexes when there are too many. */
+    private ReviewIndex next(Map<Integer, Map<String, Integer>> next, int phones) {
+        if (next.size() <= Math.max(MIN_DELTA_PHONES, phones / 16)) return new ReviewIndex(base, next, phones);
+        ReviewIndex unmerged = new ReviewIndex(base, next, phones);
+        return new ReviewIndex(unmerged.base.merge(unmerged.delta, unmerged.changed), Map.of(), phones);
+    }
+
+    /**
+     * Finds the phones whose reviews hold every term of a text.
+     *
+     * @param text the words to look for, eg: "battery drain"
+     * @return the matching phones with their scores, no hits when the text has no searchable word
+     */
+    public Hits search(String text) {
+        List<String> query = new ArrayList<>(new LinkedHashSet<>(terms(text)));
+        if (query.isEmpty()) return new Hits(query, new int[0], new float[0]);
+
+        float[] idf = new float[query.size()];
+        for (int t = 0; t < query.size(); t++) {
+            int df = base.df(query.get(t), changed) + delta.df(query.get(t), null);
+            idf[t] = (float) Math.log(1 + (double) Math.max(phones, 1) / Math.max(df, 1));
+        }
+        Hits fromBase = base.match(query, idf, changed);
+        if (counts.isEmpty()) return fromBase;
+        return fromBase.merge(delta.match(query, idf, null));
+    }
+
+    /**
+     * Finds the first review of a phone that holds every term of a text, to show why it matched.
+     *
+     * @param p the phone
+     * @param text the words that were searched
+     * @param limit largest number of reviews to look at
+     * @return the review, or null when none of the first reviews holds every term
+     */
+    public static String firstMatch(phone p, String text, int limit) {
+        Set<String> query = new LinkedHashSet<>(terms(text));
+        if (query.isEmpty()) return null;
+        for (String review : p.getReviews(0, limit)) {
+            if (new HashSet<>(terms(review)).containsAll(query)) return review;
+        }
+        return null;
+    }
+
+    /** @return number of phones in the index */
+    public int size() {
+        return phones;
+    }
+
+    /** @return number of distinct terms */
+    public int termCount() {
+        int terms = base.terms.size();
+        for (String term : delta.terms.keySet()) if (!base.terms.containsKey(term)) terms++;
+        return terms;
+    }
+
+    /** @return bytes taken by the compressed posting lists */
+    public long postingBytes() {
+        return base.bytes + delta.bytes;
+    }
+
+    /** @return number of phones in the second index, the ones changed since the lists were merged */
+    public int changedPhones() {
+        return counts.size();
+    }
+
+    /**
+     * Splits a text into index terms: lower case runs of letters and digits, without a plural "s"
+     * (not from "ss" or words of three letters or less), leaving out stop words and single characters.
+     *
+     * @param text the text, null is treated as empty
+     * @return the terms, in order, with repeats
+     */
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) return terms;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            while (i < n && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            int start = i;
+            while (i < n && Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i - start < 2) continue;
+            String word = text.substring(start, i).toLowerCase();
+            if (STOP_WORDS.contains(word)) continue;
+            if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) word = word.substring(0, word.length() - 1);
+            terms.add(word);
+        }
+        return terms;
+    }
+
+    /** Adds the terms of reviews to term counts and returns them. */
+    private static Map<String, Integer> count(Map<String, Integer> counts, List<String> reviews) {
+        for (String review : reviews) {
+            for (String term : terms(review)) counts.merge(term, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    // --------------------- Posting lists ---------------------
+
+    /** Compressed posting lists of a set of phones. */
+    private static final class Postings {
+        private final Map<String, Integer> terms; // term -> position in lists
+        private final PostingList[] lists;
+        private final long bytes;
+
+        private Postings(Map<String, Integer> terms, PostingList[] lists) {
+            this.terms = terms;
+            this.lists = lists;
+            long total = 0;
+            for (PostingList list : lists) total += list.bytes.length;
+            this.bytes = total;
+        }
+
+        /** Phones with the term, leaving out the ids in skip. */
+        int df(String term, BitSet skip) {
+            Integer t = terms.get(term);
+            if (t == null) return 0;
+            if (skip == null || skip.isEmpty()) return lists[t].df;
+            int count = 0;
+            for (Reader reader = new Reader(lists[t]); reader.next(); ) if (!skip.get(reader.id)) count++;
+            return count;
+        }
+
+        /** Reads the term counts of some phones back from the lists, one pass over all of them. */
+        Map<Integer, Map<String, Integer>> countsOf(BitSet ids) {
+            Map<Integer, Map<String, Integer>> found = new HashMap<>();
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) found.put(id, new HashMap<>());
+            for (Map.Entry<String, Integer> e : terms.entrySet()) {
+                for (Reader reader = new Reader(lists[e.getValue()]); reader.next(); ) {
+                    if (ids.get(reader.id)) found.get(reader.id).put(e.getKey(), reader.tf);
+                }
+            }
+            return found;
+        }
+
+        /** Merges the lists of a second index into these, dropping the entries of the ids in stale. */
+        Postings merge(Postings other, BitSet stale) {
+            Map<String, Integer> merged = new HashMap<>();
+            List<PostingList> lists = new ArrayList<>();
+            Set<String> all = new LinkedHashSet<>(terms.keySet());
+            all.addAll(other.terms.keySet());
+            for (String term : all) {
+                Writer writer = new Writer();
+                Integer a = terms.get(term);
+                Integer b = other.terms.get(term);
+                Reader left = new Reader(a == null ? PostingList.EMPTY : this.lists[a]);
+                Reader right = new Reader(b == null ? PostingList.EMPTY : other.lists[b]);
+                boolean moreLeft = nextKept(left, stale);
+                boolean moreRight = right.next();
+                while (moreLeft || moreRight) {
+                    if (moreLeft && (!moreRight || left.id < right.id)) {
+                        writer.add(left.id, left.tf);
+                        moreLeft = nextKept(left, stale);
+                    } else {
+                        writer.add(right.id, right.tf);
+                        moreRight = right.next();
+                    }
+                }
+                if (writer.count == 0) continue;
+                merged.put(term, lists.size());
+                lists.add(writer.toList());
+            }
+            return new Postings(merged, lists.toArray(new PostingList[0]));
+        }
+
+        private static boolean nextKept(Reader reader, BitSet stale) {
+            while (reader.next()) if (!stale.get(reader.id)) return true;
+            return false;
+        }
+
+        /**
+         * Intersects the lists of the terms, rarest first, leaving out the ids in skip. The rarest list
+         * gives the candidates; the others are only read where a candidate could be, skipping whole blocks.
+         */
+        Hits match(List<String> query, float[] idf, BitSet skip) {
+            Integer[] order = new Integer[query.size()];
+            for (int t = 0; t < order.length; t++) {
+                order[t] = t;
+                if (!terms.containsKey(query.get(t))) return new Hits(query, new int[0], new float[0]);
+            }
+            Arrays.sort(order, Comparator.comparingInt(t -> lists[terms.get(query.get(t))].df));
+
+            PostingList first = lists[terms.get(query.get(order[0]))];
+            int[] ids = new int[first.df];
+            float[] scores = new float[first.df];
+            int size = 0;
+            float firstIdf = idf[order[0]];
+            for (Reader reader = new Reader(first); reader.next(); ) {
+                if (skip != null && skip.get(reader.id)) continue;
+                ids[size] = reader.id;
+                scores[size++] = weight(reader.tf) * firstIdf;
+            }
+            for (int o = 1; o < order.length && size > 0; o++) {
+                Reader reader = new Reader(lists[terms.get(query.get(order[o]))]);
+                float termIdf = idf[order[o]];
+                int kept = 0;
+                for (int i = 0; i < size && reader.advance(ids[i]); i++) {
+                    if (reader.id == ids[i]) {
+                        ids[kept] = ids[i];
+                        scores[kept++] = scores[i] + weight(reader.tf) * termIdf;
+                    }
+                }
+                size = kept;
+            }
+            return new Hits(query, Arrays.copyOf(ids, size), Arrays.copyOf(scores, size));
+        }
+    }
+
+    /** Term frequencies whose weight (1 + ln tf) is kept in a table rather than computed per entry. */
+    private static final float[] TF_WEIGHTS = new float[256];
+    static {
+        for (int tf = 1; tf < TF_WEIGHTS.length; tf++) TF_WEIGHTS[tf] = (float) (1 + Math.log(tf));
+    }
+
+    private static float weight(int tf) {
+        return tf < TF_WEIGHTS.length ? TF_WEIGHTS[tf] : (float) (1 + Math.log(tf));
+    }
+
+    /**
+     * One compressed posting list. Every {@link #BLOCK} entries a skip entry holds the id before the
+     * block and where the block starts, so a reader looking for a larger id can jump over whole blocks.
+     */
+    private static final class PostingList {
+        static final int BLOCK = 128;
+        static final PostingList EMPTY = new PostingList(new byte[0], 0, new int[0], new int[0]);
+
+        final byte[] bytes;
+        final int df;
+        final int[] skipIds;       // id of the last entry before block k
+        final int[] skipPositions; // offset of the first entry of block k
+
+        PostingList(byte[] bytes, int df, int[] skipIds, int[] skipPositions) {
+            this.bytes = bytes;
+            this.df = df;
+            this.skipIds = skipIds;
+            this.skipPositions = skipPositions;
+        }
+    }
+
+    /** Builds the lists of many terms from the term counts of phones given in increasing id order. */
+    private static final class Writers {
+        private final Map<String, Integer> terms = new HashMap<>();
+        private final List<Writer> writers = new ArrayList<>();
+
+        void add(int id, Map<String, Integer> counts) {
+            for (Map.Entry<String, Integer> e : counts.entrySet()) {
+                Integer t = terms.get(e.getKey());
+                if (t == null) {
+                    t = writers.size();
+                    terms.put(e.getKey(), t);
+                    writers.add(new Writer());
+                }
+                writers.get(t).add(id, e.getValue());
+            }
+        }
+
+        Postings toPostings() {
+            PostingList[] lists = new PostingList[writers.size()];
+            for (int t = 0; t < lists.length; t++) lists[t] = writers.get(t).toList();
+            return new Postings(terms, lists);
+        }
+    }
+
+    /** Builds one compressed posting list, ids must come in increasing order. */
+    private static final class Writer {
+        private byte[] bytes = new byte[16];
+        private int size;
+        private int lastId = -1;
+        private int count;
+        private int[] skipIds = new int[0];
+        private int[] skipPositions = new int[0];
+
+        void add(int id, int tf) {
+            if (count > 0 && count % PostingList.BLOCK == 0) {
+                int k = count / PostingList.BLOCK - 1;
+                if (k == skipIds.length) {
+                    skipIds = Arrays.copyOf(skipIds, Math.max(4, k * 2));
+                    skipPositions = Arrays.copyOf(skipPositions, skipIds.length);
+                }
+                skipIds[k] = lastId;
+                skipPositions[k] = size;
+            }
+            writeVarint(id - lastId);
+            writeVarint(tf);
+            lastId = id;
+            count++;
+        }
+
+        private void writeVarint(int value) {
+            if (size + 10 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        PostingList toList() {
+            int skips = count == 0 ? 0 : (count - 1) / PostingList.BLOCK;
+            return new PostingList(Arrays.copyOf(bytes, size), count,
+                    Arrays.copyOf(skipIds, skips), Arrays.copyOf(skipPositions, skips));
+        }
+    }
+
+    /** Decodes a compressed posting list entry by entry. */
+    private static final class Reader {
+        private final PostingList list;
+        private final byte[] bytes;
+        private int pos;
+        private int block; // skip entries before this one are behind the reader
+        int id = -1;
+        int tf;
+
+        Reader(PostingList list) {
+            this.list = list;
+            this.bytes = list.bytes;
+        }
+
+        boolean next() {
+            if (pos >= bytes.length) return false;
+            id += readVarint();
+            tf = readVarint();
+            return true;
+        }
+
+        /**
+         * Moves to the first entry whose id is at least the target, jumping over the blocks that end
+         * before it. The reader never moves back.
+         *
+         * @return false when the list has no such entry
+         */
+        boolean advance(int target) {
+            if (id >= target) return true;
+            int[] skipIds = list.skipIds;
+            int k = block;
+            while (k < skipIds.length && skipIds[k] < target) k++;
+            if (k > block) {
+                block = k;
+                int start = list.skipPositions[k - 1];
+                if (start > pos) {
+                    pos = start;
+                    id = skipIds[k - 1];
+                }
+            }
+            while (id < target) if (!next()) return false;
+            return true;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[pos++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+        }
+    }
+
+    /**
+     * The phones matching a search: their ids in increasing order with their scores.
+     */
+    public static final class Hits {
+        private final List<String> terms;
+        private final int[] ids;
+        private final float[] scores;
+
+        Hits(List<String> terms, int[] ids, float[] scores) {
+            this.terms = terms;
+            this.ids = ids;
+            this.scores = scores;
+        }
+
+        /** @return the terms that were searched, after tokenizing the text */
+        public List<String> getTerms() { return terms; }
+
+        /** @return number of matching phones */
+        public int size() { return ids.length; }
+
+        /** @return id of the i-th matching phone, ids are in increasing order */
+        public int id(int i) { return ids[i]; }
+
+        /** @return score of the i-th matching phone, higher is a better match */
+        public float score(int i) { return scores[i]; }
+
+        /** @return highest score, 0 without hits */
+        public float maxScore() {
+            float max = 0;
+            for (float s : scores) max = Math.max(max, s);
+            return max;
+        }
+
+        /**
+         * Returns the score of a phone.
+         *
+         * @param id id of the phone
+         * @return its score, 0 when it does not match
+         */
+        public float scoreOf(int id) {
+            int i = Arrays.binarySearch(ids, id);
+            return i < 0 ? 0 : scores[i];
+        }
+
+        /** Combines two hit lists with no id in common. */
+        Hits merge(Hits other) {
+            if (other.ids.length == 0) return this;
+            int[] mergedIds = new int[ids.length + other.ids.length];
+            float[] mergedScores = new float[mergedIds.length];
+            int a = 0, b = 0;
+            for (int i = 0; i < mergedIds.length; i++) {
+                if (b >= other.ids.length || (a < ids.length && ids[a] < other.ids[b])) {
+                    mergedIds[i] = ids[a];
+                    mergedScores[i] = scores[a++];
+                } else {
+                    mergedIds[i] = other.ids[b];
+                    mergedScores[i] = other.scores[b++];
+                }
+            }
+            return new Hits(terms, mergedIds, mergedScores);
+        }
+    }
+}
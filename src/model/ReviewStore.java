@@ -0,0 +1,275 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ReviewStore keeps the review texts of the phones outside of the phone objects
+ * All reviews are kept as UTF-8 bytes in 1 MB chunks, and each phone only holds a
+ * handle into the store. Full chunks are never copied again when the store grows. A review is turned back into a String only when it is read,
+ * so the recommendation path never touches them.
+ *
+ * Every handle owns a contiguous range of review entries:
+ * handle -> (first entry, count), entry -> (chunk and offset, length)
+ * so a page of reviews is found without looking at the other reviews of the phone.
+ */
+public class ReviewStore {
+
+    /** Separator of the reviews inside the Reviews column of the CSV. */
+    public static final String SEPARATOR = "||";
+
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << (32 - CHUNK_BITS);
+
+    private byte[][] chunks = new byte[4][];
+    private int chunkCount;
+    private int tailUsed; // bytes used in the last chunk
+    private long used;
+
+    private int[] entryAddress = new int[64]; // chunk << CHUNK_BITS | offset
+    private int[] entryLength = new int[64];
+    private int entries;
+
+    private int[] handleFirst = new int[16];
+    private int[] handleCount = new int[16];
+    private int handles;
+
+    /** Creates an empty store. */
+    public ReviewStore() {
+    }
+
+    /**
+     * Creates a store holding the reviews of one phone as its first handle (0), sized to fit them.
+     * Used by phones created with a list of reviews instead of a library store, so the reviews go
+     * away with the phone (and the copies made by {@link phone#withReviews}).
+     *
+     * @param reviews review texts, null is treated as no reviews
+     * @return the store
+     */
+    public static ReviewStore of(List<String> reviews) {
+        int count = reviews == null ? 0 : reviews.size();
+        byte[][] encoded = new byte[count][];
+        int bytes = 0;
+        for (int i = 0; i < count; i++) {
+            encoded[i] = reviews.get(i).getBytes(StandardCharsets.UTF_8);
+            bytes += encoded[i].length;
+        }
+        ReviewStore store = new ReviewStore();
+        store.chunks = new byte[1][];
+        store.entryAddress = new int[Math.max(count, 1)];
+        store.entryLength = new int[Math.max(count, 1)];
+        store.handleFirst = new int[1];
+        store.handleCount = new int[1];
+        if (count > 0) store.addChunk(Math.max(1, Math.min(bytes, CHUNK_SIZE)));
+        int handle = store.newHandle();
+        for (byte[] review : encoded) store.addEntry(review, 0, review.length);
+        store.handleCount[handle] = store.entries;
+        return store;
+    }
+
+    /**
+     * Adds the reviews of one phone.
+     *
+     * @param reviews review texts, null is treated as no reviews
+     * @return handle of the reviews
+     */
+    public synchronized int add(List<String> reviews) {
+        int handle = newHandle();
+        if (reviews != null) {
+            for (String review : reviews) {
+                byte[] bytes = review.getBytes(StandardCharsets.UTF_8);
+                addEntry(bytes, 0, bytes.length);
+            }
+        }
+        handleCount[handle] = entries - handleFirst[handle];
+        return handle;
+    }
+
+    /**
+     * Adds the reviews of one phone from a CSV cell where the reviews are separated by {@link #SEPARATOR}.
+     * The cell is encoded once and split on the bytes, no String is created per review.
+     *
+     * @param cell the raw Reviews column
+     * @return handle of the reviews
+     */
+    public int addRaw(String cell) {
+        byte[] bytes = cell == null ? new byte[0] : cell.getBytes(StandardCharsets.UTF_8);
+        return addRaw(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Adds the reviews of one phone from the UTF-8 bytes of a CSV cell, split in place on {@link #SEPARATOR}.
+     * Used by the streaming CSV parser, which never turns the cell into a String.
+     *
+     * @param bytes buffer holding the cell
+     * @param from index of the first byte of the cell
+     * @param to index after the last byte of the cell
+     * @return handle of the reviews
+     */
+    public synchronized int addRaw(byte[] bytes, int from, int to) {
+        int handle = newHandle();
+        int start = from;
+        int i = from;
+        // '|' is a single byte in UTF-8, it never appears inside a multi byte character.
+        // A separator always covers an odd or an even position, so when bytes[i + 1] is not '|'
+        // neither (i, i + 1) nor (i + 1, i + 2) can be one and the scan moves on by two.
+        while (i + 1 < to) {
+            if (bytes[i + 1] != '|') {
+                i += 2;
+            } else if (bytes[i] == '|') {
+                addEntry(bytes, start, i);
+                start = i + 2;
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        if (start < to) addEntry(bytes, start, to); // like split, no trailing empty review
+        handleCount[handle] = entries - handleFirst[handle];
+        return handle;
+    }
+
+    /**
+     * Adds reviews after those of a handle. A handle owns one contiguous range of entries, so the result
+     * is a new handle: its first entries point at the review bytes of the old handle (only their positions
+     * are copied, not the texts) and the new reviews follow. The old handle still reads what it did.
+     *
+     * @param handle handle returned when the reviews were added
+     * @param reviews review texts to add
+     * @return handle of the old and the new reviews
+     */
+    public synchronized int append(int handle, List<String> reviews) {
+        checkHandle(handle);
+        int first = handleFirst[handle];
+        int count = handleCount[handle];
+        int appended = newHandle();
+        for (int i = 0; i < count; i++) {
+            if (entries == entryAddress.length) {
+                entryAddress = Arrays.copyOf(entryAddress, entries * 2);
+                entryLength = Arrays.copyOf(entryLength, entries * 2);
+            }
+            entryAddress[entries] = entryAddress[first + i];
+            entryLength[entries] = entryLength[first + i];
+            entries++;
+        }
+        for (String review : reviews) {
+            byte[] bytes = review.getBytes(StandardCharsets.UTF_8);
+            addEntry(bytes, 0, bytes.length);
+        }
+        handleCount[appended] = entries - handleFirst[appended];
+        return appended;
+    }
+
+    /**
+     * @param handle handle returned when the reviews were added
+     * @return number of reviews stored for the handle
+     */
+    public synchronized int count(int handle) {
+        checkHandle(handle);
+        return handleCount[handle];
+    }
+
+    /**
+     * Reads one review.
+     *
+     * @param handle handle returned when the reviews were added
+     * @param index position of the review, 0 is the first one
+     * @return the review text
+     */
+    public synchronized String get(int handle, int index) {
+        checkHandle(handle);
+        if (index < 0 || index >= handleCount[handle]) {
+            throw new IndexOutOfBoundsException("review " + index + " of " + handleCount[handle]);
+        }
+        return decode(handleFirst[handle] + index);
+    }
+
+    /**
+     * Reads a page of reviews.
+     *
+     * @param handle handle returned when the reviews were added
+     * @param offset position of the first review returned
+     * @param limit largest number of reviews returned
+     * @return the reviews of the page, empty when the offset is past the last review
+     */
+    public synchronized List<String> page(int handle, int offset, int limit) {
+        checkHandle(handle);
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must not be negative");
+        int count = handleCount[handle];
+        if (offset >= count || limit == 0) return Collections.emptyList();
+        int end = (int) Math.min((long) offset + limit, count);
+        List<String> page = new ArrayList<>(end - offset);
+        for (int i = offset; i < end; i++) page.add(decode(handleFirst[handle] + i));
+        return Collections.unmodifiableList(page);
+    }
+
+    /**
+     * @param handle handle returned when the reviews were added
+     * @return all reviews of the handle
+     */
+    public List<String> getAll(int handle) {
+        return page(handle, 0, Integer.MAX_VALUE);
+    }
+
+    /** @return number of bytes used by the review texts */
+    public synchronized long byteSize() { return used; }
+
+    /** @return number of reviews in the store */
+    public synchronized int size() { return entries; }
+
+    // --------------------- Helpers ---------------------
+
+    private int newHandle() {
+        if (handles == handleFirst.length) {
+            handleFirst = Arrays.copyOf(handleFirst, handles * 2);
+            handleCount = Arrays.copyOf(handleCount, handles * 2);
+        }
+        handleFirst[handles] = entries;
+        return handles++;
+    }
+
+    /** Copies bytes[from, to) into the last chunk as a new entry. */
+    private void addEntry(byte[] bytes, int from, int to) {
+        int length = to - from;
+        if (chunkCount == 0 || tailUsed + length > CHUNK_SIZE) {
+            // the first chunk starts small, later ones are full size; a longer review gets a chunk of its own
+            addChunk(chunkCount == 0 ? Math.max(length, 1 << 12) : Math.max(length, CHUNK_SIZE));
+        }
+        byte[] tail = chunks[chunkCount - 1];
+        if (tailUsed + length > tail.length) {
+            tail = Arrays.copyOf(tail, Math.min(CHUNK_SIZE, Math.max(tail.length * 2, tailUsed + length)));
+            chunks[chunkCount - 1] = tail;
+        }
+        System.arraycopy(bytes, from, tail, tailUsed, length);
+        if (entries == entryAddress.length) {
+            entryAddress = Arrays.copyOf(entryAddress, entries * 2);
+            entryLength = Arrays.copyOf(entryLength, entries * 2);
+        }
+        entryAddress[entries] = (chunkCount - 1) << CHUNK_BITS | tailUsed;
+        entryLength[entries] = length;
+        entries++;
+        tailUsed += length;
+        used += length;
+    }
+
+    private void addChunk(int size) {
+        if (chunkCount == MAX_CHUNKS) throw new IllegalStateException("Review store is full");
+        if (chunkCount == chunks.length) chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        chunks[chunkCount++] = new byte[size];
+        tailUsed = 0;
+    }
+
+    private String decode(int entry) {
+        int address = entryAddress[entry];
+        return new String(chunks[address >>> CHUNK_BITS], address & (CHUNK_SIZE - 1), entryLength[entry],
+                StandardCharsets.UTF_8);
+    }
+
+    private void checkHandle(int handle) {
+        if (handle < 0 || handle >= handles) throw new IllegalArgumentException("Unknown review handle: " + handle);
+    }
+}
@@ -0,0 +1,288 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The SentimentAggregates class keeps a running sentiment aggregate per phone, updated as reviews arrive
+ * For every phone id it holds the number of reviews, the sum of their compound scores (-1 to +1) and
+ * how many were positive, neutral and negative. Adding a review is a few atomic additions, O(1) and
+ * without locks, so any number of threads can add reviews while the strategies rank on the scores.
+ *
+ * The review count and the score sum share one long (count in the upper 24 bits, the sum in
+ * 1/10000 units in the lower 40), so a reader always sees a count and a sum that belong together.
+ * That allows up to 16 million reviews per phone.
+ *
+ * The ranking score is confidence weighted: the mean is taken as if every phone also had
+ * {@link #PRIOR_REVIEWS} neutral reviews, so a phone with a couple of glowing reviews does not
+ * jump ahead of one that many users rated almost as well. The {@link #revision()} moves on whenever
+ * the score of a phone changes at the resolution it is shown with (0.1). The catalog takes the scores
+ * when its rows are filled ({@link PhoneCatalog#rankBy}), so new reviews reach the rankings with the
+ * next catalog version rather than one by one.
+ *
+ * Next to the overall score, every {@link Aspect} of a phone has a count and sum of its own, packed the
+ * same way, from the clauses of the reviews that name it ({@link #addAspects}). Aspect scores do not move
+ * the revision; like the overall score, they reach the aspect column of the catalog with the next version.
+ */
+public final class SentimentAggregates {
+
+    /** Compound score from which a review counts as positive (and below minus it, as negative). */
+    public static final double POSITIVE_THRESHOLD = 0.05;
+
+    /** Neutral reviews every phone is assumed to have when the confidence weighted score is computed. */
+    public static final int PRIOR_REVIEWS = 3;
+
+    /** Values that hold the aggregate of one phone, see {@link #copyTo}. */
+    public static final int STATE_LONGS = 4 + Aspect.COUNT;
+
+    private static final int CHUNK_BITS = 10; // 1024 phones per chunk
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int SLOTS = STATE_LONGS; // packed count and sum, positive, neutral, negative, one per aspect
+    private static final int ASPECT_SLOT = 4;
+    private static final int SUM_BITS = 40;
+    private static final long UNITS = 10_000; // compound scores are kept to 4 decimals
+
+    private volatile AtomicLongArray[] chunks = new AtomicLongArray[0];
+    private final AtomicLong revision = new AtomicLong();
+
+    /**
+     * Adds one review of a phone.
+     *
+     * @param id id of the phone
+     * @param compound compound score of the review, -1 to +1
+     * @throws IllegalArgumentException if the id is negative
+     */
+    public void add(int id, double compound) {
+        AtomicLongArray chunk = chunkFor(id);
+        int base = (id & CHUNK_MASK) * SLOTS;
+        long units = Math.round(Math.max(-1, Math.min(1, compound)) * UNITS);
+        long before = chunk.getAndAdd(base, (1L << SUM_BITS) + units);
+        chunk.incrementAndGet(base + (units >= POSITIVE_THRESHOLD * UNITS ? 1 : units <= -POSITIVE_THRESHOLD * UNITS ? 3 : 2));
+
+        long after = before + (1L << SUM_BITS) + units;
+        if (shown(score(before)) != shown(score(after))) revision.incrementAndGet();
+    }
+
+    /**
+     * Adds the aggregate of reviews whose compound scores are not known one by one,
+     * eg: the Sentiment_Score of a CSV row, which is the mean of its reviews.
+     *
+     * @param id id of the phone
+     * @param reviews number of reviews
+     * @param meanCompound mean compound score of those reviews, -1 to +1
+     */
+    public void addMean(int id, int reviews, double meanCompound) {
+        if (reviews <= 0) return;
+        AtomicLongArray chunk = chunkFor(id);
+        int base = (id & CHUNK_MASK) * SLOTS;
+        long units = Math.round(Math.max(-1, Math.min(1, meanCompound)) * UNITS * reviews);
+        long before = chunk.getAndAdd(base, ((long) reviews << SUM_BITS) + units);
+        long after = before + ((long) reviews << SUM_BITS) + units;
+        if (shown(score(before)) != shown(score(after))) revision.incrementAndGet();
+    }
+
+    /**
+     * Adds the aspect scores of one review of a phone (see {@link sentiment.AspectAnalyzer}).
+     *
+     * @param id id of the phone
+     * @param compounds compound score (-1 to +1) of every aspect by ordinal, NaN for the aspects the review
+     *                  does not name; null when it names none, then nothing is added
+     * @throws IllegalArgumentException if the id is negative
+     */
+    public void addAspects(int id, double[] compounds) {
+        if (compounds == null) return;
+        AtomicLongArray chunk = chunkFor(id);
+        int base = (id & CHUNK_MASK) * SLOTS + ASPECT_SLOT;
+        for (int a = 0; a < Aspect.COUNT; a++) {
+            if (Double.isNaN(compounds[a])) continue;
+            long units = Math.round(Math.max(-1, Math.min(1, compounds[a])) * UNITS);
+            chunk.getAndAdd(base + a, (1L << SUM_BITS) + units);
+        }
+    }
+
+    /**
+     * Returns the confidence weighted score of a phone, the one the strategies rank on.
+     *
+     * @param id id of the phone
+     * @return 0 to 100, 50 for a phone without reviews
+     */
+    public double score(int id) {
+        return score(packed(id));
+    }
+
+    /**
+     * Returns the confidence weighted score of a phone, or the given score while it has no reviews.
+     *
+     * @param id id of the phone
+     * @param fallback score of a phone without reviews
+     * @return 0 to 100
+     */
+    public double score(int id, double fallback) {
+        long packed = packed(id);
+        return packed == 0 ? fallback : score(packed);
+    }
+
+    /**
+     * Returns the plain mean of the reviews of a phone, mapped to 0..100 like the loaded scores.
+     *
+     * @param id id of the phone
+     * @return 0 to 100, 50 for a phone without reviews
+     */
+    public double mean(int id) {
+        long packed = packed(id);
+        long count = count(packed);
+        return count == 0 ? 50 : 50 + 50.0 * sum(packed) / UNITS / count;
+    }
+
+    /**
+     * Returns the confidence weighted score of one aspect of a phone, like {@link #score(int)} but over the
+     * reviews naming the aspect.
+     *
+     * @param id id of the phone
+     * @param aspect the aspect
+     * @return 0 to 100, 50 when no review names the aspect
+     */
+    public double aspectScore(int id, Aspect aspect) {
+        return score(slot(id, ASPECT_SLOT + aspect.ordinal()));
+    }
+
+    /**
+     * Returns the feature of one aspect of a phone the strategies weight: the confidence weighted mean
+     * compound score of the reviews naming it, so a phone only gets near +1 or -1 with many such reviews.
+     *
+     * @param id id of the phone
+     * @param aspect the aspect
+     * @return -1 to +1, 0 when no review names the aspect
+     */
+    public double aspectFeature(int id, Aspect aspect) {
+        return feature(slot(id, ASPECT_SLOT + aspect.ordinal()));
+    }
+
+    /**
+     * Copies the features of all aspects of a phone ({@link #aspectFeature}) into an array.
+     *
+     * @param id id of the phone
+     * @param into array receiving {@link Aspect#COUNT} values, by ordinal
+     * @param offset position of the first value in the array
+     */
+    public void aspectFeatures(int id, float[] into, int offset) {
+        for (int a = 0; a < Aspect.COUNT; a++) into[offset + a] = (float) feature(slot(id, ASPECT_SLOT + a));
+    }
+
+    /** @return number of reviews of the phone naming the aspect */
+    public long aspectReviews(int id, Aspect aspect) {
+        return count(slot(id, ASPECT_SLOT + aspect.ordinal()));
+    }
+
+    /** @return number of reviews of the phone */
+    public long reviews(int id) {
+        return count(packed(id));
+    }
+
+    /** @return number of positive reviews of the phone (compound of at least {@link #POSITIVE_THRESHOLD}) */
+    public long positive(int id) {
+        return slot(id, 1);
+    }
+
+    /** @return number of neutral reviews of the phone */
+    public long neutral(int id) {
+        return slot(id, 2);
+    }
+
+    /** @return number of negative reviews of the phone (compound of at most minus {@link #POSITIVE_THRESHOLD}) */
+    public long negative(int id) {
+        return slot(id, 3);
+    }
+
+    /**
+     * Returns a number that grows whenever a shown score changes. It never goes back.
+     *
+     * @return the revision of the scores
+     */
+    public long revision() {
+        return revision.get();
+    }
+
+    /**
+     * Copies the aggregate of a phone, to be saved (see {@link #restore}).
+     *
+     * @param id id of the phone
+     * @param into array receiving {@link #STATE_LONGS} values
+     * @param offset position of the first value in the array
+     */
+    public void copyTo(int id, long[] into, int offset) {
+        for (int slot = 0; slot < SLOTS; slot++) into[offset + slot] = slot(id, slot);
+    }
+
+    /**
+     * Sets the aggregate of a phone to values copied with {@link #copyTo}. This replaces the aggregate
+     * rather than adding to it, so it is meant for phones nobody else adds reviews to yet, eg: while a
+     * saved catalog is being restored.
+     *
+     * @param id id of the phone
+     * @param from array holding {@link #STATE_LONGS} values
+     * @param offset position of the first value in the array
+     */
+    public void restore(int id, long[] from, int offset) {
+        AtomicLongArray chunk = chunkFor(id);
+        int base = (id & CHUNK_MASK) * SLOTS;
+        for (int slot = 0; slot < SLOTS; slot++) chunk.set(base + slot, from[offset + slot]);
+    }
+
+    // --------------------- Storage ---------------------
+
+    private long packed(int id) {
+        AtomicLongArray[] current = chunks;
+        int c = id >>> CHUNK_BITS;
+        if (id < 0 || c >= current.length || current[c] == null) return 0;
+        return current[c].get((id & CHUNK_MASK) * SLOTS);
+    }
+
+    private long slot(int id, int slot) {
+        AtomicLongArray[] current = chunks;
+        int c = id >>> CHUNK_BITS;
+        if (id < 0 || c >= current.length || current[c] == null) return 0;
+        return current[c].get((id & CHUNK_MASK) * SLOTS + slot);
+    }
+
+    /** Returns the chunk of the id, creating it (under the lock, the only time one is taken) if needed. */
+    private AtomicLongArray chunkFor(int id) {
+        if (id < 0) throw new IllegalArgumentException("Phone id must not be negative: " + id);
+        int c = id >>> CHUNK_BITS;
+        AtomicLongArray[] current = chunks;
+        if (c < current.length && current[c] != null) return current[c];
+        synchronized (this) {
+            current = chunks;
+            if (c < current.length && current[c] != null) return current[c];
+            // readers keep using the old directory, the chunks in it are the same objects;
+            // it only grows when the chunk is past its end
+            int length = c < current.length ? current.length : Math.max(c + 1, current.length * 2);
+            AtomicLongArray[] next = Arrays.copyOf(current, length);
+            next[c] = new AtomicLongArray((CHUNK_MASK + 1) * SLOTS);
+            chunks = next;
+            return next[c];
+        }
+    }
+
+    private static long count(long packed) {
+        return (packed - sum(packed)) >> SUM_BITS;
+    }
+
+    /** The lower 40 bits, sign extended. */
+    private static long sum(long packed) {
+        return packed << (64 - SUM_BITS) >> (64 - SUM_BITS);
+    }
+
+    private static double score(long packed) {
+        return 50 + 50.0 * sum(packed) / UNITS / (count(packed) + PRIOR_REVIEWS);
+    }
+
+    private static double feature(long packed) {
+        return (double) sum(packed) / UNITS / (count(packed) + PRIOR_REVIEWS);
+    }
+
+    private static long shown(double score) {
+        return Math.round(score * 10);
+    }
+}
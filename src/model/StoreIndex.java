@@ -0,0 +1,88 @@
+package model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * The StoreIndex maps every phone to the stores selling it
+ * It is the inverted form of the store inventories: instead of asking every store whether its list
+ * contains the phone, a lookup is one hash map read, however many stores there are.
+ *
+ * The index is kept up to date by the stores themselves: a store attached to an index
+ * ({@link store#attach}) reports its current phones and every phone added later with {@link store#addPhone}.
+ * Phones are keyed by the id the library gave them, which a phone keeps for good (a reload that reuses it,
+ * or a copy of it with more reviews, has the same id), so a phone must be in the library before it is
+ * put in a store that is attached to an index.
+ */
+public final class StoreIndex {
+
+    private final Map<Integer, List<store>> byPhone = new ConcurrentHashMap<>();
+    private final BiConsumer<store, phone> listener;
+
+    /**
+     * Creates an empty index.
+     */
+    public StoreIndex() {
+        this(null);
+    }
+
+    /**
+     * Creates an empty index that tells a listener about every phone newly listed for a store,
+     * eg: the phone library, which logs it to its catalog store.
+     *
+     * @param listener called with the store and the phone, null for none
+     */
+    public StoreIndex(BiConsumer<store, phone> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the stores selling a phone.
+     *
+     * @param p the phone
+     * @return the stores, in the order the phone was added to them; empty when no store sells it
+     */
+    public List<store> storesOf(phone p) {
+        if (p == null || p.getId() < 0) return List.of();
+        List<store> stores = byPhone.get(p.getId());
+        return stores == null ? List.of() : stores;
+    }
+
+    /**
+     * Checks that a phone can be indexed, before a store lists it.
+     *
+     * @param p the phone, null is ignored like in {@link #add}
+     * @throws IllegalArgumentException if the phone has no library id yet
+     */
+    public static void check(phone p) {
+        if (p != null && p.getId() < 0) {
+            throw new IllegalArgumentException("Phone " + p.getName() + " must be added to the library before a store");
+        }
+    }
+
+    /** @return number of phones sold by at least one store */
+    public int size() {
+        return byPhone.size();
+    }
+
+    /**
+     * Records that a store sells a phone. The list of a phone is replaced rather than changed,
+     * so readers never lock and never see a list being written.
+     */
+    synchronized void add(store s, phone p) {
+        if (p == null) return;
+        check(p);
+        List<store> current = byPhone.get(p.getId());
+        if (current == null) {
+            byPhone.put(p.getId(), List.of(s));
+        } else {
+            for (store existing : current) if (existing == s) return; // already listed
+            store[] next = current.toArray(new store[current.size() + 1]);
+            next[current.size()] = s;
+            byPhone.put(p.getId(), List.of(next));
+        }
+        if (listener != null) listener.accept(s, p);
+    }
+}
@@ -1,5 +1,8 @@
 package model;
 
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
@@ -7,20 +10,34 @@ import java.util.List;
  * name , brand , price, operating system , usage types and reviews
  * Purchase links , sentiment scores and total number of reviews
  * The model is used throughout the system for recommendation and display purposes
+ *
+ * The review texts are not kept in the phone: it only holds the review count, the first review
+ * as a summary and a handle into a {@link ReviewStore}, which reads the full reviews on demand.
  */
 public class phone {
 
+    private static final Gson GSON = new Gson();
+
+    public int id = -1; // given by the phone library, kept while the phone is reused by a reload; -1 until added
     public String name;
     public String brand;
     public double price;
     public String os;
     public String usage;
-    public List<String> reviews; // List instead of String
     public String purchaseLink;
     public double sentiment;
     public int totalReviews;
+    public int reviewCount; // reviews kept in the review store
+    public String summaryReview; // first review, shown next to the phone
+    private transient int usageCode; // usage and OS normalized once, see CodeDictionary
+    private transient int osCode;
+    private transient ReviewStore reviewStore;
+    private transient int reviewHandle;
+    private transient byte[] json; // pre-serialized JSON form, see toJsonBytes()
+    private transient long sourceHash; // hash of the CSV row the phone was read from, 0 if none
     /**
-     * Creates a phone object with all its details.
+     * Creates a phone object with all its details. The reviews are kept in a small review store of
+     * the phone's own, not in the store of a library.
      *
      * @param name the name/model of the phone
      * @param brand  the brand
@@ -34,20 +51,91 @@ public class phone {
      */
     public phone(String name, String brand, double price, String os, String usage,
                  String purchaseLink, List<String> reviews, double sentiment, int totalReviews) {
+        this(name, brand, price, os, usage, purchaseLink, ReviewStore.of(reviews), 0, sentiment, totalReviews);
+    }
+
+    /**
+     * Creates a phone whose reviews are already in a review store.
+     *
+     * @param name the name/model of the phone
+     * @param brand  the brand
+     * @param price  the price of the phone
+     * @param os  operating system (e.g., Android, iOS)
+     * @param usage recommended usage type (e.g., casual, gaming, camera)
+     * @param purchaseLink direct purchase link for the phone
+     * @param reviewStore the store holding the reviews
+     * @param reviewHandle handle of the reviews inside the store
+     * @param sentiment sentiment score calculated from reviews
+     * @param totalReviews total number of reviews available
+     */
+    public phone(String name, String brand, double price, String os, String usage,
+                 String purchaseLink, ReviewStore reviewStore, int reviewHandle,
+                 double sentiment, int totalReviews) {
         this.name = name;
         this.brand = brand;
         this.price = price;
         this.os = os;
         this.usage = usage;
+        this.usageCode = CodeDictionary.USAGE.intern(usage);
+        this.osCode = CodeDictionary.OS.intern(os);
         this.purchaseLink = purchaseLink;
-        this.reviews = reviews;
+        this.reviewStore = reviewStore;
+        this.reviewHandle = reviewHandle;
+        this.reviewCount = reviewStore.count(reviewHandle);
+        this.summaryReview = reviewCount > 0 ? reviewStore.get(reviewHandle, 0) : "";
         this.sentiment = sentiment;
         this.totalReviews = totalReviews;
     }
 
 
-    /** @return list of reviews for the phone */
-    public List<String> getReviews() { return reviews; }
+    /**
+     * Returns a copy of the phone with more reviews. The copy keeps the id and the hash of the source
+     * row, so it can take the place of this phone in the next catalog version (and a reload of an
+     * unchanged file keeps it). This phone is not changed.
+     *
+     * @param more reviews to add after the current ones
+     * @param sentiment sentiment score of the copy
+     * @return the copy
+     */
+    public phone withReviews(List<String> more, double sentiment) {
+        phone copy = new phone(name, brand, price, os, usage, purchaseLink, reviewStore,
+                reviewStore.append(reviewHandle, more), sentiment, totalReviews + more.size());
+        copy.id = id;
+        copy.sourceHash = sourceHash;
+        return copy;
+    }
+
+    /** @return list of reviews for the phone, read from the review store */
+    public List<String> getReviews() { return reviewStore.getAll(reviewHandle); }
+
+    /**
+     * Reads a page of the reviews from the review store.
+     *
+     * @param offset position of the first review
+     * @param limit largest number of reviews returned
+     * @return the reviews of the page
+     */
+    public List<String> getReviews(int offset, int limit) { return reviewStore.page(reviewHandle, offset, limit); }
+
+    /** @return number of reviews in the review store */
+    public int getReviewCount() { return reviewCount; }
+
+    /** @return the first review, empty when the phone has no reviews */
+    public String getSummaryReview() { return summaryReview; }
+
+    /** @return id of the phone in its library, -1 when it is not in one */
+    public int getId() { return id; }
+
+    /** @return hash of the CSV row this phone was parsed from, 0 when it was not read from a CSV */
+    public long getSourceHash() { return sourceHash; }
+
+    /**
+     * Records the hash of the CSV row the phone was read from, so a reload of the CSV can
+     * find the unchanged rows and keep their phones.
+     *
+     * @param sourceHash hash of the raw row bytes
+     */
+    public void setSourceHash(long sourceHash) { this.sourceHash = sourceHash; }
 
     /** @return phone name */
     public String getName() { return name; }
@@ -64,6 +152,12 @@ public class phone {
     /** @return usage type (casual, gaming, business, etc.) */
     public String getUsage() { return usage; }
 
+    /** @return dictionary code of the usage type, see {@link CodeDictionary#USAGE} */
+    public int getUsageCode() { return usageCode; }
+
+    /** @return dictionary code of the operating system, see {@link CodeDictionary#OS} */
+    public int getOsCode() { return osCode; }
+
     /** @return purchase link URL */
     public String getPurchaseLink() { return purchaseLink; }
 
@@ -73,12 +167,58 @@ public class phone {
     /** @return total number of user reviews */
     public int getTotalReviews() { return totalReviews; }
 
+    /**
+     * Returns the JSON form of the phone as UTF-8 bytes. It is built once (the catalog does it
+     * when the phone is loaded) and reused by every response that contains the phone.
+     * Call {@link #refreshJson()} after changing a field so the cached form is rebuilt.
+     *
+     * @return the cached JSON object of this phone
+     */
+    public byte[] toJsonBytes() {
+        byte[] bytes = json;
+        if (bytes == null) bytes = refreshJson();
+        return bytes;
+    }
+
+    /**
+     * Rebuilds the cached JSON form from the current field values.
+     *
+     * @return the new JSON object of this phone
+     */
+    public byte[] refreshJson() {
+        byte[] bytes = GSON.toJson(this).getBytes(StandardCharsets.UTF_8);
+        json = bytes;
+        return bytes;
+    }
+
+    /**
+     * Two phones are the same phone when the library gave them the same id. The id is kept while a
+     * reload reuses the phone, so the identity is stable across versions of the catalog.
+     * A phone without an id (-1, not in a library yet) is only equal to itself.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof phone)) return false;
+        phone other = (phone) o;
+        return id >= 0 && id == other.id;
+    }
+
+    /**
+     * Hash of the phone identity, see {@link #equals(Object)}. Phones that are used as keys of a hash
+     * map should be added to the library first, as giving them an id changes the hash.
+     */
+    @Override
+    public int hashCode() {
+        return id >= 0 ? Integer.hashCode(id) : System.identityHashCode(this);
+    }
+
     /**
      * Returns a string containing all phone details in a compact format.
      */
     @Override
     public String toString() {
         return name + "|" + brand + "|" + price + "|" + os + "|" + usage + "|" +
-                reviews + "|" + purchaseLink + "|" + sentiment + "|" + totalReviews;
+                getReviews() + "|" + purchaseLink + "|" + sentiment + "|" + totalReviews;
     }
 }
@@ -1,11 +1,15 @@
 package model;
 
+import java.util.AbstractList;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents the store that sells the mobiles
  * Each store has its name and the list of mobiles that is been sold.
+ * Phones are added with {@link #addPhone} (or appended to {@link #getPhones()}), which also updates the
+ * {@link StoreIndex} the store is attached to.
  */
 public class store {
 
@@ -20,6 +24,38 @@ public class store {
 
     private List<phone>phones;
 
+    /**
+     * The phones as handed out by getPhones: appends go through addPhone.
+     */
+    private final List<phone> inventory = new AbstractList<phone>() {
+        @Override
+        public phone get(int index) {
+            synchronized (store.this) {
+                return phones.get(index);
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (store.this) {
+                return phones.size();
+            }
+        }
+
+        @Override
+        public void add(int index, phone phone) {
+            synchronized (store.this) {
+                if (index != phones.size()) throw new UnsupportedOperationException("Phones can only be appended");
+                addPhone(phone);
+            }
+        }
+    };
+
+    /**
+     * Indexes that are told about every phone added to this store.
+     */
+    private final List<StoreIndex> indexes = new CopyOnWriteArrayList<>();
+
     /**
      * Construct the store with given name and an empty list of mobiles in it.
      * @param name the name of the store.
@@ -35,18 +71,45 @@ public class store {
      * Add a phone to a store inventory.
      *
      * @param phone the phone object to be added.
+     * @throws IllegalArgumentException if the store is in a library and the phone is not (it has no id yet)
      */
-    public void addPhone(phone phone) {
+    public synchronized void addPhone(phone phone) {
+     if (!indexes.isEmpty()) StoreIndex.check(phone);
      phones.add(phone);
+     for (StoreIndex index : indexes) index.add(this, phone);
+    }
+
+    /**
+     * Attaches the store to an index: the phones already in the store are added to it,
+     * and every phone added later as well.
+     *
+     * @param index the index of the library the store belongs to
+     * @throws IllegalArgumentException if a phone of the store is not in the library (it has no id yet)
+     */
+    public synchronized void attach(StoreIndex index) {
+        if (indexes.contains(index)) return;
+        for (phone p : phones) StoreIndex.check(p);
+        indexes.add(index);
+        for (phone p : phones) index.add(this, p);
     }
 
     /**
      *
-     * @return List of mobiles in that particular store.
+     * @return List of mobiles in that particular store. Phones appended to it are added with addPhone,
+     * so they reach the index too; other changes (set, remove) are not supported.
      */
 
     public List<phone> getPhones() {
-        return phones;
+        return inventory;
+    }
+
+    /**
+     * Copies the list of mobiles, consistent with phones being added at the same time.
+     *
+     * @return a copy of the mobiles in that store, in the order they were added
+     */
+    public synchronized List<phone> copyOfPhones() {
+        return new ArrayList<>(phones);
     }
 
     /**
@@ -8,6 +8,7 @@ package model;
  * Operating system preferences (Android , IOS or no preference)
  * This information used by recommendation stratergies
  * To filter and suggest the suitable mobile
+ * The usage and OS are also kept as {@link CodeDictionary} codes, worked out once when they are set
  */
 public class user_preference {
 
@@ -15,6 +16,8 @@ public class user_preference {
     private double minBudget;
     private double maxBudget;
     private String osPreference;
+    private int usageCode = CodeDictionary.UNKNOWN;
+    private int osCode = CodeDictionary.ANY;
 
     /**
      * Creates a user preference object with all required details.
@@ -25,10 +28,10 @@ public class user_preference {
      * @param osPreference preferred operating system (Android/iOS/no preference)
      */
     public user_preference(String usage, double minBudget, double maxBudget, String osPreference) {
-        this.usage = usage;
         this.minBudget = minBudget;
         this.maxBudget = maxBudget;
-        this.osPreference = osPreference;
+        setUsage(usage);
+        setOsPreference(osPreference);
     }
 
     /**
@@ -56,8 +59,28 @@ public class user_preference {
      */
     public String getOsPreference() { return osPreference; }
 
+    /**
+     * @return usage code, {@link CodeDictionary#UNKNOWN} if no phone has this usage type
+     */
+    public int getUsageCode() {
+        // a value unknown so far may have been added by phones loaded later
+        if (usageCode == CodeDictionary.UNKNOWN) usageCode = CodeDictionary.USAGE.find(usage);
+        return usageCode;
+    }
+
+    /**
+     * @return OS code, {@link CodeDictionary#ANY} for no preference, {@link CodeDictionary#UNKNOWN} if no phone has this OS
+     */
+    public int getOsCode() {
+        if (osCode == CodeDictionary.UNKNOWN) osCode = CodeDictionary.OS.preference(osPreference);
+        return osCode;
+    }
+
     //Sets the usage type
-    public void setUsage(String usage) { this.usage = usage; }
+    public void setUsage(String usage) {
+        this.usage = usage;
+        this.usageCode = CodeDictionary.USAGE.find(usage);
+    }
 
     //Sets the minbudget
     public void setMinBudget(double minBudget) { this.minBudget = minBudget; }
@@ -66,7 +89,10 @@ public class user_preference {
     public void setMaxBudget(double maxBudget) { this.maxBudget = maxBudget; }
 
     //Sets the operating system preference
-    public void setOsPreference(String osPreference) { this.osPreference = osPreference; }
+    public void setOsPreference(String osPreference) {
+        this.osPreference = osPreference;
+        this.osCode = CodeDictionary.OS.preference(osPreference);
+    }
 
 
     /**
@@ -0,0 +1,125 @@
+package sentiment;
+
+import model.Aspect;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The AspectAnalyzer finds which parts of the phone ({@link Aspect}) a review talks about, and how
+ * A review is split into clauses at the end of a sentence (". ", "!", "?", ";") and at a contrasting
+ * word ("but", "however", "though", "although"), so "great camera but the battery drains" is good news
+ * for the camera and bad news for the battery. Every clause naming an aspect is scored with the
+ * {@link SentimentAnalyzer}, and an aspect gets the mean compound score of the clauses naming it.
+ *
+ * Most reviews are a single clause, their aspects get the compound score of the whole review, which the
+ * caller already has, so those are not scored a second time. Like the SentimentAnalyzer, an instance
+ * holds no state besides the word table and can be shared by any number of threads.
+ */
+public final class AspectAnalyzer {
+
+    private static final Set<String> CONTRASTS = Set.of("but", "however", "though", "although");
+
+    private static final AspectAnalyzer DEFAULT = new AspectAnalyzer(SentimentAnalyzer.getDefault());
+
+    private final SentimentAnalyzer analyzer;
+    private final Map<String, Aspect> words = new HashMap<>();
+
+    /**
+     * Creates an aspect analyzer.
+     *
+     * @param analyzer scores the clauses
+     */
+    public AspectAnalyzer(SentimentAnalyzer analyzer) {
+        this.analyzer = analyzer;
+        for (Aspect aspect : Aspect.values()) {
+            for (String word : aspect.getWords()) words.put(word, aspect);
+        }
+    }
+
+    /**
+     * @return the aspect analyzer over the bundled lexicon
+     */
+    public static AspectAnalyzer getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Scores the aspects of a review.
+     *
+     * @param review text of the review
+     * @return the compound score (-1 to +1) of every aspect by ordinal, NaN for the aspects the review does
+     * not name, or null when it names none
+     */
+    public double[] analyze(String review) {
+        return analyze(review, Double.NaN);
+    }
+
+    /**
+     * Scores the aspects of a review whose compound score is already known.
+     *
+     * @param review text of the review
+     * @param compound compound score of the whole review, reused when it is a single clause; NaN if not known
+     * @return the compound score (-1 to +1) of every aspect by ordinal, NaN for the aspects the review does
+     * not name, or null when it names none
+     */
+    public double[] analyze(String review, double compound) {
+        if (review == null) return null;
+        int length = review.length();
+        double[] sums = new double[Aspect.COUNT];
+        int[] counts = new int[Aspect.COUNT];
+        boolean any = false;
+        int clauseStart = 0;
+        int mask = 0; // aspects named in the current clause
+        int i = 0;
+        while (i <= length) {
+            char c = i < length ? review.charAt(i) : '.';
+            if (Character.isLetter(c)) {
+                int start = i;
+                while (i < length && Character.isLetter(review.charAt(i))) i++;
+                String word = review.substring(start, i).toLowerCase(Locale.ROOT);
+                if (CONTRASTS.contains(word)) {
+                    if (mask != 0) any = credit(review, clauseStart, start, mask, compound, sums, counts);
+                    clauseStart = i;
+                    mask = 0;
+                } else {
+                    Aspect aspect = words.get(word);
+                    if (aspect != null) mask |= 1 << aspect.ordinal();
+                }
+                continue;
+            }
+            boolean end = i == length || c == '!' || c == '?' || c == ';'
+                    || (c == '.' && (i + 1 == length || Character.isWhitespace(review.charAt(i + 1))));
+            if (end) {
+                if (mask != 0) any = credit(review, clauseStart, i, mask, compound, sums, counts);
+                clauseStart = i + 1;
+                mask = 0;
+            }
+            i++;
+        }
+        if (!any) return null;
+        for (int a = 0; a < Aspect.COUNT; a++) sums[a] = counts[a] == 0 ? Double.NaN : sums[a] / counts[a];
+        return sums;
+    }
+
+    /** Adds the score of the clause [from, to) to the aspects of the mask, returns true. */
+    private boolean credit(String review, int from, int to, int mask, double compound, double[] sums, int[] counts) {
+        double score = !Double.isNaN(compound) && isWhole(review, from, to)
+                ? compound : analyzer.compound(review.substring(from, to));
+        for (int a = 0; a < Aspect.COUNT; a++) {
+            if ((mask & (1 << a)) == 0) continue;
+            sums[a] += score;
+            counts[a]++;
+        }
+        return true;
+    }
+
+    /** True when the clause [from, to) is the whole review but for punctuation and spaces around it. */
+    private static boolean isWhole(String review, int from, int to) {
+        for (int i = 0; i < from; i++) if (Character.isLetterOrDigit(review.charAt(i))) return false;
+        for (int i = to; i < review.length(); i++) if (Character.isLetterOrDigit(review.charAt(i))) return false;
+        return true;
+    }
+}
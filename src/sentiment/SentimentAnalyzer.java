@@ -0,0 +1,325 @@
+package sentiment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The SentimentAnalyzer scores the sentiment of a text with the rules of VADER
+ * (the analyzer the Sent_analysis_for_reviews_hybrid notebook used for the Sentiment_Score column)
+ * Every word found in the lexicon adds its valence (-4 to +4), changed by the words around it:
+ *  - intensifiers and dampeners before it ("very", "slightly") raise or lower the valence
+ *  - a negation up to three words before it ("not", "never", "isn't") flips and weakens it
+ *  - a word in capitals among lower case words is emphasized
+ *  - after "but" the valences count 1.5 times, before it half
+ *  - exclamation marks and repeated question marks strengthen the total
+ * The sum is normalized into the compound score, from -1 (most negative) to +1 (most positive).
+ *
+ * The lexicon is read from the vader_lexicon.txt resource. An analyzer holds no state besides it,
+ * so one instance can be shared by any number of threads.
+ */
+public final class SentimentAnalyzer {
+
+    /** Resource holding the lexicon, one "word TAB valence" line per word. */
+    public static final String LEXICON = "vader_lexicon.txt";
+
+    private static final double B_INCR = 0.293;
+    private static final double B_DECR = -0.293;
+    private static final double C_INCR = 0.733;
+    private static final double N_SCALAR = -0.74;
+    private static final double ALPHA = 15; // normalization constant, the sum where compound is ~0.5
+
+    private static final String PUNCTUATION = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+    private static final Set<String> NEGATE = Set.of(
+            "aint", "arent", "cannot", "cant", "couldnt", "darent", "didnt", "doesnt",
+            "ain't", "aren't", "can't", "couldn't", "daren't", "didn't", "doesn't",
+            "dont", "hadnt", "hasnt", "havent", "isnt", "mightnt", "mustnt", "neither",
+            "don't", "hadn't", "hasn't", "haven't", "isn't", "mightn't", "mustn't",
+            "neednt", "needn't", "never", "none", "nope", "nor", "not", "nothing", "nowhere",
+            "oughtnt", "shant", "shouldnt", "uhuh", "wasnt", "werent",
+            "oughtn't", "shan't", "shouldn't", "uh-uh", "wasn't", "weren't",
+            "without", "wont", "wouldnt", "won't", "wouldn't", "rarely", "seldom", "despite");
+
+    private static final Map<String, Double> BOOSTERS = new HashMap<>();
+
+    static {
+        for (String w : new String[]{"absolutely", "amazingly", "awfully", "completely", "considerable", "considerably",
+                "decidedly", "deeply", "effing", "enormous", "enormously", "entirely", "especially", "exceptional",
+                "exceptionally", "extreme", "extremely", "fabulously", "flipping", "flippin", "frackin", "fracking",
+                "fricking", "frickin", "frigging", "friggin", "fully", "fuckin", "fucking", "fuggin", "fugging",
+                "greatly", "hella", "highly", "hugely", "incredible", "incredibly", "intensely", "major", "majorly",
+                "more", "most", "particularly", "purely", "quite", "really", "remarkably", "so", "substantially",
+                "thoroughly", "total", "totally", "tremendous", "tremendously", "uber", "unbelievably", "unusually",
+                "utter", "utterly", "very"}) {
+            BOOSTERS.put(w, B_INCR);
+        }
+        for (String w : new String[]{"almost", "barely", "hardly", "just enough", "kind of", "kinda", "kindof",
+                "kind-of", "less", "little", "marginal", "marginally", "occasional", "occasionally", "partly",
+                "scarce", "scarcely", "slight", "slightly", "somewhat", "sort of", "sorta", "sortof", "sort-of"}) {
+            BOOSTERS.put(w, B_DECR);
+        }
+    }
+
+    /** Phrases whose valence replaces the one of their words. */
+    private static final Map<String, Double> SPECIAL_CASES = Map.of(
+            "the shit", 3.0, "the bomb", 3.0, "bad ass", 1.5, "badass", 1.5, "bus stop", 0.0,
+            "yeah right", -2.0, "kiss of death", -1.5, "to die for", 3.0,
+            "beating heart", 3.1, "broken heart", -2.9);
+
+    private static volatile SentimentAnalyzer defaultAnalyzer;
+
+    private final Map<String, Double> lexicon;
+
+    /**
+     * Creates an analyzer with the given lexicon.
+     *
+     * @param lexicon valence by lower case word
+     */
+    public SentimentAnalyzer(Map<String, Double> lexicon) {
+        this.lexicon = Map.copyOf(lexicon);
+    }
+
+    /**
+     * @return the analyzer with the bundled VADER lexicon, read on first use
+     */
+    public static SentimentAnalyzer getDefault() {
+        SentimentAnalyzer analyzer = defaultAnalyzer;
+        if (analyzer == null) {
+            synchronized (SentimentAnalyzer.class) {
+                if (defaultAnalyzer == null) defaultAnalyzer = new SentimentAnalyzer(readLexicon());
+                analyzer = defaultAnalyzer;
+            }
+        }
+        return analyzer;
+    }
+
+    /** @return number of words in the lexicon */
+    public int lexiconSize() {
+        return lexicon.size();
+    }
+
+    /**
+     * Scores a text.
+     *
+     * @param text one review
+     * @return the compound score from -1 to +1, 0 for a text without sentiment words
+     */
+    public double compound(String text) {
+        if (text == null || text.isBlank()) return 0;
+        String[] words = tokens(text);
+        int n = words.length;
+        String[] lower = new String[n];
+        for (int i = 0; i < n; i++) lower[i] = words[i].toLowerCase(Locale.ROOT);
+        boolean capDiff = allCapDifferential(words);
+
+        double[] sentiments = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (BOOSTERS.containsKey(lower[i])) continue; // modifiers carry no valence of their own
+            if (i < n - 1 && lower[i].equals("kind") && lower[i + 1].equals("of")) continue;
+            sentiments[i] = valence(words, lower, i, capDiff);
+        }
+        butCheck(lower, sentiments);
+
+        double sum = 0;
+        for (double s : sentiments) sum += s;
+        double emphasis = punctuationEmphasis(text);
+        if (sum > 0) sum += emphasis;
+        else if (sum < 0) sum -= emphasis;
+        return Math.round(normalize(sum) * 10000) / 10000.0;
+    }
+
+    // --------------------- Rules ---------------------
+
+    private double valence(String[] words, String[] lower, int i, boolean capDiff) {
+        Double base = lexicon.get(lower[i]);
+        if (base == null) return 0;
+        int n = words.length;
+        double valence = base;
+
+        // "no" before another sentiment word negates that word instead of counting itself
+        if (lower[i].equals("no") && i != n - 1 && lexicon.containsKey(lower[i + 1])) valence = 0;
+        if ((i > 0 && lower[i - 1].equals("no")) || (i > 1 && lower[i - 2].equals("no"))
+                || (i > 2 && lower[i - 3].equals("no") && (lower[i - 1].equals("or") || lower[i - 1].equals("nor")))) {
+            valence = base * N_SCALAR;
+        }
+
+        if (capDiff && isUpper(words[i])) valence += valence > 0 ? C_INCR : -C_INCR;
+
+        for (int start = 0; start < 3; start++) {
+            int j = i - (start + 1);
+            if (j < 0 || lexicon.containsKey(lower[j])) continue;
+            double s = scalar(words[j], lower[j], valence, capDiff);
+            if (start == 1) s *= 0.95; // the further away, the weaker the modifier
+            if (start == 2) s *= 0.9;
+            valence += s;
+            valence = negationCheck(valence, lower, start, i);
+            if (start == 2) valence = specialIdioms(valence, lower, i);
+        }
+        return leastCheck(valence, lower, i);
+    }
+
+    private static double scalar(String word, String lower, double valence, boolean capDiff) {
+        Double boost = BOOSTERS.get(lower);
+        if (boost == null) return 0;
+        double scalar = valence < 0 ? -boost : boost;
+        if (capDiff && isUpper(word)) scalar += valence > 0 ? C_INCR : -C_INCR;
+        return scalar;
+    }
+
+    private static double negationCheck(double valence, String[] lower, int start, int i) {
+        switch (start) {
+            case 0 -> {
+                if (negated(lower[i - 1])) valence *= N_SCALAR;
+            }
+            case 1 -> {
+                if (lower[i - 2].equals("never") && (lower[i - 1].equals("so") || lower[i - 1].equals("this"))) {
+                    valence *= 1.25;
+                } else if (!(lower[i - 2].equals("without") && lower[i - 1].equals("doubt")) && negated(lower[i - 2])) {
+                    valence *= N_SCALAR;
+                }
+            }
+            default -> {
+                if ((lower[i - 3].equals("never") && (lower[i - 2].equals("so") || lower[i - 2].equals("this")))
+                        || lower[i - 1].equals("so") || lower[i - 1].equals("this")) {
+                    valence *= 1.25;
+                } else if (!(lower[i - 3].equals("without") && (lower[i - 2].equals("doubt") || lower[i - 1].equals("doubt")))
+                        && negated(lower[i - 3])) {
+                    valence *= N_SCALAR;
+                }
+            }
+        }
+        return valence;
+    }
+
+    private static double specialIdioms(double valence, String[] lower, int i) {
+        String oneZero = lower[i - 1] + " " + lower[i];
+        String twoOneZero = lower[i - 2] + " " + oneZero;
+        String twoOne = lower[i - 2] + " " + lower[i - 1];
+        String threeTwoOne = lower[i - 3] + " " + twoOne;
+        String threeTwo = lower[i - 3] + " " + lower[i - 2];
+        for (String seq : new String[]{oneZero, twoOneZero, twoOne, threeTwoOne, threeTwo}) {
+            Double special = SPECIAL_CASES.get(seq);
+            if (special != null) {
+                valence = special;
+                break;
+            }
+        }
+        if (lower.length - 1 > i) {
+            Double special = SPECIAL_CASES.get(lower[i] + " " + lower[i + 1]);
+            if (special != null) valence = special;
+        }
+        if (lower.length - 1 > i + 1) {
+            Double special = SPECIAL_CASES.get(lower[i] + " " + lower[i + 1] + " " + lower[i + 2]);
+            if (special != null) valence = special;
+        }
+        for (String gram : new String[]{threeTwoOne, threeTwo, twoOne}) { // "sort of", "kind of"
+            Double boost = BOOSTERS.get(gram);
+            if (boost != null) valence += boost;
+        }
+        return valence;
+    }
+
+    private double leastCheck(double valence, String[] lower, int i) {
+        if (i > 1 && !lexicon.containsKey(lower[i - 1]) && lower[i - 1].equals("least")) {
+            if (!lower[i - 2].equals("at") && !lower[i - 2].equals("very")) valence *= N_SCALAR;
+        } else if (i > 0 && !lexicon.containsKey(lower[i - 1]) && lower[i - 1].equals("least")) {
+            valence *= N_SCALAR;
+        }
+        return valence;
+    }
+
+    /** Words before the first "but" count half, words after it 1.5 times. */
+    private static void butCheck(String[] lower, double[] sentiments) {
+        for (int b = 0; b < lower.length; b++) {
+            if (!lower[b].equals("but")) continue;
+            for (int i = 0; i < sentiments.length; i++) {
+                if (i < b) sentiments[i] *= 0.5;
+                else if (i > b) sentiments[i] *= 1.5;
+            }
+            return;
+        }
+    }
+
+    private static double punctuationEmphasis(String text) {
+        int exclamations = 0;
+        int questions = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '!') exclamations++;
+            else if (c == '?') questions++;
+        }
+        double emphasis = Math.min(exclamations, 4) * 0.292;
+        if (questions > 1) emphasis += questions <= 3 ? questions * 0.18 : 0.96;
+        return emphasis;
+    }
+
+    private static double normalize(double score) {
+        double norm = score / Math.sqrt(score * score + ALPHA);
+        return Math.max(-1, Math.min(1, norm));
+    }
+
+    private static boolean negated(String lowerWord) {
+        return NEGATE.contains(lowerWord) || lowerWord.contains("n't");
+    }
+
+    // --------------------- Tokens ---------------------
+
+    /** Splits on white space and strips the punctuation around words longer than two letters. */
+    static String[] tokens(String text) {
+        String[] raw = text.trim().split("\\s+");
+        for (int i = 0; i < raw.length; i++) {
+            String token = raw[i];
+            int from = 0;
+            int to = token.length();
+            while (from < to && PUNCTUATION.indexOf(token.charAt(from)) >= 0) from++;
+            while (to > from && PUNCTUATION.indexOf(token.charAt(to - 1)) >= 0) to--;
+            if (to - from > 2) raw[i] = token.substring(from, to); // short ones may be emoticons, eg: ":)"
+        }
+        return raw;
+    }
+
+    /** True when some but not all words are in capitals. */
+    private static boolean allCapDifferential(String[] words) {
+        int upper = 0;
+        for (String w : words) if (isUpper(w)) upper++;
+        return upper > 0 && upper < words.length;
+    }
+
+    /** Like Python's str.isupper: at least one cased letter and no lower case one. */
+    private static boolean isUpper(String word) {
+        boolean cased = false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (Character.isLowerCase(c)) return false;
+            if (Character.isUpperCase(c)) cased = true;
+        }
+        return cased;
+    }
+
+    private static Map<String, Double> readLexicon() {
+        InputStream is = SentimentAnalyzer.class.getClassLoader().getResourceAsStream(LEXICON);
+        if (is == null) throw new IllegalStateException(LEXICON + " not found in resources");
+        Map<String, Double> words = new HashMap<>(16384);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("# ")) continue;
+                int tab = line.indexOf('\t');
+                if (tab <= 0) continue;
+                int end = line.indexOf('\t', tab + 1);
+                words.put(line.substring(0, tab), Double.parseDouble(line.substring(tab + 1, end < 0 ? line.length() : end)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return words;
+    }
+}
@@ -0,0 +1,205 @@
+package sentiment;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.SentimentAggregates;
+import model.phone;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The SentimentScorer computes the sentiment score of the reviews of phones, in place of the
+ * Sentiment_Score the notebook computed offline
+ * Every review gets the compound score of the {@link SentimentAnalyzer} (-1 to +1) and the phone
+ * gets their mean mapped to 0..100: score = (mean + 1) / 2 * 100, one decimal kept.
+ *
+ * A batch of phones is scored with fork-join: the list is split in halves until a part holds at most
+ * {@link #SPLIT_PHONES} phones, and the parts are scored by the workers of the pool. The phones are only
+ * read: each task writes the scores of its part into its own slots of the result array, so no locking
+ * is needed, and the caller decides which phones take the scores ({@link Stats#getScore}). When the phones
+ * already have their ids, every review can also go into the running {@link SentimentAggregates} of the
+ * library, together with the scores of the aspects it names ({@link AspectAnalyzer}).
+ */
+public class SentimentScorer {
+
+    /** Largest number of phones scored by one fork-join task without splitting it further. */
+    public static final int SPLIT_PHONES = 16;
+
+    private static final Counter REVIEWS = MetricsRegistry.getDefault().counter("pf_sentiment_reviews_total",
+            "Reviews scored by the sentiment analyzer");
+    private static final Histogram BATCH_TIME = MetricsRegistry.getDefault().histogram("pf_sentiment_batch_duration_seconds",
+            "Time to score the reviews of a batch of loaded phones", Histogram.LATENCY_BUCKETS);
+
+    private static final SentimentScorer DEFAULT = new SentimentScorer(SentimentAnalyzer.getDefault(), ForkJoinPool.commonPool());
+
+    private final SentimentAnalyzer analyzer;
+    private final AspectAnalyzer aspects;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a scorer.
+     *
+     * @param analyzer scores one review
+     * @param pool runs the scoring tasks
+     */
+    public SentimentScorer(SentimentAnalyzer analyzer, ForkJoinPool pool) {
+        this.analyzer = analyzer;
+        this.aspects = new AspectAnalyzer(analyzer);
+        this.pool = pool;
+    }
+
+    /**
+     * @return the scorer with the bundled lexicon, running on the common fork-join pool
+     */
+    public static SentimentScorer getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Scores a list of reviews.
+     *
+     * @param reviews the reviews of one phone
+     * @return sentiment score from 0 to 100, 50 (neutral) without reviews
+     */
+    public double score(List<String> reviews) {
+        if (reviews.isEmpty()) return 50;
+        double sum = 0;
+        for (String review : reviews) sum += analyzer.compound(review);
+        return toScore(sum / reviews.size());
+    }
+
+    /** Maps a mean compound score to 0..100, one decimal kept. */
+    private static double toScore(double mean) {
+        return Math.round((mean + 1) * 500) / 10.0;
+    }
+
+    /**
+     * Scores the reviews of every phone, in parallel. The phones are not changed.
+     *
+     * @param phones the phones to score
+     * @return the score of every phone, what was scored and how long it took
+     */
+    public Stats scoreAll(List<phone> phones) {
+        return scoreAll(phones, null);
+    }
+
+    /**
+     * Scores the reviews of every phone, in parallel, and adds every review and the aspects it names to
+     * the running aggregate of its phone. The phones are not changed.
+     *
+     * @param phones the phones to score, with their ids given
+     * @param aggregates the aggregates to add the reviews to, null for none
+     * @return the score of every phone, what was scored and how long it took
+     */
+    public Stats scoreAll(List<phone> phones, SentimentAggregates aggregates) {
+        long start = System.nanoTime();
+        double[] scores = new double[phones.size()];
+        long reviews = phones.isEmpty() ? 0 : pool.invoke(new ScoreTask(phones, aggregates, scores, 0, phones.size()));
+        long nanos = System.nanoTime() - start;
+        REVIEWS.add(reviews);
+        BATCH_TIME.observeNanos(nanos);
+        return new Stats(scores, reviews, nanos, pool.getParallelism());
+    }
+
+    /** Scores the phones from..to into the same slots of scores, returns the number of reviews read. */
+    private final class ScoreTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<phone> phones;
+        private final SentimentAggregates aggregates;
+        private final double[] scores;
+        private final int from;
+        private final int to;
+
+        ScoreTask(List<phone> phones, SentimentAggregates aggregates, double[] scores, int from, int to) {
+            this.phones = phones;
+            this.aggregates = aggregates;
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= SPLIT_PHONES) {
+                long reviews = 0;
+                for (int i = from; i < to; i++) {
+                    phone p = phones.get(i);
+                    List<String> texts = p.getReviews();
+                    if (texts.isEmpty()) {
+                        scores[i] = 50;
+                        continue;
+                    }
+                    double sum = 0;
+                    for (String text : texts) {
+                        double compound = analyzer.compound(text);
+                        if (aggregates != null) {
+                            aggregates.add(p.getId(), compound);
+                            aggregates.addAspects(p.getId(), aspects.analyze(text, compound));
+                        }
+                        sum += compound;
+                    }
+                    scores[i] = toScore(sum / texts.size());
+                    reviews += texts.size();
+                }
+                return reviews;
+            }
+            int mid = (from + to) >>> 1;
+            ScoreTask left = new ScoreTask(phones, aggregates, scores, from, mid);
+            left.fork();
+            long right = new ScoreTask(phones, aggregates, scores, mid, to).compute();
+            return right + left.join();
+        }
+    }
+
+    /**
+     * What one {@link #scoreAll(List)} call did, with the scores it computed.
+     */
+    public static final class Stats {
+        private final double[] scores;
+        private final long reviews;
+        private final long nanos;
+        private final int cores;
+
+        Stats(double[] scores, long reviews, long nanos, int cores) {
+            this.scores = scores;
+            this.reviews = reviews;
+            this.nanos = nanos;
+            this.cores = cores;
+        }
+
+        /**
+         * Returns the score of one phone.
+         *
+         * @param i position of the phone in the scored list
+         * @return its sentiment score from 0 to 100, 50 (neutral) without reviews
+         */
+        public double getScore(int i) { return scores[i]; }
+
+        /** @return number of phones scored */
+        public int getPhones() { return scores.length; }
+
+        /** @return number of reviews scored */
+        public long getReviews() { return reviews; }
+
+        /** @return time taken in nanoseconds */
+        public long getNanos() { return nanos; }
+
+        /** @return parallelism of the pool that did the work */
+        public int getCores() { return cores; }
+
+        /** @return reviews scored per second by each core of the pool */
+        public double reviewsPerSecondPerCore() {
+            return nanos == 0 ? 0 : reviews / (nanos / 1e9) / cores;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d reviews of %d phones in %.1f ms, %.0f reviews/s per core (%d cores)",
+                    reviews, scores.length, nanos / 1e6, reviewsPerSecondPerCore(), cores);
+        }
+    }
+}
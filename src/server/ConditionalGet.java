@@ -0,0 +1,76 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The ConditionalGet builds the ETag and Cache-Control headers of the recommendation responses
+ * and answers If-None-Match
+ * A response only depends on the catalog version and the normalized request (the cache key of the
+ * preference, the page cursor, the review limit), so its ETag is derived from those without building it:
+ * a client or CDN that already has the body gets a 304 before any strategy runs.
+ *
+ * Catalog versions restart at 1 with every server start, so the tag also carries an epoch of the
+ * running server; a tag from an earlier run never matches, even when the version number does.
+ */
+public final class ConditionalGet {
+
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    private final String cacheControl;
+
+    /**
+     * Creates the helper.
+     *
+     * @param maxAgeSeconds seconds a browser or CDN may reuse a response without asking,
+     *                      0 makes them revalidate every time (a reload is seen at once)
+     */
+    public ConditionalGet(int maxAgeSeconds) {
+        if (maxAgeSeconds < 0) throw new IllegalArgumentException("maxAgeSeconds must not be negative");
+        this.cacheControl = maxAgeSeconds == 0 ? "public, no-cache"
+                : "public, max-age=" + maxAgeSeconds + ", must-revalidate";
+    }
+
+    /** @return value of the Cache-Control header */
+    public String getCacheControl() {
+        return cacheControl;
+    }
+
+    /**
+     * Builds the ETag of a response.
+     *
+     * @param version catalog version the response is read from
+     * @param request normalized request, eg: the cache key and the review limit
+     * @return quoted strong ETag
+     */
+    public String etag(long version, String request) {
+        return "\"" + EPOCH + "-" + version + "-" + Long.toHexString(hash(request)) + "\"";
+    }
+
+    /**
+     * Checks an If-None-Match header against the current ETag.
+     *
+     * @param ifNoneMatch the header value, may be null
+     * @param etag the current ETag
+     * @return true when the client already has the response and a 304 can be sent
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*")) return true;
+            if (tag.startsWith("W/")) tag = tag.substring(2); // weak comparison, as RFC 9110 asks for GET
+            if (tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /** 64 bit FNV-1a of the request string. */
+    private static long hash(String request) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : request.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,122 @@
+package server;
+
+import model.phone;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * The PhoneProjection selects the phone fields written into a response (the fields= parameter)
+ * The full phone object is spliced in from its cached JSON bytes; a projection writes only the
+ * selected fields, straight from the phone, so the left out fields cost nothing.
+ *
+ * The fields are written in the order of the full object whatever order they are asked in,
+ * and the fields the full object leaves out (a null string) are left out as well.
+ */
+public final class PhoneProjection {
+
+    /** Projection that keeps every field, the cached full object is written. */
+    public static final PhoneProjection ALL = new PhoneProjection(EnumSet.allOf(Field.class));
+
+    private final Field[] fields;
+    private final boolean all;
+
+    private PhoneProjection(EnumSet<Field> fields) {
+        this.fields = fields.toArray(new Field[0]);
+        this.all = fields.size() == Field.values().length;
+    }
+
+    /**
+     * Reads a fields= parameter, eg: "name,brand,price,sentiment".
+     *
+     * @param param comma separated field names, null or blank for every field
+     * @return the projection
+     * @throws IllegalArgumentException if a name is not a phone field
+     */
+    public static PhoneProjection parse(String param) {
+        if (param == null || param.isBlank()) return ALL;
+        EnumSet<Field> selected = EnumSet.noneOf(Field.class);
+        for (String name : param.split(",")) {
+            if (name.isBlank()) continue;
+            Field field = Field.byName(name.trim());
+            if (field == null) throw new IllegalArgumentException("Unknown field: " + name.trim() + ", expected one of " + names());
+            selected.add(field);
+        }
+        if (selected.isEmpty()) return ALL;
+        return selected.size() == Field.values().length ? ALL : new PhoneProjection(selected);
+    }
+
+    /** @return true when every field is written */
+    public boolean isAll() {
+        return all;
+    }
+
+    /**
+     * @return the selected field names, comma separated in output order (part of the ETag)
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Field f : fields) sb.append(sb.length() == 0 ? "" : ",").append(f.json);
+        return sb.toString();
+    }
+
+    /**
+     * Writes the selected fields of a phone as an object, without its closing brace
+     * when open is true (the writer then appends the reviews and closes it).
+     */
+    void write(RecommendationJsonWriter.Buffer out, phone p, boolean open) {
+        out.write((byte) '{');
+        boolean first = true;
+        for (Field f : fields) {
+            String text = f.value(p);
+            if (text == null) continue; // like Gson, null fields are left out
+            if (!first) out.write((byte) ',');
+            first = false;
+            out.write(f.key);
+            if (f.quoted) RecommendationJsonWriter.writeString(out, text);
+            else out.write(RecommendationJsonWriter.bytes(text));
+        }
+        if (!open) out.write((byte) '}');
+        else if (!first) out.write((byte) ','); // the writer continues with the next member
+    }
+
+    private static String names() {
+        List<String> names = new ArrayList<>();
+        for (Field f : Field.values()) names.add(f.json);
+        return String.join(", ", names);
+    }
+
+    /** Fields of the phone JSON object, in the order Gson writes them. */
+    private enum Field {
+        ID("id", false) { String value(phone p) { return Integer.toString(p.getId()); } },
+        NAME("name", true) { String value(phone p) { return p.getName(); } },
+        BRAND("brand", true) { String value(phone p) { return p.getBrand(); } },
+        PRICE("price", false) { String value(phone p) { return Double.toString(p.getPrice()); } },
+        OS("os", true) { String value(phone p) { return p.getOs(); } },
+        USAGE("usage", true) { String value(phone p) { return p.getUsage(); } },
+        PURCHASE_LINK("purchaseLink", true) { String value(phone p) { return p.getPurchaseLink(); } },
+        SENTIMENT("sentiment", false) { String value(phone p) { return Double.toString(p.getSentiment()); } },
+        TOTAL_REVIEWS("totalReviews", false) { String value(phone p) { return Integer.toString(p.getTotalReviews()); } },
+        REVIEW_COUNT("reviewCount", false) { String value(phone p) { return Integer.toString(p.getReviewCount()); } },
+        SUMMARY_REVIEW("summaryReview", true) { String value(phone p) { return p.getSummaryReview(); } };
+
+        final String json;
+        final boolean quoted;
+        final byte[] key;
+
+        Field(String json, boolean quoted) {
+            this.json = json;
+            this.quoted = quoted;
+            this.key = RecommendationJsonWriter.bytes("\"" + json + "\":");
+        }
+
+        abstract String value(phone p);
+
+        static Field byName(String name) {
+            for (Field f : values()) if (f.json.equalsIgnoreCase(name)) return f;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package server;
+
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.RecommendationResult;
+import model.phone;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The RecommendationJsonWriter builds the JSON body of the recommendation responses
+ * Phones are not serialized per request: their JSON form is built once when the catalog loads them
+ * ({@link phone#toJsonBytes()}) and the writer only splices those bytes between the brackets and commas.
+ * The buffer is sized up front from the fragment lengths, so building a response is mostly array copies.
+ *
+ * The output has the same shape as the Gson output it replaces:
+ * {"main":[...],"additional":[...],"bonus":[...]}
+ * The review texts are only added to the phones when the caller asks for them, and a
+ * {@link PhoneProjection} can narrow the phones down to the fields a client uses.
+ */
+public final class RecommendationJsonWriter {
+
+    private static final byte[] MAIN = bytes("{\"main\":[");
+    private static final byte[] ADDITIONAL = bytes("],\"additional\":[");
+    private static final byte[] BONUS = bytes("],\"bonus\":[");
+    private static final byte[] END = bytes("]}");
+    private static final byte[] RESULTS = bytes("{\"results\":{");
+    private static final byte[] REVIEWS = bytes("\"reviews\":[");
+    private static final byte[] PHONES = bytes(",\"phones\":[");
+    private static final byte[] MISSING = bytes("],\"missing\":[");
+
+    /** Bytes a fields= projection leaves out of a response, compared to the full phone objects. */
+    private static final Histogram PROJECTION_SAVED = MetricsRegistry.getDefault().histogram("pf_projection_saved_bytes",
+            "Bytes left out of a response by its fields= projection", Histogram.BYTES_BUCKETS);
+
+    /** Review limit that leaves the reviews out of the phones. */
+    public static final int NO_REVIEWS = 0;
+
+    /** Review limit that adds every review to the phones. */
+    public static final int ALL_REVIEWS = Integer.MAX_VALUE;
+
+    private RecommendationJsonWriter() {}
+
+    /**
+     * Writes one recommendation result.
+     *
+     * @param result the result to write
+     * @return UTF-8 JSON bytes
+     */
+    public static byte[] write(RecommendationResult result) {
+        return write(result, NO_REVIEWS);
+    }
+
+    /**
+     * Writes one recommendation result, adding up to reviewLimit reviews to every phone.
+     *
+     * @param result the result to write
+     * @param reviewLimit reviews per phone, {@link #NO_REVIEWS} or {@link #ALL_REVIEWS}
+     * @return UTF-8 JSON bytes
+     */
+    public static byte[] write(RecommendationResult result, int reviewLimit) {
+        return write(result, reviewLimit, PhoneProjection.ALL);
+    }
+
+    /**
+     * Writes one recommendation result with only the projected fields of every phone.
+     *
+     * @param result the result to write
+     * @param reviewLimit reviews per phone, {@link #NO_REVIEWS} or {@link #ALL_REVIEWS}
+     * @param fields the phone fields to write
+     * @return UTF-8 JSON bytes
+     */
+    public static byte[] write(RecommendationResult result, int reviewLimit, PhoneProjection fields) {
+        Buffer out = new Buffer(estimate(result));
+        long saved = writeResult(out, result, reviewLimit, fields);
+        if (!fields.isAll()) PROJECTION_SAVED.observe(saved);
+        return out.toBytes();
+    }
+
+    /**
+     * Writes several results as {"results":{id:{...},...}}, keeping the map order.
+     *
+     * @param results results keyed by request id
+     * @return UTF-8 JSON bytes
+     */
+    public static byte[] writeResults(Map<String, RecommendationResult> results) {
+        return writeResults(results, NO_REVIEWS);
+    }
+
+    /**
+     * Writes several results, adding up to reviewLimit reviews to every phone.
+     *
+     * @param results results keyed by request id
+     * @param reviewLimit reviews per phone, {@link #NO_REVIEWS} or {@link #ALL_REVIEWS}
+     * @return UTF-8 JSON bytes
+     */
+    public static byte[] writeResults(Map<String, RecommendationResult> results, int reviewLimit) {
+        int size = RESULTS.length + 2;
+        for (Map.Entry<String, RecommendationResult> e : results.entrySet()) {
+            size += e.getKey().length() * 2 + 4 + estimate(e.getValue());
+        }
+        Buffer out = new Buffer(size);
+        out.write(RESULTS);
+        boolean first = true;
+        for (Map.Entry<String, RecommendationResult> e : results.entrySet()) {
+            if (!first) out.write((byte) ',');
+            first = false;
+            writeString(out, e.getKey());
+            out.write((byte) ':');
+            writeResult(out, e.getValue(), reviewLimit, PhoneProjection.ALL);
+        }
+        out.write((byte) '}');
+        out.write((byte) '}');
+        return out.toBytes();
+    }
+
+    /**
+     * Writes one page of phones as {"version":..,"versionChanged":..,"nextCursor":..,"phones":[...]}.
+     * nextCursor is null on the last page.
+     *
+     * @param phones the phones of the page
+     * @param nextCursor cursor of the next page, or null
+     * @param version catalog version of the page
+     * @param versionChanged true when the page continues a cursor of an older version
+     * @param reviewLimit reviews per phone, {@link #NO_REVIEWS} or {@link #ALL_REVIEWS}
+     * @return UTF-8 JSON bytes
+     */
+    public static byte[] writePage(List<phone> phones, String nextCursor, long version, boolean versionChanged,
+                                   int reviewLimit) {
+        return writePage(phones, nextCursor, version, versionChanged, reviewLimit, PhoneProjection.ALL);
+    }
+
+    /**
+     * Writes one page of phones with only the projected fields of every phone.
+     *
+     * @param phones the phones of the page
+     * @param nextCursor cursor of the next page, or null
+     * @param version catalog version of the page
+     * @param versionChanged true when the page continues a cursor of an older version
+     * @param reviewLimit reviews per phone, {@link #NO_REVIEWS} or {@link #ALL_REVIEWS}
+     * @param fields the phone fields to write
+     * @return UTF-8 JSON bytes
+     */
+    public static byte[] writePage(List<phone> phones, String nextCursor, long version, boolean versionChanged,
+                                   int reviewLimit, PhoneProjection fields) {
+        int size = 96 + (nextCursor == null ? 0 : nextCursor.length());
+        for (phone p : phones) size += p.toJsonBytes().length + 1;
+        Buffer out = new Buffer(size);
+        out.write(bytes("{\"version\":" + version + ",\"versionChanged\":" + versionChanged + ",\"nextCursor\":"));
+        if (nextCursor == null) out.write(bytes("null"));
+        else writeString(out, nextCursor);
+        out.write(PHONES);
+        long saved = writePhones(out, phones, reviewLimit, fields);
+        out.write(END);
+        if (!fields.isAll()) PROJECTION_SAVED.observe(saved);
+        return out.toBytes();
+    }
+
+    /**
+     * Writes a single phone object.
+     *
+     * @param p the phone
+     * @param reviewLimit reviews added to the phone, {@link #NO_REVIEWS} or {@link #ALL_REVIEWS}
+     * @return UTF-8 JSON bytes
+     */
+    public static byte[] writePhone(phone p, int reviewLimit) {
+        if (reviewLimit <= 0) return p.toJsonBytes();
+        Buffer out = new Buffer(p.toJsonBytes().length + 256);
+        writePhones(out, List.of(p), reviewLimit, PhoneProjection.ALL);
+        return out.toBytes();
+    }
+
+    /**
+     * Writes the phones of a multi-get as {"version":..,"phones":[...],"missing":[ids]}.
+     *
+     * @param phones the phones found, in the requested order
+     * @param missing ids that are not in the catalog version
+     * @param version catalog version the phones were read from
+     * @param reviewLimit reviews per phone, {@link #NO_REVIEWS} or {@link #ALL_REVIEWS}
+     * @return UTF-8 JSON bytes
+     */
+    public static byte[] writePhones(List<phone> phones, List<Integer> missing, long version, int reviewLimit) {
+        int size = 64 + missing.size() * 11;
+        for (phone p : phones) size += p.toJsonBytes().length + 1;
+        Buffer out = new Buffer(size);
+        out.write(bytes("{\"version\":" + version));
+        out.write(PHONES);
+        writePhones(out, phones, reviewLimit, PhoneProjection.ALL);
+        out.write(MISSING);
+        for (int i = 0; i < missing.size(); i++) {
+            if (i > 0) out.write((byte) ',');
+            out.write(bytes(Integer.toString(missing.get(i))));
+        }
+        out.write(END);
+        return out.toBytes();
+    }
+
+    // --------------------- Helpers ---------------------
+
+    /** Writes a result, returns the bytes the projection left out. */
+    private static long writeResult(Buffer out, RecommendationResult result, int reviewLimit, PhoneProjection fields) {
+        out.write(MAIN);
+        long saved = writePhones(out, result.getMain(), reviewLimit, fields);
+        out.write(ADDITIONAL);
+        saved += writePhones(out, result.getAdditional(), reviewLimit, fields);
+        out.write(BONUS);
+        List<String> bonus = result.getBonus();
+        for (int i = 0; i < bonus.size(); i++) {
+            if (i > 0) out.write((byte) ',');
+            writeString(out, bonus.get(i));
+        }
+        out.write(END);
+        return saved;
+    }
+
+    /** Writes the phones separated by commas, returns the bytes the projection left out. */
+    private static long writePhones(Buffer out, List<phone> phones, int reviewLimit, PhoneProjection fields) {
+        long saved = 0;
+        for (int i = 0; i < phones.size(); i++) {
+            if (i > 0) out.write((byte) ',');
+            phone p = phones.get(i);
+            byte[] json = p.toJsonBytes();
+            if (fields.isAll()) {
+                if (reviewLimit <= 0) {
+                    out.write(json);
+                    continue;
+                }
+                // reopen the cached object and append the reviews before its closing brace
+                out.write(json, json.length - 1);
+                out.write((byte) ',');
+            } else {
+                int start = out.length();
+                fields.write(out, p, reviewLimit > 0);
+                saved += json.length - (out.length() - start);
+                if (reviewLimit <= 0) continue;
+            }
+            out.write(REVIEWS);
+            List<String> reviews = p.getReviews(0, reviewLimit);
+            for (int r = 0; r < reviews.size(); r++) {
+                if (r > 0) out.write((byte) ',');
+                writeString(out, reviews.get(r));
+            }
+            out.write((byte) ']');
+            out.write((byte) '}');
+        }
+        return saved;
+    }
+
+    /** Upper bound guess of the result size, so the buffer rarely has to grow. */
+    private static int estimate(RecommendationResult result) {
+        int size = MAIN.length + ADDITIONAL.length + BONUS.length + END.length;
+        for (phone p : result.getMain()) size += p.toJsonBytes().length + 1;
+        for (phone p : result.getAdditional()) size += p.toJsonBytes().length + 1;
+        for (String b : result.getBonus()) size += b.length() * 2 + 3;
+        return size;
+    }
+
+    /**
+     * Writes a JSON string literal, escaping quotes, backslashes and control characters.
+     */
+    static void writeString(Buffer out, String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        out.write(bytes(sb.append('"').toString()));
+    }
+
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Growable byte buffer that hands out its array without a copy when the size guess was exact.
+     */
+    static final class Buffer {
+        private byte[] buf;
+        private int len;
+
+        Buffer(int capacity) {
+            buf = new byte[Math.max(capacity, 16)];
+        }
+
+        void write(byte b) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[len++] = b;
+        }
+
+        void write(byte[] bytes) {
+            write(bytes, bytes.length);
+        }
+
+        void write(byte[] bytes, int length) {
+            if (len + length > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + length));
+            System.arraycopy(bytes, 0, buf, len, length);
+            len += length;
+        }
+
+        int length() {
+            return len;
+        }
+
+        byte[] toBytes() {
+            return len == buf.length ? buf : Arrays.copyOf(buf, len);
+        }
+    }
+}
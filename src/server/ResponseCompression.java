@@ -0,0 +1,90 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The ResponseCompression decides whether a response body is sent gzip compressed and compresses it
+ * Small bodies are sent as they are: below a few hundred bytes the gzip header and the time spent
+ * compressing outweigh what is saved. A body is only compressed when the client accepts gzip
+ * (Accept-Encoding, a q=0 weight refuses it) and when the compressed form is actually smaller.
+ */
+public final class ResponseCompression {
+
+    /** Smallest body compressed by default, in bytes. */
+    public static final int DEFAULT_MIN_BYTES = 1024;
+
+    private final int minBytes;
+
+    /**
+     * Creates the helper.
+     *
+     * @param minBytes smallest body that is compressed, a negative value turns compression off
+     */
+    public ResponseCompression(int minBytes) {
+        this.minBytes = minBytes;
+    }
+
+    /** @return smallest body that is compressed, negative when compression is off */
+    public int getMinBytes() {
+        return minBytes;
+    }
+
+    /**
+     * Tells whether a body of this size is worth compressing for a client.
+     *
+     * @param acceptEncoding the Accept-Encoding header of the request, may be null
+     * @param length size of the body in bytes
+     * @return true when the body should be compressed
+     */
+    public boolean shouldCompress(String acceptEncoding, int length) {
+        return minBytes >= 0 && length >= minBytes && acceptsGzip(acceptEncoding);
+    }
+
+    /**
+     * Reads an Accept-Encoding header.
+     *
+     * @param acceptEncoding the header value, may be null
+     * @return true when gzip (or "*") is accepted with a weight above 0
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] coding = part.trim().split(";");
+            String name = coding[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) continue;
+            for (int i = 1; i < coding.length; i++) {
+                String param = coding[i].trim();
+                if (param.startsWith("q=") && isZero(param.substring(2))) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compresses a body with gzip.
+     *
+     * @param body the body
+     * @return the gzip stream of the body
+     */
+    public static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (GZIPOutputStream gz = new GZIPOutputStream(out, 8192)) {
+            gz.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen on a byte array
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isZero(String weight) {
+        try {
+            return Double.parseDouble(weight.trim()) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
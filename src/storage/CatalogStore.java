@@ -0,0 +1,564 @@
+package storage;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.Aspect;
+import model.ReviewStore;
+import model.SentimentAggregates;
+import model.phone;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The CatalogStore keeps the phone library on the local disk, so added phones, stores and reviews
+ * survive a restart
+ * It :
+ * Logs every change (a phone, a review, a store, a phone put in a store) as a record in a {@link SegmentLog}
+ * Writes a snapshot of the whole library from time to time, after which the older segments are deleted
+ * Recovers the library from the newest readable snapshot plus the records logged after it
+ *
+ * A snapshot is written to a temporary file, forced to the disk and renamed when complete, and ends with
+ * a CRC32 of its content, so a crash while writing one leaves the previous snapshot in use. The folder is
+ * forced after the rename, before older snapshots and segments are deleted. The previous snapshot and
+ * the segments since it are kept until the next one is written, in case the newest one cannot be read.
+ * Recovery does not score any review again: the snapshot and the records hold the sentiment aggregates
+ * and the compound score of every logged review, and of every aspect it names.
+ *
+ * The library decides what is logged and when a snapshot is due ({@link #isSnapshotDue()}), and gives the
+ * snapshot its content as a {@link State}; this class only knows how to write and read them.
+ */
+public final class CatalogStore implements Closeable {
+
+    /** Log bytes after which a new snapshot is due when none is given. */
+    public static final long DEFAULT_SNAPSHOT_BYTES = 64L << 20;
+
+    private static final byte PHONE = 1;
+    private static final byte REVIEW = 2;
+    private static final byte STORE = 3;
+    private static final byte STORE_PHONE = 4;
+
+    private static final int MAGIC = 0x50465331; // "PFS1"
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private static final Counter RECORDS = MetricsRegistry.getDefault().counter("pf_store_records_total",
+            "Records appended to the catalog log, by type", "type");
+    private static final Histogram SNAPSHOT_TIME = MetricsRegistry.getDefault().histogram("pf_store_snapshot_duration_seconds",
+            "Time to write a snapshot of the catalog", Histogram.LATENCY_BUCKETS);
+
+    private final Path dir;
+    private final SegmentLog log;
+    private final long snapshotBytes;
+    private volatile long snapshotPosition; // log position the newest snapshot covers
+
+    /**
+     * Opens the store in a folder, creating the folder when missing.
+     *
+     * @param dir folder of the snapshots and log segments
+     * @param segmentBytes size from which a new log segment is started
+     * @param snapshotBytes log bytes after the newest snapshot from which a new one is due
+     * @throws IOException if the folder cannot be used
+     */
+    public CatalogStore(Path dir, long segmentBytes, long snapshotBytes) throws IOException {
+        this.dir = dir;
+        this.log = new SegmentLog(dir, segmentBytes);
+        this.snapshotBytes = snapshotBytes;
+        List<Long> snapshots = snapshots();
+        this.snapshotPosition = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+    }
+
+    // --------------------- Logging ---------------------
+
+    /**
+     * Logs new phones, with their reviews and the sentiment aggregates they start with.
+     *
+     * @param phones the phones, with their ids given
+     * @param aggregates the aggregates of the library
+     * @throws IOException if the log cannot be written
+     */
+    public void logPhones(List<phone> phones, SentimentAggregates aggregates) throws IOException {
+        List<byte[]> records = new ArrayList<>(phones.size());
+        long[] aggregate = new long[SentimentAggregates.STATE_LONGS];
+        for (phone p : phones) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(PHONE);
+            aggregates.copyTo(p.getId(), aggregate, 0);
+            writePhone(out, p, aggregate, 0);
+            records.add(bytes.toByteArray());
+        }
+        log.append(records, false);
+        RECORDS.labels("phone").add(records.size());
+    }
+
+    /**
+     * Logs new reviews of phones.
+     *
+     * @param ids ids of the phones
+     * @param compounds compound score of every review
+     * @param aspects compound score of every aspect each review names, by ordinal with NaN for the others
+     *                (see {@link sentiment.AspectAnalyzer}); null entries for reviews naming none
+     * @param reviews texts of the reviews
+     * @param count number of reviews to log, from the start of the arrays
+     * @param force true to wait until they are on the disk
+     * @throws IOException if the log cannot be written
+     */
+    public void logReviews(int[] ids, double[] compounds, double[][] aspects, String[] reviews, int count,
+                           boolean force) throws IOException {
+        List<byte[]> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(reviews[i].length() + 48);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(REVIEW);
+            out.writeInt(ids[i]);
+            out.writeDouble(compounds[i]);
+            writeAspects(out, aspects[i]);
+            writeString(out, reviews[i]);
+            records.add(bytes.toByteArray());
+        }
+        log.append(records, force);
+        RECORDS.labels("review").add(count);
+    }
+
+    /**
+     * Logs a new store.
+     *
+     * @param number position of the store in the library, which later records refer to
+     * @param name name of the store
+     * @throws IOException if the log cannot be written
+     */
+    public void logStore(int number, String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(STORE);
+        out.writeInt(number);
+        writeString(out, name);
+        log.append(List.of(bytes.toByteArray()), false);
+        RECORDS.labels("store").inc();
+    }
+
+    /**
+     * Logs that a store sells a phone.
+     *
+     * @param number position of the store in the library
+     * @param id id of the phone
+     * @throws IOException if the log cannot be written
+     */
+    public void logStorePhone(int number, int id) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(STORE_PHONE);
+        out.writeInt(number);
+        out.writeInt(id);
+        log.append(List.of(bytes.toByteArray()), false);
+        RECORDS.labels("store_phone").inc();
+    }
+
+    /** @return bytes logged since the newest snapshot */
+    public long bytesSinceSnapshot() {
+        return log.position() - snapshotPosition;
+    }
+
+    /** @return true when enough was logged since the newest snapshot for a new one to be written */
+    public boolean isSnapshotDue() {
+        return bytesSinceSnapshot() >= snapshotBytes;
+    }
+
+    /**
+     * Ends the log segment being written, so a snapshot can be taken at this position.
+     * Call it while no change can be logged, together with taking the {@link State}.
+     *
+     * @return the position the snapshot covers
+     * @throws IOException if the log cannot be written
+     */
+    public long mark() throws IOException {
+        return log.roll();
+    }
+
+    // --------------------- Snapshots ---------------------
+
+    /**
+     * Writes a snapshot of the library, then deletes the snapshots and segments no longer needed
+     * (everything before the previous snapshot).
+     *
+     * @param state the library at the position given by {@link #mark()}
+     * @throws IOException if the snapshot cannot be written; the previous one stays in use
+     */
+    public void writeSnapshot(State state) throws IOException {
+        long start = System.nanoTime();
+        Path file = dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, state.position, SNAPSHOT_SUFFIX));
+        Path temp = dir.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeLong(state.position);
+            out.writeLong(state.version);
+            out.writeInt(state.nextId);
+            out.writeInt(state.phones.size());
+            for (int i = 0; i < state.phones.size(); i++) {
+                writePhone(out, state.phones.get(i), state.aggregates, i * SentimentAggregates.STATE_LONGS);
+            }
+            out.writeInt(state.storeNames.size());
+            for (int s = 0; s < state.storeNames.size(); s++) {
+                writeString(out, state.storeNames.get(s));
+                int[] ids = state.storePhones.get(s);
+                out.writeInt(ids.length);
+                for (int id : ids) out.writeInt(id);
+            }
+            out.flush();
+            long crc = checked.getChecksum().getValue();
+            out.writeLong(crc);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // the rename must be on the disk before anything it replaces is deleted
+        SegmentLog.forceDirectory(dir);
+        snapshotPosition = state.position;
+
+        List<Long> snapshots = snapshots();
+        long keep = snapshots.size() > 1 ? snapshots.get(snapshots.size() - 2) : state.position;
+        for (long position : snapshots) {
+            if (position < keep) Files.deleteIfExists(snapshot(position));
+        }
+        log.deleteBefore(keep);
+        SNAPSHOT_TIME.observeNanos(System.nanoTime() - start);
+    }
+
+    /**
+     * Reads the library back: the newest snapshot that can be read, then every record logged after it.
+     * Reviews logged after the snapshot are added to their phones (as copies, see {@link phone#withReviews})
+     * with the mean of their aggregate as the score, the same way the library folds them.
+     *
+     * @param reviewStore the review store the recovered phones keep their reviews in
+     * @return the recovered library, null when nothing was ever saved
+     * @throws IOException if no snapshot can be read while the log needs one, or a record is damaged
+     */
+    public State recover(ReviewStore reviewStore) throws IOException {
+        List<Long> snapshots = snapshots();
+        State state = null;
+        for (int i = snapshots.size() - 1; i >= 0 && state == null; i--) {
+            try {
+                state = readSnapshot(snapshot(snapshots.get(i)), reviewStore);
+            } catch (IOException e) {
+                System.out.println("Snapshot " + snapshot(snapshots.get(i)).getFileName() + " cannot be read: " + e.getMessage());
+            }
+        }
+        if (state == null && log.position() == 0) return null;
+        if (state == null && log.start() > 0) throw new IOException("No snapshot of " + dir + " can be read");
+        if (state == null) state = new State(0, 0, 0, new ArrayList<>(), new long[0], new ArrayList<>(), new ArrayList<>());
+        Replay replay = new Replay(state, reviewStore);
+        long records = log.replay(state.position, replay::apply);
+        State recovered = replay.finish(log.position(), records);
+        snapshotPosition = state.position;
+        return recovered;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private State readSnapshot(Path file, ReviewStore reviewStore) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(
+                Files.newInputStream(file), 1 << 16), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) throw new IOException("Not a catalog snapshot");
+            long position = in.readLong();
+            long version = in.readLong();
+            int nextId = in.readInt();
+            int phoneCount = in.readInt();
+            List<phone> phones = new ArrayList<>(phoneCount);
+            long[] aggregates = new long[phoneCount * SentimentAggregates.STATE_LONGS];
+            for (int i = 0; i < phoneCount; i++) {
+                phones.add(readPhone(in, reviewStore, aggregates, i * SentimentAggregates.STATE_LONGS));
+            }
+            int storeCount = in.readInt();
+            List<String> storeNames = new ArrayList<>(storeCount);
+            List<int[]> storePhones = new ArrayList<>(storeCount);
+            for (int s = 0; s < storeCount; s++) {
+                storeNames.add(readString(in));
+                int[] ids = new int[in.readInt()];
+                for (int k = 0; k < ids.length; k++) ids[k] = in.readInt();
+                storePhones.add(ids);
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) throw new IOException("Checksum does not match");
+            return new State(position, version, nextId, phones, aggregates, storeNames, storePhones);
+        }
+    }
+
+    private List<Long> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(f -> f.getFileName().toString())
+                    .filter(name -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path snapshot(long position) {
+        return dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, position, SNAPSHOT_SUFFIX));
+    }
+
+    // --------------------- Format ---------------------
+
+    private static void writePhone(DataOutput out, phone p, long[] aggregate, int offset) throws IOException {
+        out.writeInt(p.getId());
+        out.writeLong(p.getSourceHash());
+        writeString(out, p.getName());
+        writeString(out, p.getBrand());
+        out.writeDouble(p.getPrice());
+        writeString(out, p.getOs());
+        writeString(out, p.getUsage());
+        writeString(out, p.getPurchaseLink());
+        out.writeDouble(p.getSentiment());
+        out.writeInt(p.getTotalReviews());
+        List<String> reviews = p.getReviews();
+        out.writeInt(reviews.size());
+        for (String review : reviews) writeString(out, review);
+        for (int k = 0; k < SentimentAggregates.STATE_LONGS; k++) out.writeLong(aggregate[offset + k]);
+    }
+
+    private static phone readPhone(DataInput in, ReviewStore reviewStore, long[] aggregate, int offset) throws IOException {
+        int id = in.readInt();
+        long sourceHash = in.readLong();
+        String name = readString(in);
+        String brand = readString(in);
+        double price = in.readDouble();
+        String os = readString(in);
+        String usage = readString(in);
+        String purchaseLink = readString(in);
+        double sentiment = in.readDouble();
+        int totalReviews = in.readInt();
+        int count = in.readInt();
+        List<String> reviews = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) reviews.add(readString(in));
+        for (int k = 0; k < SentimentAggregates.STATE_LONGS; k++) aggregate[offset + k] = in.readLong();
+
+        phone p = new phone(name, brand, price, os, usage, purchaseLink, reviewStore, reviewStore.add(reviews),
+                sentiment, totalReviews);
+        p.id = id;
+        p.setSourceHash(sourceHash);
+        return p;
+    }
+
+    /** Writes a bit mask of the aspects named, then their scores in ordinal order. */
+    private static void writeAspects(DataOutput out, double[] aspects) throws IOException {
+        int mask = 0;
+        for (int a = 0; aspects != null && a < Aspect.COUNT; a++) if (!Double.isNaN(aspects[a])) mask |= 1 << a;
+        out.writeByte(mask);
+        for (int a = 0; a < Aspect.COUNT; a++) if ((mask & (1 << a)) != 0) out.writeDouble(aspects[a]);
+    }
+
+    /** Reads what {@link #writeAspects} wrote, null when no aspect was named. */
+    private static double[] readAspects(DataInput in) throws IOException {
+        int mask = in.readUnsignedByte();
+        if (mask == 0) return null;
+        if (mask >>> Aspect.COUNT != 0) throw new IOException("Unknown aspects " + Integer.toBinaryString(mask));
+        double[] aspects = new double[Aspect.COUNT];
+        for (int a = 0; a < Aspect.COUNT; a++) aspects[a] = (mask & (1 << a)) != 0 ? in.readDouble() : Double.NaN;
+        return aspects;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    /**
+     * Applies the records logged after a snapshot to what the snapshot holds.
+     * New reviews are gathered per phone and added to it once, at the end.
+     */
+    private static final class Replay {
+        private final State base;
+        private final ReviewStore reviewStore;
+        private final SentimentAggregates aggregates = new SentimentAggregates();
+        private final List<phone> phones;
+        private final Map<Integer, Integer> rows = new HashMap<>();
+        private final Map<Integer, List<String>> newReviews = new LinkedHashMap<>();
+        private final List<String> storeNames;
+        private final List<Set<Integer>> storePhones = new ArrayList<>(); // in the order they were put in
+        private int nextId;
+
+        Replay(State base, ReviewStore reviewStore) {
+            this.base = base;
+            this.reviewStore = reviewStore;
+            this.phones = new ArrayList<>(base.phones);
+            this.storeNames = new ArrayList<>(base.storeNames);
+            this.nextId = base.nextId;
+            for (int i = 0; i < phones.size(); i++) {
+                int id = phones.get(i).getId();
+                rows.put(id, i);
+                aggregates.restore(id, base.aggregates, i * SentimentAggregates.STATE_LONGS);
+            }
+            for (int[] ids : base.storePhones) {
+                Set<Integer> set = new LinkedHashSet<>(ids.length * 2);
+                for (int id : ids) set.add(id);
+                storePhones.add(set);
+            }
+        }
+
+        void apply(byte[] record) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            switch (in.readByte()) {
+                case PHONE -> addPhone(in);
+                case REVIEW -> addReview(in);
+                case STORE -> {
+                    int number = in.readInt();
+                    String name = readString(in);
+                    while (storeNames.size() <= number) {
+                        storeNames.add(null);
+                        storePhones.add(new LinkedHashSet<>());
+                    }
+                    storeNames.set(number, name);
+                }
+                case STORE_PHONE -> {
+                    int number = in.readInt();
+                    int id = in.readInt();
+                    // a phone put in a store while the snapshot was taken can be in both
+                    if (number < storePhones.size()) storePhones.get(number).add(id);
+                }
+                default -> throw new IOException("Unknown record type " + record[0]);
+            }
+        }
+
+        private void addPhone(DataInput in) throws IOException {
+            long[] aggregate = new long[SentimentAggregates.STATE_LONGS];
+            phone p = readPhone(in, reviewStore, aggregate, 0);
+            aggregates.restore(p.getId(), aggregate, 0);
+            rows.put(p.getId(), phones.size());
+            phones.add(p);
+            nextId = Math.max(nextId, p.getId() + 1);
+        }
+
+        private void addReview(DataInput in) throws IOException {
+            int id = in.readInt();
+            double compound = in.readDouble();
+            double[] aspects = readAspects(in);
+            String review = readString(in);
+            if (!rows.containsKey(id)) return;
+            aggregates.add(id, compound);
+            aggregates.addAspects(id, aspects);
+            newReviews.computeIfAbsent(id, k -> new ArrayList<>()).add(review);
+        }
+
+        /**
+         * Folds the new reviews into their phones. The version goes past every version the library can
+         * have published from the saved changes since the snapshot (each came with at least one record).
+         */
+        State finish(long position, long records) {
+            for (Map.Entry<Integer, List<String>> e : newReviews.entrySet()) {
+                int row = rows.get(e.getKey());
+                double score = Math.round(aggregates.mean(e.getKey()) * 10) / 10.0;
+                phones.set(row, phones.get(row).withReviews(e.getValue(), score));
+            }
+            long[] state = new long[phones.size() * SentimentAggregates.STATE_LONGS];
+            for (int i = 0; i < phones.size(); i++) {
+                aggregates.copyTo(phones.get(i).getId(), state, i * SentimentAggregates.STATE_LONGS);
+            }
+            List<int[]> stores = new ArrayList<>(storePhones.size());
+            for (Set<Integer> ids : storePhones) stores.add(ids.stream().mapToInt(Integer::intValue).toArray());
+            return new State(position, base.version + records + 1, nextId, phones, state, storeNames, stores);
+        }
+    }
+
+    /**
+     * The content of a snapshot: the phones of a catalog version with their sentiment aggregates,
+     * the stores with the ids of their phones, and the log position it covers.
+     */
+    public static final class State {
+        private final long position;
+        private final long version;
+        private final int nextId;
+        private final List<phone> phones;
+        private final long[] aggregates;
+        private final List<String> storeNames;
+        private final List<int[]> storePhones;
+
+        /**
+         * @param position log position the state covers, from {@link #mark()}
+         * @param version version of the catalog (see {@link model.CatalogSnapshot#getVersion()})
+         * @param nextId id the next new phone gets
+         * @param phones the phones, in catalog order
+         * @param aggregates {@link SentimentAggregates#STATE_LONGS} values per phone, in the same order
+         * @param storeNames names of the stores, by store number
+         * @param storePhones ids of the phones of every store, by store number
+         */
+        public State(long position, long version, int nextId, List<phone> phones, long[] aggregates,
+                     List<String> storeNames, List<int[]> storePhones) {
+            this.position = position;
+            this.version = version;
+            this.nextId = nextId;
+            this.phones = phones;
+            this.aggregates = aggregates;
+            this.storeNames = storeNames;
+            this.storePhones = storePhones;
+        }
+
+        /** @return log position the state covers */
+        public long getPosition() { return position; }
+
+        /** @return version to publish the recovered catalog with */
+        public long getVersion() { return version; }
+
+        /** @return id the next new phone gets */
+        public int getNextId() { return nextId; }
+
+        /** @return the phones, in catalog order */
+        public List<phone> getPhones() { return phones; }
+
+        /** @return the sentiment aggregates, {@link SentimentAggregates#STATE_LONGS} values per phone */
+        public long[] getAggregates() { return aggregates; }
+
+        /** @return names of the stores, by store number */
+        public List<String> getStoreNames() { return storeNames; }
+
+        /** @return ids of the phones of every store, by store number */
+        public List<int[]> getStorePhones() { return storePhones; }
+    }
+}
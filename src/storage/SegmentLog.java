@@ -0,0 +1,274 @@
+package storage;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * The SegmentLog is an append-only log of records split over segment files
+ * It :
+ * Appends records at the end of the newest segment, several at once with one write
+ * Starts a new segment when the newest one is full, or when {@link #roll()} is called
+ * Replays the records from a given position, for recovery
+ * Deletes whole segments that are no longer needed ({@link #deleteBefore})
+ *
+ * Every record is framed as: length (4 bytes), CRC32 of the payload (4 bytes), payload. A position
+ * in the log is a byte offset counted over all segments, and each segment file is named after the
+ * position of its first record (eg: 00000000000001048576.log), so a position is found without
+ * reading the files. A crash can leave the end of the newest segment half written: opening the log
+ * cuts the newest segment back to its last complete record, which is what was in the log before.
+ */
+public final class SegmentLog implements Closeable {
+
+    /** Segment size from which a new segment is started when none is given. */
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    /** Largest payload of one record. */
+    public static final int MAX_RECORD_BYTES = 64 << 20;
+
+    /** Largest segment size; a segment is read in one buffer, and a record may go past the size. */
+    public static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private static final String SUFFIX = ".log";
+    private static final int HEADER = 8;
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final List<Long> segments = new ArrayList<>(); // start positions, oldest first; guarded by this
+    private FileChannel channel; // newest segment
+    private long position;       // end of the log
+
+    /**
+     * Opens the log in a folder, creating the folder when missing, and repairs a torn end.
+     *
+     * @param dir folder of the segment files
+     * @param segmentBytes size from which a new segment is started
+     * @throws IOException if the folder cannot be read or a segment cannot be opened
+     */
+    public SegmentLog(Path dir, long segmentBytes) throws IOException {
+        if (segmentBytes < HEADER || segmentBytes > MAX_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("segmentBytes must be between " + HEADER + " and " + MAX_SEGMENT_BYTES);
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(f -> f.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX) && name.length() == 20 + SUFFIX.length())
+                    .map(name -> Long.parseLong(name.substring(0, 20)))
+                    .sorted()
+                    .forEach(segments::add);
+        }
+        if (segments.isEmpty()) segments.add(0L);
+        long start = segments.get(segments.size() - 1);
+        channel = FileChannel.open(segment(start), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long valid = validLength(channel);
+        if (valid < channel.size()) {
+            System.out.println("Segment " + segment(start).getFileName() + ": cut "
+                    + (channel.size() - valid) + " bytes of an incomplete record");
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+        position = start + valid;
+    }
+
+    /**
+     * Appends records with one write.
+     *
+     * @param payloads the records, in order
+     * @param force true to wait until they are on the disk
+     * @return position of the end of the log after the records
+     * @throws IOException if the segment cannot be written
+     */
+    public synchronized long append(List<byte[]> payloads, boolean force) throws IOException {
+        if (payloads.isEmpty()) return position;
+        if (position - segments.get(segments.size() - 1) >= segmentBytes) roll();
+        int size = 0;
+        for (byte[] payload : payloads) {
+            if (payload.length > MAX_RECORD_BYTES) throw new IllegalArgumentException("Record too large: " + payload.length);
+            size += HEADER + payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (byte[] payload : payloads) {
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        if (force) channel.force(false);
+        position += size;
+        return position;
+    }
+
+    /**
+     * Starts a new segment at the end of the log, so everything before it can later be deleted
+     * segment by segment.
+     *
+     * @return position of the start of the new segment
+     * @throws IOException if the new segment cannot be created
+     */
+    public synchronized long roll() throws IOException {
+        if (position == segments.get(segments.size() - 1)) return position; // the newest one is empty
+        channel.force(false);
+        channel.close();
+        channel = FileChannel.open(segment(position), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        forceDirectory(dir); // a forced record is of no use if its segment is not in the folder after a crash
+        segments.add(position);
+        return position;
+    }
+
+    /** Forces the written records to the disk. */
+    public synchronized void force() throws IOException {
+        channel.force(false);
+    }
+
+    /** @return position of the end of the log */
+    public synchronized long position() {
+        return position;
+    }
+
+    /** @return position of the oldest record still in the log */
+    public synchronized long start() {
+        return segments.get(0);
+    }
+
+    /** @return number of segment files */
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Reads the records that end after a position, in order.
+     * A record that is cut or does not match its checksum ends the replay of an older segment with an
+     * IOException, since only the newest segment can have been cut by a crash (and it was repaired on open).
+     *
+     * @param from position of the first record to read, records ending at or before it are skipped
+     * @param reader gets every record
+     * @return number of records read
+     * @throws IOException if a segment cannot be read or holds a damaged record
+     */
+    public synchronized long replay(long from, RecordReader reader) throws IOException {
+        long records = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            long start = segments.get(i);
+            long end = i + 1 < segments.size() ? segments.get(i + 1) : position;
+            if (end <= from) continue;
+            try (FileChannel in = FileChannel.open(segment(start), StandardOpenOption.READ)) {
+                ByteBuffer data = readAll(in, end - start);
+                CRC32 crc = new CRC32();
+                while (data.hasRemaining()) {
+                    if (data.remaining() < HEADER) throw new EOFException("Cut record in " + segment(start));
+                    int length = data.getInt();
+                    int checksum = data.getInt();
+                    if (length < 0 || length > data.remaining()) throw new EOFException("Cut record in " + segment(start));
+                    byte[] payload = new byte[length];
+                    data.get(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        throw new IOException("Damaged record at " + (start + data.position() - HEADER - length));
+                    }
+                    if (start + data.position() > from) {
+                        reader.read(payload);
+                        records++;
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Deletes the segments that only hold records before a position.
+     *
+     * @param before position up to which the records are no longer needed
+     * @return number of segments deleted
+     * @throws IOException if a segment cannot be deleted
+     */
+    public synchronized int deleteBefore(long before) throws IOException {
+        int deleted = 0;
+        while (segments.size() > 1 && segments.get(1) <= before) {
+            Files.deleteIfExists(segment(segments.remove(0)));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    private Path segment(long start) {
+        return dir.resolve(String.format("%020d%s", start, SUFFIX));
+    }
+
+    /**
+     * Forces the entries of a folder to the disk, so a file created or renamed in it is found there after
+     * a crash. Windows cannot open a folder as a file; its file systems write the entry with the file.
+     */
+    static void forceDirectory(Path dir) throws IOException {
+        if (WINDOWS) return;
+        try (FileChannel folder = FileChannel.open(dir, StandardOpenOption.READ)) {
+            folder.force(true);
+        }
+    }
+
+    /** Length of the complete, checksum matching records at the start of a segment. */
+    private static long validLength(FileChannel in) throws IOException {
+        long size = in.size();
+        if (size == 0) return 0;
+        ByteBuffer data = readAll(in, size);
+        CRC32 crc = new CRC32();
+        byte[] payload = new byte[256];
+        long valid = 0;
+        while (data.remaining() >= HEADER) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length < 0 || length > data.remaining()) break;
+            if (payload.length < length) payload = new byte[Math.max(length, payload.length * 2)];
+            data.get(payload, 0, length);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) break;
+            valid = data.position();
+        }
+        return valid;
+    }
+
+    /**
+     * Reads the start of a segment into the heap. Segments are not memory mapped, as a mapped file
+     * cannot be cut or deleted on every platform while the mapping is alive.
+     */
+    private static ByteBuffer readAll(FileChannel in, long length) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) length);
+        while (data.hasRemaining() && in.read(data, data.position()) >= 0) { }
+        data.flip();
+        return data;
+    }
+
+    /** Gets the records of a replay. */
+    @FunctionalInterface
+    public interface RecordReader {
+        /**
+         * @param payload the record, as it was appended
+         * @throws IOException if the record cannot be applied
+         */
+        void read(byte[] payload) throws IOException;
+    }
+}
@@ -14,7 +14,6 @@ public class recom_portal {
 
     private phone_library plibrary;
     public RecommendationController controller;
-    private List<phone> allphones;
     /**
      * Creates a new recommendation portal with an existing phone library.
      *
@@ -23,7 +22,6 @@ public class recom_portal {
     public recom_portal(phone_library library) {
         this.plibrary = library;
         this.controller = new RecommendationController(plibrary);
-        this.allphones = plibrary.getallphones();
     }
 
     /**
@@ -72,7 +70,7 @@ public class recom_portal {
             }
 
             switch (choice) {
-                case 1 -> displayPhones(allphones);
+                case 1 -> displayPhones(plibrary.getallphones());
                 case 2 -> handleRecommendations(input);
                 case 3 -> viewStoreLink(input);
                 case 4 -> {
@@ -98,7 +96,7 @@ public class recom_portal {
         int i = 1;
         for (phone p : phones) {
             System.out.println(i + ". " + p.getBrand() + " " + p.getName() + " – ₹" + p.getPrice() +
-                    " | " + p.getOs() + " | Usage: " + p.getUsage());
+                    " | " + p.getOs() + " | Usage: " + p.getUsage() + " | ID: " + p.getId());
             i++;
         }
     }
@@ -131,7 +129,7 @@ public class recom_portal {
             int count = 1;
             for (phone p : recommendations) {
                 System.out.println(count + ") " + p.getBrand() + " " + p.getName() + " – ₹" + p.getPrice());
-                System.out.println("\"" + summarizeReview((phone) p.getReviews()) + "\"");
+                System.out.println("\"" + summarizeReview(p) + "\"");
                 System.out.println("Sentiment: " + p.getSentiment() + "% Positive (" + countReviews(p) + " reviews)");
                 System.out.println("Buy → " + p.getPurchaseLink() + "\n");
                 count++;
@@ -151,21 +149,27 @@ public class recom_portal {
 
     /**
      * Displays a purchase link for a phone selected by the user.
-
+     * The phone is chosen by its id, which stays the same when the catalog is reloaded.
      */
     public void viewStoreLink(Scanner input) {
-        displayPhones(allphones);
-        System.out.print("Enter phone number to view store link: ");
-        int num = input.nextInt();
+        displayPhones(plibrary.getallphones());
+        System.out.print("Enter phone ID to view store link: ");
+        int id = input.nextInt();
 
-        if (num > 0 && num <= allphones.size()) {
-            phone selectedMobile = allphones.get(num - 1);
+        phone selectedMobile = plibrary.getPhone(id);
+        if (selectedMobile != null) {
             String link = selectedMobile.getPurchaseLink();
             if (link != null && !link.isEmpty()) {
                 System.out.println("Buy " + selectedMobile.getName() + " here: " + link);
             } else {
                 System.out.println("No purchase link available.");
             }
+            List<store> stores = plibrary.getStoreForPhone(selectedMobile);
+            if (!stores.isEmpty()) {
+                StringJoiner names = new StringJoiner(", ");
+                for (store s : stores) names.add(s.getName());
+                System.out.println("Available at: " + names);
+            }
         } else {
             System.out.println("Invalid selection.");
         }
@@ -185,7 +189,8 @@ public class recom_portal {
 
     /**
      * Generates phone recommendations based on budget, OS, and usage.
-     * Applies the appropriate strategy pattern based on usage type.
+     * Applies the appropriate strategy pattern based on usage type,
+     * using the shared strategy instances of the controller.
      * @param minBudget Minimum budget value.
      * @param maxBudget Maximum budget value.
      * @param os OS preference (Android/iOS/No Preference).
@@ -200,25 +205,14 @@ public class recom_portal {
         // Create user preference
         user_preference pref = new user_preference(usage, minBudget, maxBudget, OS);
 
-        // Select strategy dynamically
-        RecommendationStrategy strategy = switch (usage) {
-            case "Casual" -> new CasualRecom();
-            case "Entertainment" -> new Entertainment();
-            case "Gaming" -> new GamingRecom();
-            case "Photography" -> new PhotographyRecom();
-            case "Productivity" -> new Productivity();
-            default -> new CasualRecom();
-        };
-
-        controller.setStrategy(strategy);
-
-        List<phone> recommendation = controller.getRecommendation(pref);
+        // Strategy is picked from the shared registry by the usage type
+        List<phone> recommendation = controller.getRecommendation(pref, usage);
         if (recommendation == null) return new ArrayList<>();
 
         // Filter by budget and OS one last time
         return recommendation.stream()
                 .filter(p -> p.getPrice() >= minBudget && p.getPrice() <= maxBudget)
-                .filter(p -> OS.equalsIgnoreCase("No Preference") || p.getOs().equalsIgnoreCase(OS))
+                .filter(p -> pref.getOsCode() == CodeDictionary.ANY || p.getOsCode() == pref.getOsCode())
                 .toList();
     }
 
@@ -229,8 +223,7 @@ public class recom_portal {
      * @return Number of reviews available.
      */
     public int countReviews(phone p) {
-        if (p.reviews == null) return 0;
-        return p.reviews.size();
+        return p.getReviewCount();
     }
 
     /**
@@ -239,8 +232,7 @@ public class recom_portal {
      * @return First review text, or empty string if unavailable.
      */
     public String summarizeReview(phone p) {
-        if (p.reviews == null || p.reviews.isEmpty()) return "";
-        return p.reviews.get(0);
+        return p.getSummaryReview() == null ? "" : p.getSummaryReview();
     }
 
 }